@@ -0,0 +1,151 @@
+package mops.businesslogic.directory;
+
+import mops.businesslogic.file.FileContainer;
+import mops.persistence.file.FileInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zips a folder with thousands of small files from a storage with a fixed latency per file.
+ * Run with {@code ./gradlew jmh}, the score is the number of zipped folders per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ZipReadAheadBenchmark {
+
+    /**
+     * Number of files in the folder.
+     */
+    @Param({ "2000" })
+    public int fileCount;
+    /**
+     * Size of every file in bytes.
+     */
+    @Param({ "4096" })
+    public int fileSize;
+    /**
+     * Latency of the storage until the first byte of a file arrives.
+     */
+    @Param({ "500" })
+    public long latencyMicros;
+    /**
+     * Files read ahead, 0 reads every file when it is zipped.
+     */
+    @Param({ "0", "1", "4", "16" })
+    public int concurrency;
+
+    /**
+     * Threads reading ahead.
+     */
+    private ExecutorService executor;
+    /**
+     * Files of the folder.
+     */
+    private List<FileContainer> files;
+
+    /**
+     * Creates the files of the folder.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+        byte[] content = new byte[fileSize];
+        files = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            FileInfo info = FileInfo.builder()
+                    .id((long) i)
+                    .name("file-" + i + ".txt")
+                    .directory(1L)
+                    .type("text/plain")
+                    .size(fileSize)
+                    .owner("benchmark")
+                    .build();
+            files.add(new FileContainer(info, new StorageResource(content, latencyMicros)));
+        }
+    }
+
+    /**
+     * Stops the threads.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Zips the folder.
+     *
+     * @throws IOException on error
+     */
+    @Benchmark
+    public void zipFolder() throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(OutputStream.nullOutputStream());
+             ZipReadAhead readAhead = new ZipReadAhead(executor, files, concurrency, 32 * 1024 * 1024)) {
+            for (int i = 0; i < files.size(); i++) {
+                // content read ahead is written at once, larger files are streamed like in the zip service
+                byte[] content = readAhead.fetch(i);
+                zip.putNextEntry(new ZipEntry("folder/" + files.get(i).getName()));
+                if (content == null) {
+                    readAhead.stream(i, zip);
+                } else {
+                    zip.write(content);
+                }
+                zip.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Content of a file which arrives after a fixed latency.
+     */
+    private static final class StorageResource extends AbstractResource {
+
+        /**
+         * Content of the file.
+         */
+        private final byte[] content;
+        /**
+         * Latency in microseconds.
+         */
+        private final long latencyMicros;
+
+        StorageResource(byte[] content, long latencyMicros) {
+            this.content = content;
+            this.latencyMicros = latencyMicros;
+        }
+
+        @Override
+        public String getDescription() {
+            return "simulated storage";
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+            return new ByteArrayInputStream(content);
+        }
+    }
+}
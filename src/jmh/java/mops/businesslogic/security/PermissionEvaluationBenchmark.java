@@ -0,0 +1,181 @@
+package mops.businesslogic.security;
+
+import mops.businesslogic.exception.DeleteAccessPermissionException;
+import mops.businesslogic.exception.ReadAccessPermissionException;
+import mops.businesslogic.exception.WriteAccessPermissionException;
+import mops.persistence.permission.DirectoryPermissions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates the permissions of one user for every entry of a folder listing, once the way
+ * {@code SecurityServiceImpl.getPermissionsOfUser} did before with a stream per flag and an exception
+ * per missing flag, and once with {@link UserPermission#of}.
+ * Run with {@code ./gradlew jmh}, the score is the time per listing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionEvaluationBenchmark {
+
+    /**
+     * Number of directories and files in the listing, each with its own permissions.
+     */
+    @Param({ "100", "500" })
+    public int entryCount;
+    /**
+     * Role of the user, a viewer misses two of three permissions.
+     */
+    @Param({ "admin", "editor", "viewer" })
+    public String userRole;
+
+    /**
+     * Permissions of every entry.
+     */
+    private List<DirectoryPermissions> permissions;
+    /**
+     * The same permissions as plain entries for the former evaluation.
+     */
+    private List<List<Entry>> entries;
+
+    /**
+     * Creates the permissions of the listing.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        permissions = new ArrayList<>(entryCount);
+        entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            // every third entry may not be changed by editors
+            boolean editorWrites = i % 3 != 0;
+            permissions.add(DirectoryPermissions.builder()
+                    .entry("admin", true, true, true)
+                    .entry("editor", true, editorWrites, false)
+                    .entry("viewer", true, false, false)
+                    .build());
+            entries.add(List.of(new Entry("admin", true, true, true),
+                    new Entry("editor", true, editorWrites, false),
+                    new Entry("viewer", true, false, false)));
+        }
+    }
+
+    /**
+     * Evaluates every entry by catching the exceptions of the check methods.
+     *
+     * @param blackhole consumes the results
+     */
+    @Benchmark
+    public void exceptionBased(Blackhole blackhole) {
+        for (List<Entry> entryPermissions : entries) {
+            blackhole.consume(evaluateWithExceptions(entryPermissions, userRole));
+        }
+    }
+
+    /**
+     * Evaluates every entry with the compiled permission masks.
+     *
+     * @param blackhole consumes the results
+     */
+    @Benchmark
+    public void compiledMasks(Blackhole blackhole) {
+        for (DirectoryPermissions entryPermissions : permissions) {
+            blackhole.consume(UserPermission.of(entryPermissions, userRole));
+        }
+    }
+
+    /**
+     * Former evaluation of {@code SecurityServiceImpl.getPermissionsOfUser}.
+     *
+     * @param entryPermissions permission entries of the directory
+     * @param role             role of the user
+     * @return user permissions
+     */
+    private static UserPermission evaluateWithExceptions(List<Entry> entryPermissions, String role) {
+        boolean write = true;
+        boolean read = true;
+        boolean delete = true;
+        try {
+            if (entryPermissions.stream().filter(Entry::isWrite).map(Entry::getRole).noneMatch(role::equals)) {
+                throw new WriteAccessPermissionException(
+                        String.format("Der Benutzer %s hat keine Schreibberechtigungen in %s.", "user", "folder"));
+            }
+        } catch (WriteAccessPermissionException e) {
+            write = false;
+        }
+        try {
+            if (entryPermissions.stream().filter(Entry::isRead).map(Entry::getRole).noneMatch(role::equals)) {
+                throw new ReadAccessPermissionException(
+                        String.format("Der Benutzer %s hat keine Leseberechtigungen in %s.", "user", "folder"));
+            }
+        } catch (ReadAccessPermissionException e) {
+            read = false;
+        }
+        try {
+            if (entryPermissions.stream().filter(Entry::isDelete).map(Entry::getRole).noneMatch(role::equals)) {
+                throw new DeleteAccessPermissionException(
+                        String.format("Der Benutzer %s hat keine Löschberechtigungen in %s.", "user", "folder"));
+            }
+        } catch (DeleteAccessPermissionException e) {
+            delete = false;
+        }
+        return new UserPermission(read, write, delete);
+    }
+
+    /**
+     * Permission entry of one role as it was evaluated before.
+     */
+    private static final class Entry {
+
+        /**
+         * Role.
+         */
+        private final String role;
+        /**
+         * Read permission.
+         */
+        private final boolean read;
+        /**
+         * Write permission.
+         */
+        private final boolean write;
+        /**
+         * Delete permission.
+         */
+        private final boolean delete;
+
+        Entry(String role, boolean read, boolean write, boolean delete) {
+            this.role = role;
+            this.read = read;
+            this.write = write;
+            this.delete = delete;
+        }
+
+        String getRole() {
+            return role;
+        }
+
+        boolean isRead() {
+            return read;
+        }
+
+        boolean isWrite() {
+            return write;
+        }
+
+        boolean isDelete() {
+            return delete;
+        }
+    }
+}
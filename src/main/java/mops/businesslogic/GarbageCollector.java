@@ -5,8 +5,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import mops.businesslogic.directory.DeleteService;
 import mops.businesslogic.directory.DirectoryService;
+import mops.businesslogic.directory.ZipExportService;
 import mops.businesslogic.file.FileInfoService;
 import mops.businesslogic.file.FileService;
+import mops.businesslogic.file.UploadSessionService;
 import mops.businesslogic.group.GroupService;
 import mops.businesslogic.security.Account;
 import mops.exception.MopsException;
@@ -23,7 +25,7 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * Removes content of no longer existing groups.
+ * Removes content of no longer existing groups, abandoned uploads and expired exports.
  */
 @Profile("!test")
 @Component
@@ -56,6 +58,14 @@ public class GarbageCollector {
      * DirectoryService.
      */
     private final DirectoryService directoryService;
+    /**
+     * UploadSessionService.
+     */
+    private final UploadSessionService uploadSessionService;
+    /**
+     * ZipExportService.
+     */
+    private final ZipExportService zipExportService;
 
     /**
      * Garbage Collector Account.
@@ -77,21 +87,26 @@ public class GarbageCollector {
         log.info("Starting garbage collection.");
         removeOrphanedFiles();
         removeOrphanedDirs();
+        removeExpiredUploads();
+        removeStagedFiles();
+        removeExpiredExports();
         log.info("Garbage collection finished.");
     }
 
     /**
-     * Collects all IDs, finds orphaned files and deletes them.
+     * Collects all IDs, finds orphaned files and deletes them. Stored content is orphaned
+     * if no file refers to it, a file is orphaned if its content is not stored.
      */
     @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.LawOfDemeter", "PMD.DefaultPackage" })
     void removeOrphanedFiles() {
         initAccount();
 
-        Set<Long> metaIds;
+        Set<Long> contentIds;
         Set<Long> fileIds;
+        Set<Long> metaIds;
         Set<Long> filesWithoutDirectory;
         try {
-            metaIds = new HashSet<>(fileInfoService.fetchAllFileInfoIds());
+            contentIds = new HashSet<>(fileInfoService.fetchAllContentIds());
             fileIds = new HashSet<>(fileService.getAllFileIds());
             filesWithoutDirectory = new HashSet<>(fileInfoService.fetchAllOrphanedFileInfos());
         } catch (MopsException e) {
@@ -99,12 +114,19 @@ public class GarbageCollector {
             return;
         }
 
-        Set<Long> filesWithMeta = Sets.intersection(metaIds, fileIds).immutableCopy();
+        Set<Long> filesWithMeta = Sets.intersection(contentIds, fileIds).immutableCopy();
 
         // only orphans left
-        metaIds.removeAll(filesWithMeta);
+        contentIds.removeAll(filesWithMeta);
         fileIds.removeAll(filesWithMeta);
 
+        try {
+            metaIds = fileInfoService.fetchAllFileInfoIdsByContentIds(contentIds);
+        } catch (MopsException e) {
+            log.error("Error while collecting files with missing content:", e);
+            return;
+        }
+
         int count = metaIds.size() + fileIds.size();
         log.info("{} orphaned files were found. {} FileInfos and {} Files.",
                 count,
@@ -117,6 +139,7 @@ public class GarbageCollector {
                 fileInfoService.deleteFileInfo(metaId);
                 log.debug("Removed FileInfo orphan with id '{}'.", metaId);
             }
+            fileInfoService.deleteContent(contentIds);
 
             for (Long fileId : fileIds) {
                 fileService.deleteFileWithoutMeta(fileId);
@@ -172,6 +195,45 @@ public class GarbageCollector {
         });
     }
 
+    /**
+     * Removes chunked uploads which were abandoned.
+     */
+    @SuppressWarnings("PMD.DefaultPackage")
+    void removeExpiredUploads() {
+        try {
+            int count = uploadSessionService.removeExpiredSessions();
+            log.info("{} expired upload sessions were removed.", count);
+        } catch (MopsException e) {
+            log.error("Error while removing expired upload sessions:", e);
+        }
+    }
+
+    /**
+     * Removes staged content of interrupted uploads.
+     */
+    @SuppressWarnings("PMD.DefaultPackage")
+    void removeStagedFiles() {
+        try {
+            int count = fileService.deleteStaleStagedFiles();
+            log.info("{} staged files of interrupted uploads were removed.", count);
+        } catch (MopsException e) {
+            log.error("Error while removing staged files:", e);
+        }
+    }
+
+    /**
+     * Removes expired and interrupted zip exports.
+     */
+    @SuppressWarnings("PMD.DefaultPackage")
+    void removeExpiredExports() {
+        try {
+            int count = zipExportService.removeExpiredExports();
+            log.info("{} expired zip exports were removed.", count);
+        } catch (MopsException e) {
+            log.error("Error while removing expired zip exports:", e);
+        }
+    }
+
     private void initAccount() {
         if (gbAccount == null) {
             gbAccount = Account.of("GarbageCollector", "mops.hhu.de", internalAdminRole);
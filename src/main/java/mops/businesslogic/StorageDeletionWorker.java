@@ -0,0 +1,39 @@
+package mops.businesslogic;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.file.StorageDeletionService;
+import mops.exception.MopsException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains the outbox of storage deletions regularly.
+ */
+@Profile("!test")
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StorageDeletionWorker {
+
+    /**
+     * StorageDeletionService.
+     */
+    private final StorageDeletionService storageDeletionService;
+
+    /**
+     * Removes content of deleted files from the storage.
+     */
+    @Scheduled(fixedDelayString = "${material1.mops.configuration.deletion.interval}")
+    public void processDeletions() {
+        try {
+            int count = storageDeletionService.processDeletions();
+            if (count > 0) {
+                log.info("{} deleted files were removed from the storage.", count);
+            }
+        } catch (MopsException e) {
+            log.error("Error while removing deleted files from the storage:", e);
+        }
+    }
+}
@@ -3,33 +3,37 @@ package mops.businesslogic.directory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import mops.businesslogic.exception.DatabaseException;
+import mops.businesslogic.exception.DeleteAccessPermissionException;
 import mops.businesslogic.file.FileInfoService;
-import mops.businesslogic.file.FileService;
+import mops.businesslogic.file.StorageDeletionService;
 import mops.businesslogic.permission.PermissionService;
 import mops.businesslogic.security.Account;
 import mops.businesslogic.security.SecurityService;
 import mops.exception.MopsException;
 import mops.persistence.directory.Directory;
-import mops.persistence.file.FileInfo;
+import mops.persistence.permission.DirectoryPermissions;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 
 /**
  * Handles directory and file deletion.
+ * A folder tree is deleted with a few statements per level instead of one statement per file,
+ * the content of the files is removed from the storage in the background.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class DeleteServiceImpl implements DeleteService {
 
-    /**
-     * Handles communication with the storage service.
-     */
-    private final FileService fileService;
     /**
      * Handles meta data of files.
      */
@@ -46,6 +50,10 @@ public class DeleteServiceImpl implements DeleteService {
      * Checks permissions.
      */
     private final SecurityService securityService;
+    /**
+     * Removes content of deleted files from the storage in the background.
+     */
+    private final StorageDeletionService storageDeletionService;
 
     /**
      * {@inheritDoc}
@@ -57,10 +65,9 @@ public class DeleteServiceImpl implements DeleteService {
         log.debug("Requesting deletion of folder with id '{}'.", dirId);
         Directory directory = directoryService.getDirectory(dirId);
 
-        securityService.checkDeletePermission(account, directory);
-
-        List<FileInfo> files = fileInfoService.fetchAllFilesInDirectory(dirId);
-        List<Directory> subFolders = directoryService.getSubFolders(account, dirId);
+        // the whole tree is loaded at once, parents come before their sub folders
+        List<Directory> subTree = directoryService.getSubTree(dirId);
+        checkDeletePermission(account, directory, subTree);
 
         Directory parentDirectory = null;
         if (!directory.isRoot()) {
@@ -68,28 +75,72 @@ public class DeleteServiceImpl implements DeleteService {
         }
 
         try {
-            for (FileInfo fileInfo : files) {
-                log.debug("Deleting file '{}'.", fileInfo.getName());
-                fileService.deleteFile(account, fileInfo.getId());
-            }
-            for (Directory subFolder : subFolders) {
-                log.debug("Recursively deleting directory '{}'.", subFolder.getName());
-                deleteFolder(account, subFolder.getId());
-            }
-
-            log.debug("Deleting directory '{}'.", directory.getName());
-            directoryService.deleteDirectory(directory);
-
-            if (parentDirectory == null || parentDirectory.getPermissionsId() != directory.getPermissionsId()) {
-                log.debug("Deleting directory permissions with id '{}'.", directory.getPermissionsId());
-                permissionService.deletePermissions(directory);
+            Set<Long> dirIds = subTree.stream().map(Directory::getId).collect(Collectors.toSet());
+            Set<Long> contentIds = fileInfoService.deleteAllInDirectories(dirIds);
+            storageDeletionService.scheduleDeletion(contentIds);
+            log.debug("{} stored files are no longer used.", contentIds.size());
+            // sub folders reference their parents, so the deepest level is deleted first
+            List<List<Long>> levels = getLevels(subTree);
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                directoryService.deleteDirectories(levels.get(i));
             }
+            permissionService.deleteUnusedPermissions(subTree.stream()
+                    .map(Directory::getPermissionsId)
+                    .collect(Collectors.toSet()));
         } catch (MopsException e) {
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             log.error("Error while deleting directory {} by user {}:", directory.getName(), account.getName(), e);
             throw new DatabaseException("Fehler während des Löschens aufgetreten", e);
         }
+        log.debug("Deleted {} directories.", subTree.size());
 
         return parentDirectory;
     }
+
+    /**
+     * Checks the delete permission for every folder of a tree with one query for all permissions.
+     *
+     * @param account   user credentials
+     * @param directory top folder of the tree
+     * @param subTree   all folders of the tree
+     * @throws MopsException if the user may not delete one of the folders or on error
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void checkDeletePermission(Account account, Directory directory, List<Directory> subTree)
+            throws MopsException {
+        String userRole = securityService.getUserRole(directory.getGroupOwner(), account);
+        Map<Long, DirectoryPermissions> permissions = permissionService.getPermissions(subTree.stream()
+                .map(Directory::getPermissionsId)
+                .collect(Collectors.toSet()));
+        for (Directory folder : subTree) {
+            if (!permissions.get(folder.getPermissionsId()).isAllowedToDelete(userRole)) {
+                log.debug("The user '{}' has no delete permissions in '{}' .", account.getName(), folder.getName());
+                throw new DeleteAccessPermissionException(
+                        String.format("Der Benutzer %s hat keine Löschberechtigungen in %s.",
+                                account.getName(),
+                                folder.getName()));
+            }
+        }
+    }
+
+    /**
+     * Groups the ids of a tree by their depth.
+     *
+     * @param subTree all folders of a tree, parents before their sub folders
+     * @return ids of the folders per level, the top folder first
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private static List<List<Long>> getLevels(List<Directory> subTree) {
+        Map<Long, Integer> depths = new HashMap<>();
+        List<List<Long>> levels = new ArrayList<>();
+        for (Directory folder : subTree) {
+            int depth = depths.isEmpty() ? 0 : depths.get(folder.getParentId()) + 1;
+            depths.put(folder.getId(), depth);
+            if (levels.size() == depth) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(depth).add(folder.getId());
+        }
+        return levels;
+    }
 }
@@ -7,6 +7,7 @@ import mops.persistence.directory.Directory;
 import mops.persistence.permission.DirectoryPermissions;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -32,6 +33,16 @@ public interface DirectoryService {
      */
     List<Directory> getDirectoryPath(long dirId) throws MopsException;
 
+    /**
+     * Internal use only: possible security flaw!.
+     * Loads a directory and all folders below it with a single query.
+     *
+     * @param dirId the id of the top folder
+     * @return the folder followed by its sub folders level by level, parents before their sub folders
+     * @throws MopsException on error
+     */
+    List<Directory> getSubTree(long dirId) throws MopsException;
+
     /**
      * Creates the group root directory.
      *
@@ -92,6 +103,15 @@ public interface DirectoryService {
      */
     void deleteDirectory(Directory directory) throws MopsException;
 
+    /**
+     * Internal use only: possible security flaw!.
+     * Deletes several directories with one statement, their sub folders and files have to be deleted before.
+     *
+     * @param dirIds ids of the directories to be deleted
+     * @throws MopsException on error
+     */
+    void deleteDirectories(Collection<Long> dirIds) throws MopsException;
+
     /**
      * Get the total number of directories in a group.
      *
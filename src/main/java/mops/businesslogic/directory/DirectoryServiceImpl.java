@@ -18,6 +18,7 @@ import mops.persistence.directory.Directory;
 import mops.persistence.directory.DirectoryBuilder;
 import mops.persistence.group.Group;
 import mops.persistence.permission.DirectoryPermissions;
+import mops.util.RequestCache;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DuplicateKeyException;
@@ -113,17 +114,32 @@ public class DirectoryServiceImpl implements DirectoryService {
     @Override
     @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
     public List<Directory> getDirectoryPath(long dirId) throws MopsException {
-        List<Directory> result = new LinkedList<>();
-        Directory dir = getDirectory(dirId);
-        while (!dir.isRoot()) {
-            result.add(dir);
-            dir = getDirectory(dir.getParentId());
+        List<Directory> path;
+        try {
+            path = directoryRepository.getAncestors(dirId);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("The path of the directory with the id '{}' could not be loaded:", dirId, e);
+            throw new DatabaseException("Der Pfad des Ordners konnte nicht geladen werden.", e);
+        }
+        if (path.isEmpty()) {
+            log.error("The path of the directory with the id '{}' was requested, but it was not found.", dirId);
+            throw new DatabaseException(String.format("Der Ordner mit der ID '%d' konnte nicht gefunden werden.",
+                    dirId));
+        }
+        return path;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Directory> getSubTree(long dirId) throws MopsException {
+        try {
+            return directoryRepository.getSubTree(dirId);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("The folders below the directory with the id '{}' could not be loaded:", dirId, e);
+            throw new DatabaseException("Unterordner konnten nicht geladen werden.", e);
         }
-        // add root
-        result.add(dir);
-        //reversing list
-        Collections.reverse(result);
-        return result;
     }
 
     /**
@@ -242,7 +258,8 @@ public class DirectoryServiceImpl implements DirectoryService {
     @SuppressWarnings("PMD.LawOfDemeter")
     public Directory getDirectory(long dirId) throws MopsException {
         try {
-            return directoryRepository.findById(dirId).orElseThrow();
+            // the same directory is often needed several times in one request
+            return RequestCache.get(Directory.class, dirId, () -> directoryRepository.findById(dirId).orElseThrow());
         } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException
                 | NoSuchElementException e) {
             log.error("The directory with the id '{}' was requested, but was not found in the database:", dirId, e);
@@ -265,6 +282,9 @@ public class DirectoryServiceImpl implements DirectoryService {
                 error = String.format("Der Ordner '%s' existiert bereits.", directory.getName());
             }
             throw new DatabaseException(error, e);
+        } finally {
+            // the instance may have been changed, even if saving it failed
+            RequestCache.evict(Directory.class, directory.getId());
         }
     }
 
@@ -273,6 +293,7 @@ public class DirectoryServiceImpl implements DirectoryService {
      */
     @Override
     public void deleteDirectory(Directory directory) throws MopsException {
+        RequestCache.evict(Directory.class, directory.getId());
         try {
             directoryRepository.delete(directory);
         } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
@@ -282,6 +303,23 @@ public class DirectoryServiceImpl implements DirectoryService {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteDirectories(Collection<Long> dirIds) throws MopsException {
+        // an empty IN list is no valid SQL
+        if (!dirIds.isEmpty()) {
+            dirIds.forEach(dirId -> RequestCache.evict(Directory.class, dirId));
+            try {
+                directoryRepository.deleteAllByIds(dirIds);
+            } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+                log.error("The directories {} could not be deleted from the database:", dirIds, e);
+                throw new DatabaseException("Die Ordner konnten nicht gelöscht werden.", e);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -339,8 +377,14 @@ public class DirectoryServiceImpl implements DirectoryService {
         }
 
         newName = newName.replaceAll("[^a-zA-Z0-9.\\-]", "_");
-        directory.setName(newName);
-        return directoryRepository.save(directory);
+        // the renamed instance must not be handed out by the request cache, even if saving it fails
+        RequestCache.evict(Directory.class, dirId);
+        try {
+            directory.setName(newName);
+            return directoryRepository.save(directory);
+        } finally {
+            RequestCache.evict(Directory.class, dirId);
+        }
     }
 
     /**
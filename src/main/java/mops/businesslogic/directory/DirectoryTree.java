@@ -0,0 +1,52 @@
+package mops.businesslogic.directory;
+
+import lombok.Value;
+import mops.businesslogic.file.FileListEntry;
+import mops.persistence.directory.Directory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A directory with all sub folders and files the user may read.
+ */
+@Value
+// @Value automatically makes all fields `private final` which CheckStyle and PMD don't see
+@SuppressWarnings({ "checkstyle:VisibilityModifier", "PMD.DefaultPackage" })
+public class DirectoryTree {
+
+    /**
+     * The directory itself.
+     */
+    Directory directory;
+    /**
+     * Readable sub folders sorted by name.
+     */
+    List<DirectoryTree> subFolders;
+    /**
+     * Readable files sorted by name.
+     */
+    List<FileListEntry> files;
+
+    /**
+     * Directory name.
+     *
+     * @return directory name
+     */
+    public String getName() {
+        return directory.getName();
+    }
+
+    /**
+     * Collects the files of this directory and all its sub folders.
+     *
+     * @return all readable files in the tree
+     */
+    public List<FileListEntry> getAllFiles() {
+        List<FileListEntry> allFiles = new ArrayList<>(files);
+        for (DirectoryTree subFolder : subFolders) {
+            allFiles.addAll(subFolder.getAllFiles());
+        }
+        return allFiles;
+    }
+}
@@ -0,0 +1,37 @@
+package mops.businesslogic.directory;
+
+import mops.businesslogic.security.Account;
+import mops.exception.MopsException;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+
+/**
+ * Resolves whole directory trees at once.
+ */
+@Service
+public interface DirectoryTreeService {
+
+    /**
+     * Loads a directory with all sub folders and files the user may read. The directories,
+     * their permissions, the files and the role of the user are each fetched only once.
+     *
+     * @param account user credentials
+     * @param dirId   id of the directory
+     * @return readable tree
+     * @throws MopsException on error, especially if the user may not read the directory
+     */
+    DirectoryTree getReadableTree(Account account, long dirId) throws MopsException;
+
+    /**
+     * Loads a selection of files of one group as a tree. The tree starts at the deepest folder
+     * containing all selected files and only holds the folders on the way to them. Like the
+     * tree, the files, their directories and permissions are each fetched only once.
+     *
+     * @param account user credentials
+     * @param fileIds ids of the selected files
+     * @return tree of the selected files
+     * @throws MopsException on error, especially if a file is missing or may not be read
+     */
+    DirectoryTree getReadableSelection(Account account, Collection<Long> fileIds) throws MopsException;
+}
@@ -0,0 +1,359 @@
+package mops.businesslogic.directory;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.exception.DatabaseException;
+import mops.businesslogic.exception.FileNotFoundException;
+import mops.businesslogic.exception.ReadAccessPermissionException;
+import mops.businesslogic.file.FileInfoService;
+import mops.businesslogic.file.FileListEntry;
+import mops.businesslogic.permission.PermissionService;
+import mops.businesslogic.security.Account;
+import mops.businesslogic.security.SecurityService;
+import mops.businesslogic.security.UserPermission;
+import mops.businesslogic.time.TimeService;
+import mops.exception.MopsException;
+import mops.persistence.DirectoryRepository;
+import mops.persistence.directory.Directory;
+import mops.persistence.file.FileInfo;
+import mops.persistence.permission.DirectoryPermissions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.relational.core.conversion.DbActionExecutionException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves directory trees with a fixed number of queries instead of several per directory and file.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DirectoryTreeServiceImpl implements DirectoryTreeService {
+
+    /**
+     * Handles requests concerning directories.
+     */
+    private final DirectoryService directoryService;
+    /**
+     * This connects to database related to directory information.
+     */
+    private final DirectoryRepository directoryRepository;
+    /**
+     * Handles meta data of files.
+     */
+    private final FileInfoService fileInfoService;
+    /**
+     * Handle permissions storage and retrieval.
+     */
+    private final PermissionService permissionService;
+    /**
+     * Handle permission checks for roles.
+     */
+    private final SecurityService securityService;
+    /**
+     * Provides the current time.
+     */
+    private final TimeService timeService;
+    /**
+     * Represents the role of an admin.
+     */
+    @Value("${material1.mops.configuration.role.admin}")
+    @SuppressWarnings({ "PMD.ImmutableField", "PMD.BeanMembersShouldSerialize" })
+    private String adminRole = "admin";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public DirectoryTree getReadableTree(Account account, long dirId) throws MopsException {
+        Directory directory = directoryService.getDirectory(dirId);
+        String userRole = securityService.getUserRole(directory.getGroupOwner(), account);
+
+        Map<Long, List<Directory>> subFolders = fetchSubFolders(directory);
+        Set<Long> permissionIds = subFolders.values().stream()
+                .flatMap(List::stream)
+                .map(Directory::getPermissionsId)
+                .collect(Collectors.toCollection(HashSet::new));
+        permissionIds.add(directory.getPermissionsId());
+        Map<Long, DirectoryPermissions> permissions = permissionService.getPermissions(permissionIds);
+
+        if (!permissions.get(directory.getPermissionsId()).isAllowedToRead(userRole)) {
+            log.debug("The user '{}' has no read permissions in '{}' .", account.getName(), directory.getName());
+            throw new ReadAccessPermissionException(
+                    String.format("Der Benutzer %s hat keine Leseberechtigungen in %s.",
+                            account.getName(),
+                            directory.getName()));
+        }
+
+        TreeContext context = new TreeContext(account, userRole, adminRole.equals(userRole),
+                timeService.getInstantNow(), subFolders, permissions);
+        Map<Long, Directory> readable = new HashMap<>();
+        collectReadable(context, directory, readable);
+        Map<Long, List<FileInfo>> files = fileInfoService.fetchAllFilesInDirectories(readable.keySet()).stream()
+                .collect(Collectors.groupingBy(FileInfo::getDirectoryId));
+        return buildTree(context, directory, readable, files);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    public DirectoryTree getReadableSelection(Account account, Collection<Long> fileIds) throws MopsException {
+        Set<Long> selectedIds = new HashSet<>(fileIds);
+        List<FileInfo> selected = fileInfoService.fetchFileInfos(selectedIds);
+        if (selected.isEmpty() || selected.size() != selectedIds.size()) {
+            log.error("User {} selected missing files: {}", account.getName(), selectedIds);
+            throw new FileNotFoundException("Die ausgewählten Dateien wurden nicht gefunden.");
+        }
+
+        Directory first = directoryService.getDirectory(selected.get(0).getDirectoryId());
+        String userRole = securityService.getUserRole(first.getGroupOwner(), account);
+        Map<Long, Directory> folders = fetchGroupFolders(first).stream()
+                .collect(Collectors.toMap(Directory::getId, Function.identity()));
+        Map<Long, List<FileInfo>> files = selected.stream()
+                .collect(Collectors.groupingBy(FileInfo::getDirectoryId));
+
+        Map<Long, Directory> onPath = new HashMap<>();
+        List<Directory> commonPath = null;
+        for (Long dirId : files.keySet()) {
+            List<Directory> path = pathTo(folders, dirId);
+            for (Directory directory : path) {
+                onPath.put(directory.getId(), directory);
+            }
+            commonPath = commonPath == null ? path : commonPrefix(commonPath, path);
+        }
+        Set<Long> permissionIds = onPath.values().stream()
+                .map(Directory::getPermissionsId)
+                .collect(Collectors.toSet());
+        Map<Long, List<Directory>> subFolders = onPath.values().stream()
+                .filter(folder -> !folder.isRoot())
+                .sorted(Directory.NAME_COMPARATOR)
+                .collect(Collectors.groupingBy(Directory::getParentId));
+
+        TreeContext context = new TreeContext(account, userRole, adminRole.equals(userRole),
+                timeService.getInstantNow(), subFolders, permissionService.getPermissions(permissionIds));
+        // every selected file needs the same permissions as a single download
+        for (Long dirId : files.keySet()) {
+            for (FileListEntry entry : listFiles(context, onPath.get(dirId), files)) {
+                if (!entry.isRead()) {
+                    log.debug("The user '{}' may not read the file '{}'.", account.getName(), entry.getName());
+                    throw new ReadAccessPermissionException(
+                            String.format("Der Benutzer %s darf die Datei %s nicht lesen.",
+                                    account.getName(),
+                                    entry.getName()));
+                }
+            }
+        }
+        return buildTree(context, commonPath.get(commonPath.size() - 1), onPath, files);
+    }
+
+    /**
+     * Loads all folders below a directory and groups them by their parent.
+     *
+     * @param directory top directory
+     * @return sub folders by the id of their parent, sorted by name
+     * @throws MopsException on error
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private Map<Long, List<Directory>> fetchSubFolders(Directory directory) throws MopsException {
+        List<Directory> folders;
+        try {
+            folders = new ArrayList<>(directoryRepository.getSubTree(directory.getId()));
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Sub folders of the folder with id '{}' could not be loaded:", directory.getId(), e);
+            throw new DatabaseException("Unterordner konnten nicht geladen werden.", e);
+        }
+        folders.sort(Directory.NAME_COMPARATOR);
+        return folders.stream()
+                .filter(folder -> !folder.getId().equals(directory.getId()))
+                .collect(Collectors.groupingBy(Directory::getParentId));
+    }
+
+    /**
+     * Loads all folders of the group of a directory.
+     *
+     * @param directory any directory of the group
+     * @return all folders including the root folder
+     * @throws MopsException on error
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private List<Directory> fetchGroupFolders(Directory directory) throws MopsException {
+        try {
+            return new ArrayList<>(directoryRepository.getAllFoldersInGroup(directory.getGroupOwner()));
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Sub folders of the folder with id '{}' could not be loaded:", directory.getId(), e);
+            throw new DatabaseException("Unterordner konnten nicht geladen werden.", e);
+        }
+    }
+
+    /**
+     * Resolves the folders from the root folder of the group down to a directory.
+     *
+     * @param folders all folders of the group by their id
+     * @param dirId   directory id
+     * @return folders starting with the root folder
+     * @throws MopsException if the directory belongs to another group
+     */
+    private static List<Directory> pathTo(Map<Long, Directory> folders, long dirId) throws MopsException {
+        LinkedList<Directory> path = new LinkedList<>();
+        Directory current = folders.get(dirId);
+        while (current != null) {
+            path.addFirst(current);
+            current = current.isRoot() ? null : folders.get(current.getParentId());
+        }
+        if (path.isEmpty() || !path.getFirst().isRoot()) {
+            log.error("The selected directory {} does not belong to the group of the other files.", dirId);
+            throw new FileNotFoundException("Die ausgewählten Dateien müssen aus derselben Gruppe stammen.");
+        }
+        return path;
+    }
+
+    /**
+     * Finds the common start of two paths from the root folder.
+     *
+     * @param first  path starting with the root folder
+     * @param second path starting with the same root folder
+     * @return folders both paths pass through
+     */
+    private static List<Directory> commonPrefix(List<Directory> first, List<Directory> second) {
+        int length = 0;
+        while (length < first.size() && length < second.size()
+                && first.get(length).getId().equals(second.get(length).getId())) {
+            length++;
+        }
+        return first.subList(0, length);
+    }
+
+    /**
+     * Collects a readable directory and all its readable sub folders.
+     *
+     * @param context   resolved data of the tree
+     * @param directory readable directory
+     * @param readable  readable directories by their id
+     */
+    private void collectReadable(TreeContext context, Directory directory, Map<Long, Directory> readable) {
+        readable.put(directory.getId(), directory);
+        for (Directory subFolder : context.subFoldersOf(directory)) {
+            if (context.permissionsOf(subFolder).isRead()) {
+                collectReadable(context, subFolder, readable);
+            }
+        }
+    }
+
+    /**
+     * Assembles the tree of a readable directory.
+     *
+     * @param context   resolved data of the tree
+     * @param directory readable directory
+     * @param readable  readable directories by their id
+     * @param files     all files of the readable directories by their directory id
+     * @return readable tree
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private DirectoryTree buildTree(TreeContext context,
+                                    Directory directory,
+                                    Map<Long, Directory> readable,
+                                    Map<Long, List<FileInfo>> files) {
+        List<DirectoryTree> subTrees = new ArrayList<>();
+        for (Directory subFolder : context.subFoldersOf(directory)) {
+            if (readable.containsKey(subFolder.getId())) {
+                subTrees.add(buildTree(context, subFolder, readable, files));
+            }
+        }
+
+        List<FileListEntry> fileEntries = listFiles(context, directory, files).stream()
+                .filter(FileListEntry::isRead)
+                .collect(Collectors.toList());
+        return new DirectoryTree(directory, subTrees, fileEntries);
+    }
+
+    /**
+     * Evaluates the permissions of the user for the files of a directory.
+     *
+     * @param context   resolved data of the tree
+     * @param directory directory
+     * @param files     files by their directory id
+     * @return all files of the directory, including those the user may not read
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private List<FileListEntry> listFiles(TreeContext context, Directory directory, Map<Long, List<FileInfo>> files) {
+        UserPermission userPermission = context.permissionsOf(directory);
+        return files.getOrDefault(directory.getId(), List.of()).stream()
+                .map(file -> new FileListEntry(
+                        file,
+                        userPermission,
+                        context.isAdmin(),
+                        file.getOwner().equals(context.getAccount().getName()),
+                        context.getNow()
+                ))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Everything loaded for one tree, so permissions can be evaluated without further queries.
+     */
+    @lombok.Value
+    @SuppressWarnings({ "checkstyle:VisibilityModifier", "PMD.DefaultPackage" })
+    private static class TreeContext {
+
+        /**
+         * User credentials.
+         */
+        Account account;
+        /**
+         * Role of the user in the group.
+         */
+        String userRole;
+        /**
+         * Is the user an admin of the group.
+         */
+        boolean admin;
+        /**
+         * Current time.
+         */
+        Instant now;
+        /**
+         * Sub folders by the id of their parent.
+         */
+        Map<Long, List<Directory>> subFolders;
+        /**
+         * Directory permissions by their id.
+         */
+        Map<Long, DirectoryPermissions> permissions;
+
+        /**
+         * Gets the sub folders of a directory.
+         *
+         * @param directory directory
+         * @return sub folders sorted by name
+         */
+        List<Directory> subFoldersOf(Directory directory) {
+            return subFolders.getOrDefault(directory.getId(), List.of());
+        }
+
+        /**
+         * Evaluates the permissions of the user in a directory.
+         *
+         * @param directory directory
+         * @return user permissions
+         */
+        @SuppressWarnings("PMD.LawOfDemeter")
+        UserPermission permissionsOf(Directory directory) {
+            return UserPermission.of(permissions.get(directory.getPermissionsId()), userRole);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package mops.businesslogic.directory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Node local cache of generated zip archives. An archive is keyed by a hash of everything
+ * the user could see when it was created, so changed folders and users with different
+ * permissions never share an archive. Old archives are evicted in least recently used order.
+ */
+@Slf4j
+@Component
+// early returns keep the cache checks readable
+@SuppressWarnings({ "PMD.BeanMembersShouldSerialize", "PMD.AvoidSynchronizedAtMethodLevel", "PMD.OnlyOneReturn" })
+class ZipArchiveCache {
+
+    /**
+     * Prefix of all cache metrics.
+     */
+    private static final String METRIC_PREFIX = "mops.material1.zip.cache.";
+    /**
+     * Initial capacity of the entry map.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * Load factor of the entry map.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Whether archives are cached at all.
+     */
+    private final boolean enabled;
+    /**
+     * Directory of the cached archives.
+     */
+    private final Path directory;
+    /**
+     * Maximum total size in bytes.
+     */
+    private final long maxSize;
+    /**
+     * Maximum size of a single archive in bytes.
+     */
+    private final long maxArchiveSize;
+    /**
+     * Sizes of the cached archives in access order, least recently used first.
+     */
+    private final Map<String, Long> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    /**
+     * Keys of archives which are being written. Concurrent requests for the same
+     * archive create it without caching it a second time.
+     */
+    private final Set<String> pendingWrites = new HashSet<>();
+    /**
+     * Total size of all cached archives in bytes.
+     */
+    private long currentSize;
+    /**
+     * Counts cache hits.
+     */
+    private final Counter hits;
+    /**
+     * Counts cache misses.
+     */
+    private final Counter misses;
+    /**
+     * Counts evicted archives.
+     */
+    private final Counter evictions;
+
+    /**
+     * Creates the cache from the configuration.
+     *
+     * @param enabled        whether archives should be cached
+     * @param directory      directory of the cached archives
+     * @param maxSize        maximum total size
+     * @param maxArchiveSize maximum size of a single archive
+     * @param meterRegistry  registry for the cache metrics
+     */
+    @Autowired
+    ZipArchiveCache(@Value("${material1.mops.configuration.zip.cache.enabled}") boolean enabled,
+                    @Value("${material1.mops.configuration.zip.cache.directory}") String directory,
+                    @Value("${material1.mops.configuration.zip.cache.max-size}") DataSize maxSize,
+                    @Value("${material1.mops.configuration.zip.cache.max-archive-size}") DataSize maxArchiveSize,
+                    MeterRegistry meterRegistry) {
+        this(enabled, Path.of(directory), maxSize.toBytes(), maxArchiveSize.toBytes(), meterRegistry);
+    }
+
+    /**
+     * Creates the cache. If the directory cannot be prepared, archives are not cached.
+     *
+     * @param enabled        whether archives should be cached
+     * @param directory      directory of the cached archives
+     * @param maxSize        maximum total size in bytes
+     * @param maxArchiveSize maximum size of a single archive in bytes
+     * @param meterRegistry  registry for the cache metrics
+     */
+    ZipArchiveCache(boolean enabled, Path directory, long maxSize, long maxArchiveSize,
+                    MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxArchiveSize = maxArchiveSize;
+        this.enabled = enabled && prepareDirectory();
+        this.hits = Counter.builder(METRIC_PREFIX + "hits")
+                .description("Zip archives served from the local cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder(METRIC_PREFIX + "misses")
+                .description("Zip archives which had to be created")
+                .register(meterRegistry);
+        this.evictions = Counter.builder(METRIC_PREFIX + "evictions")
+                .description("Zip archives evicted from the local cache")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "size", this, ZipArchiveCache::getCurrentSize)
+                .description("Total size of the cached zip archives")
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a cached archive.
+     *
+     * @param key archive key
+     * @return channel on the archive (must be closed by caller) or null if it is not cached
+     */
+    @SuppressWarnings("PMD.CloseResource") // channel is closed by caller
+    synchronized FileChannel open(String key) {
+        if (!enabled) {
+            return null;
+        }
+        // get instead of containsKey to mark the entry as recently used
+        if (entries.get(key) == null) {
+            misses.increment();
+            return null;
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(getPath(key), StandardOpenOption.READ);
+            hits.increment();
+            return channel;
+        } catch (IOException e) {
+            log.warn("Failed to open cached zip archive {}:", key, e);
+            remove(key);
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Wraps the stream an archive is written to. Everything written is copied into the
+     * cache and added to it once the archive was marked as complete and the stream is closed.
+     *
+     * @param key    archive key
+     * @param target stream the archive is written to (will not be closed)
+     * @return stream which writes to the target and the cache
+     */
+    @SuppressWarnings("PMD.CloseResource") // stream is closed by caller
+    CachingOutputStream cacheThrough(String key, OutputStream target) {
+        OutputStream cacheStream = null;
+        Path tempFile = null;
+        synchronized (this) {
+            if (enabled && !entries.containsKey(key) && pendingWrites.add(key)) {
+                try {
+                    tempFile = Files.createTempFile(directory, "zip-", ".tmp");
+                    cacheStream = Files.newOutputStream(tempFile);
+                } catch (IOException e) {
+                    log.warn("Failed to create cache file for zip archive {}:", key, e);
+                    discard(key, tempFile);
+                }
+            }
+        }
+        return new CachingOutputStream(target, key, tempFile, cacheStream);
+    }
+
+    /**
+     * Gets the total size of all cached archives.
+     *
+     * @return size in bytes
+     */
+    synchronized long getCurrentSize() {
+        return currentSize;
+    }
+
+    /**
+     * Moves a completely written archive into the cache and evicts old archives if the cache got too large.
+     *
+     * @param key      archive key
+     * @param tempFile written archive
+     * @param size     archive size in bytes
+     */
+    private synchronized void commit(String key, Path tempFile, long size) {
+        pendingWrites.remove(key);
+        try {
+            Files.move(tempFile, getPath(key), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Failed to add zip archive {} to the cache:", key, e);
+            deleteQuietly(tempFile);
+            return;
+        }
+
+        entries.put(key, size);
+        currentSize += size;
+        evict();
+    }
+
+    /**
+     * Discards an incomplete archive.
+     *
+     * @param key      archive key
+     * @param tempFile written archive (may be null)
+     */
+    private synchronized void discard(String key, Path tempFile) {
+        pendingWrites.remove(key);
+        deleteQuietly(tempFile);
+    }
+
+    /**
+     * Evicts the least recently used archives until the cache fits its size limit.
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (currentSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            currentSize -= eldest.getValue();
+            deleteQuietly(getPath(eldest.getKey()));
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Removes a cached archive.
+     *
+     * @param key archive key
+     */
+    private void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            currentSize -= size;
+            deleteQuietly(getPath(key));
+        }
+    }
+
+    /**
+     * Creates the cache directory and removes left overs of previous runs.
+     *
+     * @return if the directory can be used
+     */
+    private boolean prepareDirectory() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(Files::isRegularFile).forEach(this::deleteQuietly);
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to prepare zip cache directory '{}', archives are not cached:", directory, e);
+            return false;
+        }
+    }
+
+    /**
+     * Gets the path of a cached archive.
+     *
+     * @param key archive key
+     * @return path in the cache directory
+     */
+    private Path getPath(String key) {
+        return directory.resolve(key + ".zip");
+    }
+
+    /**
+     * Deletes a file and only logs errors.
+     *
+     * @param path file to delete (may be null)
+     */
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete zip cache file '{}':", path, e);
+        }
+    }
+
+    /**
+     * Copies everything that is written into a cache file.
+     */
+    @SuppressWarnings({ "PMD.BeanMembersShouldSerialize", "PMD.NullAssignment" }) // null marks an abandoned write
+    final class CachingOutputStream extends FilterOutputStream {
+
+        /**
+         * Archive key.
+         */
+        private final String key;
+        /**
+         * Cache file.
+         */
+        private final Path tempFile;
+        /**
+         * Stream to the cache file, null if the archive is not cached.
+         */
+        private OutputStream cacheStream;
+        /**
+         * Number of cached bytes.
+         */
+        private long written;
+        /**
+         * Whether the archive was written completely.
+         */
+        private boolean complete;
+
+        /**
+         * Creates the stream.
+         *
+         * @param target      stream the archive is written to
+         * @param key         archive key
+         * @param tempFile    cache file
+         * @param cacheStream stream to the cache file, null if the archive is not cached
+         */
+        private CachingOutputStream(OutputStream target, String key, Path tempFile, OutputStream cacheStream) {
+            super(target);
+            this.key = key;
+            this.tempFile = tempFile;
+            this.cacheStream = cacheStream;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            cache(new byte[]{ (byte) value }, 0, 1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            cache(buffer, offset, length);
+        }
+
+        /**
+         * Marks the archive as completely written, so it is cached once the stream is closed.
+         */
+        void complete() {
+            complete = true;
+        }
+
+        /**
+         * Flushes the target without closing it and commits or discards the cache file.
+         *
+         * @throws IOException if the target cannot be flushed
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                out.flush();
+            } finally {
+                finish();
+            }
+        }
+
+        /**
+         * Writes bytes to the cache file.
+         *
+         * @param buffer bytes
+         * @param offset offset in buffer
+         * @param length number of bytes
+         */
+        private void cache(byte[] buffer, int offset, int length) {
+            if (cacheStream == null) {
+                return;
+            }
+            if (written + length > maxArchiveSize) {
+                abandon();
+                return;
+            }
+            try {
+                cacheStream.write(buffer, offset, length);
+                written += length;
+            } catch (IOException e) {
+                log.warn("Failed to write cache file for zip archive {}:", key, e);
+                abandon();
+            }
+        }
+
+        /**
+         * Commits or discards the cache file.
+         */
+        private void finish() {
+            if (cacheStream == null) {
+                return;
+            }
+            try {
+                cacheStream.close();
+            } catch (IOException e) {
+                log.warn("Failed to close cache file for zip archive {}:", key, e);
+                complete = false;
+            }
+            cacheStream = null;
+            if (complete) {
+                commit(key, tempFile, written);
+            } else {
+                discard(key, tempFile);
+            }
+        }
+
+        /**
+         * Stops caching and discards what was cached so far.
+         */
+        private void abandon() {
+            if (cacheStream == null) {
+                return;
+            }
+            try {
+                cacheStream.close();
+            } catch (IOException e) {
+                log.debug("Failed to close abandoned cache file for zip archive {}:", key, e);
+            }
+            cacheStream = null;
+            discard(key, tempFile);
+        }
+    }
+}
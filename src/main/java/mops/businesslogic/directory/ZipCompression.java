@@ -0,0 +1,112 @@
+package mops.businesslogic.directory;
+
+import mops.businesslogic.file.ContentCompression;
+import mops.persistence.file.FileInfo;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Chooses how the entries of a zip are compressed. Files in formats which are
+ * already compressed are not deflated again, which saves most of the CPU time
+ * for folders with images, videos or documents.
+ */
+final class ZipCompression {
+
+    /**
+     * Content types of formats which are already compressed.
+     */
+    private static final List<String> COMPRESSED_TYPES = List.of(
+            "image/jpeg",
+            "image/png",
+            "image/gif",
+            "image/webp",
+            "image/heic",
+            "audio/",
+            "video/",
+            "application/pdf",
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/vnd.rar",
+            "application/java-archive",
+            "application/epub+zip",
+            "application/vnd.openxmlformats-officedocument.",
+            "application/vnd.oasis.opendocument."
+    );
+    /**
+     * File extensions of formats which are already compressed.
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "m4a", "ogg", "opus", "flac", "aac",
+            "mp4", "m4v", "mkv", "webm", "mov", "avi",
+            "pdf", "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "jar", "epub",
+            "docx", "xlsx", "pptx", "odt", "ods", "odp"
+    );
+
+    private ZipCompression() {
+    }
+
+    /**
+     * Checks whether a file should be deflated. Known formats are decided by their type or
+     * extension, for other files a sample of the content is compressed if it is available.
+     *
+     * @param fileInfo meta data of the file
+     * @param content  content of the file, null if it is streamed
+     * @return if the entry should be deflated
+     */
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    static boolean shouldCompress(FileInfo fileInfo, byte[] content) {
+        boolean compress;
+        if (isCompressedFormat(fileInfo.getType(), fileInfo.getName())) {
+            compress = false;
+        } else if (ContentCompression.isCompressibleType(fileInfo.getType())) {
+            compress = true;
+        } else {
+            compress = content == null || ContentCompression.isCompressible(content);
+        }
+        return compress;
+    }
+
+    /**
+     * Checks whether a file is in a format which is already compressed.
+     *
+     * @param type content type
+     * @param name file name
+     * @return if deflating the file would hardly shrink it
+     */
+    static boolean isCompressedFormat(String type, String name) {
+        String lowerType = type.toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        String extension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return COMPRESSED_TYPES.stream().anyMatch(lowerType::startsWith)
+                || COMPRESSED_EXTENSIONS.contains(extension);
+    }
+
+    /**
+     * Creates an entry which is stored without compression. Its size and checksum
+     * have to be known before the content is written.
+     *
+     * @param path    path of the entry
+     * @param content content of the entry
+     * @return stored entry
+     */
+    static ZipEntry storedEntry(String path, byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ZipEntry entry = new ZipEntry(path);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+}
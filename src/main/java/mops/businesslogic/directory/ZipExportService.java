@@ -0,0 +1,51 @@
+package mops.businesslogic.directory;
+
+import mops.businesslogic.security.Account;
+import mops.exception.MopsException;
+import mops.persistence.export.ZipExport;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+
+/**
+ * Zips directories in the background, so that large folders can be downloaded later
+ * instead of keeping a request open while the archive is written.
+ */
+@Service
+public interface ZipExportService {
+
+    /**
+     * Starts the export of a directory. If the user already waits for an export of the
+     * same directory, that export is returned instead of starting another one.
+     *
+     * @param account user credentials
+     * @param dirId   id of the directory to be zipped
+     * @return queued or running export
+     */
+    ZipExport submitExport(Account account, long dirId) throws MopsException;
+
+    /**
+     * Gets the state of an export.
+     *
+     * @param account  user credentials
+     * @param exportId export id
+     * @return export with its progress
+     */
+    ZipExport getExport(Account account, long exportId) throws MopsException;
+
+    /**
+     * Gets the archive of a finished export.
+     *
+     * @param account  user credentials
+     * @param exportId export id
+     * @return archive content (has to be closed by the caller)
+     */
+    InputStream getExportContent(Account account, long exportId) throws MopsException;
+
+    /**
+     * Removes expired archives and exports which were interrupted.
+     *
+     * @return number of removed exports
+     */
+    int removeExpiredExports() throws MopsException;
+}
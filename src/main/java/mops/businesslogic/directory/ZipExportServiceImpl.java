@@ -0,0 +1,447 @@
+package mops.businesslogic.directory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.exception.DatabaseException;
+import mops.businesslogic.exception.FileNotFoundException;
+import mops.businesslogic.exception.MopsZipsException;
+import mops.businesslogic.exception.ReadAccessPermissionException;
+import mops.businesslogic.security.Account;
+import mops.businesslogic.security.SecurityService;
+import mops.businesslogic.time.TimeService;
+import mops.exception.MopsException;
+import mops.persistence.FileRepository;
+import mops.persistence.ZipExportRepository;
+import mops.persistence.directory.Directory;
+import mops.persistence.export.ZipExport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.relational.core.conversion.DbActionExecutionException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes zip exports with a bounded pool of workers of this instance. The state of the exports
+ * is kept in the database and the archives in the file storage, so any instance can serve them.
+ */
+@Slf4j
+@Service
+public class ZipExportServiceImpl implements ZipExportService {
+
+    /**
+     * Number of progress updates per export.
+     */
+    private static final int PROGRESS_STEPS = 100;
+
+    /**
+     * Handles requests concerning directories.
+     */
+    private final DirectoryService directoryService;
+    /**
+     * Handle permission checks for roles.
+     */
+    private final SecurityService securityService;
+    /**
+     * Zips directories.
+     */
+    private final ZipService zipService;
+    /**
+     * Access to the state of the exports.
+     */
+    private final ZipExportRepository zipExportRepository;
+    /**
+     * Stores the archives.
+     */
+    private final FileRepository fileRepository;
+    /**
+     * Provides the current time.
+     */
+    private final TimeService timeService;
+    /**
+     * Workers writing the archives.
+     */
+    private final ExecutorService executor;
+    /**
+     * Time for which archives can be downloaded.
+     */
+    private final Duration ttl;
+    /**
+     * Makes looking for a pending export and queueing a new one atomic on this instance.
+     */
+    private final Object submitLock = new Object();
+
+    /**
+     * Creates the export service with its own workers.
+     *
+     * @param directoryService    handles requests concerning directories
+     * @param securityService     handle permission checks for roles
+     * @param zipService          zips directories
+     * @param zipExportRepository access to the state of the exports
+     * @param fileRepository      stores the archives
+     * @param timeService         provides the current time
+     * @param workers             number of exports written at the same time
+     * @param queueSize           number of exports waiting for a worker before new ones are rejected
+     * @param ttl                 time for which archives can be downloaded
+     */
+    @Autowired
+    // collaborators plus the configuration of the workers
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    public ZipExportServiceImpl(DirectoryService directoryService,
+                                SecurityService securityService,
+                                ZipService zipService,
+                                ZipExportRepository zipExportRepository,
+                                FileRepository fileRepository,
+                                TimeService timeService,
+                                @Value("${material1.mops.configuration.zip.export.workers}") int workers,
+                                @Value("${material1.mops.configuration.zip.export.queue-size}") int queueSize,
+                                @Value("${material1.mops.configuration.zip.export.ttl}") Duration ttl) {
+        this(directoryService, securityService, zipService, zipExportRepository, fileRepository, timeService,
+                new ThreadPoolExecutor(Math.max(1, workers), Math.max(1, workers), 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(Math.max(1, queueSize)), new ThreadFactoryBuilder()
+                        .setNameFormat("zip-export-%d")
+                        .setDaemon(true)
+                        .build()),
+                ttl);
+    }
+
+    /**
+     * Creates the export service with the given workers.
+     *
+     * @param directoryService    handles requests concerning directories
+     * @param securityService     handle permission checks for roles
+     * @param zipService          zips directories
+     * @param zipExportRepository access to the state of the exports
+     * @param fileRepository      stores the archives
+     * @param timeService         provides the current time
+     * @param executor            workers writing the archives
+     * @param ttl                 time for which archives can be downloaded
+     */
+    // collaborators plus the workers
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    ZipExportServiceImpl(DirectoryService directoryService,
+                         SecurityService securityService,
+                         ZipService zipService,
+                         ZipExportRepository zipExportRepository,
+                         FileRepository fileRepository,
+                         TimeService timeService,
+                         ExecutorService executor,
+                         Duration ttl) {
+        this.directoryService = directoryService;
+        this.securityService = securityService;
+        this.zipService = zipService;
+        this.zipExportRepository = zipExportRepository;
+        this.fileRepository = fileRepository;
+        this.timeService = timeService;
+        this.executor = executor;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Stops the workers when the application shuts down, unfinished exports fail.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public ZipExport submitExport(Account account, long dirId) throws MopsException {
+        Directory directory = directoryService.getDirectory(dirId);
+        securityService.checkReadPermission(account, directory);
+
+        ZipExport export;
+        synchronized (submitLock) {
+            Instant now = timeService.getInstantNow();
+            Optional<ZipExport> pending = findPending(account, dirId, now);
+            if (pending.isPresent()) {
+                export = pending.get();
+                log.debug("User {} already waits for export {}.", account.getName(), export.getId());
+            } else {
+                export = queueExport(account, dirId, directory.getName(), now);
+            }
+        }
+        return export;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public ZipExport getExport(Account account, long exportId) throws MopsException {
+        ZipExport export = loadExport(exportId);
+        if (!export.getOwner().equals(account.getName())) {
+            log.error("User {} tried to access the export {} of another user.", account.getName(), exportId);
+            throw new ReadAccessPermissionException("Keine Leseberechtigung");
+        }
+        return export;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getExportContent(Account account, long exportId) throws MopsException {
+        ZipExport export = getExport(account, exportId);
+        if (!export.isDownloadable(timeService.getInstantNow())) {
+            log.error("User {} tried to download export {} with status {}.",
+                    account.getName(),
+                    exportId,
+                    export.getStatus()
+            );
+            throw new FileNotFoundException("Der Export ist nicht verfügbar.");
+        }
+        return fileRepository.getExportContent(exportId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    public int removeExpiredExports() throws MopsException {
+        Instant now = timeService.getInstantNow();
+        List<ZipExport> exports;
+        try {
+            int interrupted = zipExportRepository.failStale(Timestamp.from(now.minus(ttl)), Timestamp.from(now));
+            log.info("{} interrupted exports were found.", interrupted);
+            exports = zipExportRepository.findAllExpiredBefore(Timestamp.from(now));
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to retrieve expired exports:", e);
+            throw new DatabaseException("Abgelaufene Exporte konnten nicht geladen werden!", e);
+        }
+
+        int removed = 0;
+        for (ZipExport export : exports) {
+            try {
+                fileRepository.deleteExport(export.getId());
+                zipExportRepository.deleteById(export.getId());
+                removed++;
+            } catch (MopsException | DataAccessException | DbActionExecutionException e) {
+                log.error("Failed to remove expired export {}:", export.getId(), e);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Saves a new export and hands it to the workers.
+     *
+     * @param account user who requests the export
+     * @param dirId   id of the directory to be zipped
+     * @param name    name of the directory
+     * @param now     current time
+     * @return queued export
+     * @throws MopsException if the export could not be saved or all workers are busy
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private ZipExport queueExport(Account account, long dirId, String name, Instant now) throws MopsException {
+        ZipExport export = saveExport(ZipExport.of(dirId, name, account.getName()));
+        long exportId = export.getId();
+        try {
+            executor.execute(() -> runExport(account, exportId));
+        } catch (RejectedExecutionException e) {
+            log.error("Export of directory {} requested by user {} was rejected:", dirId, account.getName(), e);
+            export.fail(now.plus(ttl));
+            saveExport(export);
+            throw new MopsZipsException("Es werden gerade zu viele Ordner exportiert. "
+                    + "Bitte später erneut versuchen.", e);
+        }
+        return export;
+    }
+
+    /**
+     * Writes the archive of an export and stores it. The export fails if anything goes wrong.
+     *
+     * @param account  user who requested the export
+     * @param exportId export id
+     */
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    private void runExport(Account account, long exportId) {
+        ZipExport export;
+        try {
+            export = loadExport(exportId);
+            export.start();
+            export = saveExport(export);
+        } catch (MopsException e) {
+            log.error("Failed to start export {}:", exportId, e);
+            return;
+        }
+
+        boolean completed = false;
+        Path archive = null;
+        try {
+            archive = Files.createTempFile("material1-export-", ".zip");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(archive))) {
+                zipService.zipDirectory(account, export.getDirectoryId(), out, new ProgressRecorder(export));
+            }
+            long size = Files.size(archive);
+            try (InputStream in = Files.newInputStream(archive)) {
+                fileRepository.saveExport(exportId, in, size);
+            }
+            export.complete(size, timeService.getInstantNow().plus(ttl));
+            saveExport(export);
+            completed = true;
+            log.info("Export {} of directory {} finished with {} bytes.", exportId, export.getDirectoryId(), size);
+        } catch (MopsException | IOException e) {
+            log.error("Failed to write export {} of directory {}:", exportId, export.getDirectoryId(), e);
+        } finally {
+            if (!completed) {
+                failQuietly(export);
+            }
+            deleteQuietly(archive);
+        }
+    }
+
+    /**
+     * Looks for an export of a directory the user already waits for.
+     *
+     * @param account user credentials
+     * @param dirId   directory id
+     * @param now     current time
+     * @return pending export with recent progress
+     * @throws DatabaseException on error
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private Optional<ZipExport> findPending(Account account, long dirId, Instant now) throws DatabaseException {
+        try {
+            return zipExportRepository.findPending(dirId, account.getName(), Timestamp.from(now.minus(ttl)));
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to look for pending exports of directory {}:", dirId, e);
+            throw new DatabaseException("Export konnte nicht gestartet werden!", e);
+        }
+    }
+
+    /**
+     * Loads an export.
+     *
+     * @param exportId export id
+     * @return export
+     * @throws DatabaseException if it does not exist
+     */
+    private ZipExport loadExport(long exportId) throws DatabaseException {
+        try {
+            return zipExportRepository.findById(exportId).orElseThrow();
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException
+                | NoSuchElementException e) {
+            log.error("Failed to retrieve export with id {} from the database:", exportId, e);
+            throw new DatabaseException("Der Export wurde nicht gefunden!", e);
+        }
+    }
+
+    /**
+     * Saves the state of an export.
+     *
+     * @param export export
+     * @return saved export
+     * @throws DatabaseException on error
+     */
+    private ZipExport saveExport(ZipExport export) throws DatabaseException {
+        try {
+            return zipExportRepository.save(export);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to save export of directory {}:", export.getDirectoryId(), e);
+            throw new DatabaseException("Export konnte nicht gespeichert werden!", e);
+        }
+    }
+
+    /**
+     * Marks an export as failed and only logs errors.
+     *
+     * @param export export
+     */
+    private void failQuietly(ZipExport export) {
+        export.fail(timeService.getInstantNow().plus(ttl));
+        try {
+            saveExport(export);
+        } catch (DatabaseException e) {
+            log.warn("Failed to mark export {} as failed:", export.getId(), e);
+        }
+    }
+
+    /**
+     * Deletes a temporary file and only logs errors.
+     *
+     * @param path file to delete (may be null)
+     */
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete temporary file '{}':", path, e);
+        }
+    }
+
+    /**
+     * Records the progress of an export in steps of about one percent, so that large
+     * folders don't cause an update per file.
+     */
+    private class ProgressRecorder implements ZipProgressListener {
+
+        /**
+         * Export whose progress is recorded.
+         */
+        private final ZipExport export;
+        /**
+         * Number of written files at the last update.
+         */
+        private int recordedFiles = -1;
+
+        /**
+         * Records the progress of an export.
+         *
+         * @param export export whose progress is recorded
+         */
+        ProgressRecorder(ZipExport export) {
+            this.export = export;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void progress(int writtenFiles, int totalFiles) {
+            int step = Math.max(1, totalFiles / PROGRESS_STEPS);
+            export.setWrittenFiles(writtenFiles);
+            export.setTotalFiles(totalFiles);
+            if (recordedFiles >= 0 && writtenFiles < totalFiles && writtenFiles - recordedFiles < step) {
+                return;
+            }
+            recordedFiles = writtenFiles;
+            try {
+                zipExportRepository.updateProgress(export.getId(), writtenFiles, totalFiles,
+                        Timestamp.from(timeService.getInstantNow()));
+            } catch (DataAccessException e) {
+                // the progress is informational only, so the export goes on
+                log.warn("Failed to record progress of export {}:", export.getId(), e);
+            }
+        }
+    }
+}
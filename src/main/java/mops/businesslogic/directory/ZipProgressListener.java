@@ -0,0 +1,16 @@
+package mops.businesslogic.directory;
+
+/**
+ * Receives the progress of a zip.
+ */
+@FunctionalInterface
+public interface ZipProgressListener {
+
+    /**
+     * Called once the files of the zip are known and after every written file.
+     *
+     * @param writtenFiles number of files already written
+     * @param totalFiles   number of files in the zip
+     */
+    void progress(int writtenFiles, int totalFiles);
+}
@@ -0,0 +1,174 @@
+package mops.businesslogic.directory;
+
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.file.FileContainer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads the content of the next files of a zip while the current one is written.
+ * At most a fixed number of files and bytes are read ahead, larger files are
+ * streamed when it is their turn. The files are always written in their given order.
+ */
+@Slf4j
+final class ZipReadAhead implements AutoCloseable {
+
+    /**
+     * Threads reading the content.
+     */
+    private final ExecutorService executor;
+    /**
+     * Files of the zip in the order they are written.
+     */
+    private final List<FileContainer> files;
+    /**
+     * Maximum number of files read ahead.
+     */
+    private final int maxFiles;
+    /**
+     * Larger files are not read ahead.
+     */
+    private final long maxFileSize;
+    /**
+     * Number of bytes which may still be read ahead.
+     */
+    private final Semaphore bytes;
+    /**
+     * Content read ahead by the index of its file.
+     */
+    private final Map<Integer, Future<byte[]>> pending = new HashMap<>();
+    /**
+     * Index of the next file which may be read ahead.
+     */
+    private int next;
+
+    /**
+     * Creates a read ahead stage for the files of one zip.
+     *
+     * @param executor threads reading the content
+     * @param files    files in the order they are written
+     * @param maxFiles maximum number of files read ahead, 0 to read every file when it is written
+     * @param maxBytes maximum number of bytes read ahead
+     */
+    ZipReadAhead(ExecutorService executor, List<FileContainer> files, int maxFiles, int maxBytes) {
+        this.executor = executor;
+        this.files = files;
+        this.maxFiles = maxFiles;
+        this.maxFileSize = maxFiles == 0 ? 0 : maxBytes / maxFiles;
+        this.bytes = new Semaphore(maxBytes);
+    }
+
+    /**
+     * Gets the content of a file if it was read ahead. Files have to be fetched in their order.
+     *
+     * @param index index of the file
+     * @return the whole content or null if the file has to be streamed
+     * @throws IOException if the content could not be read
+     */
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    byte[] fetch(int index) throws IOException {
+        readAhead();
+        Future<byte[]> pendingContent = pending.remove(index);
+        byte[] content = null;
+        if (pendingContent == null) {
+            next = Math.max(next, index + 1);
+        } else {
+            content = await(pendingContent);
+            bytes.release((int) files.get(index).getSize());
+        }
+        return content;
+    }
+
+    /**
+     * Streams the content of a file which was not read ahead.
+     *
+     * @param index        index of the file
+     * @param outputStream target stream (will not be closed)
+     * @throws IOException on error
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    void stream(int index, OutputStream outputStream) throws IOException {
+        files.get(index).writeContent(outputStream);
+    }
+
+    /**
+     * Starts reading the next files as long as the limits allow it.
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void readAhead() {
+        boolean admitted = true;
+        while (admitted && next < files.size() && pending.size() < maxFiles) {
+            FileContainer file = files.get(next);
+            if (file.getSize() > maxFileSize) {
+                // streamed directly when it is its turn
+                next++;
+            } else if (bytes.tryAcquire((int) file.getSize())) {
+                pending.put(next, executor.submit(() -> read(file)));
+                next++;
+            } else {
+                admitted = false;
+            }
+        }
+    }
+
+    /**
+     * Waits for content read ahead.
+     *
+     * @param content content being read
+     * @return the content
+     * @throws IOException if the content could not be read
+     */
+    @SuppressWarnings("PMD.PreserveStackTrace") // the cause is unwrapped
+    private static byte[] await(Future<byte[]> content) throws IOException {
+        try {
+            return content.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Das Lesen der Datei wurde unterbrochen.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException("Die Datei konnte nicht gelesen werden.", cause);
+        }
+    }
+
+    /**
+     * Reads the whole content of a file.
+     *
+     * @param file file to read
+     * @return its content
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private static byte[] read(FileContainer file) {
+        try (InputStream content = file.getContent().getInputStream()) {
+            return content.readNBytes((int) file.getSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Cancels all content which is still read ahead.
+     */
+    @Override
+    public void close() {
+        pending.values().forEach(content -> content.cancel(true));
+        if (!pending.isEmpty()) {
+            log.debug("Cancelled reading {} files of an aborted zip.", pending.size());
+        }
+        pending.clear();
+    }
+}
@@ -17,8 +17,30 @@ public interface ZipService {
      *
      * @param account      user credentials
      * @param dirId        id of the directory to be zipped
-     * @param outputStream output stream to write the zipped contents to
+     * @param outputStream output stream to write the zipped contents to (will not be closed)
      */
-    void zipDirectory(Account account, long dirId, OutputStream outputStream) throws MopsException;
+    default void zipDirectory(Account account, long dirId, OutputStream outputStream) throws MopsException {
+        zipDirectory(account, dirId, outputStream, (writtenFiles, totalFiles) -> {
+        });
+    }
+
+    /**
+     * Zips a directory and all its contents and reports the progress after each file.
+     *
+     * @param account      user credentials
+     * @param dirId        id of the directory to be zipped
+     * @param outputStream output stream to write the zipped contents to (will not be closed)
+     * @param listener     receives the number of written and total files
+     */
+    void zipDirectory(Account account, long dirId, OutputStream outputStream, ZipProgressListener listener)
+            throws MopsException;
+
+    /**
+     * Zips a tree which was resolved before, e.g. a selection of files.
+     *
+     * @param tree         readable tree, its top folder is the top folder of the zip
+     * @param outputStream output stream to write the zipped contents to (will not be closed)
+     */
+    void zipTree(DirectoryTree tree, OutputStream outputStream) throws MopsException;
 
 }
@@ -1,6 +1,8 @@
 package mops.businesslogic.directory;
 
-import lombok.AllArgsConstructor;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import mops.businesslogic.exception.FileNotFoundException;
 import mops.businesslogic.exception.MopsZipsException;
@@ -9,13 +11,25 @@ import mops.businesslogic.file.FileListEntry;
 import mops.businesslogic.file.FileService;
 import mops.businesslogic.security.Account;
 import mops.exception.MopsException;
-import mops.persistence.directory.Directory;
 import mops.persistence.file.FileInfo;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PreDestroy;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -24,94 +38,294 @@ import java.util.zip.ZipOutputStream;
  */
 @Slf4j
 @Service
-@AllArgsConstructor
 public class ZipServiceImpl implements ZipService {
 
     /**
-     * Handles requests concerning directories.
+     * Resolves the readable directory tree.
      */
-    private final DirectoryService directoryService;
+    private final DirectoryTreeService directoryTreeService;
     /**
      * Handles file requests.
      */
     private final FileService fileService;
+    /**
+     * Threads reading file content ahead of time, shared by all zips.
+     */
+    private final ExecutorService executor;
+    /**
+     * Maximum number of files read ahead per zip.
+     */
+    private final int prefetchConcurrency;
+    /**
+     * Maximum number of bytes read ahead per zip.
+     */
+    private final int prefetchBufferSize;
+    /**
+     * Deflate level of compressible entries.
+     */
+    private final int compressionLevel;
+    /**
+     * Archives created before.
+     */
+    private final ZipArchiveCache archiveCache;
+
+    /**
+     * Creates the zip service.
+     *
+     * @param directoryTreeService resolves the readable directory tree
+     * @param fileService          handles file requests
+     * @param archiveCache         archives created before
+     * @param prefetchConcurrency  maximum number of files read ahead per zip, 0 to disable reading ahead
+     * @param prefetchBufferSize   maximum number of bytes read ahead per zip
+     * @param prefetchThreads      number of threads reading ahead for all zips together
+     * @param compressionLevel     deflate level of compressible entries (1-9, -1 for the default level)
+     */
+    public ZipServiceImpl(DirectoryTreeService directoryTreeService,
+                          FileService fileService,
+                          ZipArchiveCache archiveCache,
+                          @Value("${material1.mops.configuration.zip.prefetch-concurrency}") int prefetchConcurrency,
+                          @Value("${material1.mops.configuration.zip.prefetch-buffer-size}")
+                                  DataSize prefetchBufferSize,
+                          @Value("${material1.mops.configuration.zip.prefetch-threads}") int prefetchThreads,
+                          @Value("${material1.mops.configuration.zip.compression-level}") int compressionLevel) {
+        this.directoryTreeService = directoryTreeService;
+        this.fileService = fileService;
+        this.archiveCache = archiveCache;
+        this.compressionLevel = Math.max(Deflater.DEFAULT_COMPRESSION,
+                Math.min(compressionLevel, Deflater.BEST_COMPRESSION));
+        this.prefetchConcurrency = Math.max(0, prefetchConcurrency);
+        this.prefetchBufferSize = (int) Math.min(prefetchBufferSize.toBytes(), Integer.MAX_VALUE);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, prefetchThreads), new ThreadFactoryBuilder()
+                .setNameFormat("zip-read-ahead-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Stops the threads reading ahead when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
 
     /**
      * {@inheritDoc}
      */
-    @SuppressWarnings("PMD.LawOfDemeter")
     @Override
-    public void zipDirectory(Account account, long dirId, OutputStream outputStream) throws MopsException {
-        Directory directory = directoryService.getDirectory(dirId);
-        String directoryName = directory.getName();
+    public void zipDirectory(Account account,
+                             long dirId,
+                             OutputStream outputStream,
+                             ZipProgressListener listener) throws MopsException {
+        zipTree(directoryTreeService.getReadableTree(account, dirId), outputStream, listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void zipTree(DirectoryTree tree, OutputStream outputStream) throws MopsException {
+        zipTree(tree, outputStream, (writtenFiles, totalFiles) -> {
+        });
+    }
+
+    /**
+     * Zips a readable tree, from the cache if it was zipped before.
+     *
+     * @param tree         readable tree
+     * @param outputStream target stream (will not be closed)
+     * @param listener     receives the progress after every file
+     * @throws MopsException on error
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void zipTree(DirectoryTree tree, OutputStream outputStream, ZipProgressListener listener)
+            throws MopsException {
+        String directoryName = tree.getName();
 
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
-            zipDirectory(account, directoryName, zipOutputStream, dirId);
+        List<String> entries = new ArrayList<>();
+        List<FileContainer> files = new ArrayList<>();
+        collectEntries(directoryName, tree, entries, files);
+
+        // the entries only contain what the user may see, so the key never shares an archive with other users
+        String key = archiveKey(entries, files);
+        FileChannel cachedArchive = archiveCache.open(key);
+        listener.progress(0, files.size());
+        if (cachedArchive == null) {
+            writeZip(directoryName, key, entries, files, outputStream, listener);
+        } else {
+            sendCachedArchive(directoryName, cachedArchive, outputStream);
+            listener.progress(files.size(), files.size());
+        }
+    }
+
+    /**
+     * Zips the collected entries and adds the archive to the cache once it is complete.
+     *
+     * @param directoryName name of the zipped directory
+     * @param key           cache key of the archive
+     * @param entries       paths of all entries, directories end with a slash
+     * @param files         files in the order of their entries
+     * @param outputStream  target stream (will not be closed)
+     * @param listener      receives the progress after every file
+     * @throws MopsException on error
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void writeZip(String directoryName,
+                          String key,
+                          List<String> entries,
+                          List<FileContainer> files,
+                          OutputStream outputStream,
+                          ZipProgressListener listener) throws MopsException {
+        // the given stream is left open, it belongs to the caller
+        try (ZipArchiveCache.CachingOutputStream cachingStream = archiveCache.cacheThrough(key, outputStream);
+             ZipOutputStream zipOutputStream = new ZipOutputStream(StreamUtils.nonClosing(cachingStream));
+             ZipReadAhead readAhead = new ZipReadAhead(executor, files, prefetchConcurrency, prefetchBufferSize)) {
+            int fileIndex = 0;
+            for (String entry : entries) {
+                if (entry.endsWith("/")) {
+                    zipDirectoryEntry(zipOutputStream, entry);
+                } else {
+                    zipFile(zipOutputStream, readAhead, fileIndex, files.get(fileIndex).getInfo(), entry);
+                    fileIndex++;
+                    listener.progress(fileIndex, files.size());
+                }
+            }
+            zipOutputStream.finish();
+            cachingStream.complete();
         } catch (IOException e) {
             log.error("Failed to close ZipOutputStream for '{}':", directoryName, e);
             throw new MopsZipsException("Interner Fehler beim Zippen.", e);
         }
     }
 
-    private void zipDirectory(Account account,
-                              String directoryName,
-                              ZipOutputStream zipOutputStream,
-                              long dirId) throws MopsException {
-        try {
-            zipOutputStream.putNextEntry(new ZipEntry(String.format("%s/", directoryName)));
+    /**
+     * Sends an archive from the cache.
+     *
+     * @param directoryName name of the zipped directory
+     * @param cachedArchive cached archive, will be closed
+     * @param outputStream  target stream (will not be closed)
+     * @throws MopsException on error
+     */
+    private void sendCachedArchive(String directoryName,
+                                   FileChannel cachedArchive,
+                                   OutputStream outputStream) throws MopsException {
+        try (InputStream archive = Channels.newInputStream(cachedArchive)) {
+            archive.transferTo(outputStream);
         } catch (IOException e) {
-            log.error("Failed create zip entry for directory '{}", directoryName);
-            String message = String.format("Der Ordner '%s' konnte nicht gezippt werden.", directoryName);
-            throw new MopsZipsException(message, e);
+            log.error("Failed to send cached zip for '{}':", directoryName, e);
+            throw new MopsZipsException("Interner Fehler beim Zippen.", e);
         }
+    }
 
-        List<Directory> directories = directoryService.getSubFolders(account, dirId);
-        for (Directory directory : directories) {
-            String path = String.format("%s/%s", directoryName, directory.getName());
-            zipDirectory(account, path, zipOutputStream, directory.getId());
+    /**
+     * Derives the cache key of an archive from its entries and the versions of its files.
+     * Every upload, deletion or renaming in the directory tree changes the key.
+     *
+     * @param entries paths of all entries
+     * @param files   files in the order of their entries
+     * @return SHA-256 hash as hex string
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private String archiveKey(List<String> entries, List<FileContainer> files) {
+        Hasher hasher = Hashing.sha256().newHasher().putInt(compressionLevel);
+        for (String entry : entries) {
+            hasher.putString(entry, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        for (FileContainer file : files) {
+            FileInfo fileInfo = file.getInfo();
+            String version = String.format("%s:%s:%s:%d:%d", fileInfo.getId(), fileInfo.getContentId(),
+                    fileInfo.getContentHash(), fileInfo.getSize(), fileInfo.getLastModifiedTime().toEpochMilli());
+            hasher.putString(version, StandardCharsets.UTF_8).putByte((byte) 0);
         }
+        return hasher.hash().toString();
+    }
 
-        List<FileListEntry> files = fileService.getFilesOfDirectory(account, dirId);
+    /**
+     * Collects the entries of a directory and all its contents in the order they are zipped:
+     * the directory itself, its sub folders and then its files.
+     *
+     * @param directoryName path of the directory in the zip
+     * @param tree          readable tree of the directory
+     * @param entries       paths of all entries, directories end with a slash
+     * @param files         files in the order of their entries
+     * @throws MopsException on error
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void collectEntries(String directoryName,
+                                DirectoryTree tree,
+                                List<String> entries,
+                                List<FileContainer> files) throws MopsException {
+        entries.add(String.format("%s/", directoryName));
 
-        for (FileListEntry file : files) {
-            zipFile(account, zipOutputStream, file.getFileInfo(), directoryName);
+        for (DirectoryTree subFolder : tree.getSubFolders()) {
+            String path = String.format("%s/%s", directoryName, subFolder.getName());
+            collectEntries(path, subFolder, entries, files);
         }
 
+        for (FileListEntry file : tree.getFiles()) {
+            entries.add(String.format("%s/%s", directoryName, file.getName()));
+            // the content itself is only read once it is zipped
+            files.add(fileService.getFile(file));
+        }
+    }
+
+    private void zipDirectoryEntry(ZipOutputStream zipOutputStream, String path) throws MopsException {
         try {
+            zipOutputStream.putNextEntry(new ZipEntry(path));
             zipOutputStream.closeEntry();
         } catch (IOException e) {
-            log.error("Failed to close zip entry for '{}", directoryName);
-            String message = String.format("Der Zip für '%s' konnte nicht beendet werden", directoryName);
+            log.error("Failed create zip entry for directory '{}", path);
+            String message = String.format("Der Ordner '%s' konnte nicht gezippt werden.", path);
             throw new MopsZipsException(message, e);
         }
     }
 
-    @SuppressWarnings("PMD.LawOfDemeter") //this is a stream
-    private void zipFile(Account account,
-                         ZipOutputStream zipOutputStream,
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    private void zipFile(ZipOutputStream zipOutputStream,
+                         ZipReadAhead readAhead,
+                         int fileIndex,
                          FileInfo fileInfo,
                          String path) throws MopsException {
-        String fileName = fileInfo.getName();
-        ZipEntry zipEntry = new ZipEntry(String.format("%s/%s", path, fileName));
+        byte[] content;
+        try {
+            content = readAhead.fetch(fileIndex);
+        } catch (IOException e) {
+            log.error("Failed to get file content from '{}'", path);
+            String message = String.format("Der Dateiinhalt von '%s' konnte nicht gelesen werden.", path);
+            throw new FileNotFoundException(message, e);
+        }
+
+        boolean compress = ZipCompression.shouldCompress(fileInfo, content);
+        ZipEntry zipEntry;
+        if (!compress && content != null) {
+            zipEntry = ZipCompression.storedEntry(path, content);
+        } else {
+            zipEntry = new ZipEntry(path);
+            // streamed content of compressed formats is only wrapped, which costs hardly any CPU
+            zipOutputStream.setLevel(compress ? compressionLevel : Deflater.NO_COMPRESSION);
+        }
         try {
             zipOutputStream.putNextEntry(zipEntry);
         } catch (IOException e) {
-            log.error("Failed to zip file '{}.", fileName);
-            throw new MopsZipsException(String.format("Die Datei '%s' konnte nicht gezippt werden.", fileName), e);
+            log.error("Failed to zip file '{}.", path);
+            throw new MopsZipsException(String.format("Die Datei '%s' konnte nicht gezippt werden.", path), e);
         }
-        FileContainer fileContainer = fileService.getFile(account, fileInfo.getId());
         try {
-            zipOutputStream.write(fileContainer.getContent().getInputStream().readAllBytes());
+            if (content == null) {
+                readAhead.stream(fileIndex, zipOutputStream);
+            } else {
+                zipOutputStream.write(content);
+            }
         } catch (IOException e) {
-            log.error("Failed to get file content from '{}'", fileName);
-            String message = String.format("Der Dateiinhalt von '%s' konnte nicht gelesen werden.", fileName);
+            log.error("Failed to get file content from '{}'", path);
+            String message = String.format("Der Dateiinhalt von '%s' konnte nicht gelesen werden.", path);
             throw new FileNotFoundException(message, e);
         }
         try {
             zipOutputStream.closeEntry();
         } catch (IOException e) {
-            log.error("Failed to close zip entry for '{}", fileName);
-            throw new MopsZipsException(String.format("Der Zip für '%s' konnte nicht beendet werden", fileName), e);
+            log.error("Failed to close zip entry for '{}", path);
+            throw new MopsZipsException(String.format("Der Zip für '%s' konnte nicht beendet werden", path), e);
         }
     }
 }
@@ -0,0 +1,142 @@
+package mops.businesslogic.file;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses file content at rest. Only content of a textual type whose sample
+ * actually shrinks is compressed, everything else is stored as it is.
+ */
+public final class ContentCompression {
+
+    /**
+     * Content encoding of deflated content, zlib format as used by HTTP.
+     */
+    static final String DEFLATE = "deflate";
+    /**
+     * Number of bytes at the start of the content used to check its compressibility (64 KiB).
+     */
+    static final int SAMPLE_SIZE = 64 * 1024;
+    /**
+     * Smaller content is not worth compressing.
+     */
+    private static final int MIN_SIZE = 1024;
+    /**
+     * The sample has to shrink to at most this fraction of its size.
+     */
+    private static final double MAX_RATIO = 0.9;
+    /**
+     * Size of the buffers of the compressing streams.
+     */
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Content types which are usually stored uncompressed.
+     */
+    private static final List<String> COMPRESSIBLE_TYPES = List.of(
+            "text/",
+            "application/json",
+            "application/xml",
+            "application/javascript",
+            "application/x-sh",
+            "application/x-tex",
+            "application/rtf",
+            "application/postscript",
+            "application/msword",
+            "application/vnd.ms-excel",
+            "application/vnd.ms-powerpoint",
+            "image/svg+xml",
+            "image/bmp"
+    );
+
+    private ContentCompression() {
+    }
+
+    /**
+     * Checks whether content of that type is usually compressible.
+     *
+     * @param type content type
+     * @return if the content is worth a compressibility check
+     */
+    public static boolean isCompressibleType(String type) {
+        String lowerType = type.toLowerCase(Locale.ROOT);
+        return COMPRESSIBLE_TYPES.stream().anyMatch(lowerType::startsWith)
+                || lowerType.endsWith("+xml")
+                || lowerType.endsWith("+json");
+    }
+
+    /**
+     * Checks whether the start of the content shrinks noticeably. The sample is compressed
+     * with the fastest level, so the check is cheap compared to the upload itself.
+     *
+     * @param stream content, must support mark with at least {@link #SAMPLE_SIZE} bytes
+     * @return if the content should be compressed
+     * @throws IOException if the content cannot be read
+     */
+    static boolean isCompressible(BufferedInputStream stream) throws IOException {
+        stream.mark(SAMPLE_SIZE);
+        byte[] sample = stream.readNBytes(SAMPLE_SIZE);
+        stream.reset();
+        return isCompressible(sample);
+    }
+
+    /**
+     * Checks whether the start of the content shrinks noticeably.
+     *
+     * @param content content, only the first {@link #SAMPLE_SIZE} bytes are checked
+     * @return if the content should be compressed
+     */
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    public static boolean isCompressible(byte[] content) {
+        int sampleSize = Math.min(content.length, SAMPLE_SIZE);
+        boolean compressible = false;
+        if (sampleSize >= MIN_SIZE) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(content, 0, sampleSize);
+                deflater.finish();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long compressedSize = 0;
+                while (!deflater.finished()) {
+                    compressedSize += deflater.deflate(buffer);
+                }
+                compressible = compressedSize <= sampleSize * MAX_RATIO;
+            } finally {
+                deflater.end();
+            }
+        }
+        return compressible;
+    }
+
+    /**
+     * Compresses content while it is read. Closing the returned stream releases
+     * the compressor, but leaves the given stream open.
+     *
+     * @param stream uncompressed content
+     * @return compressed content
+     */
+    static InputStream compress(InputStream stream) {
+        return new DeflaterInputStream(stream, new Deflater(Deflater.DEFAULT_COMPRESSION), BUFFER_SIZE) {
+            @Override
+            public void close() {
+                def.end();
+            }
+        };
+    }
+
+    /**
+     * Decompresses stored content while it is read.
+     *
+     * @param stream   stored content
+     * @param encoding content encoding, null if the content is stored as it is
+     * @return uncompressed content
+     */
+    static InputStream decompress(InputStream stream, String encoding) {
+        return DEFLATE.equals(encoding) ? new InflaterInputStream(stream) : stream;
+    }
+}
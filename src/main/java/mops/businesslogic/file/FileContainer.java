@@ -3,6 +3,13 @@ package mops.businesslogic.file;
 import lombok.Value;
 import mops.persistence.file.FileInfo;
 import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.time.Instant;
 
 /**
  * Wrapper of meta data and content of a file.
@@ -21,6 +28,54 @@ public class FileContainer {
      */
     Resource content;
 
+    /**
+     * Size of the buffer used to copy the content.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Copies the content to the given stream using a fixed size buffer,
+     * so that the content never has to be held in memory as a whole.
+     *
+     * @param outputStream target stream (will not be closed)
+     * @throws IOException on error
+     */
+    @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.OnlyOneReturn" })
+    public void writeContent(OutputStream outputStream) throws IOException {
+        if (content instanceof FileContentResource) {
+            ((FileContentResource) content).transferTo(Channels.newChannel(outputStream), 0, getSize());
+            return;
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream inputStream = content.getInputStream()) {
+            int read = inputStream.read(buffer);
+            while (read != -1) {
+                outputStream.write(buffer, 0, read);
+                read = inputStream.read(buffer);
+            }
+        }
+    }
+
+    /**
+     * Copies a byte range of the content to the given stream. Stored files are
+     * read from the storage starting at the offset, other resources are skipped.
+     *
+     * @param outputStream target stream (will not be closed)
+     * @param offset       position of the first byte
+     * @param length       number of bytes
+     * @throws IOException on error
+     */
+    public void writeContent(OutputStream outputStream, long offset, long length) throws IOException {
+        if (content instanceof FileContentResource) {
+            ((FileContentResource) content).transferTo(Channels.newChannel(outputStream), offset, length);
+        } else {
+            try (InputStream inputStream = content.getInputStream()) {
+                StreamUtils.copyRange(inputStream, outputStream, offset, offset + length - 1);
+            }
+        }
+    }
+
     /**
      * Gets a directory id.
      *
@@ -57,6 +112,25 @@ public class FileContainer {
         return info.getName();
     }
 
+    /**
+     * Gets the time of the last modification.
+     *
+     * @return last modification time
+     */
+    public Instant getLastModified() {
+        return info.getLastModifiedTime();
+    }
+
+    /**
+     * Gets a strong entity tag of the file. It is derived from the meta data
+     * and changes whenever the file is modified.
+     *
+     * @return quoted entity tag
+     */
+    public String getETag() {
+        return String.format("\"%s-%x-%x\"", info.getId(), getLastModified().toEpochMilli(), getSize());
+    }
+
     /**
      * Gets the file size.
      *
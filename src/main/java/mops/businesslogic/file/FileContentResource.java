@@ -0,0 +1,102 @@
+package mops.businesslogic.file;
+
+import com.google.common.io.ByteStreams;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mops.persistence.FileRepository;
+import mops.persistence.exception.StorageException;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Lazy resource for the content of a stored file.
+ * The storage is only contacted once the content is actually read, so the bytes
+ * can be copied straight to the response instead of being buffered on the heap.
+ */
+@Slf4j
+@AllArgsConstructor
+@SuppressWarnings("PMD.BeanMembersShouldSerialize")
+class FileContentResource extends AbstractResource {
+
+    /**
+     * File content repository.
+     */
+    private final FileRepository fileRepository;
+    /**
+     * File id.
+     */
+    private final long fileId;
+    /**
+     * Content length in bytes.
+     */
+    private final long size;
+    /**
+     * Encoding of the stored content, null if it is stored as it is.
+     */
+    private final String encoding;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDescription() {
+        return "stored file " + fileId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long contentLength() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        try {
+            return ContentCompression.decompress(fileRepository.getFileContent(fileId), encoding);
+        } catch (StorageException e) {
+            log.error("Failed to open content of file with id {}:", fileId, e);
+            throw new IOException("Fehler beim Zugriff auf den Inhalt der Datei.", e);
+        }
+    }
+
+    /**
+     * Writes a part of the uncompressed content to a channel.
+     *
+     * @param target channel to write to (will not be closed)
+     * @param offset position of the first byte
+     * @param length number of bytes
+     * @throws IOException on error
+     */
+    public void transferTo(WritableByteChannel target, long offset, long length) throws IOException {
+        if (encoding == null) {
+            try {
+                fileRepository.transferFileContent(fileId, offset, length, target);
+            } catch (StorageException e) {
+                throw new IOException("Fehler beim Übertragen des Inhalts der Datei.", e);
+            }
+        } else {
+            // compressed content can only be decompressed from its start
+            try (InputStream content = getInputStream()) {
+                content.skipNBytes(offset);
+                ByteStreams.copy(ByteStreams.limit(content, length), Channels.newOutputStream(target));
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package mops.businesslogic.file;
 
 import mops.exception.MopsException;
+import mops.persistence.blob.FileBlob;
 import mops.persistence.file.FileInfo;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -21,6 +24,22 @@ public interface FileInfoService {
      */
     List<FileInfo> fetchAllFilesInDirectory(long dirId) throws MopsException;
 
+    /**
+     * Lists all files in several directories with a single query.
+     *
+     * @param dirIds directory ids
+     * @return a list of files in those directories sorted by name
+     */
+    List<FileInfo> fetchAllFilesInDirectories(Collection<Long> dirIds) throws MopsException;
+
+    /**
+     * Fetches several files with a single query. Ids without a file are skipped.
+     *
+     * @param fileIds file ids
+     * @return the found files sorted by name
+     */
+    List<FileInfo> fetchFileInfos(Collection<Long> fileIds) throws MopsException;
+
     /**
      * Get a file by id.
      *
@@ -90,4 +109,74 @@ public interface FileInfoService {
      */
     long getTotalFileCount() throws MopsException;
 
+    /**
+     * Finds stored content by its hash.
+     *
+     * @param hash SHA-256 hash of the content
+     * @return the stored content if there is any
+     */
+    Optional<FileBlob> fetchContent(String hash) throws MopsException;
+
+    /**
+     * Finds the directories containing files with the given stored content.
+     *
+     * @param contentId id under which the content is stored
+     * @return ids of the directories
+     */
+    Set<Long> fetchDirectoriesWithContent(long contentId) throws MopsException;
+
+    /**
+     * Adds a reference to the content with the given hash. If no such content is
+     * stored yet, the content stored under the given id is recorded instead.
+     *
+     * @param hash      SHA-256 hash of the content
+     * @param contentId id under which the content was just stored
+     * @param size      size of the content in bytes
+     * @param encoding  encoding of the content just stored, null if it is stored as it is
+     * @return the content which is referenced from now on
+     */
+    FileBlob referenceContent(String hash, long contentId, long size, String encoding) throws MopsException;
+
+    /**
+     * Removes the reference of a file to its content.
+     *
+     * @param fileInfo file which is deleted
+     * @return true if the content is no longer used and may be deleted from the storage
+     */
+    boolean releaseContent(FileInfo fileInfo) throws MopsException;
+
+    /**
+     * Fetches the ids under which the content of all files is stored.
+     *
+     * @return all content ids in use
+     * @throws MopsException on error
+     */
+    Set<Long> fetchAllContentIds() throws MopsException;
+
+    /**
+     * Fetches all files whose content is stored under one of the given ids.
+     *
+     * @param contentIds content ids
+     * @return ids of the files
+     * @throws MopsException on error
+     */
+    Set<Long> fetchAllFileInfoIdsByContentIds(Set<Long> contentIds) throws MopsException;
+
+    /**
+     * Forgets content which no longer exists in the storage.
+     *
+     * @param contentIds content ids
+     * @throws MopsException on error
+     */
+    void deleteContent(Set<Long> contentIds) throws MopsException;
+
+    /**
+     * Deletes all files in several directories with a few statements and releases their content.
+     *
+     * @param dirIds directory ids
+     * @return content ids which are no longer used and may be deleted from the storage
+     * @throws MopsException on error
+     */
+    Set<Long> deleteAllInDirectories(Collection<Long> dirIds) throws MopsException;
+
 }
@@ -5,7 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import mops.businesslogic.exception.DatabaseDuplicationException;
 import mops.businesslogic.exception.DatabaseException;
 import mops.exception.MopsException;
+import mops.persistence.FileBlobRepository;
 import mops.persistence.FileInfoRepository;
+import mops.persistence.blob.FileBlob;
 import mops.persistence.file.FileInfo;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DuplicateKeyException;
@@ -13,8 +15,11 @@ import org.springframework.data.relational.core.conversion.DbActionExecutionExce
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -29,6 +34,10 @@ public class FileInfoServiceImpl implements FileInfoService {
      * Access to the FileInfo database.
      */
     private final FileInfoRepository fileInfoRepo;
+    /**
+     * Access to the stored content and its references.
+     */
+    private final FileBlobRepository fileBlobRepo;
 
     /**
      * {@inheritDoc}
@@ -45,6 +54,42 @@ public class FileInfoServiceImpl implements FileInfoService {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<FileInfo> fetchAllFilesInDirectories(Collection<Long> dirIds) throws MopsException {
+        try {
+            List<FileInfo> fileInfos = new ArrayList<>();
+            if (!dirIds.isEmpty()) {
+                fileInfos.addAll(fileInfoRepo.findAllInDirectories(dirIds));
+            }
+            fileInfos.sort(FileInfo.NAME_COMPARATOR);
+            return fileInfos;
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to retrieve all files in directories with ids {} from the database:", dirIds, e);
+            throw new DatabaseException("Es konnten nicht alle Dateien in den Verzeichnissen gefunden werden!", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<FileInfo> fetchFileInfos(Collection<Long> fileIds) throws MopsException {
+        try {
+            List<FileInfo> fileInfos = new ArrayList<>();
+            if (!fileIds.isEmpty()) {
+                fileInfoRepo.findAllById(fileIds).forEach(fileInfos::add);
+            }
+            fileInfos.sort(FileInfo.NAME_COMPARATOR);
+            return fileInfos;
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to retrieve files with ids {} from the database:", fileIds, e);
+            throw new DatabaseException("Die Datei-Informationen konnten nicht gefunden werden!", e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -174,4 +219,174 @@ public class FileInfoServiceImpl implements FileInfoService {
             throw new MopsException("Verwaiste IDs konnten nicht gefunden werden.", e);
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<FileBlob> fetchContent(String hash) throws MopsException {
+        try {
+            return fileBlobRepo.findByHash(hash);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to find content with hash {}:", hash, e);
+            throw new DatabaseException("Der Inhalt konnte nicht gefunden werden!", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Long> fetchDirectoriesWithContent(long contentId) throws MopsException {
+        try {
+            return fileInfoRepo.findDirectoryIdsByContentId(contentId);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to find directories with content {}:", contentId, e);
+            throw new DatabaseException("Die Ordner des Inhalts konnten nicht gefunden werden!", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    public FileBlob referenceContent(String hash, long contentId, long size, String encoding) throws MopsException {
+        try {
+            Optional<FileBlob> blob = fileBlobRepo.findByHash(hash);
+            FileBlob referenced;
+            // the content may have lost its last reference in the meantime
+            if (blob.isPresent() && fileBlobRepo.addReference(blob.get().getContentId()) > 0) {
+                referenced = blob.get();
+            } else {
+                referenced = insertContent(hash, contentId, size, encoding);
+            }
+            return referenced;
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to reference content with hash {}:", hash, e);
+            throw new DatabaseException("Der Inhalt konnte nicht gespeichert werden!", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    public boolean releaseContent(FileInfo fileInfo) throws MopsException {
+        // files stored before content deduplication are the only users of their content
+        boolean unused = true;
+        if (fileInfo.getContentHash() != null) {
+            long contentId = fileInfo.getContentId();
+            try {
+                fileBlobRepo.removeReference(contentId);
+                unused = fileBlobRepo.deleteUnreferenced(contentId) > 0;
+            } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+                log.error("Failed to release content with id {}:", contentId, e);
+                throw new DatabaseException("Der Inhalt konnte nicht freigegeben werden!", e);
+            }
+        }
+        return unused;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Long> fetchAllContentIds() throws MopsException {
+        try {
+            return fileInfoRepo.findAllContentIds();
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to get all content ids:", e);
+            throw new MopsException("IDs konnten nicht gefunden werden.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    public Set<Long> fetchAllFileInfoIdsByContentIds(Set<Long> contentIds) throws MopsException {
+        // an empty IN list is no valid SQL
+        Set<Long> fileIds = Set.of();
+        if (!contentIds.isEmpty()) {
+            try {
+                fileIds = fileInfoRepo.findAllIdsByContentIds(contentIds);
+            } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+                log.error("Failed to find files by their content ids:", e);
+                throw new MopsException("IDs konnten nicht gefunden werden.", e);
+            }
+        }
+        return fileIds;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteContent(Set<Long> contentIds) throws MopsException {
+        if (!contentIds.isEmpty()) {
+            try {
+                fileBlobRepo.deleteAllByContentIds(contentIds);
+            } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+                log.error("Failed to delete content records:", e);
+                throw new DatabaseException("Inhalte konnten nicht gelöscht werden!", e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The references are released before the files are deleted, because they are counted from the files.
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public Set<Long> deleteAllInDirectories(Collection<Long> dirIds) throws MopsException {
+        Set<Long> unusedContentIds = new HashSet<>();
+        // an empty IN list is no valid SQL
+        if (!dirIds.isEmpty()) {
+            try {
+                unusedContentIds.addAll(fileInfoRepo.findUnsharedContentIdsInDirectories(dirIds));
+                fileBlobRepo.removeReferencesInDirectories(dirIds);
+                Set<Long> unreferenced = fileBlobRepo.findUnreferencedInDirectories(dirIds);
+                if (!unreferenced.isEmpty()) {
+                    fileBlobRepo.deleteAllByContentIds(unreferenced);
+                    unusedContentIds.addAll(unreferenced);
+                }
+                fileInfoRepo.deleteTagsInDirectories(dirIds);
+                int deleted = fileInfoRepo.deleteAllInDirectories(dirIds);
+                log.debug("Deleted {} files in {} directories.", deleted, dirIds.size());
+            } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+                log.error("Failed to delete the files in the directories {}:", dirIds, e);
+                throw new DatabaseException("Die Dateien konnten nicht gelöscht werden!", e);
+            }
+        }
+        return unusedContentIds;
+    }
+
+    /**
+     * Records newly stored content. If the same content was recorded by a concurrent upload in the
+     * meantime, a reference to that content is added instead.
+     *
+     * @param hash      SHA-256 hash of the content
+     * @param contentId id under which the content was stored
+     * @param size      size in bytes
+     * @param encoding  encoding of the stored content, null if it is stored as it is
+     * @return the referenced content
+     */
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    private FileBlob insertContent(String hash, long contentId, long size, String encoding) {
+        FileBlob referenced;
+        try {
+            fileBlobRepo.insert(contentId, hash, size, encoding);
+            referenced = new FileBlob(contentId, hash, size, 1L, encoding);
+        } catch (DuplicateKeyException e) {
+            log.debug("Content with hash {} was recorded concurrently, referencing it instead.", hash);
+            referenced = fileBlobRepo.findByHash(hash)
+                    .filter(blob -> fileBlobRepo.addReference(blob.getContentId()) > 0)
+                    .orElseThrow(() -> e);
+        }
+        return referenced;
+    }
 }
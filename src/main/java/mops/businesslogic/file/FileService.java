@@ -7,6 +7,7 @@ import mops.persistence.file.FileInfo;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Set;
 
@@ -28,7 +29,41 @@ public interface FileService {
     void saveFile(Account account, long dirId, MultipartFile multipartFile, Set<String> tags) throws MopsException;
 
     /**
-     * Gets a file.
+     * Saves a file from a stream. The content is passed on to the storage while it is read,
+     * so it is never held in memory or spooled to disk.
+     *
+     * @param account user credentials
+     * @param dirId   directory id of the future parent folder
+     * @param name    file name
+     * @param type    content type (may be null)
+     * @param size    size in bytes or -1 if it is unknown
+     * @param content content stream (will not be closed)
+     * @param tags    the file tag
+     */
+    void saveFile(Account account, long dirId, String name, String type, long size, InputStream content,
+                  Set<String> tags) throws MopsException;
+
+    /**
+     * Saves a file whose content is already stored, so that it does not have to be transferred again.
+     * Only content the user can already read in one of their folders may be used.
+     *
+     * @param account user credentials
+     * @param dirId   directory id of the future parent folder
+     * @param name    file name
+     * @param type    content type (may be null)
+     * @param hash    SHA-256 hash of the content as hex string
+     * @param size    size in bytes
+     * @param tags    the file tag
+     * @return the saved file
+     * @throws mops.businesslogic.exception.FileNotFoundException if no content with that hash and size is stored
+     *                                                            which the user can read
+     */
+    FileInfo saveFileByHash(Account account, long dirId, String name, String type, String hash, long size,
+                            Set<String> tags) throws MopsException;
+
+    /**
+     * Gets a file. Permissions are checked immediately, the content is only
+     * read from the storage once it is consumed.
      *
      * @param account user credentials
      * @param fileId  file id of needed file
@@ -36,6 +71,16 @@ public interface FileService {
      */
     FileContainer getFile(Account account, long fileId) throws MopsException;
 
+    /**
+     * Gets a file of a listing whose permissions were already resolved, without
+     * fetching its meta data again. The content is only read once it is consumed.
+     *
+     * @param fileListEntry listed file
+     * @return file
+     * @throws MopsException if the listed file may not be read
+     */
+    FileContainer getFile(FileListEntry fileListEntry) throws MopsException;
+
     /**
      * Deletes a file.
      *
@@ -83,6 +128,15 @@ public interface FileService {
      */
     void deleteFileWithoutMeta(long fileId) throws MopsException;
 
+    /**
+     * INTERNAL USE ONLY.
+     * Deletes staged content of uploads which were interrupted before their meta data was saved.
+     *
+     * @return number of removed staged files
+     * @throws MopsException on error
+     */
+    int deleteStaleStagedFiles() throws MopsException;
+
     /**
      * Renames a file.
      *
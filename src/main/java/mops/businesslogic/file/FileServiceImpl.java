@@ -1,7 +1,11 @@
 package mops.businesslogic.file;
 
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import mops.businesslogic.directory.DirectoryService;
 import mops.businesslogic.exception.*;
@@ -11,30 +15,44 @@ import mops.businesslogic.security.UserPermission;
 import mops.businesslogic.time.TimeService;
 import mops.exception.MopsException;
 import mops.persistence.FileRepository;
+import mops.persistence.blob.FileBlob;
 import mops.persistence.directory.Directory;
 import mops.persistence.exception.StorageException;
 import mops.persistence.file.FileInfo;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
  * Handles requests to MinIO.
  */
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 @Slf4j
+@SuppressWarnings({ "PMD.ExcessiveImports", "PMD.TooManyMethods" }) // central service for file handling
 public class FileServiceImpl implements FileService {
 
+    /**
+     * Format of a SHA-256 hash as hex string.
+     */
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
     /**
      * Service for permission checks.
      */
@@ -55,14 +73,38 @@ public class FileServiceImpl implements FileService {
      * File content repository.
      */
     private final FileRepository fileRepository;
+    /**
+     * Removes content of deleted files from the storage in the background.
+     */
+    private final StorageDeletionService storageDeletionService;
+    /**
+     * Records uploaded files in a short transaction.
+     */
+    private final StagedFileCommitter stagedFileCommitter;
+    /**
+     * The max size of a file uploaded as a stream.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    @Value("${material1.mops.configuration.quota.max-stream-upload-size}")
+    private DataSize maxStreamUploadSize = DataSize.ofGigabytes(1);
+    /**
+     * Whether compressible content is stored compressed.
+     */
+    @Value("${material1.mops.storage.compression.enabled}")
+    private boolean compressionEnabled = true;
+    /**
+     * Time after which staged content of interrupted uploads is removed.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    @Value("${material1.mops.configuration.upload.staging-timeout}")
+    private Duration stagingTimeout = Duration.ofHours(24);
 
     /**
      * {@inheritDoc}
      */
     @Override
-    @Transactional
     // builder & too many if-statements - but those are fine as they are exit points of this method
-    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.CyclomaticComplexity" })
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.CyclomaticComplexity", "PMD.DataflowAnomalyAnalysis" })
     public void saveFile(Account account, long dirId, MultipartFile multipartFile,
                          Set<String> tags) throws MopsException {
         if (multipartFile.getSize() <= 0) {
@@ -93,9 +135,174 @@ public class FileServiceImpl implements FileService {
                 .tags(tags)
                 .build();
 
+        // the content is staged without holding a database connection, only the meta data is saved in a transaction
+        String stagingId = UUID.randomUUID().toString();
+        try {
+            String contentHash;
+            String encoding;
+            try (InputStream content = multipartFile.getInputStream()) {
+                HashingInputStream stream = new HashingInputStream(Hashing.sha256(), content);
+                encoding = storeContent(stream, multipartFile.getSize(), meta.getType(), stagingId);
+                contentHash = stream.hash().toString();
+            } catch (IOException e) {
+                log.error("Failed to read file {} uploaded by user {}:", meta.getName(), account.getName(), e);
+                throw new StorageException("Fehler beim Lesen der Datei.", e);
+            }
+            commitContent(meta, stagingId, contentHash, encoding);
+        } catch (DatabaseDuplicationException e) {
+            deleteStagedFileQuietly(stagingId);
+            log.error("Error while saving file {} by user {}:",
+                    meta.getName(),
+                    account.getName(),
+                    e
+            );
+            throw new MopsException("Die Datei ist schon vorhanden.", e);
+        } catch (MopsException e) {
+            deleteStagedFileQuietly(stagingId);
+            log.error("Error while saving file {} by user {}:",
+                    meta.getName(),
+                    account.getName(),
+                    e
+            );
+            throw new MopsException("Fehler während des Speicherns aufgetreten", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.CyclomaticComplexity", "PMD.DataflowAnomalyAnalysis",
+            "PMD.CloseResource" }) // the content stream is owned by the caller
+    public void saveFile(Account account, long dirId, String name, String type, long size, InputStream content,
+                         Set<String> tags) throws MopsException {
+        long maxSize = maxStreamUploadSize.toBytes();
+        if (size == 0) {
+            log.error("User {} tried to save a file that was empty.", account.getName());
+            throw new StorageException("Leere Datei");
+        }
+        if (size > maxSize) {
+            log.error("User {} tried to save a file with {} bytes.", account.getName(), size);
+            throw new StorageException("Die Datei ist zu groß.");
+        }
+        if (name == null || name.isEmpty()) {
+            log.error("User {} tried to save a file with an empty name.", account.getName());
+            throw new StorageException("Name leer.");
+        }
+
+        Directory directory = directoryService.getDirectory(dirId);
+        UserPermission userPermission = securityService.getPermissionsOfUser(account, directory);
+
+        if (!userPermission.isWrite()) {
+            log.error("User {} tried to save a file without write permission.",
+                    account.getName()
+            );
+            throw new WriteAccessPermissionException("Keine Schreibberechtigung");
+        }
+
+        FileInfo meta = FileInfo.builder()
+                .name(name)
+                .type(type == null || type.isEmpty() ? MediaType.APPLICATION_OCTET_STREAM_VALUE : type)
+                .size(Math.max(size, 0L))
+                .directory(dirId)
+                .owner(account.getName())
+                .tags(tags)
+                .build();
+
+        // the content is staged without holding a database connection, only the meta data is saved in a transaction
+        String stagingId = UUID.randomUUID().toString();
+        try {
+            // one byte more than allowed is read, so that too large uploads of unknown size are noticed
+            CountingInputStream stream = new CountingInputStream(ByteStreams.limit(content, maxSize + 1));
+            HashingInputStream hashingStream = new HashingInputStream(Hashing.sha256(), stream);
+            String encoding = storeContent(hashingStream, size, meta.getType(), stagingId);
+            long storedSize = stream.getCount();
+
+            if (storedSize == 0 || storedSize > maxSize) {
+                log.error("User {} tried to save a file with {} bytes.", account.getName(), storedSize);
+                throw new StorageException(storedSize == 0 ? "Leere Datei" : "Die Datei ist zu groß.");
+            }
+            meta.setSize(storedSize);
+            commitContent(meta, stagingId, hashingStream.hash().toString(), encoding);
+        } catch (DatabaseDuplicationException e) {
+            deleteStagedFileQuietly(stagingId);
+            log.error("Error while saving file {} by user {}:",
+                    meta.getName(),
+                    account.getName(),
+                    e
+            );
+            throw new MopsException("Die Datei ist schon vorhanden.", e);
+        } catch (MopsException e) {
+            deleteStagedFileQuietly(stagingId);
+            log.error("Error while saving file {} by user {}:",
+                    meta.getName(),
+                    account.getName(),
+                    e
+            );
+            throw new MopsException("Fehler während des Speicherns aufgetreten", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Transactional
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.CyclomaticComplexity" })
+    public FileInfo saveFileByHash(Account account, long dirId, String name, String type, String hash, long size,
+                                   Set<String> tags) throws MopsException {
+        String contentHash = hash == null ? "" : hash.toLowerCase(Locale.ROOT);
+        if (!HASH_PATTERN.matcher(contentHash).matches()) {
+            log.error("User {} tried to save a file with the invalid hash '{}'.", account.getName(), hash);
+            throw new StorageException("Ungültige Prüfsumme.");
+        }
+        if (name == null || name.isEmpty()) {
+            log.error("User {} tried to save a file with an empty name.", account.getName());
+            throw new StorageException("Name leer.");
+        }
+
+        Directory directory = directoryService.getDirectory(dirId);
+        UserPermission userPermission = securityService.getPermissionsOfUser(account, directory);
+
+        if (!userPermission.isWrite()) {
+            log.error("User {} tried to save a file without write permission.",
+                    account.getName()
+            );
+            throw new WriteAccessPermissionException("Keine Schreibberechtigung");
+        }
+
+        FileBlob blob = fileInfoService.fetchContent(contentHash)
+                .filter(content -> content.getSize() == size)
+                .orElse(null);
+        // content the user cannot read is treated as unknown, so the answer reveals nothing about other groups
+        if (blob == null || !canReadContent(account, blob.getContentId())) {
+            log.debug("Content with hash {} and size {} is not stored yet.", contentHash, size);
+            throw new FileNotFoundException("Der Inhalt ist nicht vorhanden.");
+        }
+
+        FileInfo meta = FileInfo.builder()
+                .name(name)
+                .type(type == null || type.isEmpty() ? MediaType.APPLICATION_OCTET_STREAM_VALUE : type)
+                .size(blob.getSize())
+                .directory(dirId)
+                .owner(account.getName())
+                .tags(tags)
+                .build();
+
         try {
             FileInfo fileInfo = fileInfoService.saveFileInfo(meta);
-            fileRepository.saveFile(multipartFile, fileInfo.getId());
+            FileBlob content = fileInfoService.referenceContent(contentHash, fileInfo.getId(), blob.getSize(),
+                    blob.getEncoding());
+            if (content.getContentId().equals(fileInfo.getId())) {
+                // the content was deleted in the meantime
+                throw new FileNotFoundException("Der Inhalt ist nicht mehr vorhanden.");
+            }
+            fileInfo.setContent(contentHash, content.getContentId(), content.getEncoding());
+            return fileInfoService.saveFileInfo(fileInfo);
+        } catch (FileNotFoundException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.debug("Content with hash {} was deleted while saving file {}.", contentHash, meta.getName());
+            throw e;
         } catch (DatabaseDuplicationException e) {
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             log.error("Error while saving file {} by user {}:",
@@ -152,16 +359,34 @@ public class FileServiceImpl implements FileService {
             throw new ReadAccessPermissionException("Keine Leseberechtigung");
         }
 
-        try (InputStream stream = fileRepository.getFileContent(fileId)) {
-            ByteArrayResource byteArrayResource = new ByteArrayResource(stream.readAllBytes());
-            return new FileContainer(fileInfo, byteArrayResource);
-        } catch (MopsException | IOException e) {
-            log.error("Error on retrieving file with ID {}:",
-                    fileId,
-                    e
-            );
-            throw new MopsException("Fehler während des Abrufens aufgetreten", e);
+        return openFile(fileInfo);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public FileContainer getFile(FileListEntry fileListEntry) throws MopsException {
+        if (!fileListEntry.isRead()) {
+            log.error("Tried to read listed file {} without permission.", fileListEntry.getId());
+            throw new ReadAccessPermissionException("Keine Leseberechtigung");
         }
+        return openFile(fileListEntry.getFileInfo());
+    }
+
+    /**
+     * Wraps a file whose permissions were checked.
+     *
+     * @param fileInfo meta data of the file
+     * @return file with lazily read content
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private FileContainer openFile(FileInfo fileInfo) {
+        // content is opened lazily once the response is written
+        return new FileContainer(fileInfo,
+                new FileContentResource(fileRepository, fileInfo.getContentId(), fileInfo.getSize(),
+                        fileInfo.getContentEncoding()));
     }
 
     /**
@@ -198,7 +423,10 @@ public class FileServiceImpl implements FileService {
 
         try {
             fileInfoService.deleteFileInfo(fileId);
-            fileRepository.deleteFile(fileId);
+            // the content may still be used by other files
+            if (fileInfoService.releaseContent(fileInfo)) {
+                storageDeletionService.scheduleDeletion(Set.of(fileInfo.getContentId()));
+            }
         } catch (MopsException e) {
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             log.error("File with ID {} error on deleting:",
@@ -288,6 +516,14 @@ public class FileServiceImpl implements FileService {
         fileRepository.deleteFile(fileId);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteStaleStagedFiles() throws MopsException {
+        return fileRepository.deleteStagedFilesBefore(timeService.getInstantNow().minus(stagingTimeout));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -326,4 +562,90 @@ public class FileServiceImpl implements FileService {
         fileInfoService.saveFileInfo(fileInfo);
         return directory;
     }
+
+    /**
+     * Checks if the user can read at least one file with the given content.
+     *
+     * @param account   user credentials
+     * @param contentId id under which the content is stored
+     * @return true if the user can already read the content
+     * @throws MopsException on error
+     */
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.OnlyOneReturn" })
+    private boolean canReadContent(Account account, long contentId) throws MopsException {
+        for (long dirId : fileInfoService.fetchDirectoriesWithContent(contentId)) {
+            Directory directory = directoryService.getDirectory(dirId);
+            if (securityService.getPermissionsOfUser(account, directory).isRead()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores the content of a file. Content of a compressible type is compressed
+     * if a sample of it shrinks noticeably, everything else is stored as it is.
+     * Compressed content is stored with an unknown size.
+     *
+     * @param content   content of the file
+     * @param size      size in bytes, -1 if unknown
+     * @param type      content type
+     * @param stagingId unique name under which the content is staged
+     * @return encoding of the stored content, null if it is stored as it is
+     * @throws MopsException on error
+     */
+    @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.CloseResource" }) // the content is owned by the caller
+    private String storeContent(InputStream content, long size, String type, String stagingId)
+            throws MopsException {
+        String encoding = null;
+        try {
+            if (compressionEnabled && ContentCompression.isCompressibleType(type)) {
+                BufferedInputStream stream = new BufferedInputStream(content, ContentCompression.SAMPLE_SIZE);
+                if (ContentCompression.isCompressible(stream)) {
+                    encoding = ContentCompression.DEFLATE;
+                    try (InputStream compressed = ContentCompression.compress(stream)) {
+                        // the compressed size is only known once everything was read, the storage
+                        // still sends content which fits into one part in a single request
+                        fileRepository.saveStagedFile(stagingId, compressed, -1L, type);
+                    }
+                } else {
+                    fileRepository.saveStagedFile(stagingId, stream, size, type);
+                }
+            } else {
+                fileRepository.saveStagedFile(stagingId, content, size, type);
+            }
+        } catch (IOException e) {
+            log.error("Failed to read content of staged file '{}':", stagingId, e);
+            throw new StorageException("Fehler beim Lesen der Datei.", e);
+        }
+        return encoding;
+    }
+
+    /**
+     * Records a file with its staged content in a short transaction. If equal content is already
+     * stored, the file refers to that and the staged copy is removed again.
+     *
+     * @param meta        meta data of the new file
+     * @param stagingId   unique name of the staged content
+     * @param contentHash SHA-256 hash of the uncompressed content
+     * @param encoding    encoding of the staged content, null if it is stored as it is
+     * @throws MopsException on error
+     */
+    private void commitContent(FileInfo meta, String stagingId, String contentHash, String encoding)
+            throws MopsException {
+        stagedFileCommitter.commit(meta, stagingId, contentHash, encoding);
+    }
+
+    /**
+     * Deletes staged content and only logs errors, the garbage collector removes leftovers.
+     *
+     * @param stagingId unique name of the staged content
+     */
+    private void deleteStagedFileQuietly(String stagingId) {
+        try {
+            fileRepository.deleteStagedFile(stagingId);
+        } catch (StorageException e) {
+            log.warn("Failed to delete staged file '{}':", stagingId, e);
+        }
+    }
 }
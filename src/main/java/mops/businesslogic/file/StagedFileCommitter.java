@@ -0,0 +1,125 @@
+package mops.businesslogic.file;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mops.exception.MopsException;
+import mops.persistence.FileRepository;
+import mops.persistence.exception.StorageException;
+import mops.persistence.file.FileInfo;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records uploaded files whose content was staged before. The database work is done in a short
+ * transaction, the staged content is moved to the file afterwards, so that no transaction is open
+ * while the storage copies it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StagedFileCommitter {
+
+    /**
+     * Records the files in the database.
+     */
+    private final StagedFileRecorder stagedFileRecorder;
+    /**
+     * File content repository.
+     */
+    private final FileRepository fileRepository;
+
+    /**
+     * Records a file and links it to its content. New content is promoted from the staging area
+     * to the id of the file once the file is recorded, if equal content is stored already the file
+     * refers to that instead and the staged content is deleted.
+     *
+     * @param meta        meta data of the new file
+     * @param stagingId   unique name of the staged content
+     * @param contentHash SHA-256 hash of the uncompressed content
+     * @param encoding    encoding of the staged content, null if it is stored as it is
+     * @return the saved file
+     * @throws MopsException on error, the file is not recorded then and the staged content is left to the caller
+     */
+    public FileInfo commit(FileInfo meta, String stagingId, String contentHash, String encoding)
+            throws MopsException {
+        FileInfo fileInfo = stagedFileRecorder.record(meta, contentHash, encoding);
+        placeContent(fileInfo, stagingId);
+        return fileInfo;
+    }
+
+    /**
+     * Records a file which was uploaded in chunks and joined to staged content, like {@link #commit}.
+     * The upload session is removed together with recording the file, its chunks are deleted afterwards.
+     *
+     * @param meta        meta data of the new file
+     * @param stagingId   unique name of the staged content
+     * @param contentHash SHA-256 hash of the content
+     * @param sessionId   upload session id
+     * @return the saved file
+     * @throws MopsException on error, the staged content is left to the caller then
+     */
+    public FileInfo commitUpload(FileInfo meta, String stagingId, String contentHash, long sessionId)
+            throws MopsException {
+        FileInfo fileInfo = stagedFileRecorder.recordUpload(meta, contentHash, sessionId);
+        // the chunks are not needed anymore, even if the promotion fails
+        try {
+            fileRepository.deleteChunks(sessionId);
+        } catch (StorageException e) {
+            log.warn("Failed to delete chunks of completed upload session {}:", sessionId, e);
+        }
+        placeContent(fileInfo, stagingId);
+        return fileInfo;
+    }
+
+    /**
+     * Promotes the staged content of a recorded file or deletes it if the file refers to equal content.
+     *
+     * @param fileInfo  the recorded file
+     * @param stagingId unique name of the staged content
+     * @throws MopsException if the content could not be promoted, the file is removed then
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void placeContent(FileInfo fileInfo, String stagingId) throws MopsException {
+        if (fileInfo.getContentId().equals(fileInfo.getId())) {
+            promote(fileInfo, stagingId);
+        } else {
+            log.debug("Content of file {} is already stored under id {}.", fileInfo.getId(),
+                    fileInfo.getContentId());
+            deleteStagedFileQuietly(stagingId);
+        }
+    }
+
+    /**
+     * Moves the staged content to the id of its recorded file. If that fails the file is removed again,
+     * if even that fails the garbage collector removes it because its content is missing.
+     *
+     * @param fileInfo  the recorded file
+     * @param stagingId unique name of the staged content
+     * @throws MopsException if the content could not be moved
+     */
+    private void promote(FileInfo fileInfo, String stagingId) throws MopsException {
+        try {
+            fileRepository.promoteStagedFile(stagingId, fileInfo.getId());
+        } catch (StorageException e) {
+            log.error("Failed to store the content of file {}, the file is removed again.", fileInfo.getId());
+            try {
+                stagedFileRecorder.discard(fileInfo);
+            } catch (MopsException discardError) {
+                log.error("Failed to remove file {} without content:", fileInfo.getId(), discardError);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes staged content and only logs errors, the garbage collector removes leftovers.
+     *
+     * @param stagingId unique name of the staged content
+     */
+    private void deleteStagedFileQuietly(String stagingId) {
+        try {
+            fileRepository.deleteStagedFile(stagingId);
+        } catch (StorageException e) {
+            log.warn("Failed to delete staged file '{}':", stagingId, e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package mops.businesslogic.file;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.exception.DatabaseException;
+import mops.exception.MopsException;
+import mops.persistence.UploadSessionRepository;
+import mops.persistence.blob.FileBlob;
+import mops.persistence.file.FileInfo;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.relational.core.conversion.DbActionExecutionException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+/**
+ * Records files with staged content in short transactions. This is a bean of its own, so that
+ * {@link StagedFileCommitter} can move the content outside of the transactions.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StagedFileRecorder {
+
+    /**
+     * Service for saving and retrieving file meta data.
+     */
+    private final FileInfoService fileInfoService;
+    /**
+     * Access to the upload sessions.
+     */
+    private final UploadSessionRepository uploadSessionRepository;
+
+    /**
+     * Records a file and links it to its content. New content is expected under the id of the file,
+     * if equal content is stored already the file refers to that instead.
+     *
+     * @param meta        meta data of the new file
+     * @param contentHash SHA-256 hash of the uncompressed content
+     * @param encoding    encoding of the staged content, null if it is stored as it is
+     * @return the saved file
+     * @throws MopsException on error, nothing is recorded then
+     */
+    @Transactional
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public FileInfo record(FileInfo meta, String contentHash, String encoding) throws MopsException {
+        try {
+            FileInfo fileInfo = fileInfoService.saveFileInfo(meta);
+            FileBlob content = fileInfoService.referenceContent(contentHash, fileInfo.getId(), fileInfo.getSize(),
+                    encoding);
+            fileInfo.setContent(contentHash, content.getContentId(), content.getEncoding());
+            return fileInfoService.saveFileInfo(fileInfo);
+        } catch (MopsException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            throw e;
+        }
+    }
+
+    /**
+     * Records a file which was uploaded in chunks and removes its upload session.
+     *
+     * @param meta        meta data of the new file
+     * @param contentHash SHA-256 hash of the content
+     * @param sessionId   upload session id
+     * @return the saved file
+     * @throws MopsException on error, nothing is recorded and the session is kept then
+     */
+    @Transactional
+    public FileInfo recordUpload(FileInfo meta, String contentHash, long sessionId) throws MopsException {
+        // joins this transaction
+        FileInfo fileInfo = record(meta, contentHash, null);
+        try {
+            uploadSessionRepository.deleteById(sessionId);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.error("Failed to delete upload session {}:", sessionId, e);
+            throw new DatabaseException("Upload konnte nicht gelöscht werden!", e);
+        }
+        return fileInfo;
+    }
+
+    /**
+     * Removes a recorded file whose content could not be stored.
+     *
+     * @param fileInfo the recorded file
+     * @throws MopsException on error, nothing is removed then
+     */
+    @Transactional
+    public void discard(FileInfo fileInfo) throws MopsException {
+        try {
+            fileInfoService.deleteFileInfo(fileInfo.getId());
+            fileInfoService.releaseContent(fileInfo);
+        } catch (MopsException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package mops.businesslogic.file;
+
+import mops.exception.MopsException;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+
+/**
+ * Removes content from the storage in the background. Deletions are recorded in an outbox table
+ * within the transaction which deletes the files, so they are neither lost on a rollback nor slowed
+ * down by the storage.
+ */
+@Service
+public interface StorageDeletionService {
+
+    /**
+     * Records content which is no longer used, in the transaction of the caller.
+     *
+     * @param contentIds ids under which the content is stored
+     * @throws MopsException on error
+     */
+    void scheduleDeletion(Collection<Long> contentIds) throws MopsException;
+
+    /**
+     * Removes due content from the storage in batches until no due content is left
+     * or the storage fails. Failed deletions are retried later.
+     *
+     * @return number of removed content
+     * @throws MopsException on database errors
+     */
+    int processDeletions() throws MopsException;
+
+}
@@ -0,0 +1,249 @@
+package mops.businesslogic.file;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.exception.DatabaseException;
+import mops.businesslogic.time.TimeService;
+import mops.exception.MopsException;
+import mops.persistence.FileRepository;
+import mops.persistence.PendingDeletionRepository;
+import mops.persistence.deletion.PendingDeletion;
+import mops.persistence.exception.StorageException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.relational.core.conversion.DbActionExecutionException;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Outbox of storage deletions which is drained by the {@link mops.businesslogic.StorageDeletionWorker}.
+ * Removing content twice is harmless, so several instances may drain the outbox at the same time.
+ */
+@Slf4j
+@Service
+public class StorageDeletionServiceImpl implements StorageDeletionService {
+
+    /**
+     * Prefix of the metric names.
+     */
+    private static final String METRIC_PREFIX = "mops.material1.storage.deletions.";
+    /**
+     * Highest power of two the retry delay is multiplied with.
+     */
+    private static final int MAX_BACKOFF_EXPONENT = 10;
+
+    /**
+     * Outbox of storage deletions.
+     */
+    private final PendingDeletionRepository pendingDeletionRepository;
+    /**
+     * File content repository.
+     */
+    private final FileRepository fileRepository;
+    /**
+     * Queries the time.
+     */
+    private final TimeService timeService;
+    /**
+     * Maximum number of content removed at once.
+     */
+    private final int batchSize;
+    /**
+     * Number of attempts after which content is left to the garbage collector.
+     */
+    private final int maxAttempts;
+    /**
+     * Delay after the first failed attempt, it doubles with every further attempt.
+     */
+    private final Duration retryDelay;
+    /**
+     * Counts removed content.
+     */
+    private final Counter deleted;
+    /**
+     * Counts failed attempts.
+     */
+    private final Counter failed;
+    /**
+     * Counts content given up after too many attempts.
+     */
+    private final Counter abandoned;
+
+    /**
+     * Creates the outbox.
+     *
+     * @param pendingDeletionRepository outbox of storage deletions
+     * @param fileRepository            file content repository
+     * @param timeService               queries the time
+     * @param batchSize                 maximum number of content removed at once
+     * @param maxAttempts               number of attempts after which content is given up
+     * @param retryDelay                delay after the first failed attempt
+     * @param meterRegistry             registry for the outbox metrics
+     */
+    public StorageDeletionServiceImpl(PendingDeletionRepository pendingDeletionRepository,
+                                      FileRepository fileRepository,
+                                      TimeService timeService,
+                                      @Value("${material1.mops.configuration.deletion.batch-size}") int batchSize,
+                                      @Value("${material1.mops.configuration.deletion.max-attempts}") int maxAttempts,
+                                      @Value("${material1.mops.configuration.deletion.retry-delay}")
+                                              Duration retryDelay,
+                                      MeterRegistry meterRegistry) {
+        this.pendingDeletionRepository = pendingDeletionRepository;
+        this.fileRepository = fileRepository;
+        this.timeService = timeService;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.deleted = Counter.builder(METRIC_PREFIX + "deleted")
+                .description("Content removed from the storage")
+                .register(meterRegistry);
+        this.failed = Counter.builder(METRIC_PREFIX + "failed")
+                .description("Failed attempts to remove content from the storage")
+                .register(meterRegistry);
+        this.abandoned = Counter.builder(METRIC_PREFIX + "abandoned")
+                .description("Content left to the garbage collector after too many attempts")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "pending", pendingDeletionRepository, PendingDeletionRepository::count)
+                .description("Content waiting to be removed from the storage")
+                .register(meterRegistry);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void scheduleDeletion(Collection<Long> contentIds) throws MopsException {
+        if (!contentIds.isEmpty()) {
+            Instant now = timeService.getInstantNow();
+            try {
+                pendingDeletionRepository.saveAll(contentIds.stream()
+                        .map(contentId -> PendingDeletion.of(contentId, now))
+                        .collect(Collectors.toList()));
+            } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+                log.error("Failed to schedule the deletion of the content with ids {}:", contentIds, e);
+                throw new DatabaseException("Das Löschen der Dateiinhalte konnte nicht vorgemerkt werden.", e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    public int processDeletions() throws MopsException {
+        int count = 0;
+        boolean success = true;
+        List<PendingDeletion> batch = findDue();
+        while (success && !batch.isEmpty()) {
+            success = deleteBatch(batch);
+            if (success) {
+                count += batch.size();
+            }
+            // a smaller batch was the last one which was due
+            batch = success && batch.size() == batchSize ? findDue() : List.of();
+        }
+        return count;
+    }
+
+    /**
+     * Finds the next batch of due deletions.
+     *
+     * @return oldest due deletions
+     * @throws MopsException on error
+     */
+    private List<PendingDeletion> findDue() throws MopsException {
+        try {
+            return pendingDeletionRepository.findDue(Timestamp.from(timeService.getInstantNow()), batchSize);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to load the pending storage deletions:", e);
+            throw new DatabaseException("Die ausstehenden Löschungen konnten nicht geladen werden.", e);
+        }
+    }
+
+    /**
+     * Removes a batch of content from the storage and from the outbox. If the storage fails,
+     * the whole batch is attempted again later.
+     *
+     * @param batch due deletions
+     * @return true if the content was removed
+     * @throws MopsException if the outbox could not be updated
+     */
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    private boolean deleteBatch(List<PendingDeletion> batch) throws MopsException {
+        Set<Long> contentIds = batch.stream().map(PendingDeletion::getContentId).collect(Collectors.toSet());
+        boolean success;
+        try {
+            fileRepository.deleteFiles(contentIds);
+            success = true;
+        } catch (StorageException e) {
+            log.warn("Failed to remove {} files from the storage, the deletion is retried later:",
+                    contentIds.size(), e);
+            success = false;
+        }
+
+        try {
+            if (success) {
+                pendingDeletionRepository.deleteAllByIds(getIds(batch));
+                deleted.increment(batch.size());
+            } else {
+                postpone(batch);
+                failed.increment(batch.size());
+            }
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to update {} pending storage deletions:", batch.size(), e);
+            throw new DatabaseException("Die ausstehenden Löschungen konnten nicht aktualisiert werden.", e);
+        }
+        return success;
+    }
+
+    /**
+     * Postpones failed deletions with an exponential backoff or gives them up after too many attempts.
+     * The garbage collector removes content which was given up.
+     *
+     * @param batch failed deletions
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void postpone(List<PendingDeletion> batch) {
+        Instant now = timeService.getInstantNow();
+        Map<Integer, List<PendingDeletion>> byAttempts = batch.stream()
+                .collect(Collectors.groupingBy(PendingDeletion::getAttempts));
+        List<PendingDeletion> givenUp = new ArrayList<>();
+        byAttempts.forEach((attempts, deletions) -> {
+            if (attempts + 1 >= maxAttempts) {
+                givenUp.addAll(deletions);
+            } else {
+                Duration delay = retryDelay.multipliedBy(1L << Math.min(attempts, MAX_BACKOFF_EXPONENT));
+                pendingDeletionRepository.postpone(getIds(deletions), Timestamp.from(now.plus(delay)));
+            }
+        });
+        if (!givenUp.isEmpty()) {
+            log.error("Gave up removing the content with ids {} from the storage after {} attempts.",
+                    givenUp.stream().map(PendingDeletion::getContentId).collect(Collectors.toList()), maxAttempts);
+            pendingDeletionRepository.deleteAllByIds(getIds(givenUp));
+            abandoned.increment(givenUp.size());
+        }
+    }
+
+    /**
+     * Collects the ids of deletions.
+     *
+     * @param deletions pending deletions
+     * @return their database ids
+     */
+    private static List<Long> getIds(List<PendingDeletion> deletions) {
+        return deletions.stream().map(PendingDeletion::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,51 @@
+package mops.businesslogic.file;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.exception.DatabaseException;
+import mops.persistence.UploadSessionRepository;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.relational.core.conversion.DbActionExecutionException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Records received chunks in short transactions. This is a bean of its own, so that
+ * {@link UploadSessionServiceImpl} can store the chunks outside of the transactions.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UploadSessionRecorder {
+
+    /**
+     * Access to the upload sessions.
+     */
+    private final UploadSessionRepository uploadSessionRepository;
+
+    /**
+     * Records a stored chunk, replacing an earlier upload of the same chunk, and marks the session as active.
+     *
+     * @param sessionId   upload session id
+     * @param chunkNumber position of the chunk
+     * @param size        chunk size in bytes
+     * @param time        time of the upload
+     * @throws DatabaseException on error, nothing is recorded then
+     */
+    @Transactional
+    public void recordChunk(long sessionId, int chunkNumber, long size, Instant time) throws DatabaseException {
+        try {
+            uploadSessionRepository.deleteChunk(sessionId, chunkNumber);
+            uploadSessionRepository.insertChunk(sessionId, chunkNumber, size);
+            uploadSessionRepository.touch(sessionId, Timestamp.from(time));
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.error("Failed to record chunk {} of upload session {}:", chunkNumber, sessionId, e);
+            throw new DatabaseException("Dateiteil konnte nicht gespeichert werden!", e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package mops.businesslogic.file;
+
+import mops.businesslogic.security.Account;
+import mops.exception.MopsException;
+import mops.persistence.file.FileInfo;
+import mops.persistence.upload.UploadSession;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+
+/**
+ * Handles files which are uploaded in chunks. Chunks can be uploaded in any order
+ * and in parallel, and failed chunks can be uploaded again.
+ */
+@Service
+public interface UploadSessionService {
+
+    /**
+     * Starts a new upload.
+     *
+     * @param account user credentials
+     * @param dirId   directory id of the future parent folder
+     * @param name    file name
+     * @param type    content type (may be null)
+     * @return new upload session
+     */
+    UploadSession createSession(Account account, long dirId, String name, String type) throws MopsException;
+
+    /**
+     * Gets an upload session with all chunks received so far.
+     *
+     * @param account user credentials
+     * @param sessionId upload session id
+     * @return upload session
+     */
+    UploadSession getSession(Account account, long sessionId) throws MopsException;
+
+    /**
+     * Saves a chunk of an upload. A chunk which was saved before is replaced.
+     *
+     * @param account     user credentials
+     * @param sessionId   upload session id
+     * @param chunkNumber position of the chunk, starting with 0
+     * @param size        chunk size in bytes
+     * @param content     chunk content (will not be closed)
+     */
+    void saveChunk(Account account, long sessionId, int chunkNumber, long size, InputStream content)
+            throws MopsException;
+
+    /**
+     * Joins all chunks of an upload to a file and ends the session.
+     *
+     * @param account   user credentials
+     * @param sessionId upload session id
+     * @return meta data of the new file
+     */
+    FileInfo completeSession(Account account, long sessionId) throws MopsException;
+
+    /**
+     * Cancels an upload and removes all of its chunks.
+     *
+     * @param account   user credentials
+     * @param sessionId upload session id
+     */
+    void abortSession(Account account, long sessionId) throws MopsException;
+
+    /**
+     * Removes all sessions which were not used for a while and chunks which no longer belong to a session.
+     *
+     * @return number of removed sessions
+     */
+    int removeExpiredSessions() throws MopsException;
+}
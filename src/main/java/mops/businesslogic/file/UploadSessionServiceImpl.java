@@ -0,0 +1,373 @@
+package mops.businesslogic.file;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.directory.DirectoryService;
+import mops.businesslogic.exception.DatabaseDuplicationException;
+import mops.businesslogic.exception.DatabaseException;
+import mops.businesslogic.exception.WriteAccessPermissionException;
+import mops.businesslogic.security.Account;
+import mops.businesslogic.security.SecurityService;
+import mops.businesslogic.security.UserPermission;
+import mops.businesslogic.time.TimeService;
+import mops.exception.MopsException;
+import mops.persistence.FileRepository;
+import mops.persistence.UploadSessionRepository;
+import mops.persistence.directory.Directory;
+import mops.persistence.exception.StorageException;
+import mops.persistence.file.FileInfo;
+import mops.persistence.upload.UploadSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.relational.core.conversion.DbActionExecutionException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Handles files which are uploaded in chunks.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    /**
+     * Minimum size of all chunks but the last one (5 MiB), required to join them in the storage.
+     */
+    private static final long MIN_CHUNK_SIZE = 5L * 1024 * 1024;
+    /**
+     * Maximum number of chunks of an upload.
+     */
+    private static final int MAX_CHUNKS = 10_000;
+
+    /**
+     * Service for permission checks.
+     */
+    private final DirectoryService directoryService;
+    /**
+     * Handle permission checks for roles.
+     */
+    private final SecurityService securityService;
+    /**
+     * Queries the time.
+     */
+    private final TimeService timeService;
+    /**
+     * File content repository.
+     */
+    private final FileRepository fileRepository;
+    /**
+     * Access to the upload sessions.
+     */
+    private final UploadSessionRepository uploadSessionRepository;
+    /**
+     * Records received chunks.
+     */
+    private final UploadSessionRecorder uploadSessionRecorder;
+    /**
+     * Records completed uploads.
+     */
+    private final StagedFileCommitter stagedFileCommitter;
+    /**
+     * The max size of a file uploaded in chunks.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    @Value("${material1.mops.configuration.quota.max-stream-upload-size}")
+    private DataSize maxUploadSize = DataSize.ofGigabytes(1);
+    /**
+     * Time after which unused sessions are removed.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    @Value("${material1.mops.configuration.upload.session-timeout}")
+    private Duration sessionTimeout = Duration.ofHours(24);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public UploadSession createSession(Account account, long dirId, String name, String type)
+            throws MopsException {
+        if (name == null || name.isEmpty()) {
+            log.error("User {} tried to start an upload with an empty name.", account.getName());
+            throw new StorageException("Name leer.");
+        }
+        checkWritePermission(account, dirId);
+
+        UploadSession session = UploadSession.of(dirId,
+                name,
+                type == null || type.isEmpty() ? MediaType.APPLICATION_OCTET_STREAM_VALUE : type,
+                account.getName());
+        try {
+            return uploadSessionRepository.save(session);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to save upload session for file '{}' of user {}:", name, account.getName(), e);
+            throw new DatabaseException("Upload konnte nicht gestartet werden!", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public UploadSession getSession(Account account, long sessionId) throws MopsException {
+        UploadSession session;
+        try {
+            session = uploadSessionRepository.findById(sessionId).orElseThrow();
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException
+                | NoSuchElementException e) {
+            log.error("Failed to retrieve upload session with id {} from the database:", sessionId, e);
+            throw new DatabaseException("Der Upload wurde nicht gefunden!", e);
+        }
+
+        if (!session.getOwner().equals(account.getName())) {
+            log.error("User {} tried to access the upload session {} of another user.",
+                    account.getName(),
+                    sessionId
+            );
+            throw new WriteAccessPermissionException("Keine Schreibberechtigung");
+        }
+        return session;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void saveChunk(Account account, long sessionId, int chunkNumber, long size, InputStream content)
+            throws MopsException {
+        if (chunkNumber < 0 || chunkNumber >= MAX_CHUNKS) {
+            log.error("User {} tried to upload chunk {} of upload {}.", account.getName(), chunkNumber, sessionId);
+            throw new StorageException("Ungültige Nummer des Dateiteils.");
+        }
+        if (size <= 0 || size > maxUploadSize.toBytes()) {
+            log.error("User {} tried to upload a chunk with {} bytes.", account.getName(), size);
+            throw new StorageException("Ungültige Größe des Dateiteils.");
+        }
+        UploadSession session = getSession(account, sessionId);
+        long totalSize = session.getSizeWithChunk(chunkNumber, size);
+        if (totalSize > maxUploadSize.toBytes()) {
+            log.error("User {} tried to upload {} bytes in total to upload {}.", account.getName(), totalSize,
+                    sessionId);
+            throw new StorageException("Die Datei ist zu groß.");
+        }
+
+        // content is stored first without holding a database connection, so that only complete chunks are recorded
+        fileRepository.saveChunk(sessionId, chunkNumber, content, size);
+        uploadSessionRecorder.recordChunk(sessionId, chunkNumber, size, timeService.getInstantNow());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    public FileInfo completeSession(Account account, long sessionId) throws MopsException {
+        UploadSession session = getSession(account, sessionId);
+        List<Integer> chunkNumbers = session.getChunkNumbers();
+        int chunkCount = chunkNumbers.size();
+        // chunk numbers are unique, so they are complete if the last one matches the count
+        if (chunkCount == 0 || chunkNumbers.get(chunkCount - 1) != chunkCount - 1) {
+            log.error("User {} tried to complete upload {} with missing chunks.", account.getName(), sessionId);
+            throw new StorageException("Es fehlen Teile der Datei.");
+        }
+        List<Long> chunkSizes = session.getChunkSizes();
+        for (int i = 0; i < chunkCount - 1; i++) {
+            if (chunkSizes.get(i) < MIN_CHUNK_SIZE) {
+                log.error("User {} tried to complete upload {} with too small chunks.", account.getName(), sessionId);
+                throw new StorageException("Alle Teile außer dem letzten müssen mindestens 5 MiB groß sein.");
+            }
+        }
+        if (session.getSize() > maxUploadSize.toBytes()) {
+            log.error("User {} tried to complete upload {} with {} bytes.",
+                    account.getName(),
+                    sessionId,
+                    session.getSize()
+            );
+            throw new StorageException("Die Datei ist zu groß.");
+        }
+        checkWritePermission(account, session.getDirectoryId());
+
+        FileInfo meta = FileInfo.builder()
+                .name(session.getName())
+                .type(session.getType())
+                .size(session.getSize())
+                .directory(session.getDirectoryId())
+                .owner(account.getName())
+                .build();
+
+        // the chunks are joined and hashed without holding a database connection
+        String stagingId = UUID.randomUUID().toString();
+        try {
+            fileRepository.composeChunks(sessionId, chunkCount, session.getType(), stagingId);
+            String contentHash = hashStagedFile(stagingId);
+            return stagedFileCommitter.commitUpload(meta, stagingId, contentHash, sessionId);
+        } catch (DatabaseDuplicationException e) {
+            deleteStagedFileQuietly(stagingId);
+            log.error("Error while completing upload of file {} by user {}:",
+                    meta.getName(),
+                    account.getName(),
+                    e
+            );
+            throw new MopsException("Die Datei ist schon vorhanden.", e);
+        } catch (MopsException e) {
+            deleteStagedFileQuietly(stagingId);
+            log.error("Error while completing upload of file {} by user {}:",
+                    meta.getName(),
+                    account.getName(),
+                    e
+            );
+            throw new MopsException("Fehler während des Speicherns aufgetreten", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void abortSession(Account account, long sessionId) throws MopsException {
+        getSession(account, sessionId);
+        fileRepository.deleteChunks(sessionId);
+        deleteSession(sessionId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    public int removeExpiredSessions() throws MopsException {
+        Instant expiry = timeService.getInstantNow().minus(sessionTimeout);
+        List<UploadSession> sessions;
+        try {
+            sessions = uploadSessionRepository.findAllModifiedBefore(Timestamp.from(expiry));
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to retrieve expired upload sessions:", e);
+            throw new DatabaseException("Abgelaufene Uploads konnten nicht geladen werden!", e);
+        }
+
+        int removed = 0;
+        for (UploadSession session : sessions) {
+            try {
+                fileRepository.deleteChunks(session.getId());
+                deleteSession(session.getId());
+                removed++;
+            } catch (MopsException e) {
+                log.error("Failed to remove expired upload session {}:", session.getId(), e);
+            }
+        }
+        return removed + removeChunksWithoutSession();
+    }
+
+    /**
+     * Removes chunks whose session is gone, e.g. because deleting them failed after the upload was completed.
+     *
+     * @return number of sessions whose chunks were removed
+     * @throws MopsException on error
+     */
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    private int removeChunksWithoutSession() throws MopsException {
+        // the chunks are listed first, so that chunks of sessions created in the meantime are not included
+        Set<Long> chunkSessionIds = fileRepository.getChunkSessionIds();
+        int removed = 0;
+        for (long sessionId : chunkSessionIds) {
+            boolean exists;
+            try {
+                exists = uploadSessionRepository.existsById(sessionId);
+            } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+                log.error("Failed to look up upload session {}:", sessionId, e);
+                throw new DatabaseException("Upload konnte nicht geladen werden!", e);
+            }
+            if (!exists) {
+                try {
+                    fileRepository.deleteChunks(sessionId);
+                    removed++;
+                } catch (StorageException e) {
+                    log.error("Failed to remove chunks of upload session {}:", sessionId, e);
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Hashes staged content.
+     *
+     * @param stagingId unique name of the staged content
+     * @return SHA-256 hash of the content
+     * @throws StorageException if the content could not be read
+     */
+    private String hashStagedFile(String stagingId) throws StorageException {
+        try (HashingInputStream stream = new HashingInputStream(Hashing.sha256(),
+                fileRepository.getStagedFileContent(stagingId))) {
+            ByteStreams.exhaust(stream);
+            return stream.hash().toString();
+        } catch (IOException e) {
+            log.error("Failed to read content of staged file '{}':", stagingId, e);
+            throw new StorageException("Fehler beim Lesen der Datei.", e);
+        }
+    }
+
+    /**
+     * Deletes staged content and only logs errors, the garbage collector removes leftovers.
+     *
+     * @param stagingId unique name of the staged content
+     */
+    private void deleteStagedFileQuietly(String stagingId) {
+        try {
+            fileRepository.deleteStagedFile(stagingId);
+        } catch (StorageException e) {
+            log.warn("Failed to delete staged file '{}':", stagingId, e);
+        }
+    }
+
+    /**
+     * Checks that the user may create files in a directory.
+     *
+     * @param account user credentials
+     * @param dirId   directory id
+     * @throws MopsException if the user may not write
+     */
+    private void checkWritePermission(Account account, long dirId) throws MopsException {
+        Directory directory = directoryService.getDirectory(dirId);
+        UserPermission userPermission = securityService.getPermissionsOfUser(account, directory);
+
+        if (!userPermission.isWrite()) {
+            log.error("User {} tried to upload a file without write permission.",
+                    account.getName()
+            );
+            throw new WriteAccessPermissionException("Keine Schreibberechtigung");
+        }
+    }
+
+    /**
+     * Deletes a session and its recorded chunks from the database.
+     *
+     * @param sessionId upload session id
+     * @throws DatabaseException on error
+     */
+    private void deleteSession(long sessionId) throws DatabaseException {
+        try {
+            uploadSessionRepository.deleteById(sessionId);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to delete upload session {}:", sessionId, e);
+            throw new DatabaseException("Upload konnte nicht gelöscht werden!", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package mops.businesslogic.group;
+
+import lombok.Value;
+
+/**
+ * Published when a group or its members were saved or the group was deleted.
+ */
+@Value
+// @Value automatically makes all fields `private final` which CheckStyle and PMD don't see
+@SuppressWarnings({ "checkstyle:VisibilityModifier", "PMD.DefaultPackage" })
+public class GroupChangedEvent {
+
+    /**
+     * Id of the changed group.
+     */
+    long groupId;
+}
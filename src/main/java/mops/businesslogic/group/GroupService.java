@@ -56,6 +56,16 @@ public interface GroupService {
      */
     Group getGroup(long groupId) throws MopsException;
 
+    /**
+     * Get the role of a user in a group without loading the group and its members.
+     *
+     * @param groupId  group id
+     * @param userName name of the user
+     * @return role in group, {@link Group#NO_MEMBER_ROLE} if the user is no member
+     * @throws MopsException on error
+     */
+    String getMemberRole(long groupId, String userName) throws MopsException;
+
     /**
      * Get a group by its group uuid.
      *
@@ -8,7 +8,9 @@ import mops.exception.MopsException;
 import mops.persistence.GroupRepository;
 import mops.persistence.group.Group;
 import mops.persistence.permission.DirectoryPermissions;
+import mops.util.RequestCache;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.relational.core.conversion.DbActionExecutionException;
 import org.springframework.stereotype.Service;
@@ -27,6 +29,10 @@ public class GroupServiceImpl implements GroupService {
      * Access to our Group Database.
      */
     private final GroupRepository groupRepository;
+    /**
+     * Announces changed groups, e.g. to cached roles.
+     */
+    private final ApplicationEventPublisher eventPublisher;
     /**
      * Represents the role of an admin.
      */
@@ -97,7 +103,7 @@ public class GroupServiceImpl implements GroupService {
     @SuppressWarnings("PMD.LawOfDemeter")
     public Group getGroup(long groupId) throws MopsException {
         try {
-            return groupRepository.findById(groupId).orElseThrow();
+            return RequestCache.get(Group.class, groupId, () -> groupRepository.findById(groupId).orElseThrow());
         } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException
                 | NoSuchElementException e) {
             log.error("Failed to retrieve group with id '{}':", groupId, e);
@@ -106,6 +112,21 @@ public class GroupServiceImpl implements GroupService {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public String getMemberRole(long groupId, String userName) throws MopsException {
+        try {
+            return groupRepository.findMemberRole(groupId, userName).orElse(Group.NO_MEMBER_ROLE);
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to retrieve role of user '{}' in group with id '{}':", userName, groupId, e);
+            throw new DatabaseException(
+                    "Die Rolle in der Gruppe konnte nicht geladen werden, bitte versuchen sie es später nochmal!", e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -127,12 +148,18 @@ public class GroupServiceImpl implements GroupService {
     @Override
     @SuppressWarnings("PMD.LawOfDemeter")
     public Group saveGroup(Group group) throws MopsException {
+        Group savedGroup;
         try {
-            return groupRepository.save(group);
+            savedGroup = groupRepository.save(group);
         } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
             log.error("Failed to save group '{}' with group uuid '{}':", group.getName(), group.getGroupId(), e);
             throw new DatabaseException("Die Gruppe konnte nicht gespeichert werden!", e);
+        } finally {
+            // the instance may have been changed, even if saving it failed
+            RequestCache.evict(Group.class, group.getId());
         }
+        eventPublisher.publishEvent(new GroupChangedEvent(savedGroup.getId()));
+        return savedGroup;
     }
 
     /**
@@ -141,12 +168,14 @@ public class GroupServiceImpl implements GroupService {
     @Override
     @SuppressWarnings("PMD.LawOfDemeter")
     public void deleteGroup(long groupId) throws MopsException {
+        RequestCache.evict(Group.class, groupId);
         try {
             groupRepository.deleteById(groupId);
         } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
             log.error("Failed to delete group with id '{}':", groupId, e);
             throw new DatabaseException("Die Gruppe konnte nicht gelöscht werden!", e);
         }
+        eventPublisher.publishEvent(new GroupChangedEvent(groupId));
     }
 
     /**
@@ -5,6 +5,9 @@ import mops.persistence.directory.Directory;
 import mops.persistence.permission.DirectoryPermissions;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Handles directory permissions.
  */
@@ -20,6 +23,15 @@ public interface PermissionService {
      */
     DirectoryPermissions getPermissions(Directory directory) throws MopsException;
 
+    /**
+     * Get several permissions with a single query.
+     *
+     * @param permissionIds ids of the directory permissions
+     * @return directory permissions by their id
+     * @throws MopsException on error, especially if one of them does not exist
+     */
+    Map<Long, DirectoryPermissions> getPermissions(Collection<Long> permissionIds) throws MopsException;
+
     /**
      * Save permissions of directory.
      *
@@ -35,4 +47,11 @@ public interface PermissionService {
      * @param directory directory of the permission to delete
      */
     void deletePermissions(Directory directory) throws MopsException;
+
+    /**
+     * Deletes those of the given permissions which are no longer used by any directory.
+     *
+     * @param permissionIds ids of the permissions
+     */
+    void deleteUnusedPermissions(Collection<Long> permissionIds) throws MopsException;
 }
@@ -7,10 +7,15 @@ import mops.exception.MopsException;
 import mops.persistence.DirectoryPermissionsRepository;
 import mops.persistence.directory.Directory;
 import mops.persistence.permission.DirectoryPermissions;
+import mops.util.RequestCache;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.relational.core.conversion.DbActionExecutionException;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
@@ -25,6 +30,10 @@ public class PermissionServiceImpl implements PermissionService {
      * Permissions repository.
      */
     private final DirectoryPermissionsRepository permissionsRepository;
+    /**
+     * Announces changed permissions, e.g. to cached permissions.
+     */
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * {@inheritDoc}
@@ -34,7 +43,8 @@ public class PermissionServiceImpl implements PermissionService {
     public DirectoryPermissions getPermissions(Directory directory) throws MopsException {
         long id = directory.getPermissionsId();
         try {
-            return permissionsRepository.findById(id).orElseThrow();
+            return RequestCache.get(DirectoryPermissions.class, id,
+                    () -> permissionsRepository.findById(id).orElseThrow());
         } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException
                 | NoSuchElementException e) {
             log.error("Failed to retrieve directory permissions with id '{}' for directory with id '{}' and name '{}':",
@@ -49,13 +59,41 @@ public class PermissionServiceImpl implements PermissionService {
      * {@inheritDoc}
      */
     @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public Map<Long, DirectoryPermissions> getPermissions(Collection<Long> permissionIds) throws MopsException {
+        Map<Long, DirectoryPermissions> permissions = new HashMap<>();
+        try {
+            permissionsRepository.findAllById(permissionIds)
+                    .forEach(permission -> permissions.put(permission.getId(), permission));
+        } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+            log.error("Failed to retrieve directory permissions with ids {}:", permissionIds, e);
+            throw new DatabaseException("Die Ordnerberechtigungen konnten nicht geladen werden.", e);
+        }
+        if (!permissions.keySet().containsAll(permissionIds)) {
+            log.error("Some of the directory permissions with ids {} do not exist.", permissionIds);
+            throw new DatabaseException("Die Ordnerberechtigungen konnten nicht gefunden werden.");
+        }
+        return permissions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
     public DirectoryPermissions savePermissions(DirectoryPermissions permissions) throws MopsException {
+        DirectoryPermissions savedPermissions;
         try {
-            return permissionsRepository.save(permissions);
+            savedPermissions = permissionsRepository.save(permissions);
         } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
             log.error("Failed to save directory permissions '{}' to database:", permissions, e);
             throw new DatabaseException("Die Ordnerberechtigungen konnten nicht gespeichert werden!", e);
+        } finally {
+            // the instance may have been changed, even if saving it failed
+            RequestCache.evict(DirectoryPermissions.class, permissions.getId());
         }
+        eventPublisher.publishEvent(new PermissionsChangedEvent(savedPermissions.getId()));
+        return savedPermissions;
     }
 
     /**
@@ -64,6 +102,7 @@ public class PermissionServiceImpl implements PermissionService {
     @Override
     public void deletePermissions(Directory directory) throws MopsException {
         long id = directory.getPermissionsId();
+        RequestCache.evict(DirectoryPermissions.class, id);
         try {
             permissionsRepository.deleteById(id);
         } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
@@ -72,5 +111,26 @@ public class PermissionServiceImpl implements PermissionService {
                     directory.getName());
             throw new DatabaseException(message, e);
         }
+        eventPublisher.publishEvent(new PermissionsChangedEvent(id));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteUnusedPermissions(Collection<Long> permissionIds) throws MopsException {
+        // an empty IN list is no valid SQL
+        if (!permissionIds.isEmpty()) {
+            permissionIds.forEach(id -> RequestCache.evict(DirectoryPermissions.class, id));
+            try {
+                permissionsRepository.deleteUnusedEntries(permissionIds);
+                int deleted = permissionsRepository.deleteUnused(permissionIds);
+                log.debug("Deleted {} unused directory permissions.", deleted);
+            } catch (DataAccessException | IllegalArgumentException | DbActionExecutionException e) {
+                log.error("Failed to delete unused directory permissions with ids {}:", permissionIds, e);
+                throw new DatabaseException("Die Ordnerberechtigungen konnten nicht gelöscht werden.", e);
+            }
+            permissionIds.forEach(id -> eventPublisher.publishEvent(new PermissionsChangedEvent(id)));
+        }
     }
 }
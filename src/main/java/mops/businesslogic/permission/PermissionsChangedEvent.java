@@ -0,0 +1,17 @@
+package mops.businesslogic.permission;
+
+import lombok.Value;
+
+/**
+ * Published when directory permissions were saved or deleted.
+ */
+@Value
+// @Value automatically makes all fields `private final` which CheckStyle and PMD don't see
+@SuppressWarnings({ "checkstyle:VisibilityModifier", "PMD.DefaultPackage" })
+public class PermissionsChangedEvent {
+
+    /**
+     * Id of the changed permissions.
+     */
+    long permissionsId;
+}
@@ -0,0 +1,263 @@
+package mops.businesslogic.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.group.GroupChangedEvent;
+import mops.businesslogic.permission.PermissionsChangedEvent;
+import mops.exception.MopsException;
+import mops.persistence.permission.DirectoryPermissions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node local cache of the roles of users in groups and of directory permissions.
+ * Entries are bounded in number, expire after a while and are invalidated when a group or
+ * permissions are saved or deleted. Changes made on other instances are seen once the entries expire.
+ */
+@Slf4j
+@Component
+@SuppressWarnings("PMD.BeanMembersShouldSerialize")
+class PermissionCache {
+
+    /**
+     * Prefix of all cache metrics.
+     */
+    private static final String METRIC_PREFIX = "mops.material1.permissions.cache.";
+
+    /**
+     * Roles of users in groups.
+     */
+    private final Cache<RoleKey, String> roles;
+    /**
+     * Directory permissions by their id.
+     */
+    private final Cache<Long, DirectoryPermissions> permissions;
+    /**
+     * Counts invalidations, values loaded before an invalidation are not cached.
+     * It is incremented before the entries are removed.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates the cache from the configuration.
+     *
+     * @param enabled       whether roles and permissions should be cached
+     * @param maxSize       maximum number of entries per cache
+     * @param ttl           time after which entries expire
+     * @param meterRegistry registry for the cache metrics
+     */
+    @Autowired
+    PermissionCache(@Value("${material1.mops.configuration.permission-cache.enabled}") boolean enabled,
+                    @Value("${material1.mops.configuration.permission-cache.max-size}") long maxSize,
+                    @Value("${material1.mops.configuration.permission-cache.ttl}") Duration ttl,
+                    MeterRegistry meterRegistry) {
+        this(enabled ? maxSize : 0L, ttl, meterRegistry);
+    }
+
+    /**
+     * Creates the cache.
+     *
+     * @param maxSize       maximum number of entries per cache, 0 disables caching
+     * @param ttl           time after which entries expire
+     * @param meterRegistry registry for the cache metrics
+     */
+    PermissionCache(long maxSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.roles = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.permissions = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        registerMetrics(meterRegistry, "roles", roles);
+        registerMetrics(meterRegistry, "permissions", permissions);
+    }
+
+    /**
+     * Gets the role of a user in a group.
+     *
+     * @param groupId  group id
+     * @param userName name of the user
+     * @param loader   loads the role if it is not cached
+     * @return role of the user
+     * @throws MopsException if the role could not be loaded
+     */
+    String getRole(long groupId, String userName, Loader<String> loader) throws MopsException {
+        return get(roles, new RoleKey(groupId, userName), loader);
+    }
+
+    /**
+     * Gets directory permissions.
+     *
+     * @param permissionsId id of the permissions
+     * @param loader        loads the permissions if they are not cached
+     * @return directory permissions, must not be changed
+     * @throws MopsException if the permissions could not be loaded
+     */
+    DirectoryPermissions getPermissions(long permissionsId, Loader<DirectoryPermissions> loader)
+            throws MopsException {
+        return get(permissions, permissionsId, loader);
+    }
+
+    /**
+     * Removes the roles of all members of a changed group right away, so that the changing
+     * transaction does not see the old roles.
+     *
+     * @param event changed group
+     */
+    @EventListener
+    public void onGroupChanged(GroupChangedEvent event) {
+        invalidateRoles(event.getGroupId());
+    }
+
+    /**
+     * Removes the roles of all members of a changed group again after the commit, as other
+     * requests may have cached the old roles meanwhile.
+     *
+     * @param event changed group
+     */
+    @TransactionalEventListener
+    public void afterGroupChangeCommitted(GroupChangedEvent event) {
+        invalidateRoles(event.getGroupId());
+    }
+
+    /**
+     * Removes changed directory permissions right away.
+     *
+     * @param event changed permissions
+     */
+    @EventListener
+    public void onPermissionsChanged(PermissionsChangedEvent event) {
+        invalidatePermissions(event.getPermissionsId());
+    }
+
+    /**
+     * Removes changed directory permissions again after the commit.
+     *
+     * @param event changed permissions
+     */
+    @TransactionalEventListener
+    public void afterPermissionsChangeCommitted(PermissionsChangedEvent event) {
+        invalidatePermissions(event.getPermissionsId());
+    }
+
+    /**
+     * Removes the roles of all members of a group.
+     *
+     * @param groupId group id
+     */
+    private void invalidateRoles(long groupId) {
+        generation.incrementAndGet();
+        roles.asMap().keySet().removeIf(key -> key.getGroupId() == groupId);
+        log.trace("Invalidated cached roles of group {}.", groupId);
+    }
+
+    /**
+     * Removes directory permissions.
+     *
+     * @param permissionsId id of the permissions
+     */
+    private void invalidatePermissions(long permissionsId) {
+        generation.incrementAndGet();
+        permissions.invalidate(permissionsId);
+        log.trace("Invalidated cached directory permissions {}.", permissionsId);
+    }
+
+    /**
+     * Gets a cached value or loads and caches it.
+     *
+     * @param cache  cache to use
+     * @param key    key of the value
+     * @param loader loads the value if it is not cached
+     * @param <K>    type of the key
+     * @param <V>    type of the value
+     * @return cached or loaded value
+     * @throws MopsException if the value could not be loaded
+     */
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    private <K, V> V get(Cache<K, V> cache, K key, Loader<V> loader) throws MopsException {
+        V value = cache.getIfPresent(key);
+        if (value == null) {
+            long loadedGeneration = generation.get();
+            value = loader.load();
+            // the value may be outdated if something changed while it was loaded
+            if (loadedGeneration == generation.get()) {
+                cache.put(key, value);
+                // an invalidation between the check and the put would otherwise miss the new entry
+                if (loadedGeneration != generation.get()) {
+                    cache.invalidate(key);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Registers hit and miss counters and the size of a cache.
+     *
+     * @param meterRegistry registry for the cache metrics
+     * @param name          name of the cache
+     * @param cache         cache to observe
+     */
+    private static void registerMetrics(MeterRegistry meterRegistry, String name, Cache<?, ?> cache) {
+        FunctionCounter.builder(METRIC_PREFIX + "hits", cache, c -> c.stats().hitCount())
+                .description("Lookups answered by the permission cache")
+                .tag("cache", name)
+                .register(meterRegistry);
+        FunctionCounter.builder(METRIC_PREFIX + "misses", cache, c -> c.stats().missCount())
+                .description("Lookups that had to be loaded from the database")
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "size", cache, Cache::size)
+                .description("Number of cached entries")
+                .tag("cache", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads a value that is not cached.
+     *
+     * @param <V> type of the value
+     */
+    @FunctionalInterface
+    interface Loader<V> {
+
+        /**
+         * Loads the value.
+         *
+         * @return loaded value, never null
+         * @throws MopsException on error
+         */
+        V load() throws MopsException;
+    }
+
+    /**
+     * Identifies the role of a user in a group.
+     */
+    @Data
+    private static final class RoleKey {
+
+        /**
+         * Group id.
+         */
+        private final long groupId;
+        /**
+         * Name of the user.
+         */
+        private final String userName;
+    }
+}
@@ -11,11 +11,12 @@ import org.springframework.stereotype.Service;
 public interface SecurityService {
 
     /**
-     * Gets all 3 permissions of a user in a directory.
+     * Gets all 3 permissions of a user in a directory. Missing permissions are no error.
      *
      * @param account   user credentials
      * @param directory the directory
      * @return a permission flag object
+     * @throws MopsException if the permissions or the role could not be loaded
      */
     UserPermission getPermissionsOfUser(Account account, Directory directory) throws MopsException;
 
@@ -9,7 +9,6 @@ import mops.businesslogic.group.GroupService;
 import mops.businesslogic.permission.PermissionService;
 import mops.exception.MopsException;
 import mops.persistence.directory.Directory;
-import mops.persistence.group.Group;
 import mops.persistence.permission.DirectoryPermissions;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -30,6 +29,10 @@ public class SecurityServiceImpl implements SecurityService {
      * Handles directory permissions.
      */
     private final PermissionService permissionService;
+    /**
+     * Caches roles and permissions.
+     */
+    private final PermissionCache permissionCache;
 
     /**
      * Represents the role of an admin.
@@ -48,38 +51,11 @@ public class SecurityServiceImpl implements SecurityService {
      * {@inheritDoc}
      */
     @Override
-    //this is normal behaviour
-    @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.CyclomaticComplexity", "PMD.PrematureDeclaration" })
+    @SuppressWarnings("PMD.LawOfDemeter")
     public UserPermission getPermissionsOfUser(Account account, Directory directory) throws MopsException {
-        boolean write = true;
-        boolean read = true;
-        boolean delete = true;
-
-        try {
-            checkWritePermission(account, directory);
-        } catch (WriteAccessPermissionException e) {
-            write = false;
-        } catch (MopsException e) {
-            throw new MopsException("Keine Berechtigungsprüfung auf Schreiben möglich", e);
-        }
-
-        try {
-            checkReadPermission(account, directory);
-        } catch (ReadAccessPermissionException e) {
-            read = false;
-        } catch (MopsException e) {
-            throw new MopsException("Keine Berechtigungsprüfung auf Lesen möglich", e);
-        }
-
-        try {
-            checkDeletePermission(account, directory);
-        } catch (DeleteAccessPermissionException e) {
-            delete = false;
-        } catch (MopsException e) {
-            throw new MopsException("Keine Berechtigungsprüfung auf Löschen möglich", e);
-        }
-
-        return new UserPermission(read, write, delete);
+        DirectoryPermissions permissions = getPermissions(directory);
+        String userRole = getUserRole(directory.getGroupOwner(), account);
+        return UserPermission.of(permissions, userRole);
     }
 
     /**
@@ -88,13 +64,7 @@ public class SecurityServiceImpl implements SecurityService {
     @Override
     @SuppressWarnings("PMD.LawOfDemeter")
     public void checkWritePermission(Account account, Directory directory) throws MopsException {
-        DirectoryPermissions permissions = permissionService.getPermissions(directory);
-        String userRole = getUserRole(directory.getGroupOwner(), account);
-
-        //this is not a violation of demeter's law
-        boolean allowedToWrite = permissions.isAllowedToWrite(userRole);
-
-        if (!allowedToWrite) {
+        if (!getPermissionsOfUser(account, directory).isWrite()) {
             log.debug("The user '{}' has no write permissions in '{}' .",
                     account.getName(),
                     directory.getName());
@@ -111,13 +81,7 @@ public class SecurityServiceImpl implements SecurityService {
     @Override
     @SuppressWarnings("PMD.LawOfDemeter")
     public void checkReadPermission(Account account, Directory directory) throws MopsException {
-        DirectoryPermissions permissions = permissionService.getPermissions(directory);
-        String userRole = getUserRole(directory.getGroupOwner(), account);
-
-        //this is not a violation of demeter's law
-        boolean allowedToRead = permissions.isAllowedToRead(userRole);
-
-        if (!allowedToRead) {
+        if (!getPermissionsOfUser(account, directory).isRead()) {
             log.debug("The user '{}' has no read permissions in '{}' .",
                     account.getName(),
                     directory.getName());
@@ -126,7 +90,6 @@ public class SecurityServiceImpl implements SecurityService {
                             account.getName(),
                             directory.getName()));
         }
-
     }
 
     /**
@@ -135,13 +98,7 @@ public class SecurityServiceImpl implements SecurityService {
     @Override
     @SuppressWarnings("PMD.LawOfDemeter")
     public void checkDeletePermission(Account account, Directory directory) throws MopsException {
-        DirectoryPermissions permissions = permissionService.getPermissions(directory);
-        String userRole = getUserRole(directory.getGroupOwner(), account);
-
-        //this is not a violation of demeter's law
-        boolean allowedToDelete = permissions.isAllowedToDelete(userRole);
-
-        if (!allowedToDelete) {
+        if (!getPermissionsOfUser(account, directory).isDelete()) {
             log.debug("The user '{}' has no delete permissions in '{}' .",
                     account.getName(),
                     directory.getName());
@@ -156,13 +113,9 @@ public class SecurityServiceImpl implements SecurityService {
      * {@inheritDoc}
      */
     @Override
-    @SuppressWarnings("PMD.OnlyOneReturn")
     public boolean isUserAdmin(Account account, long groupId) throws MopsException {
         try {
-            checkIfRole(account, groupId, adminRole);
-            return true;
-        } catch (WriteAccessPermissionException e) {
-            return false;
+            return adminRole.equals(getUserRole(groupId, account));
         } catch (MopsException e) {
             throw new MopsException("Keine Rollenprüfung auf admin möglich.", e);
         }
@@ -198,7 +151,20 @@ public class SecurityServiceImpl implements SecurityService {
             return adminRole;
         }
 
-        Group group = groupService.getGroup(groupId);
-        return group.getMemberRole(account.getName());
+        return permissionCache.getRole(groupId, account.getName(),
+                () -> groupService.getMemberRole(groupId, account.getName()));
+    }
+
+    /**
+     * Gets the permissions of a directory.
+     *
+     * @param directory directory
+     * @return permissions of the directory, must not be changed
+     * @throws MopsException on error
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private DirectoryPermissions getPermissions(Directory directory) throws MopsException {
+        return permissionCache.getPermissions(directory.getPermissionsId(),
+                () -> permissionService.getPermissions(directory));
     }
 }
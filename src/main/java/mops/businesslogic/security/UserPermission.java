@@ -1,6 +1,7 @@
 package mops.businesslogic.security;
 
 import lombok.Value;
+import mops.persistence.permission.DirectoryPermissions;
 
 /**
  * Wrapper for permission of one user in one directory.
@@ -23,4 +24,18 @@ public class UserPermission {
      */
     boolean delete;
 
+    /**
+     * Evaluates the permissions of a role in a directory.
+     *
+     * @param permissions permissions of the directory
+     * @param userRole    role of the user in the group of the directory
+     * @return user permissions
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public static UserPermission of(DirectoryPermissions permissions, String userRole) {
+        int mask = permissions.getPermissionMask(userRole);
+        return new UserPermission((mask & DirectoryPermissions.READ) != 0,
+                (mask & DirectoryPermissions.WRITE) != 0,
+                (mask & DirectoryPermissions.DELETE) != 0);
+    }
 }
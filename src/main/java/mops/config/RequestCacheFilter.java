@@ -0,0 +1,39 @@
+package mops.config;
+
+import lombok.extern.slf4j.Slf4j;
+import mops.util.RequestCache;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Keeps loaded directories, groups and permissions for the duration of a request
+ * and logs how many of them were loaded. Other queries are not counted.
+ */
+@Slf4j
+@Component
+public class RequestCacheFilter extends OncePerRequestFilter {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try (RequestCache cache = RequestCache.start()) {
+            chain.doFilter(request, response);
+            log.debug("{} {}: {} aggregate loads (directories, groups, permissions; other SQL queries are "
+                            + "not counted), {} request cache hits.",
+                    request.getMethod(),
+                    request.getRequestURI(),
+                    cache.getLoads(),
+                    cache.getHits());
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package mops.persistence;
+
+import com.google.common.io.ByteStreams;
+import lombok.extern.slf4j.Slf4j;
+import mops.persistence.exception.StorageException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Serves file content of another repository from the node local cache.
+ */
+@Slf4j
+class CachingFileRepository implements FileRepository {
+
+    /**
+     * Repository which actually stores the files.
+     */
+    private final transient FileRepository delegate;
+
+    /**
+     * Local cache of the file content.
+     */
+    private final transient FileContentCache cache;
+
+    /**
+     * Creates the caching repository.
+     *
+     * @param delegate repository which actually stores the files
+     * @param cache    local cache of the file content
+     */
+    CachingFileRepository(FileRepository delegate, FileContentCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveFile(InputStream stream, long size, String type, long fileId) throws StorageException {
+        delegate.saveFile(stream, size, type, fileId);
+        cache.invalidate(fileId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteFile(long fileId) throws StorageException {
+        cache.invalidate(fileId);
+        delegate.deleteFile(fileId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteFiles(Collection<Long> fileIds) throws StorageException {
+        fileIds.forEach(cache::invalidate);
+        delegate.deleteFiles(fileIds);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cached content is read from the local disk.
+     */
+    @Override
+    @SuppressWarnings({ "PMD.OnlyOneReturn", "PMD.CloseResource" }) // stream is closed by caller
+    public InputStream getFileContent(long fileId) throws StorageException {
+        FileChannel cached = cache.open(fileId);
+        if (cached != null) {
+            return Channels.newInputStream(cached);
+        }
+        return cache.cacheThrough(fileId, delegate.getFileContent(fileId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings({ "PMD.OnlyOneReturn", "PMD.CloseResource" }) // stream is closed by caller
+    public InputStream getFileContent(long fileId, long offset, long length) throws StorageException {
+        FileChannel cached = cache.open(fileId);
+        if (cached == null) {
+            return delegate.getFileContent(fileId, offset, length);
+        }
+
+        try {
+            return ByteStreams.limit(Channels.newInputStream(cached.position(offset)), length);
+        } catch (IOException e) {
+            closeQuietly(cached);
+            log.error("Failed to read cached content range {}+{} of file with id {}:", offset, length, fileId, e);
+            throw new StorageException("Fehler beim Zugriff auf den Inhalt der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cached content is transferred with {@link FileChannel#transferTo}, so it does not pass through the heap.
+     */
+    @Override
+    @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.LawOfDemeter" })
+    public void transferFileContent(long fileId, long offset, long length, WritableByteChannel target)
+            throws StorageException {
+        try (FileChannel cached = cache.open(fileId)) {
+            if (cached != null) {
+                long position = offset;
+                long end = Math.min(offset + length, cached.size());
+                while (position < end) {
+                    position += cached.transferTo(position, end - position, target);
+                }
+            } else if (offset == 0) {
+                // the whole content is streamed so that it ends up in the cache
+                try (InputStream stream = cache.cacheThrough(fileId, delegate.getFileContent(fileId))) {
+                    ByteStreams.limit(stream, length).transferTo(Channels.newOutputStream(target));
+                    // reaching the end of the stream marks the cached content as complete
+                    if (stream.read() != -1) {
+                        log.debug("Only a part of file {} was transferred, it won't be cached.", fileId);
+                    }
+                }
+            } else {
+                delegate.transferFileContent(fileId, offset, length, target);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to transfer content of file with id {}:", fileId, e);
+            throw new StorageException("Fehler beim Übertragen des Inhalts der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveStagedFile(String stagingId, InputStream stream, long size, String type)
+            throws StorageException {
+        delegate.saveStagedFile(stagingId, stream, size, type);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getStagedFileContent(String stagingId) throws StorageException {
+        return delegate.getStagedFileContent(stagingId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void promoteStagedFile(String stagingId, long fileId) throws StorageException {
+        delegate.promoteStagedFile(stagingId, fileId);
+        cache.invalidate(fileId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteStagedFile(String stagingId) throws StorageException {
+        delegate.deleteStagedFile(stagingId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteStagedFilesBefore(Instant time) throws StorageException {
+        return delegate.deleteStagedFilesBefore(time);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveChunk(long sessionId, int chunkNumber, InputStream stream, long size) throws StorageException {
+        delegate.saveChunk(sessionId, chunkNumber, stream, size);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void composeChunks(long sessionId, int chunkCount, String type, String stagingId)
+            throws StorageException {
+        delegate.composeChunks(sessionId, chunkCount, type, stagingId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteChunks(long sessionId) throws StorageException {
+        delegate.deleteChunks(sessionId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Long> getChunkSessionIds() throws StorageException {
+        return delegate.getChunkSessionIds();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Archives are downloaded once, so they are not cached.
+     */
+    @Override
+    public void saveExport(long exportId, InputStream stream, long size) throws StorageException {
+        delegate.saveExport(exportId, stream, size);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getExportContent(long exportId) throws StorageException {
+        return delegate.getExportContent(exportId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteExport(long exportId) throws StorageException {
+        delegate.deleteExport(exportId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean fileExist(long fileId) throws StorageException {
+        return delegate.fileExist(fileId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Long> getAllIds() throws StorageException {
+        return delegate.getAllIds();
+    }
+
+    /**
+     * Closes a channel and only logs errors.
+     *
+     * @param channel channel to close
+     */
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close cached file:", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
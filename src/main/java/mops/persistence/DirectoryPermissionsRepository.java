@@ -2,13 +2,41 @@ package mops.persistence;
 
 import mops.persistence.permission.DirectoryPermissions;
 import mops.util.AggregateBuilder;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+
 /**
  * Database connection for directory permissions.
  */
 @Repository
 @AggregateBuilder
 public interface DirectoryPermissionsRepository extends CrudRepository<DirectoryPermissions, Long> {
+
+    /**
+     * Deletes the entries of permissions which are no longer used by any directory.
+     *
+     * @param permissionIds ids of the permissions
+     */
+    @Modifying
+    @Query("DELETE FROM directory_permission_entry WHERE permissions_id IN (:permissionIds) "
+            + "AND NOT EXISTS (SELECT id FROM directory "
+            + "WHERE directory.permissions_id = directory_permission_entry.permissions_id)")
+    void deleteUnusedEntries(@Param("permissionIds") Collection<Long> permissionIds);
+
+    /**
+     * Deletes permissions which are no longer used by any directory, their entries have to be deleted before.
+     *
+     * @param permissionIds ids of the permissions
+     * @return number of deleted permissions
+     */
+    @Modifying
+    @Query("DELETE FROM directory_permissions WHERE id IN (:permissionIds) "
+            + "AND NOT EXISTS (SELECT id FROM directory "
+            + "WHERE directory.permissions_id = directory_permissions.id)")
+    int deleteUnused(@Param("permissionIds") Collection<Long> permissionIds);
 }
@@ -2,11 +2,13 @@ package mops.persistence;
 
 import mops.persistence.directory.Directory;
 import mops.util.AggregateBuilder;
+import org.springframework.data.jdbc.repository.query.Modifying;
 import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,6 +28,51 @@ public interface DirectoryRepository extends CrudRepository<Directory, Long> {
     @Query("SELECT * FROM directory WHERE parent_id = :parentId")
     List<Directory> getAllSubFoldersOfParent(@Param("parentId") long parentId);
 
+    /**
+     * Gets a folder and all folders above it in a single query.
+     *
+     * @param dirId the id of the folder
+     * @return the path from the root folder down to the folder, empty if it doesn't exist
+     */
+    @Query("WITH RECURSIVE ancestor (id, name, parent_id, group_owner, permissions_id, creation_time, "
+            + "last_modified_time, depth) AS ("
+            + "SELECT id, name, parent_id, group_owner, permissions_id, creation_time, last_modified_time, 0 "
+            + "FROM directory WHERE id = :dirId "
+            + "UNION ALL "
+            + "SELECT d.id, d.name, d.parent_id, d.group_owner, d.permissions_id, d.creation_time, "
+            + "d.last_modified_time, a.depth + 1 "
+            + "FROM directory d JOIN ancestor a ON d.id = a.parent_id) "
+            + "SELECT id, name, parent_id, group_owner, permissions_id, creation_time, last_modified_time "
+            + "FROM ancestor ORDER BY depth DESC")
+    List<Directory> getAncestors(@Param("dirId") long dirId);
+
+    /**
+     * Gets a folder and all folders below it in a single query.
+     *
+     * @param dirId the id of the folder
+     * @return the folder followed by its sub folders level by level, so parents come before their sub folders
+     */
+    @Query("WITH RECURSIVE descendant (id, name, parent_id, group_owner, permissions_id, creation_time, "
+            + "last_modified_time, depth) AS ("
+            + "SELECT id, name, parent_id, group_owner, permissions_id, creation_time, last_modified_time, 0 "
+            + "FROM directory WHERE id = :dirId "
+            + "UNION ALL "
+            + "SELECT d.id, d.name, d.parent_id, d.group_owner, d.permissions_id, d.creation_time, "
+            + "d.last_modified_time, s.depth + 1 "
+            + "FROM directory d JOIN descendant s ON d.parent_id = s.id) "
+            + "SELECT id, name, parent_id, group_owner, permissions_id, creation_time, last_modified_time "
+            + "FROM descendant ORDER BY depth, id")
+    List<Directory> getSubTree(@Param("dirId") long dirId);
+
+    /**
+     * Gets all folders of a group.
+     *
+     * @param groupId the group id
+     * @return all folders owned by the group
+     */
+    @Query("SELECT * FROM directory WHERE group_owner = :groupId")
+    List<Directory> getAllFoldersInGroup(@Param("groupId") long groupId);
+
     /**
      * Gets folder count in a group.
      *
@@ -51,4 +98,14 @@ public interface DirectoryRepository extends CrudRepository<Directory, Long> {
      */
     @Query("SELECT * FROM directory WHERE parent_id IS NULL")
     List<Directory> getAllRootDirectories();
+
+    /**
+     * Deletes several directories, their sub folders and files have to be deleted before.
+     *
+     * @param dirIds directory ids
+     * @return number of deleted directories
+     */
+    @Modifying
+    @Query("DELETE FROM directory WHERE id IN (:dirIds)")
+    int deleteAllByIds(@Param("dirIds") Collection<Long> dirIds);
 }
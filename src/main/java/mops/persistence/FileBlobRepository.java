@@ -0,0 +1,117 @@
+package mops.persistence;
+
+import mops.persistence.blob.FileBlob;
+import mops.util.AggregateBuilder;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Database connection for stored file content and its reference counts.
+ */
+@Repository
+@AggregateBuilder
+public interface FileBlobRepository extends CrudRepository<FileBlob, Long> {
+
+    /**
+     * Finds stored content by its hash.
+     *
+     * @param hash SHA-256 hash of the content
+     * @return the stored content if there is any
+     */
+    @Query("SELECT * FROM file_blob WHERE hash = :hash")
+    Optional<FileBlob> findByHash(@Param("hash") String hash);
+
+    /**
+     * Records newly stored content with one reference.
+     *
+     * @param contentId id under which the content is stored
+     * @param hash      SHA-256 hash of the content
+     * @param size      size in bytes
+     * @param encoding  encoding of the stored content, null if it is stored as it is
+     * @throws org.springframework.dao.DuplicateKeyException if content with the hash was recorded concurrently,
+     *                                                       the surrounding transaction stays usable
+     */
+    @Modifying
+    // a savepoint keeps a violated unique constraint from aborting the whole transaction
+    @Transactional(propagation = Propagation.NESTED)
+    @Query("INSERT INTO file_blob (content_id, hash, size, ref_count, encoding) "
+            + "VALUES (:contentId, :hash, :size, 1, :encoding)")
+    void insert(@Param("contentId") long contentId, @Param("hash") String hash, @Param("size") long size,
+                @Param("encoding") String encoding);
+
+    /**
+     * Adds a reference to stored content.
+     *
+     * @param contentId id under which the content is stored
+     * @return number of updated rows, 0 if the content is unknown
+     */
+    @Modifying
+    @Query("UPDATE file_blob SET ref_count = ref_count + 1 WHERE content_id = :contentId")
+    int addReference(@Param("contentId") long contentId);
+
+    /**
+     * Removes a reference from stored content.
+     *
+     * @param contentId id under which the content is stored
+     * @return number of updated rows, 0 if the content is unknown
+     */
+    @Modifying
+    @Query("UPDATE file_blob SET ref_count = ref_count - 1 WHERE content_id = :contentId")
+    int removeReference(@Param("contentId") long contentId);
+
+    /**
+     * Removes the references of all files in several directories from their content.
+     *
+     * @param dirIds directory ids
+     * @return number of updated rows
+     */
+    @Modifying
+    @Query("UPDATE file_blob SET ref_count = ref_count - "
+            + "(SELECT COUNT(*) FROM file_info "
+            + "WHERE file_info.content_id = file_blob.content_id "
+            + "AND file_info.content_hash IS NOT NULL AND file_info.directory_id IN (:dirIds)) "
+            + "WHERE content_id IN "
+            + "(SELECT content_id FROM file_info WHERE content_hash IS NOT NULL AND directory_id IN (:dirIds))")
+    int removeReferencesInDirectories(@Param("dirIds") Collection<Long> dirIds);
+
+    /**
+     * Finds content used by files in several directories which is no longer referenced.
+     *
+     * @param dirIds directory ids
+     * @return content ids which may be deleted from the storage
+     */
+    @Query("SELECT DISTINCT file_blob.content_id FROM file_blob "
+            + "INNER JOIN file_info "
+            + "ON file_info.content_id = file_blob.content_id "
+            + "WHERE file_info.content_hash IS NOT NULL AND file_info.directory_id IN (:dirIds) "
+            + "AND file_blob.ref_count <= 0")
+    Set<Long> findUnreferencedInDirectories(@Param("dirIds") Collection<Long> dirIds);
+
+    /**
+     * Removes the record of content which is no longer referenced.
+     *
+     * @param contentId id under which the content is stored
+     * @return number of removed rows, 1 if the content may be deleted from the storage
+     */
+    @Modifying
+    @Query("DELETE FROM file_blob WHERE content_id = :contentId AND ref_count <= 0")
+    int deleteUnreferenced(@Param("contentId") long contentId);
+
+    /**
+     * Removes the records of content regardless of their references.
+     *
+     * @param contentIds ids under which the content is stored
+     */
+    @Modifying
+    @Query("DELETE FROM file_blob WHERE content_id IN (:contentIds)")
+    void deleteAllByContentIds(@Param("contentIds") Collection<Long> contentIds);
+}
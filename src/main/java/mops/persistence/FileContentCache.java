@@ -0,0 +1,516 @@
+package mops.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import lombok.extern.slf4j.Slf4j;
+import mops.persistence.config.FileContentCacheConfig;
+import mops.persistence.exception.StorageException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Node local read-through cache for file content.
+ * Files are stored in a directory on disk, bounded by their total size and
+ * evicted in least recently used order.
+ */
+@Slf4j
+@Component
+// early returns keep the cache checks readable
+@SuppressWarnings({ "PMD.BeanMembersShouldSerialize", "PMD.AvoidSynchronizedAtMethodLevel", "PMD.TooManyMethods",
+        "PMD.OnlyOneReturn" })
+class FileContentCache {
+
+    /**
+     * Prefix of all cache metrics.
+     */
+    private static final String METRIC_PREFIX = "mops.material1.storage.cache.";
+    /**
+     * Initial capacity of the entry map.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+    /**
+     * Load factor of the entry map.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Whether the cache is used at all.
+     */
+    private final boolean enabled;
+    /**
+     * Directory of the cached files.
+     */
+    private final Path directory;
+    /**
+     * Maximum total size in bytes.
+     */
+    private final long maxSize;
+    /**
+     * Maximum size of a single file in bytes.
+     */
+    private final long maxFileSize;
+    /**
+     * Sizes of the cached files in access order, least recently used first.
+     */
+    private final Map<Long, Long> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    /**
+     * Tokens of writes in progress. A write is only committed if it was not invalidated meanwhile.
+     */
+    private final Map<Long, Object> pendingWrites = new HashMap<>();
+    /**
+     * Total size of all cached files in bytes.
+     */
+    private long currentSize;
+    /**
+     * Counts cache hits.
+     */
+    private final Counter hits;
+    /**
+     * Counts cache misses.
+     */
+    private final Counter misses;
+    /**
+     * Counts evicted files.
+     */
+    private final Counter evictions;
+
+    /**
+     * Creates the cache from the configuration.
+     *
+     * @param configuration cache configuration
+     * @param meterRegistry registry for the cache metrics
+     * @throws StorageException if the cache directory cannot be prepared
+     */
+    @Autowired
+    FileContentCache(FileContentCacheConfig configuration, MeterRegistry meterRegistry) throws StorageException {
+        this(configuration.isEnabled(),
+                Path.of(configuration.getDirectory()),
+                configuration.getMaxSize().toBytes(),
+                configuration.getMaxFileSize().toBytes(),
+                meterRegistry);
+    }
+
+    /**
+     * Creates the cache.
+     *
+     * @param enabled       whether content should be cached
+     * @param directory     directory of the cached files
+     * @param maxSize       maximum total size in bytes
+     * @param maxFileSize   maximum size of a single file in bytes
+     * @param meterRegistry registry for the cache metrics
+     * @throws StorageException if the cache directory cannot be prepared
+     */
+    FileContentCache(boolean enabled, Path directory, long maxSize, long maxFileSize,
+                     MeterRegistry meterRegistry) throws StorageException {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxFileSize = maxFileSize;
+        this.hits = Counter.builder(METRIC_PREFIX + "hits")
+                .description("File content served from the local cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder(METRIC_PREFIX + "misses")
+                .description("File content not found in the local cache")
+                .register(meterRegistry);
+        this.evictions = Counter.builder(METRIC_PREFIX + "evictions")
+                .description("Files evicted from the local cache")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "size", this, FileContentCache::getCurrentSize)
+                .description("Total size of the local cache")
+                .baseUnit(BaseUnits.BYTES)
+                .register(meterRegistry);
+
+        if (enabled) {
+            prepareDirectory();
+        }
+    }
+
+    /**
+     * Checks whether content is cached at all.
+     *
+     * @return true if the cache is enabled
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens the cached content of a file.
+     *
+     * @param fileId file id
+     * @return channel on the cached content (must be closed by caller) or null if the file is not cached
+     */
+    @SuppressWarnings("PMD.CloseResource") // channel is closed by caller
+    synchronized FileChannel open(long fileId) {
+        if (!enabled) {
+            return null;
+        }
+        // get instead of containsKey to mark the entry as recently used
+        if (entries.get(fileId) == null) {
+            misses.increment();
+            return null;
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(getPath(fileId), StandardOpenOption.READ);
+            hits.increment();
+            return channel;
+        } catch (IOException e) {
+            log.warn("Failed to open cached content of file {}:", fileId, e);
+            remove(fileId);
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Wraps a stream of the stored file content. Once the stream was read to its end and
+     * closed, the content is added to the cache.
+     *
+     * @param fileId file id
+     * @param source stream of the stored content
+     * @return stream of the same content
+     */
+    @SuppressWarnings("PMD.CloseResource") // stream is closed by caller
+    InputStream cacheThrough(long fileId, InputStream source) {
+        if (!enabled) {
+            return source;
+        }
+
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(directory, fileId + "-", ".tmp");
+            OutputStream cacheStream = Files.newOutputStream(tempFile);
+            Object token = new Object();
+            synchronized (this) {
+                pendingWrites.put(fileId, token);
+            }
+            return new CachingInputStream(source, fileId, token, tempFile, cacheStream);
+        } catch (IOException e) {
+            log.warn("Failed to create cache file for file {}:", fileId, e);
+            deleteQuietly(tempFile);
+            return source;
+        }
+    }
+
+    /**
+     * Removes a file from the cache. Writes of the file which are in progress will be discarded.
+     *
+     * @param fileId file id
+     */
+    synchronized void invalidate(long fileId) {
+        if (enabled) {
+            pendingWrites.remove(fileId);
+            remove(fileId);
+        }
+    }
+
+    /**
+     * Gets the total size of all cached files.
+     *
+     * @return size in bytes
+     */
+    synchronized long getCurrentSize() {
+        return currentSize;
+    }
+
+    /**
+     * Moves a completely written file into the cache and evicts old files if the cache got too large.
+     *
+     * @param fileId   file id
+     * @param token    token of the write
+     * @param tempFile written file
+     * @param size     file size in bytes
+     */
+    private synchronized void commit(long fileId, Object token, Path tempFile, long size) {
+        if (!pendingWrites.remove(fileId, token)) {
+            deleteQuietly(tempFile);
+            return;
+        }
+
+        try {
+            Files.move(tempFile, getPath(fileId), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Failed to add file {} to the cache:", fileId, e);
+            deleteQuietly(tempFile);
+            return;
+        }
+
+        Long previousSize = entries.put(fileId, size);
+        if (previousSize != null) {
+            currentSize -= previousSize;
+        }
+        currentSize += size;
+        evict();
+    }
+
+    /**
+     * Discards an incomplete write.
+     *
+     * @param fileId   file id
+     * @param token    token of the write
+     * @param tempFile written file
+     */
+    private synchronized void discard(long fileId, Object token, Path tempFile) {
+        pendingWrites.remove(fileId, token);
+        deleteQuietly(tempFile);
+    }
+
+    /**
+     * Evicts the least recently used files until the cache fits its size limit.
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void evict() {
+        Iterator<Map.Entry<Long, Long>> iterator = entries.entrySet().iterator();
+        while (currentSize > maxSize && iterator.hasNext()) {
+            Map.Entry<Long, Long> eldest = iterator.next();
+            iterator.remove();
+            currentSize -= eldest.getValue();
+            deleteQuietly(getPath(eldest.getKey()));
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Removes a cached file.
+     *
+     * @param fileId file id
+     */
+    private void remove(long fileId) {
+        Long size = entries.remove(fileId);
+        if (size != null) {
+            currentSize -= size;
+            deleteQuietly(getPath(fileId));
+        }
+    }
+
+    /**
+     * Creates the cache directory and removes left overs of previous runs.
+     *
+     * @throws StorageException on error
+     */
+    private void prepareDirectory() throws StorageException {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(Files::isRegularFile).forEach(this::deleteQuietly);
+            }
+        } catch (IOException e) {
+            log.error("Failed to prepare cache directory '{}':", directory, e);
+            throw new StorageException("Cache-Verzeichnis konnte nicht vorbereitet werden.", e);
+        }
+    }
+
+    /**
+     * Gets the path of a cached file.
+     *
+     * @param fileId file id
+     * @return path in the cache directory
+     */
+    private Path getPath(long fileId) {
+        return directory.resolve(Long.toString(fileId));
+    }
+
+    /**
+     * Deletes a file and only logs errors.
+     *
+     * @param path file to delete (may be null)
+     */
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete cache file '{}':", path, e);
+        }
+    }
+
+    /**
+     * Copies everything that is read into a cache file.
+     */
+    @SuppressWarnings({ "PMD.BeanMembersShouldSerialize", "PMD.NullAssignment" }) // null marks an abandoned write
+    private final class CachingInputStream extends FilterInputStream {
+
+        /**
+         * File id.
+         */
+        private final long fileId;
+        /**
+         * Token of this write.
+         */
+        private final Object token;
+        /**
+         * Cache file.
+         */
+        private final Path tempFile;
+        /**
+         * Stream to the cache file, null once caching was abandoned.
+         */
+        private OutputStream cacheStream;
+        /**
+         * Number of cached bytes.
+         */
+        private long written;
+        /**
+         * Whether the end of the stream was reached.
+         */
+        private boolean complete;
+
+        /**
+         * Creates the stream.
+         *
+         * @param source      stored content
+         * @param fileId      file id
+         * @param token       token of this write
+         * @param tempFile    cache file
+         * @param cacheStream stream to the cache file
+         */
+        private CachingInputStream(InputStream source, long fileId, Object token, Path tempFile,
+                                   OutputStream cacheStream) {
+            super(source);
+            this.fileId = fileId;
+            this.token = token;
+            this.tempFile = tempFile;
+            this.cacheStream = cacheStream;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value == -1) {
+                complete = true;
+            } else {
+                cache(new byte[]{ (byte) value }, 0, 1);
+            }
+            return value;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read == -1) {
+                complete = true;
+            } else {
+                cache(buffer, offset, read);
+            }
+            return read;
+        }
+
+        /**
+         * {@inheritDoc}
+         * Skipped bytes can't be cached, so caching is abandoned.
+         */
+        @Override
+        public long skip(long count) throws IOException {
+            abandon();
+            return super.skip(count);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                finish();
+            }
+        }
+
+        /**
+         * Writes bytes to the cache file.
+         *
+         * @param buffer bytes
+         * @param offset offset in buffer
+         * @param length number of bytes
+         */
+        private void cache(byte[] buffer, int offset, int length) {
+            if (cacheStream == null) {
+                return;
+            }
+            if (written + length > maxFileSize) {
+                abandon();
+                return;
+            }
+            try {
+                cacheStream.write(buffer, offset, length);
+                written += length;
+            } catch (IOException e) {
+                log.warn("Failed to write cache file for file {}:", fileId, e);
+                abandon();
+            }
+        }
+
+        /**
+         * Commits or discards the cache file.
+         */
+        private void finish() {
+            if (cacheStream == null) {
+                return;
+            }
+            try {
+                cacheStream.close();
+            } catch (IOException e) {
+                log.warn("Failed to close cache file for file {}:", fileId, e);
+                complete = false;
+            }
+            cacheStream = null;
+            if (complete) {
+                commit(fileId, token, tempFile, written);
+            } else {
+                discard(fileId, token, tempFile);
+            }
+        }
+
+        /**
+         * Stops caching and discards what was cached so far.
+         */
+        private void abandon() {
+            if (cacheStream == null) {
+                return;
+            }
+            try {
+                cacheStream.close();
+            } catch (IOException e) {
+                log.debug("Failed to close abandoned cache file for file {}:", fileId, e);
+            }
+            cacheStream = null;
+            discard(fileId, token, tempFile);
+        }
+    }
+}
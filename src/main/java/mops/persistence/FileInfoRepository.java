@@ -2,11 +2,13 @@ package mops.persistence;
 
 import mops.persistence.file.FileInfo;
 import mops.util.AggregateBuilder;
+import org.springframework.data.jdbc.repository.query.Modifying;
 import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -26,6 +28,15 @@ public interface FileInfoRepository extends CrudRepository<FileInfo, Long> {
     @Query("SELECT * FROM file_info WHERE directory_id = :dirId")
     List<FileInfo> findAllInDirectory(@Param("dirId") long dirId);
 
+    /**
+     * Gets all files from several directories.
+     *
+     * @param dirIds directory ids
+     * @return a list of files in those directories
+     */
+    @Query("SELECT * FROM file_info WHERE directory_id IN (:dirIds)")
+    List<FileInfo> findAllInDirectories(@Param("dirIds") Collection<Long> dirIds);
+
     /**
      * Counts the total number of bytes used in a group.
      *
@@ -76,4 +87,61 @@ public interface FileInfoRepository extends CrudRepository<FileInfo, Long> {
             + "WHERE directory_id NOT IN "
             + "(SELECT id from directory)")
     Set<Long> findAllOrphansByDirectory();
+
+    /**
+     * Fetches the ids under which the content of all files is stored.
+     *
+     * @return all content ids in use
+     */
+    @Query("SELECT COALESCE(content_id, id) FROM file_info")
+    Set<Long> findAllContentIds();
+
+    /**
+     * Finds all files whose content is stored under one of the given ids.
+     *
+     * @param contentIds content ids
+     * @return ids of the files
+     */
+    @Query("SELECT id FROM file_info WHERE COALESCE(content_id, id) IN (:contentIds)")
+    Set<Long> findAllIdsByContentIds(@Param("contentIds") Collection<Long> contentIds);
+
+    /**
+     * Finds the directories containing files whose content is stored under the given id.
+     *
+     * @param contentId content id
+     * @return ids of the directories
+     */
+    @Query("SELECT DISTINCT directory_id FROM file_info WHERE content_id = :contentId")
+    Set<Long> findDirectoryIdsByContentId(@Param("contentId") long contentId);
+
+    /**
+     * Fetches the content ids of files in several directories which were stored before content
+     * deduplication and are therefore the only users of their content.
+     *
+     * @param dirIds directory ids
+     * @return content ids which may be deleted from the storage with the files
+     */
+    @Query("SELECT COALESCE(content_id, id) FROM file_info "
+            + "WHERE directory_id IN (:dirIds) AND content_hash IS NULL")
+    Set<Long> findUnsharedContentIdsInDirectories(@Param("dirIds") Collection<Long> dirIds);
+
+    /**
+     * Deletes the tags of all files in several directories.
+     *
+     * @param dirIds directory ids
+     */
+    @Modifying
+    @Query("DELETE FROM file_tag WHERE file_id IN "
+            + "(SELECT id FROM file_info WHERE directory_id IN (:dirIds))")
+    void deleteTagsInDirectories(@Param("dirIds") Collection<Long> dirIds);
+
+    /**
+     * Deletes all files in several directories, their tags have to be deleted before.
+     *
+     * @param dirIds directory ids
+     * @return number of deleted files
+     */
+    @Modifying
+    @Query("DELETE FROM file_info WHERE directory_id IN (:dirIds)")
+    int deleteAllInDirectories(@Param("dirIds") Collection<Long> dirIds);
 }
@@ -1,67 +1,22 @@
 package mops.persistence;
 
-import io.minio.*;
-import io.minio.errors.ErrorResponseException;
-import io.minio.errors.MinioException;
-import io.minio.messages.Item;
-import lombok.extern.slf4j.Slf4j;
-import mops.persistence.config.FileRepositoryConfig;
 import mops.persistence.exception.StorageException;
 import mops.util.AggregateBuilder;
-import org.springframework.stereotype.Repository;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.HashSet;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Set;
 
 /**
- * MinIO connection.
+ * Storage of file content. Stored files are addressed by the id of their meta data.
  */
-@Slf4j
-@Repository
 @AggregateBuilder
-public class FileRepository {
-
-    /**
-     * The MinIO client.
-     */
-    private final transient MinioClient minioClient;
-
-    /**
-     * Injected MinIO configuration.
-     */
-    private final transient FileRepositoryConfig configuration;
-
-    /**
-     * Connects to MinIO Server and checks if the bucket exists.
-     *
-     * @param configuration the injected Config.
-     * @throws StorageException on Error
-     */
-    public FileRepository(FileRepositoryConfig configuration) throws StorageException {
-        this.configuration = configuration;
-        this.minioClient = MinioClient.builder()
-                .endpoint(configuration.getHost() + ":" + configuration.getPort())
-                .credentials(configuration.getAccessKey(), configuration.getSecretKey())
-                .build();
-
-        try {
-            if (!minioClient.bucketExists(BucketExistsArgs.builder()
-                    .bucket(configuration.getBucketName())
-                    .build())) {
-                minioClient.makeBucket(MakeBucketArgs.builder()
-                        .bucket(configuration.getBucketName())
-                        .build());
-            }
-        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
-            log.error("Failed to find and create the bucket '{}':", configuration.getBucketName(), e);
-            throw new StorageException("Fehler beim Suchen und Erstellen des Buckets.", e);
-        }
-    }
+public interface FileRepository {
 
     /**
      * Saves a file.
@@ -71,11 +26,10 @@ public class FileRepository {
      * @throws StorageException on Error
      */
     @SuppressWarnings("PMD.LawOfDemeter")
-    public void saveFile(MultipartFile file, long fileId) throws StorageException {
+    default void saveFile(MultipartFile file, long fileId) throws StorageException {
         try (InputStream stream = file.getInputStream()) {
             saveFile(stream, file.getSize(), file.getContentType(), fileId);
-        } catch (IOException | StorageException e) {
-            log.error("Failed so save file '{}' to MinIO server:", file.getName(), e);
+        } catch (IOException e) {
             throw new StorageException("Fehler beim Speichern der Datei.", e);
         }
     }
@@ -89,23 +43,7 @@ public class FileRepository {
      * @param fileId the File ID given by the FileInfo database.
      * @throws StorageException on Error
      */
-    @SuppressWarnings("PMD.LawOfDemeter")
-    public void saveFile(InputStream stream, long size, String type, long fileId) throws StorageException {
-        try {
-            PutObjectArgs.Builder builder = PutObjectArgs.builder()
-                    .bucket(configuration.getBucketName())
-                    .object(String.valueOf(fileId))
-                    .stream(stream, size, -1);
-            if (type != null && !type.isEmpty()) {
-                builder.contentType(type);
-            }
-
-            minioClient.putObject(builder.build());
-        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
-            log.error("Failed so save file '{}' to MinIO server:", fileId, e);
-            throw new StorageException("Fehler beim Speichern der Datei.", e);
-        }
-    }
+    void saveFile(InputStream stream, long size, String type, long fileId) throws StorageException;
 
     /**
      * Deletes a file permanently.
@@ -113,106 +51,200 @@ public class FileRepository {
      * @param fileId the ID of the file that's desired to be deleted.
      * @throws StorageException on error
      */
-    @SuppressWarnings("PMD.LawOfDemeter")
-    public void deleteFile(long fileId) throws StorageException {
-        try {
-            minioClient.removeObject(RemoveObjectArgs.builder()
-                    .bucket(configuration.getBucketName())
-                    .object(String.valueOf(fileId))
-                    .build());
-        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
-            log.error("Failed to delete file with id {} from MinIO Server:", fileId, e);
-            throw new StorageException("Fehler beim Löschen der Datei.", e);
+    void deleteFile(long fileId) throws StorageException;
+
+    /**
+     * Deletes several files permanently. Implementations may remove them in batches.
+     *
+     * @param fileIds the IDs of the files that are desired to be deleted
+     * @throws StorageException on error, the remaining files are still deleted
+     */
+    default void deleteFiles(Collection<Long> fileIds) throws StorageException {
+        StorageException error = null;
+        for (long fileId : fileIds) {
+            try {
+                deleteFile(fileId);
+            } catch (StorageException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
         }
     }
 
     /**
-     * Retrieves the bytes of the file.
+     * Retrieves the content of the file.
+     *
+     * @param fileId the ID of the file that's desired to be returned.
+     * @return file content (must be closed by caller)
+     * @throws StorageException on error
+     */
+    InputStream getFileContent(long fileId) throws StorageException;
+
+    /**
+     * Retrieves a byte range of the file.
      *
      * @param fileId the ID of the file that's desired to be returned.
-     * @return file content as byte array
-     * @throws StorageException on error
-     */
-    @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.LawOfDemeter" })
-    public InputStream getFileContent(long fileId) throws StorageException {
-        try {
-            return minioClient.getObject(GetObjectArgs.builder()
-                    .bucket(configuration.getBucketName())
-                    .object(String.valueOf(fileId))
-                    .build());
-        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
-            log.error("Failed to get content of file with id {}:", fileId, e);
-            throw new StorageException("Fehler beim Zugriff auf den Inhalt der Datei.", e);
+     * @param offset position of the first byte
+     * @param length number of bytes to read
+     * @return stream of the requested bytes (must be closed by caller)
+     * @throws StorageException on error
+     */
+    InputStream getFileContent(long fileId, long offset, long length) throws StorageException;
+
+    /**
+     * Writes a byte range of the file to a channel.
+     *
+     * @param fileId the ID of the file
+     * @param offset position of the first byte
+     * @param length number of bytes to write
+     * @param target channel to write to (will not be closed)
+     * @throws StorageException on error
+     */
+    default void transferFileContent(long fileId, long offset, long length, WritableByteChannel target)
+            throws StorageException {
+        try (InputStream stream = getFileContent(fileId, offset, length)) {
+            stream.transferTo(Channels.newOutputStream(target));
+        } catch (IOException e) {
+            throw new StorageException("Fehler beim Übertragen des Inhalts der Datei.", e);
         }
     }
 
+    /**
+     * Stores content under a temporary name, before its file is recorded in the database.
+     * Staged content is not listed by {@link #getAllIds()}.
+     *
+     * @param stagingId unique name of the staged content
+     * @param stream    content (must be closed by caller)
+     * @param size      size in bytes or -1 if it is unknown
+     * @param type      content type
+     * @throws StorageException on error
+     */
+    void saveStagedFile(String stagingId, InputStream stream, long size, String type) throws StorageException;
+
+    /**
+     * Gets staged content.
+     *
+     * @param stagingId unique name of the staged content
+     * @return content stream (must be closed by caller)
+     * @throws StorageException on error
+     */
+    InputStream getStagedFileContent(String stagingId) throws StorageException;
+
+    /**
+     * Moves staged content to the id of its file, without transferring it again.
+     *
+     * @param stagingId unique name of the staged content
+     * @param fileId    id under which the content is stored from now on
+     * @throws StorageException on error
+     */
+    void promoteStagedFile(String stagingId, long fileId) throws StorageException;
+
+    /**
+     * Deletes staged content if it exists.
+     *
+     * @param stagingId unique name of the staged content
+     * @throws StorageException on error
+     */
+    void deleteStagedFile(String stagingId) throws StorageException;
+
+    /**
+     * Deletes staged content which was neither promoted nor deleted, e.g. because the instance was stopped.
+     * Temporary leftovers of other interrupted writes are deleted as well.
+     *
+     * @param time content staged before this time is deleted
+     * @return number of deleted staged files
+     * @throws StorageException on error
+     */
+    int deleteStagedFilesBefore(Instant time) throws StorageException;
+
+    /**
+     * Saves a chunk of a file which is uploaded in parts.
+     *
+     * @param sessionId   id of the upload session
+     * @param chunkNumber position of the chunk, starting with 0
+     * @param stream      chunk content (must be closed by caller)
+     * @param size        chunk size in bytes
+     * @throws StorageException on error
+     */
+    void saveChunk(long sessionId, int chunkNumber, InputStream stream, long size) throws StorageException;
+
+    /**
+     * Joins the chunks of an upload to staged content. The chunks are kept until they are deleted explicitly.
+     *
+     * @param sessionId  id of the upload session
+     * @param chunkCount number of chunks
+     * @param type       content type
+     * @param stagingId  unique name of the staged content
+     * @throws StorageException on error
+     */
+    void composeChunks(long sessionId, int chunkCount, String type, String stagingId) throws StorageException;
+
+    /**
+     * Deletes all chunks of an upload.
+     *
+     * @param sessionId id of the upload session
+     * @throws StorageException on error
+     */
+    void deleteChunks(long sessionId) throws StorageException;
+
+    /**
+     * Gets the ids of all upload sessions with stored chunks.
+     *
+     * @return upload session ids
+     * @throws StorageException on error
+     */
+    Set<Long> getChunkSessionIds() throws StorageException;
+
+    /**
+     * Saves the archive of a zip export. Exports are kept apart from file content.
+     *
+     * @param exportId id of the export
+     * @param stream   archive content (must be closed by caller)
+     * @param size     archive size in bytes
+     * @throws StorageException on error
+     */
+    void saveExport(long exportId, InputStream stream, long size) throws StorageException;
+
+    /**
+     * Retrieves the archive of a zip export.
+     *
+     * @param exportId id of the export
+     * @return archive content (must be closed by caller)
+     * @throws StorageException on error
+     */
+    InputStream getExportContent(long exportId) throws StorageException;
+
+    /**
+     * Deletes the archive of a zip export if it exists.
+     *
+     * @param exportId id of the export
+     * @throws StorageException on error
+     */
+    void deleteExport(long exportId) throws StorageException;
+
     /**
      * Checks if a file with a specified ID already exists.
      *
      * @param fileId the file ID
      * @return true if found
+     * @throws StorageException on error
      */
-    @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.OnlyOneReturn", "PMD.LawOfDemeter" })
-    public boolean fileExist(long fileId) throws StorageException {
-        StatObjectResponse objectStat;
-        try {
-            objectStat = minioClient.statObject(StatObjectArgs.builder()
-                    .bucket(configuration.getBucketName())
-                    .object(String.valueOf(fileId))
-                    .build());
-        } catch (ErrorResponseException e) {
-            // file not found
-            return false;
-        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
-            log.error("Failed to check file existence for id {}:", fileId, e);
-            throw new StorageException("Fehler beim Zugriff auf Datei.", e);
-        }
-
-        return objectStat != null;
-    }
+    boolean fileExist(long fileId) throws StorageException;
 
     /**
      * Fetches all IDs.
      *
      * @return all File IDs
+     * @throws StorageException on error
      */
-    @SuppressWarnings("PMD.LawOfDemeter")
-    public Set<Long> getAllIds() throws StorageException {
-        try {
-            Iterable<Result<Item>> results = minioClient.listObjects(ListObjectsArgs.builder()
-                    .bucket(configuration.getBucketName())
-                    .build());
-            Set<Long> ids = new HashSet<>();
-            for (Result<Item> item : results) {
-                ids.add(
-                        Long.parseLong(item.get().objectName())
-                );
-            }
-            return ids;
-        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
-            throw new StorageException("Fehler beim Laden aller File IDs.", e);
-        }
-    }
+    Set<Long> getAllIds() throws StorageException;
 
     /**
-     * Removes all files. For internal use only.
-     *
-     * @throws StorageException if an error occurs
+     * Releases resources of the storage like threads, called when the application shuts down.
      */
-    @SuppressWarnings({ "PMD.DefaultPackage", "PMD.LawOfDemeter" })
-    void clearBucket() throws StorageException {
-        try {
-            for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
-                    .bucket(configuration.getBucketName())
-                    .build())) {
-                minioClient.removeObject(RemoveObjectArgs.builder()
-                        .bucket(configuration.getBucketName())
-                        .object(result.get().objectName())
-                        .build());
-            }
-        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
-            log.error("Failed to clear bucket:", e);
-            throw new StorageException("Bucket konnte nicht geleert werden.", e);
-        }
+    default void close() {
+        // most storages do not hold any resources
     }
 }
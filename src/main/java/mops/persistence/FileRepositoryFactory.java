@@ -0,0 +1,62 @@
+package mops.persistence;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import mops.persistence.config.FileRepositoryConfig;
+import mops.persistence.config.LocalFileRepositoryConfig;
+import mops.persistence.exception.StorageException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * Creates the file repository of the configured storage backend.
+ */
+@Slf4j
+@Configuration
+public class FileRepositoryFactory {
+
+    /**
+     * Name of the backend which stores files on the local file system.
+     */
+    private static final String LOCAL_BACKEND = "local";
+    /**
+     * Name of the backend which stores files on a MinIO server.
+     */
+    private static final String MINIO_BACKEND = "minio";
+
+    /**
+     * Creates the file repository. Its content is served from the local cache if that is enabled.
+     * The repository is closed when the application shuts down.
+     *
+     * @param backend     name of the storage backend, either {@code minio} or {@code local}
+     * @param minioConfig MinIO configuration
+     * @param localConfig local storage configuration
+     * @param cache       local cache of the file content
+     * @param registry    registry for the storage metrics
+     * @return file repository
+     * @throws StorageException if the storage is not available
+     */
+    @Bean(destroyMethod = "close")
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public FileRepository fileRepository(@Value("${material1.mops.storage.backend:minio}") String backend,
+                                         FileRepositoryConfig minioConfig,
+                                         LocalFileRepositoryConfig localConfig,
+                                         FileContentCache cache,
+                                         MeterRegistry registry) throws StorageException {
+        FileRepository repository;
+        if (LOCAL_BACKEND.equals(backend)) {
+            repository = new LocalFileRepository(Path.of(localConfig.getDirectory()));
+        } else if (MINIO_BACKEND.equals(backend)) {
+            repository = new MinioFileRepository(minioConfig, registry);
+        } else {
+            log.error("Unknown storage backend '{}'.", backend);
+            throw new StorageException("Unbekanntes Speicher-Backend: " + backend);
+        }
+        log.info("Using the {} storage backend.", backend);
+
+        return cache.isEnabled() ? new CachingFileRepository(repository, cache) : repository;
+    }
+}
@@ -38,4 +38,15 @@ public interface GroupRepository extends CrudRepository<Group, Long> {
             + "WHERE group_member.name = :name")
     List<Group> findByUser(@Param("name") String name);
 
+    /**
+     * Get the role of a user in a group without loading all members.
+     * The unique constraint on group and name makes this a single index lookup.
+     *
+     * @param groupId database id of the group
+     * @param name    user name
+     * @return role of the user, empty if the user is no member
+     */
+    @Query("SELECT role FROM group_member WHERE group_id = :groupId AND name = :name")
+    Optional<String> findMemberRole(@Param("groupId") long groupId, @Param("name") String name);
+
 }
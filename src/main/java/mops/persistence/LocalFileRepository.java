@@ -0,0 +1,492 @@
+package mops.persistence;
+
+import com.google.common.io.ByteStreams;
+import lombok.extern.slf4j.Slf4j;
+import mops.persistence.exception.StorageException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * File storage in a directory of the local file system.
+ * Files are spread over two levels of sub directories derived from their id, so that
+ * no directory gets too large. New content is written to a temporary file first and
+ * moved into place atomically, so readers never see partially written files.
+ */
+@Slf4j
+class LocalFileRepository implements FileRepository {
+
+    /**
+     * Name of the directory for files which are being written.
+     */
+    private static final String TEMP_DIRECTORY = "tmp";
+    /**
+     * Name of the directory for chunks of uploads.
+     */
+    private static final String CHUNK_DIRECTORY = "uploads";
+    /**
+     * Name of the directory for archives of zip exports.
+     */
+    private static final String EXPORT_DIRECTORY = "exports";
+    /**
+     * Name of the directory for staged content.
+     */
+    private static final String STAGING_DIRECTORY = "staging";
+    /**
+     * Mask of the bits of an id used for one directory level.
+     */
+    private static final long SHARD_MASK = 0xff;
+    /**
+     * Number of bits of an id used for one directory level.
+     */
+    private static final int SHARD_BITS = 8;
+    /**
+     * Depth of a stored file below the root directory.
+     */
+    private static final int FILE_DEPTH = 3;
+
+    /**
+     * Root directory of the stored files.
+     */
+    private final transient Path root;
+
+    /**
+     * Creates the root directory if it doesn't exist yet.
+     *
+     * @param root root directory of the stored files
+     * @throws StorageException on error
+     */
+    LocalFileRepository(Path root) throws StorageException {
+        this.root = root;
+        try {
+            Files.createDirectories(root.resolve(TEMP_DIRECTORY));
+        } catch (IOException e) {
+            log.error("Failed to create storage directory '{}':", root, e);
+            throw new StorageException("Fehler beim Erstellen des Speicherverzeichnisses.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The content type is not stored, it is kept in the file meta data anyway.
+     */
+    @Override
+    public void saveFile(InputStream stream, long size, String type, long fileId) throws StorageException {
+        try {
+            write(stream, size, getPath(fileId));
+        } catch (IOException e) {
+            log.error("Failed to save file '{}' to the local storage:", fileId, e);
+            throw new StorageException("Fehler beim Speichern der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteFile(long fileId) throws StorageException {
+        try {
+            Files.deleteIfExists(getPath(fileId));
+        } catch (IOException e) {
+            log.error("Failed to delete file with id {} from the local storage:", fileId, e);
+            throw new StorageException("Fehler beim Löschen der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getFileContent(long fileId) throws StorageException {
+        try {
+            return Files.newInputStream(getPath(fileId));
+        } catch (IOException e) {
+            log.error("Failed to get content of file with id {}:", fileId, e);
+            throw new StorageException("Fehler beim Zugriff auf den Inhalt der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.CloseResource") // stream is closed by caller
+    public InputStream getFileContent(long fileId, long offset, long length) throws StorageException {
+        try {
+            FileChannel channel = FileChannel.open(getPath(fileId), StandardOpenOption.READ);
+            try {
+                return ByteStreams.limit(Channels.newInputStream(channel.position(offset)), length);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            log.error("Failed to get content range {}+{} of file with id {}:", offset, length, fileId, e);
+            throw new StorageException("Fehler beim Zugriff auf den Inhalt der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The content is transferred with {@link FileChannel#transferTo}, so it does not pass through the heap.
+     */
+    @Override
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    public void transferFileContent(long fileId, long offset, long length, WritableByteChannel target)
+            throws StorageException {
+        try (FileChannel channel = FileChannel.open(getPath(fileId), StandardOpenOption.READ)) {
+            long position = offset;
+            long end = Math.min(offset + length, channel.size());
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to transfer content of file with id {}:", fileId, e);
+            throw new StorageException("Fehler beim Übertragen des Inhalts der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveStagedFile(String stagingId, InputStream stream, long size, String type)
+            throws StorageException {
+        try {
+            write(stream, size, getStagingPath(stagingId));
+        } catch (IOException e) {
+            log.error("Failed to stage file '{}' in the local storage:", stagingId, e);
+            throw new StorageException("Fehler beim Speichern der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getStagedFileContent(String stagingId) throws StorageException {
+        try {
+            return Files.newInputStream(getStagingPath(stagingId));
+        } catch (IOException e) {
+            log.error("Failed to get content of staged file '{}':", stagingId, e);
+            throw new StorageException("Fehler beim Zugriff auf den Inhalt der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The staged file is moved atomically, so this is cheap regardless of its size.
+     */
+    @Override
+    public void promoteStagedFile(String stagingId, long fileId) throws StorageException {
+        try {
+            moveIntoPlace(getStagingPath(stagingId), getPath(fileId));
+        } catch (IOException e) {
+            log.error("Failed to promote staged file '{}' to id {}:", stagingId, fileId, e);
+            throw new StorageException("Fehler beim Speichern der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteStagedFile(String stagingId) throws StorageException {
+        try {
+            Files.deleteIfExists(getStagingPath(stagingId));
+        } catch (IOException e) {
+            log.error("Failed to delete staged file '{}':", stagingId, e);
+            throw new StorageException("Fehler beim Löschen der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Temporary files left behind by interrupted writes are deleted as well.
+     */
+    @Override
+    public int deleteStagedFilesBefore(Instant time) throws StorageException {
+        try {
+            return deleteFilesBefore(root.resolve(STAGING_DIRECTORY), time)
+                    + deleteFilesBefore(root.resolve(TEMP_DIRECTORY), time);
+        } catch (IOException e) {
+            log.error("Failed to delete staged files:", e);
+            throw new StorageException("Fehler beim Löschen der zwischengespeicherten Dateien.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveChunk(long sessionId, int chunkNumber, InputStream stream, long size) throws StorageException {
+        try {
+            write(stream, size, getChunkDirectory(sessionId).resolve(Integer.toString(chunkNumber)));
+        } catch (IOException e) {
+            log.error("Failed to save chunk {} of upload {} to the local storage:", chunkNumber, sessionId, e);
+            throw new StorageException("Fehler beim Speichern des Dateiteils.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    public void composeChunks(long sessionId, int chunkCount, String type, String stagingId)
+            throws StorageException {
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(root.resolve(TEMP_DIRECTORY), stagingId + "-", ".tmp");
+            try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                for (int chunkNumber = 0; chunkNumber < chunkCount; chunkNumber++) {
+                    Path chunk = getChunkDirectory(sessionId).resolve(Integer.toString(chunkNumber));
+                    try (FileChannel in = FileChannel.open(chunk, StandardOpenOption.READ)) {
+                        long position = 0;
+                        long size = in.size();
+                        while (position < size) {
+                            position += in.transferTo(position, size - position, out);
+                        }
+                    }
+                }
+            }
+            moveIntoPlace(tempFile, getStagingPath(stagingId));
+        } catch (IOException e) {
+            deleteQuietly(tempFile);
+            log.error("Failed to compose staged file '{}' from upload {}:", stagingId, sessionId, e);
+            throw new StorageException("Fehler beim Zusammensetzen der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void deleteChunks(long sessionId) throws StorageException {
+        Path directory = getChunkDirectory(sessionId);
+        try (Stream<Path> files = Files.isDirectory(directory) ? Files.list(directory) : Stream.empty()) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            log.error("Failed to delete chunks of upload {}:", sessionId, e);
+            throw new StorageException("Fehler beim Löschen der Dateiteile.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public Set<Long> getChunkSessionIds() throws StorageException {
+        Path directory = root.resolve(CHUNK_DIRECTORY);
+        try (Stream<Path> sessions = Files.isDirectory(directory) ? Files.list(directory) : Stream.empty()) {
+            return sessions.map(path -> Long.parseLong(path.getFileName().toString()))
+                    .collect(Collectors.toSet());
+        } catch (IOException | NumberFormatException e) {
+            log.error("Failed to list the chunks of uploads:", e);
+            throw new StorageException("Fehler beim Laden der Dateiteile.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveExport(long exportId, InputStream stream, long size) throws StorageException {
+        try {
+            write(stream, size, getExportPath(exportId));
+        } catch (IOException e) {
+            log.error("Failed to save zip export {} to the local storage:", exportId, e);
+            throw new StorageException("Fehler beim Speichern des Exports.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getExportContent(long exportId) throws StorageException {
+        try {
+            return Files.newInputStream(getExportPath(exportId));
+        } catch (IOException e) {
+            log.error("Failed to get content of zip export {}:", exportId, e);
+            throw new StorageException("Fehler beim Zugriff auf den Export.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteExport(long exportId) throws StorageException {
+        try {
+            Files.deleteIfExists(getExportPath(exportId));
+        } catch (IOException e) {
+            log.error("Failed to delete zip export {} from the local storage:", exportId, e);
+            throw new StorageException("Fehler beim Löschen des Exports.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean fileExist(long fileId) {
+        return Files.isRegularFile(getPath(fileId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public Set<Long> getAllIds() throws StorageException {
+        Path tempDirectory = root.resolve(TEMP_DIRECTORY);
+        Path chunkDirectory = root.resolve(CHUNK_DIRECTORY);
+        Path exportDirectory = root.resolve(EXPORT_DIRECTORY);
+        Path stagingDirectory = root.resolve(STAGING_DIRECTORY);
+        try (Stream<Path> files = Files.walk(root, FILE_DEPTH)) {
+            return files.filter(path -> !path.startsWith(tempDirectory) && !path.startsWith(chunkDirectory)
+                            && !path.startsWith(exportDirectory) && !path.startsWith(stagingDirectory))
+                    .filter(Files::isRegularFile)
+                    .map(path -> Long.parseLong(path.getFileName().toString()))
+                    .collect(Collectors.toSet());
+        } catch (IOException | NumberFormatException e) {
+            throw new StorageException("Fehler beim Laden aller File IDs.", e);
+        }
+    }
+
+    /**
+     * Writes a stream to a temporary file and moves it to its target afterwards.
+     *
+     * @param stream content
+     * @param size   expected size in bytes or -1 if it is unknown
+     * @param target path of the file
+     * @throws IOException on error
+     */
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    private void write(InputStream stream, long size, Path target) throws IOException {
+        Path tempFile = Files.createTempFile(root.resolve(TEMP_DIRECTORY), target.getFileName() + "-", ".tmp");
+        try {
+            long written;
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                written = stream.transferTo(out);
+            }
+            if (size >= 0 && written != size) {
+                throw new IOException(String.format("Expected %d bytes but got %d.", size, written));
+            }
+            moveIntoPlace(tempFile, target);
+        } catch (IOException e) {
+            deleteQuietly(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the files of a directory which were last modified before the given time.
+     *
+     * @param directory directory which may not exist
+     * @param time      files modified before this time are deleted
+     * @return number of deleted files
+     * @throws IOException on error
+     */
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    private static int deleteFilesBefore(Path directory, Instant time) throws IOException {
+        int count = 0;
+        try (Stream<Path> files = Files.isDirectory(directory) ? Files.list(directory) : Stream.empty()) {
+            for (Path file : files.collect(Collectors.toList())) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(time) && Files.deleteIfExists(file)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moves a completely written file to its target atomically.
+     *
+     * @param tempFile written file
+     * @param target   path of the file
+     * @throws IOException on error
+     */
+    private static void moveIntoPlace(Path tempFile, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Gets the directory of the chunks of an upload.
+     *
+     * @param sessionId id of the upload session
+     * @return directory below the root directory
+     */
+    private Path getChunkDirectory(long sessionId) {
+        return root.resolve(CHUNK_DIRECTORY).resolve(Long.toString(sessionId));
+    }
+
+    /**
+     * Gets the path of staged content.
+     *
+     * @param stagingId unique name of the staged content
+     * @return path below the root directory
+     */
+    private Path getStagingPath(String stagingId) {
+        return root.resolve(STAGING_DIRECTORY).resolve(stagingId);
+    }
+
+    /**
+     * Gets the path of the archive of a zip export.
+     *
+     * @param exportId id of the export
+     * @return path below the root directory
+     */
+    private Path getExportPath(long exportId) {
+        return root.resolve(EXPORT_DIRECTORY).resolve(exportId + ".zip");
+    }
+
+    /**
+     * Gets the path of a stored file, e.g. {@code 39/05/1337} for the id 1337.
+     *
+     * @param fileId file id
+     * @return path below the root directory
+     */
+    private Path getPath(long fileId) {
+        String first = String.format("%02x", fileId & SHARD_MASK);
+        String second = String.format("%02x", (fileId >> SHARD_BITS) & SHARD_MASK);
+        return root.resolve(first).resolve(second).resolve(Long.toString(fileId));
+    }
+
+    /**
+     * Deletes a file and only logs errors.
+     *
+     * @param path file to delete (may be null)
+     */
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete temporary file '{}':", path, e);
+        }
+    }
+}
@@ -0,0 +1,542 @@
+package mops.persistence;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.MinioException;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import mops.persistence.config.FileRepositoryConfig;
+import mops.persistence.exception.StorageException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * File storage on a MinIO server.
+ */
+@Slf4j
+class MinioFileRepository implements FileRepository {
+
+    /**
+     * Prefix of the objects holding chunks of uploads.
+     */
+    private static final String CHUNK_PREFIX = "uploads/";
+    /**
+     * Prefix of the objects holding archives of zip exports.
+     */
+    private static final String EXPORT_PREFIX = "exports/";
+    /**
+     * Prefix of the objects holding staged content.
+     */
+    private static final String STAGING_PREFIX = "staging/";
+    /**
+     * Maximum number of objects removed with one request.
+     */
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * The MinIO client.
+     */
+    private final transient MinioClient minioClient;
+
+    /**
+     * Injected MinIO configuration.
+     */
+    private final transient FileRepositoryConfig configuration;
+
+    /**
+     * Uploads file content, large content in concurrent parts.
+     */
+    private final transient MinioParallelUploader uploader;
+
+    /**
+     * Connects to MinIO Server and checks if the bucket exists.
+     *
+     * @param configuration the injected Config.
+     * @param meterRegistry registry for the upload metrics
+     * @throws StorageException on Error
+     */
+    MinioFileRepository(FileRepositoryConfig configuration, MeterRegistry meterRegistry) throws StorageException {
+        this.configuration = configuration;
+        this.minioClient = MinioClient.builder()
+                .endpoint(configuration.getHost() + ":" + configuration.getPort())
+                .credentials(configuration.getAccessKey(), configuration.getSecretKey())
+                .build();
+        this.uploader = new MinioParallelUploader(minioClient, configuration, meterRegistry);
+
+        try {
+            if (!minioClient.bucketExists(BucketExistsArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .build())) {
+                minioClient.makeBucket(MakeBucketArgs.builder()
+                        .bucket(configuration.getBucketName())
+                        .build());
+            }
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to find and create the bucket '{}':", configuration.getBucketName(), e);
+            throw new StorageException("Fehler beim Suchen und Erstellen des Buckets.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveFile(InputStream stream, long size, String type, long fileId) throws StorageException {
+        uploader.upload(stream, size, type, String.valueOf(fileId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void deleteFile(long fileId) throws StorageException {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(String.valueOf(fileId))
+                    .build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to delete file with id {} from MinIO Server:", fileId, e);
+            throw new StorageException("Fehler beim Löschen der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The files are removed with one request per {@value #DELETE_BATCH_SIZE} files.
+     */
+    @Override
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    public void deleteFiles(Collection<Long> fileIds) throws StorageException {
+        List<DeleteObject> objects = new ArrayList<>();
+        for (long fileId : fileIds) {
+            objects.add(new DeleteObject(String.valueOf(fileId)));
+        }
+        int failed = 0;
+        try {
+            for (int start = 0; start < objects.size(); start += DELETE_BATCH_SIZE) {
+                // the objects are only removed while the results are consumed
+                for (Result<DeleteError> result : minioClient.removeObjects(RemoveObjectsArgs.builder()
+                        .bucket(configuration.getBucketName())
+                        .objects(objects.subList(start, Math.min(start + DELETE_BATCH_SIZE, objects.size())))
+                        .build())) {
+                    DeleteError error = result.get();
+                    log.error("Failed to delete file '{}' from MinIO Server: {}", error.objectName(), error.message());
+                    failed++;
+                }
+            }
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to delete {} files from MinIO Server:", fileIds.size(), e);
+            throw new StorageException("Fehler beim Löschen der Dateien.", e);
+        }
+        if (failed > 0) {
+            throw new StorageException(String.format("%d Dateien konnten nicht gelöscht werden.", failed));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public InputStream getFileContent(long fileId) throws StorageException {
+        try {
+            return minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(String.valueOf(fileId))
+                    .build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to get content of file with id {}:", fileId, e);
+            throw new StorageException("Fehler beim Zugriff auf den Inhalt der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public InputStream getFileContent(long fileId, long offset, long length) throws StorageException {
+        try {
+            return minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(String.valueOf(fileId))
+                    .offset(offset)
+                    .length(length)
+                    .build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to get content range {}+{} of file with id {}:", offset, length, fileId, e);
+            throw new StorageException("Fehler beim Zugriff auf den Inhalt der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveStagedFile(String stagingId, InputStream stream, long size, String type)
+            throws StorageException {
+        uploader.upload(stream, size, type, STAGING_PREFIX + stagingId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public InputStream getStagedFileContent(String stagingId) throws StorageException {
+        try {
+            return minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(STAGING_PREFIX + stagingId)
+                    .build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to get content of staged file '{}':", stagingId, e);
+            throw new StorageException("Fehler beim Zugriff auf den Inhalt der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The object is copied on the server and the staged object is removed afterwards. If the removal fails
+     * the content is promoted anyway, the staged object is deleted by {@link #deleteStagedFilesBefore}.
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void promoteStagedFile(String stagingId, long fileId) throws StorageException {
+        try {
+            // composing from a single source copies objects of any size on the server
+            minioClient.composeObject(ComposeObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(String.valueOf(fileId))
+                    .sources(List.of(ComposeSource.builder()
+                            .bucket(configuration.getBucketName())
+                            .object(STAGING_PREFIX + stagingId)
+                            .build()))
+                    .build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to promote staged file '{}' to id {}:", stagingId, fileId, e);
+            throw new StorageException("Fehler beim Speichern der Datei.", e);
+        }
+        try {
+            deleteStagedFile(stagingId);
+        } catch (StorageException e) {
+            log.warn("Staged file '{}' is left for the garbage collector.", stagingId);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void deleteStagedFile(String stagingId) throws StorageException {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(STAGING_PREFIX + stagingId)
+                    .build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to delete staged file '{}' from MinIO Server:", stagingId, e);
+            throw new StorageException("Fehler beim Löschen der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Parts of parallel uploads which were interrupted before they were joined are deleted as well.
+     */
+    @Override
+    public int deleteStagedFilesBefore(Instant time) throws StorageException {
+        try {
+            return deleteObjectsBefore(STAGING_PREFIX, time)
+                    + deleteObjectsBefore(MinioParallelUploader.PART_PREFIX, time);
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to delete staged files from MinIO Server:", e);
+            throw new StorageException("Fehler beim Löschen der zwischengespeicherten Dateien.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void saveChunk(long sessionId, int chunkNumber, InputStream stream, long size) throws StorageException {
+        try {
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(getChunkPrefix(sessionId) + chunkNumber)
+                    .stream(stream, size, -1)
+                    .build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to save chunk {} of upload {} to MinIO server:", chunkNumber, sessionId, e);
+            throw new StorageException("Fehler beim Speichern des Dateiteils.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The chunks are joined on the server, all but the last one must be at least 5 MiB large.
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void composeChunks(long sessionId, int chunkCount, String type, String stagingId)
+            throws StorageException {
+        List<ComposeSource> sources = new ArrayList<>(chunkCount);
+        for (int chunkNumber = 0; chunkNumber < chunkCount; chunkNumber++) {
+            sources.add(ComposeSource.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(getChunkPrefix(sessionId) + chunkNumber)
+                    .build());
+        }
+
+        try {
+            ComposeObjectArgs.Builder builder = ComposeObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(STAGING_PREFIX + stagingId)
+                    .sources(sources);
+            if (type != null && !type.isEmpty()) {
+                builder.headers(Map.of("Content-Type", type));
+            }
+
+            minioClient.composeObject(builder.build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to compose staged file '{}' from upload {}:", stagingId, sessionId, e);
+            throw new StorageException("Fehler beim Zusammensetzen der Datei.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void deleteChunks(long sessionId) throws StorageException {
+        try {
+            for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .prefix(getChunkPrefix(sessionId))
+                    .recursive(true)
+                    .build())) {
+                minioClient.removeObject(RemoveObjectArgs.builder()
+                        .bucket(configuration.getBucketName())
+                        .object(result.get().objectName())
+                        .build());
+            }
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to delete chunks of upload {}:", sessionId, e);
+            throw new StorageException("Fehler beim Löschen der Dateiteile.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public Set<Long> getChunkSessionIds() throws StorageException {
+        try {
+            Set<Long> ids = new HashSet<>();
+            for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .prefix(CHUNK_PREFIX)
+                    .build())) {
+                // the chunks of a session are listed as a common prefix, parts of parallel uploads are skipped
+                String sessionId = result.get().objectName().substring(CHUNK_PREFIX.length()).replace("/", "");
+                if (!sessionId.isEmpty() && sessionId.chars().allMatch(Character::isDigit)) {
+                    ids.add(Long.parseLong(sessionId));
+                }
+            }
+            return ids;
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to list the chunks of uploads on MinIO Server:", e);
+            throw new StorageException("Fehler beim Laden der Dateiteile.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveExport(long exportId, InputStream stream, long size) throws StorageException {
+        uploader.upload(stream, size, "application/zip", getExportName(exportId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public InputStream getExportContent(long exportId) throws StorageException {
+        try {
+            return minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(getExportName(exportId))
+                    .build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to get content of zip export {}:", exportId, e);
+            throw new StorageException("Fehler beim Zugriff auf den Export.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public void deleteExport(long exportId) throws StorageException {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(getExportName(exportId))
+                    .build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to delete zip export {} from MinIO Server:", exportId, e);
+            throw new StorageException("Fehler beim Löschen des Exports.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.OnlyOneReturn", "PMD.LawOfDemeter" })
+    public boolean fileExist(long fileId) throws StorageException {
+        StatObjectResponse objectStat;
+        try {
+            objectStat = minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .object(String.valueOf(fileId))
+                    .build());
+        } catch (ErrorResponseException e) {
+            // file not found
+            return false;
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to check file existence for id {}:", fileId, e);
+            throw new StorageException("Fehler beim Zugriff auf Datei.", e);
+        }
+
+        return objectStat != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("PMD.LawOfDemeter")
+    public Set<Long> getAllIds() throws StorageException {
+        try {
+            Iterable<Result<Item>> results = minioClient.listObjects(ListObjectsArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .build());
+            Set<Long> ids = new HashSet<>();
+            for (Result<Item> item : results) {
+                String name = item.get().objectName();
+                // chunks of uploads, exports and staged content are listed as a common prefix
+                if (name.chars().allMatch(Character::isDigit)) {
+                    ids.add(Long.parseLong(name));
+                }
+            }
+            return ids;
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            throw new StorageException("Fehler beim Laden aller File IDs.", e);
+        }
+    }
+
+    /**
+     * Removes the objects with the given prefix which were last modified before the given time.
+     *
+     * @param prefix common prefix of the objects
+     * @param time   objects modified before this time are removed
+     * @return number of removed objects
+     * @throws MinioException           on server errors
+     * @throws InvalidKeyException      on invalid credentials
+     * @throws IOException              on connection errors
+     * @throws NoSuchAlgorithmException if signing is not supported
+     */
+    @SuppressWarnings({ "PMD.LawOfDemeter", "PMD.DataflowAnomalyAnalysis" })
+    private int deleteObjectsBefore(String prefix, Instant time)
+            throws MinioException, InvalidKeyException, IOException, NoSuchAlgorithmException {
+        int count = 0;
+        for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                .bucket(configuration.getBucketName())
+                .prefix(prefix)
+                .recursive(true)
+                .build())) {
+            Item item = result.get();
+            if (item.lastModified().toInstant().isBefore(time)) {
+                minioClient.removeObject(RemoveObjectArgs.builder()
+                        .bucket(configuration.getBucketName())
+                        .object(item.objectName())
+                        .build());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the common prefix of the chunks of an upload.
+     *
+     * @param sessionId id of the upload session
+     * @return object name prefix
+     */
+    private static String getChunkPrefix(long sessionId) {
+        return CHUNK_PREFIX + sessionId + "/";
+    }
+
+    /**
+     * Gets the object name of the archive of a zip export.
+     *
+     * @param exportId id of the export
+     * @return object name
+     */
+    private static String getExportName(long exportId) {
+        return EXPORT_PREFIX + exportId + ".zip";
+    }
+
+    /**
+     * Removes all files. For internal use only.
+     *
+     * @throws StorageException if an error occurs
+     */
+    @SuppressWarnings({ "PMD.DefaultPackage", "PMD.LawOfDemeter" })
+    void clearBucket() throws StorageException {
+        try {
+            for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                    .bucket(configuration.getBucketName())
+                    .build())) {
+                minioClient.removeObject(RemoveObjectArgs.builder()
+                        .bucket(configuration.getBucketName())
+                        .object(result.get().objectName())
+                        .build());
+            }
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to clear bucket:", e);
+            throw new StorageException("Bucket konnte nicht geleert werden.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        uploader.close();
+    }
+}
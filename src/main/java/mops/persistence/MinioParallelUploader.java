@@ -0,0 +1,529 @@
+package mops.persistence;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.*;
+import io.minio.errors.MinioException;
+import lombok.extern.slf4j.Slf4j;
+import mops.persistence.config.FileRepositoryConfig;
+import mops.persistence.exception.StorageException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Uploads content to a MinIO server. Large content is read part by part into buffers,
+ * the parts are stored as temporary objects by a bounded pool of threads and finally
+ * joined in order on the server. Content which fits into a single part is stored directly.
+ */
+@Slf4j
+class MinioParallelUploader {
+
+    /**
+     * Minimum size of a part (8 MiB). MinIO requires at least 5 MiB to join parts.
+     */
+    static final long MIN_PART_SIZE = 8L * 1024 * 1024;
+    /**
+     * Maximum size of a part as long as the part count allows it (64 MiB).
+     */
+    static final long MAX_PART_SIZE = 64L * 1024 * 1024;
+    /**
+     * Size of a part if the size of the content is unknown (16 MiB).
+     */
+    static final long UNKNOWN_SIZE_PART_SIZE = 16L * 1024 * 1024;
+    /**
+     * Number of parts the content should be split into so that all threads are busy.
+     */
+    private static final int TARGET_PART_COUNT = 32;
+    /**
+     * Maximum number of parts MinIO can join.
+     */
+    private static final int MAX_PART_COUNT = 10_000;
+    /**
+     * Part sizes are rounded up to a multiple of this (1 MiB).
+     */
+    private static final long PART_ALIGNMENT = 1024L * 1024;
+    /**
+     * Delay before the first retry of a part, it grows with every attempt.
+     */
+    private static final long RETRY_DELAY_MILLIS = 200L;
+    /**
+     * Prefix of the temporary part objects.
+     */
+    static final String PART_PREFIX = "uploads/parts-";
+    /**
+     * Prefix of the upload metrics.
+     */
+    private static final String METRIC_PREFIX = "mops.material1.storage.upload.";
+
+    /**
+     * The MinIO client.
+     */
+    private final transient MinioClient minioClient;
+    /**
+     * Name of the bucket.
+     */
+    private final transient String bucketName;
+    /**
+     * Content of at least this size is uploaded in parts.
+     */
+    private final transient long parallelThreshold;
+    /**
+     * Number of attempts to upload a single part.
+     */
+    private final transient int attempts;
+    /**
+     * Threads uploading the parts.
+     */
+    private final transient ExecutorService executor;
+    /**
+     * Limits the number of filled buffers of all uploads which wait to be sent or are being sent.
+     */
+    private final transient Semaphore buffers;
+    /**
+     * Throughput of uploads sent in one request.
+     */
+    private final transient DistributionSummary singleThroughput;
+    /**
+     * Throughput of uploads sent in parts.
+     */
+    private final transient DistributionSummary partedThroughput;
+    /**
+     * Counts retried parts.
+     */
+    private final transient Counter retries;
+
+    /**
+     * Creates the uploader.
+     *
+     * @param minioClient   MinIO client
+     * @param configuration MinIO configuration
+     * @param meterRegistry registry for the upload metrics
+     */
+    MinioParallelUploader(MinioClient minioClient, FileRepositoryConfig configuration, MeterRegistry meterRegistry) {
+        this.minioClient = minioClient;
+        this.bucketName = configuration.getBucketName();
+        this.parallelThreshold = configuration.getParallelUploadThreshold().toBytes();
+        this.attempts = Math.max(1, configuration.getUploadAttempts());
+        int concurrency = Math.max(1, configuration.getUploadConcurrency());
+        this.executor = Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder()
+                .setNameFormat("minio-upload-%d")
+                .setDaemon(true)
+                .build());
+        // buffers are filled without a permit, so that slow clients do not hold back other uploads
+        this.buffers = new Semaphore(concurrency);
+        this.singleThroughput = throughputSummary("single", meterRegistry);
+        this.partedThroughput = throughputSummary("parallel", meterRegistry);
+        this.retries = Counter.builder(METRIC_PREFIX + "retries")
+                .description("Parts which had to be uploaded again")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Chooses the part size from the size of the content. Small content is split into parts of the minimum
+     * size, large content into a fixed number of parts up to the maximum part size.
+     *
+     * @param size size of the content in bytes or -1 if unknown
+     * @return part size in bytes
+     */
+    @SuppressWarnings("PMD.DefaultPackage")
+    static long partSize(long size) {
+        long partSize = UNKNOWN_SIZE_PART_SIZE;
+        if (size >= 0) {
+            long targetSize = Math.min(alignedPartSize(size, TARGET_PART_COUNT), MAX_PART_SIZE);
+            partSize = Math.max(Math.max(targetSize, MIN_PART_SIZE), alignedPartSize(size, MAX_PART_COUNT));
+        }
+        return partSize;
+    }
+
+    /**
+     * Uploads the content to an object.
+     *
+     * @param stream     content
+     * @param size       size of the content in bytes or -1 if unknown
+     * @param type       content type, may be empty
+     * @param objectName name of the object
+     * @throws StorageException if the content could not be stored
+     */
+    @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.OnlyOneReturn", "PMD.CloseResource" }) // closed by caller
+    void upload(InputStream stream, long size, String type, String objectName) throws StorageException {
+        long start = System.nanoTime();
+        if (size >= 0 && size < parallelThreshold) {
+            try {
+                putObject(objectName, stream, size, type);
+            } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+                log.error("Failed to upload object '{}' to MinIO server:", objectName, e);
+                throw new StorageException("Fehler beim Speichern der Datei.", e);
+            }
+            record(singleThroughput, size, start);
+            return;
+        }
+
+        InputStream content = size < 0 ? stream : ByteStreams.limit(stream, size);
+        byte[] firstPart = new byte[Math.toIntExact(partSize(size))];
+        int read = readPart(content, firstPart, objectName);
+        if (read < firstPart.length) {
+            checkSize(objectName, read, size);
+            putBuffer(objectName, firstPart, read, type);
+            record(singleThroughput, read, start);
+        } else {
+            long uploaded = uploadInParts(content, firstPart, size, type, objectName);
+            record(partedThroughput, uploaded, start);
+        }
+    }
+
+    /**
+     * Stops the threads uploading parts, running uploads fail.
+     */
+    void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads the content part by part and uploads the parts concurrently. A part is filled before it waits
+     * for a free buffer, so only sending blocks while all buffers are in use. Once all parts are stored
+     * they are joined in their original order.
+     *
+     * @param stream     rest of the content
+     * @param firstPart  first part of the content, it determines the part size
+     * @param size       size of the content in bytes or -1 if unknown
+     * @param type       content type, may be empty
+     * @param objectName name of the object
+     * @return number of uploaded bytes
+     * @throws StorageException if the content could not be stored
+     */
+    @SuppressWarnings({ "PMD.AvoidInstantiatingObjectsInLoops", "PMD.DataflowAnomalyAnalysis" })
+    private long uploadInParts(InputStream stream, byte[] firstPart, long size, String type, String objectName)
+            throws StorageException {
+        int partSize = firstPart.length;
+        String prefix = PART_PREFIX + UUID.randomUUID() + "/";
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<?>> parts = new ArrayList<>();
+        long uploaded = 0;
+        try {
+            byte[] buffer = firstPart;
+            int read = partSize;
+            boolean more;
+            do {
+                buffers.acquire();
+                parts.add(submitPart(prefix + parts.size(), buffer, read, failed));
+                uploaded += read;
+                more = read == partSize && !failed.get();
+                if (more) {
+                    buffer = new byte[partSize];
+                    read = stream.readNBytes(buffer, 0, partSize);
+                    more = read > 0;
+                }
+            } while (more);
+
+            awaitParts(parts, failed);
+            checkSize(objectName, uploaded, size);
+            composeParts(prefix, parts.size(), type, objectName);
+        } catch (IOException e) {
+            failed.set(true);
+            log.error("Failed to read content of object '{}':", objectName, e);
+            throw new StorageException("Fehler beim Lesen der Datei.", e);
+        } catch (InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+            log.error("Upload of object '{}' was interrupted.", objectName, e);
+            throw new StorageException("Das Speichern der Datei wurde unterbrochen.", e);
+        } finally {
+            // parts still being sent would be stored after they were removed, waiting parts are skipped
+            failed.set(true);
+            awaitPartsQuietly(parts);
+            removeParts(prefix, parts.size());
+        }
+        return uploaded;
+    }
+
+    /**
+     * Fills a buffer with the next bytes of the content.
+     *
+     * @param stream     content
+     * @param buffer     buffer to fill
+     * @param objectName name of the object
+     * @return number of bytes read, less than the buffer size only at the end of the content
+     * @throws StorageException if the content could not be read
+     */
+    private static int readPart(InputStream stream, byte[] buffer, String objectName) throws StorageException {
+        try {
+            return stream.readNBytes(buffer, 0, buffer.length);
+        } catch (IOException e) {
+            log.error("Failed to read content of object '{}':", objectName, e);
+            throw new StorageException("Fehler beim Lesen der Datei.", e);
+        }
+    }
+
+    /**
+     * Checks that the whole content was received.
+     *
+     * @param objectName name of the object
+     * @param uploaded   number of bytes received
+     * @param size       expected size of the content in bytes or -1 if unknown
+     * @throws StorageException if bytes are missing
+     */
+    private static void checkSize(String objectName, long uploaded, long size) throws StorageException {
+        if (size >= 0 && uploaded != size) {
+            log.error("Object '{}' has {} instead of {} bytes.", objectName, uploaded, size);
+            throw new StorageException("Die Datei wurde nicht vollständig übertragen.");
+        }
+    }
+
+    /**
+     * Stores buffered content as an object in a single request.
+     *
+     * @param objectName name of the object
+     * @param buffer     content
+     * @param length     number of bytes in the buffer
+     * @param type       content type, may be empty
+     * @throws StorageException if the content could not be stored
+     */
+    private void putBuffer(String objectName, byte[] buffer, int length, String type) throws StorageException {
+        try {
+            putPart(objectName, buffer, length, type);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Upload of object '{}' was interrupted.", objectName, e);
+            throw new StorageException("Das Speichern der Datei wurde unterbrochen.", e);
+        }
+    }
+
+    /**
+     * Uploads a part in the background. The buffer is released once the part is done.
+     *
+     * @param objectName name of the part object
+     * @param buffer     content of the part
+     * @param length     number of bytes in the buffer
+     * @param failed     set if any part of the upload failed, following parts are skipped then
+     * @return completion of the part
+     */
+    private Future<?> submitPart(String objectName, byte[] buffer, int length, AtomicBoolean failed) {
+        return executor.submit(() -> {
+            try {
+                if (!failed.get()) {
+                    putPart(objectName, buffer, length, null);
+                }
+            } catch (StorageException e) {
+                failed.set(true);
+                throw e;
+            } finally {
+                buffers.release();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Uploads a part, failed attempts are repeated after an increasing delay.
+     *
+     * @param objectName name of the part object
+     * @param buffer     content of the part
+     * @param length     number of bytes in the buffer
+     * @param type       content type, may be null or empty
+     * @throws StorageException     if the last attempt failed
+     * @throws InterruptedException if interrupted while waiting for the next attempt
+     */
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    private void putPart(String objectName, byte[] buffer, int length, String type)
+            throws StorageException, InterruptedException {
+        boolean stored = false;
+        int attempt = 1;
+        while (!stored) {
+            try {
+                putObject(objectName, new ByteArrayInputStream(buffer, 0, length), length, type);
+                stored = true;
+            } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+                if (attempt >= attempts) {
+                    log.error("Failed to upload part '{}' after {} attempts:", objectName, attempt, e);
+                    throw new StorageException("Fehler beim Speichern eines Dateiteils.", e);
+                }
+                log.warn("Failed to upload part '{}' (attempt {} of {}), retrying:", objectName, attempt, attempts, e);
+                retries.increment();
+                TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MILLIS * attempt);
+                attempt++;
+            }
+        }
+    }
+
+    /**
+     * Waits until all parts are done, even if one of them failed, so that no part is stored afterwards.
+     *
+     * @param parts  completion of the parts
+     * @param failed set if any part of the upload failed
+     * @throws StorageException     if a part could not be stored
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    private static void awaitParts(List<Future<?>> parts, AtomicBoolean failed)
+            throws StorageException, InterruptedException {
+        StorageException error = null;
+        for (Future<?> part : parts) {
+            try {
+                part.get();
+            } catch (ExecutionException e) {
+                failed.set(true);
+                if (error == null) {
+                    error = new StorageException("Fehler beim Speichern der Datei.", e.getCause());
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Waits until all parts are done, regardless of errors and interrupts. An interrupt is kept for the caller.
+     *
+     * @param parts completion of the parts
+     */
+    private static void awaitPartsQuietly(List<Future<?>> parts) {
+        for (Future<?> part : parts) {
+            try {
+                Uninterruptibles.getUninterruptibly(part);
+            } catch (ExecutionException e) {
+                log.trace("Part failed, it is removed anyway:", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Joins the parts in their order on the server.
+     *
+     * @param prefix     common prefix of the part objects
+     * @param partCount  number of parts
+     * @param type       content type, may be empty
+     * @param objectName name of the object
+     * @throws StorageException if the parts could not be joined
+     */
+    @SuppressWarnings({ "PMD.AvoidInstantiatingObjectsInLoops", "PMD.LawOfDemeter" })
+    private void composeParts(String prefix, int partCount, String type, String objectName) throws StorageException {
+        List<ComposeSource> sources = new ArrayList<>(partCount);
+        for (int partNumber = 0; partNumber < partCount; partNumber++) {
+            sources.add(ComposeSource.builder()
+                    .bucket(bucketName)
+                    .object(prefix + partNumber)
+                    .build());
+        }
+
+        try {
+            ComposeObjectArgs.Builder builder = ComposeObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(objectName)
+                    .sources(sources);
+            if (type != null && !type.isEmpty()) {
+                builder.headers(Map.of("Content-Type", type));
+            }
+
+            minioClient.composeObject(builder.build());
+        } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to compose object '{}' from {} parts:", objectName, partCount, e);
+            throw new StorageException("Fehler beim Zusammensetzen der Datei.", e);
+        }
+    }
+
+    /**
+     * Removes the temporary part objects. Failures are only logged because the upload itself is done.
+     *
+     * @param prefix    common prefix of the part objects
+     * @param partCount number of parts
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void removeParts(String prefix, int partCount) {
+        for (int partNumber = 0; partNumber < partCount; partNumber++) {
+            try {
+                minioClient.removeObject(RemoveObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(prefix + partNumber)
+                        .build());
+            } catch (MinioException | InvalidKeyException | IOException | NoSuchAlgorithmException e) {
+                log.warn("Failed to remove temporary part '{}':", prefix + partNumber, e);
+            }
+        }
+    }
+
+    /**
+     * Stores content as an object in a single request.
+     *
+     * @param objectName name of the object
+     * @param stream     content
+     * @param size       size of the content in bytes
+     * @param type       content type, may be null or empty
+     * @throws MinioException           on server errors
+     * @throws InvalidKeyException      on invalid credentials
+     * @throws IOException              on connection errors
+     * @throws NoSuchAlgorithmException if signing is not supported
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private void putObject(String objectName, InputStream stream, long size, String type)
+            throws MinioException, InvalidKeyException, IOException, NoSuchAlgorithmException {
+        PutObjectArgs.Builder builder = PutObjectArgs.builder()
+                .bucket(bucketName)
+                .object(objectName)
+                .stream(stream, size, -1);
+        if (type != null && !type.isEmpty()) {
+            builder.contentType(type);
+        }
+
+        minioClient.putObject(builder.build());
+    }
+
+    /**
+     * Records the throughput of an upload.
+     *
+     * @param summary throughput summary
+     * @param bytes   number of uploaded bytes
+     * @param start   start of the upload as returned by {@link System#nanoTime()}
+     */
+    private static void record(DistributionSummary summary, long bytes, long start) {
+        long nanos = Math.max(1L, System.nanoTime() - start);
+        summary.record(bytes * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+    }
+
+    /**
+     * Creates the throughput summary of an upload mode.
+     *
+     * @param mode          upload mode
+     * @param meterRegistry registry for the upload metrics
+     * @return throughput summary
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private static DistributionSummary throughputSummary(String mode, MeterRegistry meterRegistry) {
+        return DistributionSummary.builder(METRIC_PREFIX + "throughput")
+                .description("Throughput of uploads to the storage")
+                .baseUnit("bytes_per_second")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Divides the size into a number of parts and rounds up to the part alignment.
+     *
+     * @param size      size of the content in bytes
+     * @param partCount number of parts
+     * @return part size in bytes
+     */
+    private static long alignedPartSize(long size, int partCount) {
+        long partSize = (size + partCount - 1) / partCount;
+        return (partSize + PART_ALIGNMENT - 1) / PART_ALIGNMENT * PART_ALIGNMENT;
+    }
+}
@@ -0,0 +1,50 @@
+package mops.persistence;
+
+import mops.persistence.deletion.PendingDeletion;
+import mops.util.AggregateBuilder;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Database connection for the outbox of storage deletions.
+ */
+@Repository
+@AggregateBuilder
+public interface PendingDeletionRepository extends CrudRepository<PendingDeletion, Long> {
+
+    /**
+     * Finds the oldest deletions which are due.
+     *
+     * @param time  current time
+     * @param limit maximum number of deletions
+     * @return deletions whose next attempt is not after the given time
+     */
+    @Query("SELECT * FROM pending_deletion WHERE next_attempt_time <= :time ORDER BY id LIMIT :limit")
+    List<PendingDeletion> findDue(@Param("time") Timestamp time, @Param("limit") int limit);
+
+    /**
+     * Postpones deletions after a failed attempt.
+     *
+     * @param ids  ids of the deletions
+     * @param time time of the next attempt
+     */
+    @Modifying
+    @Query("UPDATE pending_deletion SET attempts = attempts + 1, next_attempt_time = :time WHERE id IN (:ids)")
+    void postpone(@Param("ids") Collection<Long> ids, @Param("time") Timestamp time);
+
+    /**
+     * Removes finished or abandoned deletions.
+     *
+     * @param ids ids of the deletions
+     */
+    @Modifying
+    @Query("DELETE FROM pending_deletion WHERE id IN (:ids)")
+    void deleteAllByIds(@Param("ids") Collection<Long> ids);
+}
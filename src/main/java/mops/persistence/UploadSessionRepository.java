@@ -0,0 +1,63 @@
+package mops.persistence;
+
+import mops.persistence.upload.UploadSession;
+import mops.util.AggregateBuilder;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Database connection for chunked upload sessions.
+ */
+@Repository
+@AggregateBuilder
+public interface UploadSessionRepository extends CrudRepository<UploadSession, Long> {
+
+    /**
+     * Removes a received chunk, so that it can be uploaded again.
+     *
+     * @param sessionId   session id
+     * @param chunkNumber chunk number
+     */
+    @Modifying
+    @Query("DELETE FROM upload_chunk WHERE session_id = :sessionId AND chunk_number = :chunkNumber")
+    void deleteChunk(@Param("sessionId") long sessionId, @Param("chunkNumber") int chunkNumber);
+
+    /**
+     * Records a received chunk. Chunks are written individually, so that they can be
+     * uploaded in parallel without overwriting each other.
+     *
+     * @param sessionId   session id
+     * @param chunkNumber chunk number
+     * @param size        chunk size in bytes
+     */
+    @Modifying
+    @Query("INSERT INTO upload_chunk (session_id, chunk_number, size) VALUES (:sessionId, :chunkNumber, :size)")
+    void insertChunk(@Param("sessionId") long sessionId,
+                     @Param("chunkNumber") int chunkNumber,
+                     @Param("size") long size);
+
+    /**
+     * Marks a session as active.
+     *
+     * @param sessionId session id
+     * @param time      time of the last activity
+     */
+    @Modifying
+    @Query("UPDATE upload_session SET last_modified_time = :time WHERE id = :sessionId")
+    void touch(@Param("sessionId") long sessionId, @Param("time") Timestamp time);
+
+    /**
+     * Finds all sessions without any activity since the given time.
+     *
+     * @param time time of the last activity
+     * @return abandoned sessions
+     */
+    @Query("SELECT * FROM upload_session WHERE last_modified_time < :time")
+    List<UploadSession> findAllModifiedBefore(@Param("time") Timestamp time);
+}
@@ -0,0 +1,74 @@
+package mops.persistence;
+
+import mops.persistence.export.ZipExport;
+import mops.util.AggregateBuilder;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Database connection for zip exports.
+ */
+@Repository
+@AggregateBuilder
+public interface ZipExportRepository extends CrudRepository<ZipExport, Long> {
+
+    /**
+     * Finds an export of a directory which is still queued or running for a user.
+     *
+     * @param directoryId id of the exported directory
+     * @param owner       user who requested the export
+     * @param time        exports without any progress since then are ignored
+     * @return the pending export
+     */
+    @Query("SELECT * FROM zip_export WHERE directory_id = :directoryId AND owner = :owner "
+            + "AND status IN ('QUEUED', 'RUNNING') AND last_modified_time >= :time ORDER BY id LIMIT 1")
+    Optional<ZipExport> findPending(@Param("directoryId") long directoryId,
+                                    @Param("owner") String owner,
+                                    @Param("time") Timestamp time);
+
+    /**
+     * Records the progress of a running export. Only the counters are written, so
+     * frequent updates stay cheap.
+     *
+     * @param exportId     export id
+     * @param writtenFiles number of files already written
+     * @param totalFiles   number of files in the archive
+     * @param time         time of the progress
+     */
+    @Modifying
+    @Query("UPDATE zip_export SET written_files = :writtenFiles, total_files = :totalFiles, "
+            + "last_modified_time = :time WHERE id = :exportId")
+    void updateProgress(@Param("exportId") long exportId,
+                        @Param("writtenFiles") int writtenFiles,
+                        @Param("totalFiles") int totalFiles,
+                        @Param("time") Timestamp time);
+
+    /**
+     * Marks queued or running exports without any progress since the given time as failed,
+     * e.g. because the instance working on them was stopped.
+     *
+     * @param time       time of the last progress
+     * @param expiryTime time after which the failed exports are removed
+     * @return number of interrupted exports
+     */
+    @Modifying
+    @Query("UPDATE zip_export SET status = 'FAILED', expiry_time = :expiryTime "
+            + "WHERE status IN ('QUEUED', 'RUNNING') AND last_modified_time < :time")
+    int failStale(@Param("time") Timestamp time, @Param("expiryTime") Timestamp expiryTime);
+
+    /**
+     * Finds all exports which expired before the given time.
+     *
+     * @param time current time
+     * @return expired exports
+     */
+    @Query("SELECT * FROM zip_export WHERE expiry_time < :time")
+    List<ZipExport> findAllExpiredBefore(@Param("time") Timestamp time);
+}
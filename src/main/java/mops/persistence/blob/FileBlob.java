@@ -0,0 +1,41 @@
+package mops.persistence.blob;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NonNull;
+import mops.util.AggregateRoot;
+import org.springframework.data.annotation.Id;
+
+/**
+ * Represents stored file content which may be shared by several files with the same content.
+ * It is only written through the queries of its repository.
+ */
+@Data
+@AllArgsConstructor
+@AggregateRoot
+public class FileBlob {
+
+    /**
+     * Id under which the content is stored, the id of the file it was first uploaded with.
+     */
+    @Id
+    private Long contentId;
+    /**
+     * SHA-256 hash of the content as lower case hex string.
+     */
+    @NonNull
+    private String hash;
+    /**
+     * Size in bytes.
+     */
+    private long size;
+    /**
+     * Number of files referring to this content.
+     */
+    private long refCount;
+    /**
+     * Encoding of the stored content, null if it is stored as it is.
+     */
+    private String encoding;
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Stored file content database integration.
+ */
+package mops.persistence.blob;
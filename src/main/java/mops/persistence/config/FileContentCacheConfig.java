@@ -0,0 +1,35 @@
+package mops.persistence.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Configuration for the local file content cache.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "material1.mops.storage.cache")
+@Getter
+@Setter
+public class FileContentCacheConfig {
+
+    /**
+     * Whether file content should be cached locally.
+     */
+    private boolean enabled;
+    /**
+     * Directory for the cached files. Its content is removed on startup.
+     */
+    private String directory;
+    /**
+     * Maximum total size of all cached files.
+     */
+    private DataSize maxSize;
+    /**
+     * Maximum size of a single cached file.
+     */
+    private DataSize maxFileSize;
+
+}
@@ -5,6 +5,7 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
 /**
  * Configuration for MinIO.
@@ -35,5 +36,20 @@ public class FileRepositoryConfig {
      * MinIO secret key.
      */
     private String secretKey;
+    /**
+     * Content of at least this size is uploaded in parts which are sent concurrently.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    private DataSize parallelUploadThreshold = DataSize.ofMegabytes(32);
+    /**
+     * Number of parts which are uploaded at the same time by all uploads together.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    private int uploadConcurrency = 4;
+    /**
+     * Number of attempts to upload a single part.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    private int uploadAttempts = 3;
 
 }
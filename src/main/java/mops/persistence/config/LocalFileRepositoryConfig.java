@@ -0,0 +1,22 @@
+package mops.persistence.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration for the file storage on the local file system.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "material1.mops.storage.local")
+@Getter
+@Setter
+public class LocalFileRepositoryConfig {
+
+    /**
+     * Root directory of the stored files.
+     */
+    private String directory;
+
+}
@@ -0,0 +1,68 @@
+package mops.persistence.deletion;
+
+import lombok.*;
+import mops.util.AggregateRoot;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Content which has to be removed from the storage. It is recorded in the same transaction
+ * as the deletion of its last file and removed from the storage in the background.
+ */
+@Data
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@AggregateRoot
+public class PendingDeletion {
+
+    /**
+     * Database id.
+     */
+    @Id
+    @Setter(AccessLevel.PRIVATE)
+    private Long id;
+    /**
+     * Id under which the content is stored.
+     */
+    private long contentId;
+    /**
+     * Number of failed attempts to delete the content.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    private int attempts;
+    /**
+     * Time from which the deletion is attempted (again).
+     */
+    @NonNull
+    @Setter(AccessLevel.PRIVATE)
+    private Timestamp nextAttemptTime;
+    /**
+     * Creation Time.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    @EqualsAndHashCode.Exclude
+    @CreatedDate
+    private Timestamp creationTime;
+
+    /**
+     * Records content which can be deleted right away.
+     *
+     * @param contentId id under which the content is stored
+     * @param time      current time
+     * @return new pending deletion
+     */
+    public static PendingDeletion of(long contentId, Instant time) {
+        return new PendingDeletion(null, contentId, 0, Timestamp.from(time), null);
+    }
+
+    /**
+     * Get the creation time.
+     *
+     * @return creation time
+     */
+    public Instant getCreationTime() {
+        return creationTime == null ? Instant.EPOCH : creationTime.toInstant();
+    }
+}
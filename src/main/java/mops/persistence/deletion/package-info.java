@@ -0,0 +1,4 @@
+/**
+ * Outbox of storage deletions database integration.
+ */
+package mops.persistence.deletion;
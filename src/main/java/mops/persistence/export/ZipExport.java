@@ -0,0 +1,183 @@
+package mops.persistence.export;
+
+import lombok.*;
+import mops.util.AggregateRoot;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Represents a zip of a directory which is created in the background and downloaded later.
+ */
+@Data
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@AggregateRoot
+public class ZipExport {
+
+    /**
+     * The export waits for a free worker.
+     */
+    public static final String QUEUED = "QUEUED";
+    /**
+     * The archive is being written.
+     */
+    public static final String RUNNING = "RUNNING";
+    /**
+     * The archive can be downloaded.
+     */
+    public static final String READY = "READY";
+    /**
+     * The archive could not be created.
+     */
+    public static final String FAILED = "FAILED";
+
+    /**
+     * Database id.
+     */
+    @Id
+    @Setter(AccessLevel.PRIVATE)
+    private Long id;
+    /**
+     * Id of the exported directory.
+     */
+    private long directoryId;
+    /**
+     * Name of the exported directory.
+     */
+    @NonNull
+    private String name;
+    /**
+     * User who requested the export.
+     */
+    @NonNull
+    private String owner;
+    /**
+     * One of {@link #QUEUED}, {@link #RUNNING}, {@link #READY} and {@link #FAILED}.
+     */
+    @NonNull
+    @Setter(AccessLevel.PRIVATE)
+    private String status;
+    /**
+     * Number of files already written to the archive.
+     */
+    private int writtenFiles;
+    /**
+     * Number of files in the archive.
+     */
+    private int totalFiles;
+    /**
+     * Archive size in bytes.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    private long size;
+    /**
+     * Time after which the archive is removed.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    private Timestamp expiryTime;
+    /**
+     * Creation Time.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    @EqualsAndHashCode.Exclude
+    @CreatedDate
+    private Timestamp creationTime;
+    /**
+     * Last Modified Time.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    @EqualsAndHashCode.Exclude
+    @LastModifiedDate
+    private Timestamp lastModifiedTime;
+
+    /**
+     * Creates a new queued export.
+     *
+     * @param directoryId id of the exported directory
+     * @param name        name of the exported directory
+     * @param owner       user who requests the export
+     * @return new export
+     */
+    public static ZipExport of(long directoryId, String name, String owner) {
+        return new ZipExport(null, directoryId, name, owner, QUEUED, 0, 0, 0L, null, null, null);
+    }
+
+    /**
+     * Marks the export as being written.
+     */
+    public void start() {
+        status = RUNNING;
+    }
+
+    /**
+     * Marks the archive as ready for download.
+     *
+     * @param archiveSize archive size in bytes
+     * @param expiry      time after which the archive is removed
+     */
+    public void complete(long archiveSize, Instant expiry) {
+        status = READY;
+        size = archiveSize;
+        writtenFiles = totalFiles;
+        expiryTime = Timestamp.from(expiry);
+    }
+
+    /**
+     * Marks the export as failed.
+     *
+     * @param expiry time after which the export is removed
+     */
+    public void fail(Instant expiry) {
+        status = FAILED;
+        expiryTime = Timestamp.from(expiry);
+    }
+
+    /**
+     * Checks whether the archive can be downloaded.
+     *
+     * @param time current time
+     * @return if the archive is ready and not expired
+     */
+    public boolean isDownloadable(Instant time) {
+        return READY.equals(status) && time.isBefore(getExpiryTime());
+    }
+
+    /**
+     * Checks whether the export is still being worked on.
+     *
+     * @return if the export is queued or running
+     */
+    public boolean isPending() {
+        return QUEUED.equals(status) || RUNNING.equals(status);
+    }
+
+    /**
+     * Get the expiry time.
+     *
+     * @return expiry time, {@link Instant#MAX} while the export is pending
+     */
+    public Instant getExpiryTime() {
+        return expiryTime == null ? Instant.MAX : expiryTime.toInstant();
+    }
+
+    /**
+     * Get the creation time.
+     *
+     * @return creation time
+     */
+    public Instant getCreationTime() {
+        return creationTime == null ? Instant.EPOCH : creationTime.toInstant();
+    }
+
+    /**
+     * Get the last modified time.
+     *
+     * @return last modified time
+     */
+    public Instant getLastModifiedTime() {
+        return lastModifiedTime == null ? Instant.EPOCH : lastModifiedTime.toInstant();
+    }
+}
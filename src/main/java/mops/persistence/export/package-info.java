@@ -0,0 +1,4 @@
+/**
+ * Background zip exports database integration.
+ */
+package mops.persistence.export;
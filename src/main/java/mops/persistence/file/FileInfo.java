@@ -55,6 +55,21 @@ public class FileInfo {
      */
     @NonNull
     private String owner;
+    /**
+     * SHA-256 hash of the content, null for files stored before content deduplication.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    private String contentHash;
+    /**
+     * Id under which the content is stored. Files with equal content share it.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    private Long contentId;
+    /**
+     * Encoding of the stored content, null if it is stored as it is.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    private String contentEncoding;
     /**
      * File tags.
      */
@@ -108,6 +123,29 @@ public class FileInfo {
                         .contains(otherTag.toLowerCase(Locale.ROOT)));
     }
 
+    /**
+     * Get the id under which the content is stored. Files stored before content
+     * deduplication keep their content under their own id.
+     *
+     * @return content id
+     */
+    public Long getContentId() {
+        return contentId == null ? id : contentId;
+    }
+
+    /**
+     * Links this file to stored content.
+     *
+     * @param contentHash     SHA-256 hash of the content
+     * @param contentId       id under which the content is stored
+     * @param contentEncoding encoding of the stored content, null if it is stored as it is
+     */
+    public void setContent(String contentHash, long contentId, String contentEncoding) {
+        this.contentHash = contentHash;
+        this.contentId = contentId;
+        this.contentEncoding = contentEncoding;
+    }
+
     /**
      * Get the available from time.
      *
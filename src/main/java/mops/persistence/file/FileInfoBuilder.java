@@ -49,6 +49,18 @@ public class FileInfoBuilder {
      * Username of the owner.
      */
     private String owner;
+    /**
+     * SHA-256 hash of the content.
+     */
+    private String contentHash;
+    /**
+     * Id under which the content is stored.
+     */
+    private Long contentId;
+    /**
+     * Encoding of the stored content.
+     */
+    private String contentEncoding;
     /**
      * File tags.
      */
@@ -79,6 +91,9 @@ public class FileInfoBuilder {
         this.type = file.getType();
         this.size = file.getSize();
         this.owner = file.getOwner();
+        this.contentHash = file.getContentHash();
+        this.contentId = file.getContentHash() == null ? null : file.getContentId();
+        this.contentEncoding = file.getContentEncoding();
         file.getTags().stream().map(FileTag::getName).forEach(this::tag);
         this.availableFrom = file.getAvailableFrom();
         this.availableTo = file.getAvailableTo();
@@ -200,6 +215,32 @@ public class FileInfoBuilder {
         return this;
     }
 
+    /**
+     * Set the stored content.
+     *
+     * @param contentHash SHA-256 hash of the content
+     * @param contentId   id under which the content is stored
+     * @return this
+     */
+    public FileInfoBuilder content(@NonNull String contentHash, long contentId) {
+        return content(contentHash, contentId, null);
+    }
+
+    /**
+     * Set the stored content.
+     *
+     * @param contentHash     SHA-256 hash of the content
+     * @param contentId       id under which the content is stored
+     * @param contentEncoding encoding of the stored content, null if it is stored as it is
+     * @return this
+     */
+    public FileInfoBuilder content(@NonNull String contentHash, long contentId, String contentEncoding) {
+        this.contentHash = contentHash;
+        this.contentId = contentId;
+        this.contentEncoding = contentEncoding;
+        return this;
+    }
+
     /**
      * Add tag.
      *
@@ -294,6 +335,9 @@ public class FileInfoBuilder {
                 type,
                 size,
                 owner,
+                contentHash,
+                contentId,
+                contentEncoding,
                 tags,
                 availableFrom == null ? null : Timestamp.from(availableFrom),
                 availableTo == null ? null : Timestamp.from(availableTo),
@@ -5,23 +5,30 @@ import mops.util.AggregateRoot;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.relational.core.mapping.MappedCollection;
 import org.springframework.data.relational.core.mapping.Table;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Represents a group.
  */
 @Data
-@AllArgsConstructor(access = AccessLevel.PACKAGE)
 @AggregateRoot
 @Table("group_table")
 public class Group {
 
+    /**
+     * Role of users who are no member of a group.
+     */
+    public static final String NO_MEMBER_ROLE = "intruder";
+
     /**
      * Database id.
      */
@@ -57,6 +64,46 @@ public class Group {
     @EqualsAndHashCode.Exclude
     @LastModifiedDate
     private Timestamp lastModifiedTime;
+    /**
+     * Roles by member name, indexed on first use.
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Map<String, String> memberRoles;
+
+    /**
+     * Creates a group.
+     *
+     * @param id               database id
+     * @param groupId          group uuid
+     * @param name             group name
+     * @param members          group members
+     * @param creationTime     creation time
+     * @param lastModifiedTime last modified time
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    Group(Long id, @NonNull UUID groupId, @NonNull String name, @NonNull Set<GroupMember> members,
+          Timestamp creationTime, Timestamp lastModifiedTime) {
+        this.id = id;
+        this.groupId = groupId;
+        this.name = name;
+        this.members = members;
+        this.creationTime = creationTime;
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    /**
+     * Replaces the members.
+     *
+     * @param members group members
+     */
+    public void setMembers(@NonNull Set<GroupMember> members) {
+        this.members = members;
+        this.memberRoles = null;
+    }
 
     /**
      * Get the creation time.
@@ -86,17 +133,22 @@ public class Group {
     }
 
     /**
-     * Get the role of a group member.
+     * Get the role of a group member. The members are indexed by name on the first call,
+     * so large groups are not searched again for every lookup.
      *
      * @param name member name
-     * @return role in group
+     * @return role in group, {@link #NO_MEMBER_ROLE} if the user is no member
      */
     @SuppressWarnings("PMD.LawOfDemeter") // stream
     public String getMemberRole(String name) {
-        return members.stream()
-                .filter(member -> member.getName().equals(name))
-                .findFirst()
-                .map(GroupMember::getRole)
-                .orElse("intruder");
+        Map<String, String> roles = memberRoles;
+        if (roles == null) {
+            // the index is immutable, so it may be shared with other threads without locking
+            roles = members.stream()
+                    .collect(Collectors.toUnmodifiableMap(GroupMember::getName, GroupMember::getRole,
+                            (first, second) -> first));
+            memberRoles = roles;
+        }
+        return roles.getOrDefault(name, NO_MEMBER_ROLE);
     }
 }
@@ -5,10 +5,13 @@ import mops.util.AggregateRoot;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.relational.core.mapping.MappedCollection;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -16,10 +19,22 @@ import java.util.stream.Collectors;
  * Represents a collection of Permissions for a Directory.
  */
 @Data
-@AllArgsConstructor(access = AccessLevel.PACKAGE)
 @AggregateRoot
 public class DirectoryPermissions {
 
+    /**
+     * Bit of the read permission in a permission mask.
+     */
+    public static final int READ = 1;
+    /**
+     * Bit of the write permission in a permission mask.
+     */
+    public static final int WRITE = 2;
+    /**
+     * Bit of the delete permission in a permission mask.
+     */
+    public static final int DELETE = 4;
+
     /**
      * Id in database.
      */
@@ -46,6 +61,41 @@ public class DirectoryPermissions {
     @EqualsAndHashCode.Exclude
     @LastModifiedDate
     private Timestamp lastModifiedTime;
+    /**
+     * Permission masks by role, compiled from the entries on first use.
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Map<String, Integer> permissionMasks;
+
+    /**
+     * Creates directory permissions.
+     *
+     * @param id               id in database
+     * @param permissions      the permission entries
+     * @param creationTime     creation time
+     * @param lastModifiedTime last modified time
+     */
+    DirectoryPermissions(Long id, @NonNull Set<DirectoryPermissionEntry> permissions, Timestamp creationTime,
+                         Timestamp lastModifiedTime) {
+        this.id = id;
+        this.permissions = permissions;
+        this.creationTime = creationTime;
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    /**
+     * Replaces the permission entries.
+     *
+     * @param permissions the permission entries
+     */
+    public void setPermissions(@NonNull Set<DirectoryPermissionEntry> permissions) {
+        this.permissions = permissions;
+        this.permissionMasks = null;
+    }
 
     /**
      * Get the creation time.
@@ -65,18 +115,31 @@ public class DirectoryPermissions {
         return lastModifiedTime == null ? Instant.EPOCH : lastModifiedTime.toInstant();
     }
 
+    /**
+     * Gets the permissions of a role as a combination of {@link #READ}, {@link #WRITE} and {@link #DELETE}.
+     * The masks of all roles are compiled once, so a check is a single lookup.
+     *
+     * @param userRole role of the user in group
+     * @return permission mask, 0 if the role has no permissions
+     */
+    public int getPermissionMask(String userRole) {
+        Map<String, Integer> masks = permissionMasks;
+        if (masks == null) {
+            masks = compilePermissionMasks();
+            // the compiled map is immutable, so it may be shared with other threads without locking
+            permissionMasks = masks;
+        }
+        return masks.getOrDefault(userRole, 0);
+    }
+
     /**
      * Checks if a role has writing access.
      *
      * @param userRole role of the user in group
      * @return boolean if user is allowed to write
      */
-    @SuppressWarnings("PMD.LawOfDemeter") //this is a stream
     public boolean isAllowedToWrite(String userRole) {
-        return permissions.stream()
-                .filter(DirectoryPermissionEntry::isCanWrite)
-                .map(DirectoryPermissionEntry::getRole)
-                .anyMatch(userRole::equals);
+        return (getPermissionMask(userRole) & WRITE) != 0;
     }
 
     /**
@@ -85,12 +148,8 @@ public class DirectoryPermissions {
      * @param userRole role of the user in group
      * @return boolean if user is allowed
      */
-    @SuppressWarnings("PMD.LawOfDemeter") //this is a stream
     public boolean isAllowedToRead(String userRole) {
-        return permissions.stream()
-                .filter(DirectoryPermissionEntry::isCanRead)
-                .map(DirectoryPermissionEntry::getRole)
-                .anyMatch(userRole::equals);
+        return (getPermissionMask(userRole) & READ) != 0;
     }
 
     /**
@@ -99,12 +158,8 @@ public class DirectoryPermissions {
      * @param userRole role of the user in group
      * @return boolean if user is allowed to delete
      */
-    @SuppressWarnings("PMD.LawOfDemeter") //this is a stream
     public boolean isAllowedToDelete(String userRole) {
-        return permissions.stream()
-                .filter(DirectoryPermissionEntry::isCanDelete)
-                .map(DirectoryPermissionEntry::getRole)
-                .anyMatch(userRole::equals);
+        return (getPermissionMask(userRole) & DELETE) != 0;
     }
 
     /**
@@ -119,6 +174,23 @@ public class DirectoryPermissions {
                 .collect(Collectors.toUnmodifiableSet());
     }
 
+    /**
+     * Combines the entries of each role to a permission mask.
+     *
+     * @return immutable permission masks by role
+     */
+    @SuppressWarnings("PMD.LawOfDemeter")
+    private Map<String, Integer> compilePermissionMasks() {
+        Map<String, Integer> masks = new HashMap<>();
+        for (DirectoryPermissionEntry entry : permissions) {
+            int mask = (entry.isCanRead() ? READ : 0)
+                    | (entry.isCanWrite() ? WRITE : 0)
+                    | (entry.isCanDelete() ? DELETE : 0);
+            masks.merge(entry.getRole(), mask, (first, second) -> first | second);
+        }
+        return Map.copyOf(masks);
+    }
+
     /**
      * Returns DirectoryPermissionsBuilder.
      *
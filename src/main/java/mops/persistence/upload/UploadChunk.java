@@ -0,0 +1,22 @@
+package mops.persistence.upload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A received chunk of an upload.
+ */
+@Data
+@AllArgsConstructor
+class UploadChunk {
+
+    /**
+     * Position of the chunk, starting with 0.
+     */
+    private int chunkNumber;
+    /**
+     * Chunk size in bytes.
+     */
+    private long size;
+
+}
@@ -0,0 +1,151 @@
+package mops.persistence.upload;
+
+import lombok.*;
+import mops.util.AggregateRoot;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.relational.core.mapping.MappedCollection;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Represents a file which is uploaded in chunks.
+ */
+@Data
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@AggregateRoot
+public class UploadSession {
+
+    /**
+     * Database id.
+     */
+    @Id
+    @Setter(AccessLevel.PRIVATE)
+    private Long id;
+    /**
+     * Id of the directory the file is uploaded to.
+     */
+    private long directoryId;
+    /**
+     * File name.
+     */
+    @NonNull
+    private String name;
+    /**
+     * Content type.
+     */
+    @NonNull
+    private String type;
+    /**
+     * User who started the upload.
+     */
+    @NonNull
+    private String owner;
+    /**
+     * Received chunks. They are written by the repository only, saving the session doesn't change them.
+     */
+    @NonNull
+    @Setter(AccessLevel.PRIVATE)
+    @MappedCollection(idColumn = "session_id")
+    private Set<UploadChunk> chunks;
+    /**
+     * Creation Time.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    @EqualsAndHashCode.Exclude
+    @CreatedDate
+    private Timestamp creationTime;
+    /**
+     * Last Modified Time.
+     */
+    @Setter(AccessLevel.PRIVATE)
+    @EqualsAndHashCode.Exclude
+    @LastModifiedDate
+    private Timestamp lastModifiedTime;
+
+    /**
+     * Creates a new upload session without any chunks.
+     *
+     * @param directoryId id of the target directory
+     * @param name        file name
+     * @param type        content type
+     * @param owner       user who starts the upload
+     * @return new session
+     */
+    public static UploadSession of(long directoryId, String name, String type, String owner) {
+        return new UploadSession(null, directoryId, name, type, owner, new HashSet<>(), null, null);
+    }
+
+    /**
+     * Gets the numbers of all received chunks.
+     *
+     * @return sorted chunk numbers
+     */
+    public List<Integer> getChunkNumbers() {
+        return chunks.stream()
+                .map(UploadChunk::getChunkNumber)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the sizes of all received chunks ordered by their number.
+     *
+     * @return chunk sizes in bytes
+     */
+    @SuppressWarnings("PMD.LawOfDemeter") //this is a stream
+    public List<Long> getChunkSizes() {
+        return chunks.stream()
+                .sorted((first, second) -> Integer.compare(first.getChunkNumber(), second.getChunkNumber()))
+                .map(UploadChunk::getSize)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the total size of all received chunks.
+     *
+     * @return size in bytes
+     */
+    public long getSize() {
+        return chunks.stream().mapToLong(UploadChunk::getSize).sum();
+    }
+
+    /**
+     * Gets the total size the upload has once a chunk is received, replacing an earlier upload of the same chunk.
+     *
+     * @param chunkNumber number of the received chunk
+     * @param size        size of the received chunk in bytes
+     * @return size in bytes
+     */
+    @SuppressWarnings("PMD.LawOfDemeter") //this is a stream
+    public long getSizeWithChunk(int chunkNumber, long size) {
+        return chunks.stream()
+                .filter(chunk -> chunk.getChunkNumber() != chunkNumber)
+                .mapToLong(UploadChunk::getSize)
+                .sum() + size;
+    }
+
+    /**
+     * Get the creation time.
+     *
+     * @return creation time
+     */
+    public Instant getCreationTime() {
+        return creationTime == null ? Instant.EPOCH : creationTime.toInstant();
+    }
+
+    /**
+     * Get the last modified time.
+     *
+     * @return last modified time
+     */
+    public Instant getLastModifiedTime() {
+        return lastModifiedTime == null ? Instant.EPOCH : lastModifiedTime.toInstant();
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Chunked upload sessions database integration.
+ */
+package mops.persistence.upload;
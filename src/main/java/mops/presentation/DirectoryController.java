@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import mops.businesslogic.directory.DeleteService;
 import mops.businesslogic.directory.DirectoryService;
 import mops.businesslogic.directory.ZipService;
+import mops.businesslogic.exception.FileNotFoundException;
 import mops.businesslogic.file.FileListEntry;
 import mops.businesslogic.file.FileService;
 import mops.businesslogic.file.query.FileQuery;
@@ -29,9 +30,11 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -154,34 +157,113 @@ public class DirectoryController {
     }
 
     /**
-     * Download a directory as zip.
+     * Uploads a file which is sent as the raw request body. The content is passed on to the
+     * storage while it arrives instead of being spooled by the multipart resolver first.
+     * The CSRF token has to be sent in the {@code X-CSRF-TOKEN} header.
+     *
+     * @param token   keycloak auth token
+     * @param dirId   id of the directory where it will be uploaded
+     * @param name    file name
+     * @param headers request headers with content type and (optional) content length
+     * @param content request body
+     * @return 201 Created
+     */
+    @PostMapping("/{dirId}/upload/stream")
+    public ResponseEntity<Void> uploadFileStream(KeycloakAuthenticationToken token,
+                                                 @PathVariable("dirId") long dirId,
+                                                 @RequestParam("name") String name,
+                                                 @RequestHeader HttpHeaders headers,
+                                                 InputStream content) {
+        Account account = Account.of(token);
+        log.info("Stream upload of a file in directory with id '{}' requested by user '{}'.",
+                dirId, account.getName());
+
+        MediaType contentType = headers.getContentType();
+        try {
+            fileService.saveFile(account, dirId, name, contentType == null ? null : contentType.toString(),
+                    headers.getContentLength(), content, Set.of());
+        } catch (MopsException e) {
+            log.error("Failed to upload file in directory with id '{}':", dirId, e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Datei konnte nicht hochgeladen werden.", e);
+        }
+
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
+    /**
+     * Saves a file whose content is already stored, identified by its SHA-256 hash and size,
+     * so that clients can skip the transfer. If the content is unknown or the user cannot read
+     * any file with it, the client has to upload it.
+     *
+     * @param token keycloak auth token
+     * @param dirId id of the directory where it will be saved
+     * @param name  file name
+     * @param type  content type
+     * @param hash  SHA-256 hash of the content as hex string
+     * @param size  content size in bytes
+     * @return 201 Created if the content is stored, 404 Not Found otherwise
+     */
+    @PostMapping("/{dirId}/upload/hash")
+    public ResponseEntity<Void> uploadFileByHash(KeycloakAuthenticationToken token,
+                                                 @PathVariable("dirId") long dirId,
+                                                 @RequestParam("name") String name,
+                                                 @RequestParam(value = "type", required = false) String type,
+                                                 @RequestParam("hash") String hash,
+                                                 @RequestParam("size") long size) {
+        Account account = Account.of(token);
+        log.info("Upload of a file with known content in directory with id '{}' requested by user '{}'.",
+                dirId, account.getName());
+
+        try {
+            fileService.saveFileByHash(account, dirId, name, type, hash, size, Set.of());
+        } catch (FileNotFoundException e) {
+            log.debug("Content of file '{}' has to be uploaded.", name);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Inhalt nicht vorhanden.", e);
+        } catch (MopsException e) {
+            log.error("Failed to upload file in directory with id '{}':", dirId, e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Datei konnte nicht hochgeladen werden.", e);
+        }
+
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
+    /**
+     * Download a directory as zip. The zip is written to the response while it is created,
+     * so its size is unknown and it is sent with chunked transfer encoding.
      *
      * @param token keycloak auth token
      * @param dirId id of the directory
-     * @return a zip as byte array
+     * @return the streamed zip
      */
     @GetMapping("/{dirId}/zip")
-    public ResponseEntity<byte[]> zipDirectory(KeycloakAuthenticationToken token,
-                                               @PathVariable("dirId") long dirId) {
+    public ResponseEntity<StreamingResponseBody> zipDirectory(KeycloakAuthenticationToken token,
+                                                              @PathVariable("dirId") long dirId) {
         Account account = Account.of(token);
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
         Directory directory;
         try {
-            zipService.zipDirectory(account, dirId, bos);
             directory = directoryService.getDirectory(dirId);
+            // errors after the first bytes were sent can no longer change the status
+            securityService.checkReadPermission(account, directory);
         } catch (MopsException e) {
             log.error("Failed to zip directory with id: {}", dirId);
             throw new ResponseStatusException(
                     HttpStatus.INTERNAL_SERVER_ERROR, "Ordner konnte nicht gezippt werden.", e);
         }
-        byte[] bytes = bos.toByteArray();
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                zipService.zipDirectory(account, dirId, outputStream);
+            } catch (MopsException e) {
+                log.error("Failed to zip directory with id: {}", dirId, e);
+                throw new IOException("Ordner konnte nicht gezippt werden.", e);
+            }
+        };
 
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .contentLength(bytes.length)
                 .header(HttpHeaders.CONTENT_DISPOSITION,
                         String.format("attachment; filename=\"%s.zip\"", directory.getName()))
-                .body(bytes);
+                .body(body);
     }
 
     /**
@@ -0,0 +1,126 @@
+package mops.presentation;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.directory.ZipExportService;
+import mops.businesslogic.security.Account;
+import mops.exception.MopsException;
+import mops.persistence.export.ZipExport;
+import mops.presentation.export.ZipExportResponse;
+import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Controller Class for zip exports on 'material1/export'.
+ * An export is submitted first, then its progress is polled until it is ready and
+ * finally the archive is downloaded while it has not expired.
+ * The CSRF token has to be sent in the {@code X-CSRF-TOKEN} header.
+ */
+@Controller
+@RequestMapping("/material1/export")
+@AllArgsConstructor
+@Slf4j
+// demeter violations in logging
+@SuppressWarnings("PMD.LawOfDemeter")
+public class ExportController {
+
+    /**
+     * Handles zip exports.
+     */
+    private final ZipExportService zipExportService;
+
+    /**
+     * Starts the export of a directory.
+     *
+     * @param token keycloak auth token
+     * @param dirId id of the directory to be zipped
+     * @return 202 Accepted with the location of the export
+     */
+    @PostMapping
+    public ResponseEntity<ZipExportResponse> submitExport(KeycloakAuthenticationToken token,
+                                                          @RequestParam("dirId") long dirId) {
+        Account account = Account.of(token);
+        log.info("Export of directory with id '{}' requested by user '{}'.", dirId, account.getName());
+
+        try {
+            ZipExport export = zipExportService.submitExport(account, dirId);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/material1/export/" + export.getId()))
+                    .body(ZipExportResponse.of(export));
+        } catch (MopsException e) {
+            log.error("Failed to export directory with id '{}':", dirId, e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Export konnte nicht gestartet werden.", e);
+        }
+    }
+
+    /**
+     * Gets the state of an export.
+     *
+     * @param token    keycloak auth token
+     * @param exportId export id
+     * @return the export with its progress
+     */
+    @GetMapping("/{exportId}")
+    public ResponseEntity<ZipExportResponse> getExport(KeycloakAuthenticationToken token,
+                                                       @PathVariable("exportId") long exportId) {
+        Account account = Account.of(token);
+
+        try {
+            return ResponseEntity.ok(ZipExportResponse.of(zipExportService.getExport(account, exportId)));
+        } catch (MopsException e) {
+            log.error("Failed to retrieve export with id '{}':", exportId, e);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Export wurde nicht gefunden.", e);
+        }
+    }
+
+    /**
+     * Downloads the archive of a finished export.
+     *
+     * @param token    keycloak auth token
+     * @param exportId export id
+     * @return the archive
+     */
+    @GetMapping("/{exportId}/download")
+    public ResponseEntity<StreamingResponseBody> downloadExport(KeycloakAuthenticationToken token,
+                                                                @PathVariable("exportId") long exportId) {
+        Account account = Account.of(token);
+        log.info("Download of export {} requested by user '{}'.", exportId, account.getName());
+
+        ZipExport export;
+        InputStream content;
+        try {
+            export = zipExportService.getExport(account, exportId);
+            content = zipExportService.getExportContent(account, exportId);
+        } catch (MopsException e) {
+            log.error("Failed to download export with id '{}':", exportId, e);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Export ist nicht verfügbar.", e);
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try (InputStream in = content) {
+                in.transferTo(outputStream);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(export.getSize())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        String.format("attachment; filename=\"%s.zip\"", export.getName()))
+                .body(body);
+    }
+}
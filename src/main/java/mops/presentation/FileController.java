@@ -2,6 +2,9 @@ package mops.presentation;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.directory.DirectoryTree;
+import mops.businesslogic.directory.DirectoryTreeService;
+import mops.businesslogic.directory.ZipService;
 import mops.businesslogic.file.FileContainer;
 import mops.businesslogic.file.FileService;
 import mops.businesslogic.security.Account;
@@ -9,16 +12,23 @@ import mops.exception.MopsException;
 import mops.persistence.directory.Directory;
 import mops.presentation.error.ExceptionPresentationError;
 import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
-import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
 /**
  * Controller Class for all requests on 'material1/file'.
  */
@@ -31,55 +41,117 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 @SuppressWarnings({ "PMD.DataflowAnomalyAnalysis", "PMD.OnlyOneReturn", "PMD.LawOfDemeter" })
 public class FileController {
 
+    /**
+     * Lets browsers keep file content but forces them to revalidate it on every use.
+     */
+    private static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
     /**
      * Handles actions on single files: Delete, Preview, Download.
      */
     private final FileService fileService;
+    /**
+     * Resolves selections of files.
+     */
+    private final DirectoryTreeService directoryTreeService;
+    /**
+     * Zips selections of files.
+     */
+    private final ZipService zipService;
 
     /**
      * Retrieves a file preview.
      *
-     * @param token  user credentials
-     * @param fileId the id of the requested file
+     * @param token   user credentials
+     * @param fileId  the id of the requested file
+     * @param headers request headers (Range, If-Range)
+     * @param request web request for conditional requests
      * @return in-browser preview of the file
      */
     @GetMapping("/{fileId}")
-    public ResponseEntity<Resource> showFile(KeycloakAuthenticationToken token,
-                                             @PathVariable("fileId") long fileId) {
+    public ResponseEntity<StreamingResponseBody> showFile(KeycloakAuthenticationToken token,
+                                                          @PathVariable("fileId") long fileId,
+                                                          @RequestHeader HttpHeaders headers,
+                                                          WebRequest request) {
+        return streamFile(token, fileId, headers, request, "inline");
+    }
+
+    /**
+     * Downloads a file.
+     *
+     * @param token   a keycloak authentication token
+     * @param fileId  the id of the requested file
+     * @param headers request headers (Range, If-Range)
+     * @param request web request for conditional requests
+     * @return the route to template 'file'
+     */
+    @ResponseBody
+    @GetMapping("/{fileId}/download")
+    public ResponseEntity<StreamingResponseBody> downloadFile(KeycloakAuthenticationToken token,
+                                                              @PathVariable("fileId") long fileId,
+                                                              @RequestHeader HttpHeaders headers,
+                                                              WebRequest request) {
+        return streamFile(token, fileId, headers, request, "attachment");
+    }
+
+    /**
+     * Downloads several files of a group as one zip. The zip starts at the deepest folder
+     * containing all files and keeps the sub folders on the way to them.
+     *
+     * @param token   a keycloak authentication token
+     * @param fileIds the ids of the selected files
+     * @return the streamed zip
+     */
+    @PostMapping("/zip")
+    public ResponseEntity<StreamingResponseBody> zipFiles(KeycloakAuthenticationToken token,
+                                                          @RequestParam("fileIds") List<Long> fileIds) {
         Account account = Account.of(token);
-        log.info("File with id '{}' requested for download by user '{}'.", fileId, account.getName());
+        log.info("Zip of {} files requested by user '{}'.", fileIds.size(), account.getName());
 
-        FileContainer result;
+        DirectoryTree selection;
         try {
-            result = fileService.getFile(account, fileId);
+            // errors after the first bytes were sent can no longer change the status
+            selection = directoryTreeService.getReadableSelection(account, fileIds);
         } catch (MopsException e) {
-            log.error("Failed to retrieve file with id '{}':", fileId, e);
-            throw new ResponseStatusException(
-                    HttpStatus.NOT_FOUND, "The requested file could not be found.", e);
+            log.error("Failed to resolve the selected files {}:", fileIds, e);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Dateien konnten nicht gezippt werden.", e);
         }
 
-        MediaType contentType = MediaType.parseMediaType(result.getType());
-        long contentLength = result.getSize();
+        StreamingResponseBody body = outputStream -> {
+            try {
+                zipService.zipTree(selection, outputStream);
+            } catch (MopsException e) {
+                log.error("Failed to zip the selected files {}:", fileIds, e);
+                throw new IOException("Dateien konnten nicht gezippt werden.", e);
+            }
+        };
 
         return ResponseEntity.ok()
-                .contentType(contentType)
-                .contentLength(contentLength)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
                 .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "inline; filename=\"" + result.getName() + "\"")
-                .body(result.getContent());
+                        String.format("attachment; filename=\"%s.zip\"", selection.getName()))
+                .body(body);
     }
 
     /**
-     * Downloads a file.
+     * Streams the content of a file to the client without buffering it.
+     * A single byte range is answered with 206 Partial Content, multiple ranges
+     * or a failed If-Range condition fall back to the full content.
+     * Conditional requests are answered with 304 Not Modified after the
+     * permission check, without touching the storage.
      *
-     * @param token  a keycloak authentication token
-     * @param fileId the id of the requested file
-     * @return the route to template 'file'
+     * @param token       user credentials
+     * @param fileId      the id of the requested file
+     * @param headers     request headers
+     * @param request     web request for conditional requests
+     * @param disposition content disposition type
+     * @return streamed file content
      */
-    @ResponseBody
-    @GetMapping("/{fileId}/download")
-    public ResponseEntity<Resource> downloadFile(KeycloakAuthenticationToken token,
-                                                 @PathVariable("fileId") long fileId) {
+    private ResponseEntity<StreamingResponseBody> streamFile(KeycloakAuthenticationToken token,
+                                                             long fileId,
+                                                             HttpHeaders headers,
+                                                             WebRequest request,
+                                                             String disposition) {
         Account account = Account.of(token);
         log.info("File with id '{}' requested for download by user '{}'.", fileId, account.getName());
 
@@ -92,15 +164,98 @@ public class FileController {
                     HttpStatus.NOT_FOUND, "The requested file could not be found.", e);
         }
 
+        String eTag = result.getETag();
+        if (request.checkNotModified(eTag, result.getLastModified().toEpochMilli())) {
+            log.debug("File with id '{}' was not modified.", fileId);
+            // the request already carries the status, ETag and Last-Modified headers
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .cacheControl(CACHE_CONTROL)
+                    .build();
+        }
+
         MediaType contentType = MediaType.parseMediaType(result.getType());
         long contentLength = result.getSize();
+        HttpRange range = getRequestedRange(headers, result);
 
-        return ResponseEntity.ok()
+        ResponseEntity.BodyBuilder response;
+        StreamingResponseBody body;
+        if (range == null) {
+            response = ResponseEntity.ok()
+                    .contentLength(contentLength);
+            body = result::writeContent;
+        } else {
+            long start = range.getRangeStart(contentLength);
+            long end = range.getRangeEnd(contentLength);
+            if (start >= contentLength || start > end) {
+                log.info("Requested range of file with id '{}' is not satisfiable.", fileId);
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength)
+                        .build();
+            }
+            long rangeLength = end - start + 1;
+            response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .contentLength(rangeLength)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + contentLength);
+            body = outputStream -> result.writeContent(outputStream, start, rangeLength);
+        }
+
+        return response
                 .contentType(contentType)
-                .contentLength(contentLength)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(eTag)
+                .lastModified(result.getLastModified())
+                .cacheControl(CACHE_CONTROL)
                 .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"" + result.getName() + "\"")
-                .body(result.getContent());
+                        disposition + "; filename=\"" + result.getName() + "\"")
+                .body(body);
+    }
+
+    /**
+     * Gets the single byte range the client asked for if it can be served as a partial response.
+     *
+     * @param headers request headers
+     * @param file    requested file
+     * @return requested range or null if the full content should be sent
+     */
+    private HttpRange getRequestedRange(HttpHeaders headers, FileContainer file) {
+        List<HttpRange> ranges;
+        try {
+            ranges = headers.getRange();
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring invalid range header '{}':", headers.getFirst(HttpHeaders.RANGE), e);
+            return null;
+        }
+
+        if (ranges.size() != 1 || !isIfRangeFulfilled(headers, file)) {
+            return null;
+        }
+        return ranges.get(0);
+    }
+
+    /**
+     * Checks the If-Range condition. A range may only be served if the
+     * validator sent by the client still matches the file.
+     *
+     * @param headers request headers
+     * @param file    requested file
+     * @return true if there is no condition or it matches
+     */
+    private boolean isIfRangeFulfilled(HttpHeaders headers, FileContainer file) {
+        String ifRange = headers.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            // entity tags have to match strongly
+            return ifRange.equals(file.getETag());
+        }
+        try {
+            // HTTP dates only have a precision of seconds
+            return Instant.ofEpochMilli(headers.getFirstDate(HttpHeaders.IF_RANGE)).getEpochSecond()
+                    == file.getLastModified().getEpochSecond();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 
     /**
@@ -0,0 +1,163 @@
+package mops.presentation;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mops.businesslogic.file.UploadSessionService;
+import mops.businesslogic.security.Account;
+import mops.exception.MopsException;
+import mops.persistence.file.FileInfo;
+import mops.persistence.upload.UploadSession;
+import mops.presentation.upload.UploadSessionResponse;
+import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Controller Class for chunked uploads on 'material1/upload'.
+ * A session is created first, then its chunks are uploaded as raw request bodies
+ * (in any order and in parallel) and finally the session is completed.
+ * The CSRF token has to be sent in the {@code X-CSRF-TOKEN} header.
+ */
+@Controller
+@RequestMapping("/material1/upload")
+@AllArgsConstructor
+@Slf4j
+// demeter violations in logging
+@SuppressWarnings("PMD.LawOfDemeter")
+public class UploadController {
+
+    /**
+     * Handles chunked uploads.
+     */
+    private final UploadSessionService uploadSessionService;
+
+    /**
+     * Starts a chunked upload.
+     *
+     * @param token keycloak auth token
+     * @param dirId id of the directory where the file will be uploaded
+     * @param name  file name
+     * @param type  content type of the file
+     * @return the new session
+     */
+    @PostMapping
+    public ResponseEntity<UploadSessionResponse> createSession(KeycloakAuthenticationToken token,
+                                                               @RequestParam("dirId") long dirId,
+                                                               @RequestParam("name") String name,
+                                                               @RequestParam(value = "type", required = false)
+                                                                       String type) {
+        Account account = Account.of(token);
+        log.info("Chunked upload of a file in directory with id '{}' requested by user '{}'.",
+                dirId, account.getName());
+
+        try {
+            UploadSession session = uploadSessionService.createSession(account, dirId, name, type);
+            return ResponseEntity.created(URI.create("/material1/upload/" + session.getId()))
+                    .body(UploadSessionResponse.of(session));
+        } catch (MopsException e) {
+            log.error("Failed to start upload in directory with id '{}':", dirId, e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Upload konnte nicht gestartet werden.", e);
+        }
+    }
+
+    /**
+     * Gets the state of a chunked upload.
+     *
+     * @param token     keycloak auth token
+     * @param sessionId upload session id
+     * @return the session with all received chunks
+     */
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionResponse> getSession(KeycloakAuthenticationToken token,
+                                                            @PathVariable("sessionId") long sessionId) {
+        Account account = Account.of(token);
+
+        try {
+            return ResponseEntity.ok(UploadSessionResponse.of(uploadSessionService.getSession(account, sessionId)));
+        } catch (MopsException e) {
+            log.error("Failed to retrieve upload with id '{}':", sessionId, e);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload wurde nicht gefunden.", e);
+        }
+    }
+
+    /**
+     * Uploads a chunk which is sent as the raw request body. A chunk can be uploaded again if it failed.
+     *
+     * @param token       keycloak auth token
+     * @param sessionId   upload session id
+     * @param chunkNumber position of the chunk, starting with 0
+     * @param headers     request headers with the content length
+     * @param content     request body
+     * @return 204 No Content
+     */
+    @PutMapping("/{sessionId}/{chunkNumber}")
+    public ResponseEntity<Void> saveChunk(KeycloakAuthenticationToken token,
+                                          @PathVariable("sessionId") long sessionId,
+                                          @PathVariable("chunkNumber") int chunkNumber,
+                                          @RequestHeader HttpHeaders headers,
+                                          InputStream content) {
+        Account account = Account.of(token);
+        log.debug("Chunk {} of upload {} sent by user '{}'.", chunkNumber, sessionId, account.getName());
+
+        try {
+            uploadSessionService.saveChunk(account, sessionId, chunkNumber, headers.getContentLength(), content);
+        } catch (MopsException e) {
+            log.error("Failed to save chunk {} of upload with id '{}':", chunkNumber, sessionId, e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Dateiteil konnte nicht gespeichert werden.", e);
+        }
+
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Joins all chunks to a file.
+     *
+     * @param token     keycloak auth token
+     * @param sessionId upload session id
+     * @return 201 Created with the location of the new file
+     */
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<Void> completeSession(KeycloakAuthenticationToken token,
+                                                @PathVariable("sessionId") long sessionId) {
+        Account account = Account.of(token);
+        log.info("Completion of upload {} requested by user '{}'.", sessionId, account.getName());
+
+        try {
+            FileInfo fileInfo = uploadSessionService.completeSession(account, sessionId);
+            return ResponseEntity.created(URI.create("/material1/file/" + fileInfo.getId())).build();
+        } catch (MopsException e) {
+            log.error("Failed to complete upload with id '{}':", sessionId, e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Upload konnte nicht abgeschlossen werden.", e);
+        }
+    }
+
+    /**
+     * Cancels a chunked upload.
+     *
+     * @param token     keycloak auth token
+     * @param sessionId upload session id
+     * @return 204 No Content
+     */
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abortSession(KeycloakAuthenticationToken token,
+                                             @PathVariable("sessionId") long sessionId) {
+        Account account = Account.of(token);
+        log.info("Cancellation of upload {} requested by user '{}'.", sessionId, account.getName());
+
+        try {
+            uploadSessionService.abortSession(account, sessionId);
+        } catch (MopsException e) {
+            log.error("Failed to cancel upload with id '{}':", sessionId, e);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Upload konnte nicht abgebrochen werden.", e);
+        }
+
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,49 @@
+package mops.presentation.export;
+
+import lombok.Value;
+import mops.persistence.export.ZipExport;
+
+/**
+ * State of a zip export, so that clients can show the progress and download the archive once it is ready.
+ */
+@Value
+// @Value automatically makes all fields `private final` which CheckStyle and PMD don't see
+@SuppressWarnings({ "checkstyle:VisibilityModifier", "PMD.DefaultPackage" })
+public class ZipExportResponse {
+
+    /**
+     * Export id.
+     */
+    long id;
+    /**
+     * Name of the exported directory.
+     */
+    String name;
+    /**
+     * One of QUEUED, RUNNING, READY and FAILED.
+     */
+    String status;
+    /**
+     * Number of files already written to the archive.
+     */
+    int writtenFiles;
+    /**
+     * Number of files in the archive.
+     */
+    int totalFiles;
+    /**
+     * Archive size in bytes once it is ready.
+     */
+    long size;
+
+    /**
+     * Creates the response of an export.
+     *
+     * @param export zip export
+     * @return response
+     */
+    public static ZipExportResponse of(ZipExport export) {
+        return new ZipExportResponse(export.getId(), export.getName(), export.getStatus(),
+                export.getWrittenFiles(), export.getTotalFiles(), export.getSize());
+    }
+}
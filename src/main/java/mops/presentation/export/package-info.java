@@ -0,0 +1,4 @@
+/**
+ * Objects that represent responses of the export API.
+ */
+package mops.presentation.export;
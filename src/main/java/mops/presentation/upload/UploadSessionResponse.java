@@ -0,0 +1,43 @@
+package mops.presentation.upload;
+
+import lombok.Value;
+import mops.persistence.upload.UploadSession;
+
+import java.util.List;
+
+/**
+ * State of a chunked upload, so that clients know which chunks are still missing.
+ */
+@Value
+// @Value automatically makes all fields `private final` which CheckStyle and PMD don't see
+@SuppressWarnings({ "checkstyle:VisibilityModifier", "PMD.DefaultPackage" })
+public class UploadSessionResponse {
+
+    /**
+     * Upload session id.
+     */
+    long id;
+    /**
+     * File name.
+     */
+    String name;
+    /**
+     * Total size of the received chunks in bytes.
+     */
+    long size;
+    /**
+     * Numbers of the received chunks.
+     */
+    List<Integer> chunks;
+
+    /**
+     * Creates the response of an upload session.
+     *
+     * @param session upload session
+     * @return response
+     */
+    public static UploadSessionResponse of(UploadSession session) {
+        return new UploadSessionResponse(session.getId(), session.getName(), session.getSize(),
+                session.getChunkNumbers());
+    }
+}
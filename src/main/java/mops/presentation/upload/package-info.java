@@ -0,0 +1,4 @@
+/**
+ * Objects that represent responses of the upload API.
+ */
+package mops.presentation.upload;
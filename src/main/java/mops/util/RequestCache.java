@@ -0,0 +1,154 @@
+package mops.util;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import mops.exception.MopsException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers loaded aggregates for the duration of one request, so that each one is loaded at most once
+ * even if several services ask for it. The cache is bound to the thread handling the request. Outside
+ * of a request, e.g. in background jobs, every lookup is passed to the loader.
+ */
+@Slf4j
+@SuppressWarnings("PMD.BeanMembersShouldSerialize")
+public final class RequestCache implements AutoCloseable {
+
+    /**
+     * Cache of the current thread.
+     */
+    private static final ThreadLocal<RequestCache> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Loaded aggregates by type and id.
+     */
+    private final Map<Key, Object> entries = new HashMap<>();
+    /**
+     * Number of lookups that had to be loaded.
+     */
+    private int loads;
+    /**
+     * Number of lookups answered from the cache.
+     */
+    private int hits;
+
+    private RequestCache() {
+    }
+
+    /**
+     * Starts a cache for the current thread. It must be closed at the end of the request.
+     *
+     * @return cache of the current thread
+     */
+    public static RequestCache start() {
+        RequestCache cache = new RequestCache();
+        CURRENT.set(cache);
+        return cache;
+    }
+
+    /**
+     * Gets an aggregate of the current request or loads it.
+     *
+     * @param type   type of the aggregate
+     * @param id     id of the aggregate
+     * @param loader loads the aggregate if it was not loaded in this request
+     * @param <T>    type of the aggregate
+     * @return the aggregate
+     * @throws MopsException if the aggregate could not be loaded
+     */
+    @SuppressWarnings("PMD.DataflowAnomalyAnalysis")
+    public static <T> T get(Class<T> type, Object id, Loader<T> loader) throws MopsException {
+        RequestCache cache = CURRENT.get();
+        T value;
+        if (cache == null) {
+            value = loader.load();
+        } else {
+            Key key = new Key(type, id);
+            value = type.cast(cache.entries.get(key));
+            if (value == null) {
+                cache.loads++;
+                value = loader.load();
+                cache.entries.put(key, value);
+            } else {
+                cache.hits++;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Forgets an aggregate that is changed or deleted in the current request.
+     *
+     * @param type type of the aggregate
+     * @param id   id of the aggregate
+     */
+    public static void evict(Class<?> type, Object id) {
+        RequestCache cache = CURRENT.get();
+        if (cache != null) {
+            cache.entries.remove(new Key(type, id));
+        }
+    }
+
+    /**
+     * Gets the number of lookups that had to be loaded.
+     *
+     * @return number of loads
+     */
+    public int getLoads() {
+        return loads;
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return number of hits
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Ends the cache of the current thread.
+     */
+    @Override
+    public void close() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Loads an aggregate that is not cached.
+     *
+     * @param <T> type of the aggregate
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+
+        /**
+         * Loads the aggregate.
+         *
+         * @return loaded aggregate, never null
+         * @throws MopsException on error
+         */
+        T load() throws MopsException;
+    }
+
+    /**
+     * Identifies an aggregate.
+     */
+    @Value
+    // @Value automatically makes all fields `private final` which CheckStyle and PMD don't see
+    @SuppressWarnings({ "checkstyle:VisibilityModifier", "PMD.DefaultPackage" })
+    private static class Key {
+
+        /**
+         * Type of the aggregate.
+         */
+        Class<?> type;
+        /**
+         * Id of the aggregate.
+         */
+        Object id;
+    }
+}
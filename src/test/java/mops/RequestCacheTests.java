@@ -0,0 +1,83 @@
+package mops;
+
+import com.c4_soft.springaddons.test.security.context.support.WithIDToken;
+import com.c4_soft.springaddons.test.security.context.support.WithMockKeycloackAuth;
+import mops.businesslogic.directory.DirectoryService;
+import mops.businesslogic.group.GroupService;
+import mops.businesslogic.security.Account;
+import mops.exception.MopsException;
+import mops.persistence.DirectoryPermissionsRepository;
+import mops.persistence.DirectoryRepository;
+import mops.persistence.FileRepository;
+import mops.persistence.directory.Directory;
+import mops.persistence.group.Group;
+import mops.util.DbContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@DbContext
+@SpringBootTest
+class RequestCacheTests {
+
+    static final String USER = "studentin";
+
+    @MockBean
+    FileRepository fileRepository;
+    @SpyBean
+    DirectoryRepository directoryRepository;
+    @SpyBean
+    DirectoryPermissionsRepository permissionsRepository;
+
+    @Autowired
+    MockMvc mvc;
+    @Autowired
+    GroupService groupService;
+    @Autowired
+    DirectoryService directoryService;
+
+    Directory root;
+    Directory subFolder;
+
+    /**
+     * Creates a group with a root folder and a sub folder with its own permissions.
+     */
+    @BeforeEach
+    void setup() throws MopsException {
+        Group group = groupService.saveGroup(Group.builder()
+                .groupId(UUID.randomUUID())
+                .name("Gruppe")
+                .member(USER, "admin")
+                .build());
+        root = directoryService.getOrCreateRootFolder(group.getId()).getRootDir();
+        subFolder = directoryService.createFolder(Account.of(USER, "studentin@hhu.de", USER), root.getId(),
+                "Skripte");
+        clearInvocations(directoryRepository, permissionsRepository);
+    }
+
+    /**
+     * Showing a folder checks its permissions several times, but loads every aggregate once.
+     */
+    @Test
+    @WithMockKeycloackAuth(name = USER, roles = USER, idToken = @WithIDToken(email = "studentin@hhu.de"))
+    void folderContentLoadsEachAggregateOnce() throws Exception {
+        mvc.perform(get("/material1/dir/{dirId}", root.getId()))
+                .andExpect(status().isOk());
+
+        verify(directoryRepository, times(1)).findById(root.getId());
+        verify(permissionsRepository, times(1)).findById(root.getPermissionsId());
+        verify(permissionsRepository, times(1)).findById(subFolder.getPermissionsId());
+    }
+}
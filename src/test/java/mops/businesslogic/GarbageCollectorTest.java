@@ -2,8 +2,10 @@ package mops.businesslogic;
 
 import mops.businesslogic.directory.DeleteService;
 import mops.businesslogic.directory.DirectoryService;
+import mops.businesslogic.directory.ZipExportService;
 import mops.businesslogic.file.FileInfoService;
 import mops.businesslogic.file.FileServiceImpl;
+import mops.businesslogic.file.UploadSessionService;
 import mops.businesslogic.group.GroupService;
 import mops.exception.MopsException;
 import mops.persistence.directory.Directory;
@@ -33,6 +35,10 @@ class GarbageCollectorTest {
     GroupService groupService;
     @Mock
     DirectoryService directoryService;
+    @Mock
+    UploadSessionService uploadSessionService;
+    @Mock
+    ZipExportService zipExportService;
 
     GarbageCollector garbageCollector;
 
@@ -44,37 +50,65 @@ class GarbageCollectorTest {
                 fileService,
                 deleteService,
                 groupService,
-                directoryService
+                directoryService,
+                uploadSessionService,
+                zipExportService
         );
     }
 
     @Test
     void shouldDeleteOrphanedFiles() throws MopsException {
-        Set<Long> givenMetaIds = Set.of(1L, 2L, 3L, 4L, 5L, 7L); // 2 is orphaned
+        Set<Long> givenContentIds = Set.of(1L, 2L, 3L, 4L, 5L, 7L); // 2 is orphaned
         Set<Long> givenFileIds = Set.of(1L, 3L, 4L, 5L, 6L, 7L); // 6 is orphaned
 
         doReturn(givenFileIds)
                 .when(fileService)
                 .getAllFileIds();
 
-        doReturn(givenMetaIds)
+        doReturn(givenContentIds)
+                .when(fileInfoService)
+                .fetchAllContentIds();
+
+        doReturn(Set.of(2L))
                 .when(fileInfoService)
-                .fetchAllFileInfoIds();
+                .fetchAllFileInfoIdsByContentIds(Set.of(2L));
 
         garbageCollector.removeOrphanedFiles();
 
         verify(fileService, times(1)).deleteFileWithoutMeta(6);
         verify(fileInfoService, times(1)).deleteFileInfo(2);
+        verify(fileInfoService, times(1)).deleteContent(Set.of(2L));
 
         for (Long fileId : givenFileIds) {
             verify(fileInfoService, never()).deleteFileInfo(fileId);
         }
 
-        for (Long metaId : givenMetaIds) {
+        for (Long metaId : givenContentIds) {
             verify(fileService, never()).deleteFileWithoutMeta(metaId);
         }
     }
 
+    @Test
+    void shouldKeepSharedContent() throws MopsException {
+        // files 1 and 8 share the content stored under id 1
+        doReturn(Set.of(1L))
+                .when(fileService)
+                .getAllFileIds();
+
+        doReturn(Set.of(1L))
+                .when(fileInfoService)
+                .fetchAllContentIds();
+
+        doReturn(Set.of())
+                .when(fileInfoService)
+                .fetchAllFileInfoIdsByContentIds(Set.of());
+
+        garbageCollector.removeOrphanedFiles();
+
+        verify(fileService, never()).deleteFileWithoutMeta(anyLong());
+        verify(fileInfoService, never()).deleteFileInfo(anyLong());
+    }
+
     @Test
     void shouldRemovedOrphanedDirectories() throws MopsException {
         Directory dir1 = Directory.builder()
@@ -125,4 +159,25 @@ class GarbageCollectorTest {
         verify(deleteService, never()).deleteFolder(any(), eq(1L));
         verify(deleteService, never()).deleteFolder(any(), eq(3L));
     }
+
+    @Test
+    void shouldRemoveExpiredUploads() throws MopsException {
+        garbageCollector.removeExpiredUploads();
+
+        verify(uploadSessionService, times(1)).removeExpiredSessions();
+    }
+
+    @Test
+    void shouldRemoveStagedFiles() throws MopsException {
+        garbageCollector.removeStagedFiles();
+
+        verify(fileService, times(1)).deleteStaleStagedFiles();
+    }
+
+    @Test
+    void shouldRemoveExpiredExports() throws MopsException {
+        garbageCollector.removeExpiredExports();
+
+        verify(zipExportService, times(1)).removeExpiredExports();
+    }
 }
@@ -1,12 +1,17 @@
 package mops.businesslogic.directory;
 
+import mops.businesslogic.exception.DeleteAccessPermissionException;
 import mops.businesslogic.group.GroupService;
 import mops.businesslogic.security.Account;
 import mops.exception.MopsException;
 import mops.persistence.DirectoryPermissionsRepository;
+import mops.persistence.FileBlobRepository;
 import mops.persistence.FileInfoRepository;
 import mops.persistence.FileRepository;
+import mops.persistence.PendingDeletionRepository;
+import mops.persistence.deletion.PendingDeletion;
 import mops.persistence.directory.Directory;
+import mops.persistence.file.FileInfo;
 import mops.persistence.group.Group;
 import mops.persistence.permission.DirectoryPermissions;
 import mops.util.DbContext;
@@ -22,6 +27,9 @@ import java.util.Set;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 
 @DbContext
@@ -49,6 +57,10 @@ class DeleteServiceTest {
     DirectoryPermissionsRepository directoryPermissionsRepository;
     @Autowired
     FileInfoRepository fileInfoRepository;
+    @Autowired
+    FileBlobRepository fileBlobRepository;
+    @Autowired
+    PendingDeletionRepository pendingDeletionRepository;
 
     Directory root;
     Account admin;
@@ -76,6 +88,8 @@ class DeleteServiceTest {
                 .build();
 
         given(groupService.getGroup(GROUP_ID)).willReturn(group);
+        given(groupService.getMemberRole(eq(GROUP_ID), anyString()))
+                .willAnswer(invocation -> group.getMemberRole(invocation.getArgument(1)));
         given(groupService.getDefaultPermissions(GROUP_ID)).willReturn(
                 DirectoryPermissions.builder()
                         .entry(ADMIN, true, true, true)
@@ -121,6 +135,8 @@ class DeleteServiceTest {
 
         given(groupService.getRoles(id)).willReturn(Set.of(ADMIN, EDITOR, VIEWER));
         given(groupService.getGroup(id)).willReturn(group);
+        given(groupService.getMemberRole(eq(id), anyString()))
+                .willAnswer(invocation -> group.getMemberRole(invocation.getArgument(1)));
         given(groupService.getDefaultPermissions(id)).willReturn(
                 DirectoryPermissions.builder()
                         .entry(ADMIN, true, true, true)
@@ -152,4 +168,74 @@ class DeleteServiceTest {
         Optional<DirectoryPermissions> byId = directoryPermissionsRepository.findById(permissionsId);
         assertThat(byId).isNotEmpty();
     }
+
+    @Test
+    void deleteFolderTreeWithFilesTest() throws MopsException {
+        Directory subFolder = directoryService.createFolder(admin, root.getId(), "a");
+        Directory secondLevel = directoryService.createFolder(admin, subFolder.getId(), "b");
+        Directory thirdLevel = directoryService.createFolder(admin, secondLevel.getId(), "c");
+        FileInfo file = fileInfoRepository.save(FileInfo.builder()
+                .name("file")
+                .directory(thirdLevel)
+                .type("txt")
+                .size(0L)
+                .owner(ADMIN)
+                .build());
+
+        Directory parent = deleteService.deleteFolder(admin, subFolder.getId());
+
+        assertThat(parent).isEqualTo(root);
+        assertThat(directoryService.getSubFolders(admin, root.getId())).isEmpty();
+        assertThat(fileInfoRepository.findById(file.getId())).isEmpty();
+    }
+
+    @Test
+    void deleteFolderReleasesSharedContentTest() throws MopsException {
+        Directory subFolder = directoryService.createFolder(admin, root.getId(), "a");
+        Directory secondLevel = directoryService.createFolder(admin, subFolder.getId(), "b");
+        String sharedHash = "a".repeat(64);
+        String unsharedHash = "b".repeat(64);
+        fileBlobRepository.insert(100L, sharedHash, 0L, null);
+        fileBlobRepository.addReference(100L);
+        fileBlobRepository.addReference(100L);
+        fileBlobRepository.insert(101L, unsharedHash, 0L, null);
+        FileInfo kept = saveFile(root, "kept", sharedHash, 100L);
+        FileInfo tagged = fileInfoRepository.save(FileInfo.builder()
+                .from(saveFile(subFolder, "tagged", sharedHash, 100L))
+                .tags("tag1", "tag2")
+                .build());
+        saveFile(secondLevel, "second", sharedHash, 100L);
+        saveFile(secondLevel, "unshared", unsharedHash, 101L);
+
+        deleteService.deleteFolder(admin, subFolder.getId());
+
+        assertThat(fileInfoRepository.findById(tagged.getId())).isEmpty();
+        assertThat(fileInfoRepository.findById(kept.getId())).isPresent();
+        assertThat(fileBlobRepository.findById(100L).orElseThrow().getRefCount()).isEqualTo(1L);
+        assertThat(fileBlobRepository.findById(101L)).isEmpty();
+        // only the content without any files left is removed from the storage
+        assertThat(pendingDeletionRepository.findAll())
+                .extracting(PendingDeletion::getContentId)
+                .containsExactly(101L);
+    }
+
+    @Test
+    void deleteFolderNeedsPermissionForEverySubFolderTest() throws MopsException {
+        Directory subFolder = directoryService.createFolder(admin, root.getId(), "a");
+
+        assertThatThrownBy(() -> deleteService.deleteFolder(editor, subFolder.getId()))
+                .isInstanceOf(DeleteAccessPermissionException.class);
+        assertThat(directoryService.getSubFolders(admin, root.getId())).containsExactly(subFolder);
+    }
+
+    private FileInfo saveFile(Directory directory, String name, String contentHash, long contentId) {
+        return fileInfoRepository.save(FileInfo.builder()
+                .name(name)
+                .directory(directory)
+                .type("txt")
+                .size(0L)
+                .owner(ADMIN)
+                .content(contentHash, contentId)
+                .build());
+    }
 }
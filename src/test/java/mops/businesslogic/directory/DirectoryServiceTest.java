@@ -13,6 +13,7 @@ import mops.persistence.directory.Directory;
 import mops.persistence.group.Group;
 import mops.persistence.permission.DirectoryPermissions;
 import mops.util.DbContext;
+import mops.util.RequestCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +25,8 @@ import java.util.Set;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 
 @DbContext
@@ -78,6 +81,8 @@ class DirectoryServiceTest {
                 .build();
 
         given(groupService.getGroup(GROUP_ID)).willReturn(group);
+        given(groupService.getMemberRole(eq(GROUP_ID), anyString()))
+                .willAnswer(invocation -> group.getMemberRole(invocation.getArgument(1)));
         given(groupService.getDefaultPermissions(GROUP_ID)).willReturn(
                 DirectoryPermissions.builder()
                         .entry(ADMIN, true, true, true)
@@ -271,4 +276,27 @@ class DirectoryServiceTest {
             directoryService.renameDirectory(admin, dirId, "something random");
         }).doesNotThrowAnyException();
     }
+
+    @Test
+    void failedRenameDoesNotLeaveTheRenamedFolderInTheRequestCache() throws MopsException {
+        Directory directory = directoryService.saveDirectory(Directory.builder()
+                .fromParent(root)
+                .name("oldDirName")
+                .build());
+        directoryService.saveDirectory(Directory.builder()
+                .fromParent(root)
+                .name("taken")
+                .build());
+
+        try (RequestCache cache = RequestCache.start()) {
+            Directory cached = directoryService.getDirectory(directory.getId());
+
+            assertThatThrownBy(() -> directoryService.renameDirectory(admin, directory.getId(), "taken"))
+                    .isInstanceOf(RuntimeException.class);
+
+            Directory reloaded = directoryService.getDirectory(directory.getId());
+            assertThat(reloaded).isNotSameAs(cached);
+            assertThat(reloaded.getName()).isEqualTo("oldDirName");
+        }
+    }
 }
@@ -0,0 +1,221 @@
+package mops.businesslogic.directory;
+
+import mops.businesslogic.exception.FileNotFoundException;
+import mops.businesslogic.exception.ReadAccessPermissionException;
+import mops.businesslogic.file.FileListEntry;
+import mops.businesslogic.group.GroupService;
+import mops.businesslogic.security.Account;
+import mops.exception.MopsException;
+import mops.persistence.FileInfoRepository;
+import mops.persistence.FileRepository;
+import mops.persistence.directory.Directory;
+import mops.persistence.file.FileInfo;
+import mops.persistence.group.Group;
+import mops.persistence.permission.DirectoryPermissions;
+import mops.util.DbContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+
+@DbContext
+@SpringBootTest
+class DirectoryTreeServiceTest {
+
+    static final String STUDENTIN = "studentin";
+    static final String ADMIN = "admin";
+    static final String VIEWER = "viewer";
+    static final String INTRUDER = "intruder";
+    static final long GROUP_ID = 1L;
+    static final UUID GROUP_UUID = new UUID(0, 1L);
+
+    @MockBean
+    GroupService groupService;
+    @MockBean
+    FileRepository fileRepository;
+
+    @Autowired
+    DirectoryTreeService directoryTreeService;
+    @Autowired
+    DirectoryService directoryService;
+    @Autowired
+    FileInfoRepository fileInfoRepository;
+
+    Directory root;
+    Account admin;
+    Account user;
+    Account intruder;
+
+    @BeforeEach
+    void setup() throws MopsException {
+        intruder = Account.of(INTRUDER, "intruder@uni-koeln.de", STUDENTIN);
+        user = Account.of(VIEWER, "user@hhu.de", STUDENTIN);
+        admin = Account.of(ADMIN, "admin@hhu.de", STUDENTIN);
+
+        Group group = Group.builder()
+                .id(GROUP_ID)
+                .groupId(GROUP_UUID)
+                .name("Test Group")
+                .member(admin.getName(), ADMIN)
+                .member(user.getName(), VIEWER)
+                .build();
+
+        given(groupService.getGroup(GROUP_ID)).willReturn(group);
+        given(groupService.getMemberRole(eq(GROUP_ID), anyString()))
+                .willAnswer(invocation -> group.getMemberRole(invocation.getArgument(1)));
+        given(groupService.getRoles(GROUP_ID)).willReturn(Set.of(ADMIN, VIEWER));
+        given(groupService.getDefaultPermissions(GROUP_ID)).willReturn(
+                DirectoryPermissions.builder()
+                        .entry(ADMIN, true, true, true)
+                        .entry(VIEWER, true, false, false)
+                        .build()
+        );
+
+        root = directoryService.getOrCreateRootFolder(GROUP_ID).getRootDir();
+    }
+
+    @Test
+    void resolvesTheWholeTree() throws MopsException {
+        Directory child = directoryService.createFolder(admin, root.getId(), "child");
+        Directory grandChild = directoryService.createFolder(admin, child.getId(), "grandchild");
+        FileInfo rootFile = save("b", root, null);
+        FileInfo childFile = save("a", child, null);
+        FileInfo grandChildFile = save("c", grandChild, null);
+
+        DirectoryTree tree = directoryTreeService.getReadableTree(user, root.getId());
+
+        assertThat(tree.getDirectory()).isEqualTo(root);
+        assertThat(fileInfos(tree.getFiles())).containsExactly(rootFile);
+        assertThat(tree.getSubFolders()).hasSize(1);
+        DirectoryTree childTree = tree.getSubFolders().get(0);
+        assertThat(childTree.getDirectory()).isEqualTo(child);
+        assertThat(fileInfos(childTree.getFiles())).containsExactly(childFile);
+        assertThat(childTree.getSubFolders()).extracting(DirectoryTree::getDirectory).containsExactly(grandChild);
+        assertThat(fileInfos(tree.getAllFiles())).containsExactlyInAnyOrder(rootFile, childFile, grandChildFile);
+    }
+
+    @Test
+    void resolvesOnlyTheRequestedSubTree() throws MopsException {
+        Directory child = directoryService.createFolder(admin, root.getId(), "child");
+        directoryService.createFolder(admin, root.getId(), "sibling");
+        save("a", root, null);
+        FileInfo childFile = save("b", child, null);
+
+        DirectoryTree tree = directoryTreeService.getReadableTree(user, child.getId());
+
+        assertThat(tree.getSubFolders()).isEmpty();
+        assertThat(fileInfos(tree.getAllFiles())).containsExactly(childFile);
+    }
+
+    @Test
+    void hidesFoldersWithoutReadPermission() throws MopsException {
+        Directory hidden = directoryService.createFolder(admin, root.getId(), "hidden");
+        Directory visible = directoryService.createFolder(admin, root.getId(), "visible");
+        save("a", hidden, null);
+        directoryService.updatePermission(admin, hidden.getId(), DirectoryPermissions.builder()
+                .entry(ADMIN, true, true, true)
+                .entry(VIEWER, false, false, false)
+                .build());
+
+        DirectoryTree userTree = directoryTreeService.getReadableTree(user, root.getId());
+        DirectoryTree adminTree = directoryTreeService.getReadableTree(admin, root.getId());
+
+        assertThat(userTree.getSubFolders()).extracting(DirectoryTree::getDirectory).containsExactly(visible);
+        assertThat(userTree.getAllFiles()).isEmpty();
+        assertThat(adminTree.getSubFolders()).hasSize(2);
+        assertThat(adminTree.getAllFiles()).hasSize(1);
+    }
+
+    @Test
+    void hidesUnavailableFilesFromViewers() throws MopsException {
+        FileInfo available = save("a", root, null);
+        save("b", root, Instant.now().plus(1, ChronoUnit.DAYS));
+
+        DirectoryTree userTree = directoryTreeService.getReadableTree(user, root.getId());
+        DirectoryTree adminTree = directoryTreeService.getReadableTree(admin, root.getId());
+
+        assertThat(fileInfos(userTree.getFiles())).containsExactly(available);
+        assertThat(adminTree.getFiles()).hasSize(2);
+    }
+
+    @Test
+    void treeWithoutPermissionTest() {
+        assertThatExceptionOfType(ReadAccessPermissionException.class)
+                .isThrownBy(() -> directoryTreeService.getReadableTree(intruder, root.getId()));
+    }
+
+    @Test
+    void selectionStartsAtTheDeepestCommonFolder() throws MopsException {
+        Directory child = directoryService.createFolder(admin, root.getId(), "child");
+        Directory left = directoryService.createFolder(admin, child.getId(), "left");
+        Directory right = directoryService.createFolder(admin, child.getId(), "right");
+        directoryService.createFolder(admin, child.getId(), "other");
+        FileInfo leftFile = save("a", left, null);
+        save("b", left, null);
+        FileInfo rightFile = save("c", right, null);
+        save("d", root, null);
+
+        DirectoryTree selection = directoryTreeService.getReadableSelection(user,
+                List.of(leftFile.getId(), rightFile.getId()));
+
+        assertThat(selection.getDirectory()).isEqualTo(child);
+        assertThat(selection.getSubFolders()).extracting(DirectoryTree::getDirectory).containsExactly(left, right);
+        assertThat(fileInfos(selection.getAllFiles())).containsExactly(leftFile, rightFile);
+    }
+
+    @Test
+    void selectionWithUnreadableFileFails() throws MopsException {
+        Directory hidden = directoryService.createFolder(admin, root.getId(), "hidden");
+        directoryService.updatePermission(admin, hidden.getId(), DirectoryPermissions.builder()
+                .entry(ADMIN, true, true, true)
+                .entry(VIEWER, false, false, false)
+                .build());
+        FileInfo visibleFile = save("a", root, null);
+        FileInfo hiddenFile = save("b", hidden, null);
+
+        assertThatExceptionOfType(ReadAccessPermissionException.class)
+                .isThrownBy(() -> directoryTreeService.getReadableSelection(user,
+                        List.of(visibleFile.getId(), hiddenFile.getId())));
+    }
+
+    @Test
+    void selectionWithMissingFileFails() {
+        FileInfo file = save("a", root, null);
+
+        assertThatExceptionOfType(FileNotFoundException.class)
+                .isThrownBy(() -> directoryTreeService.getReadableSelection(user, List.of(file.getId(), 4711L)));
+    }
+
+    private FileInfo save(String name, Directory directory, Instant availableFrom) {
+        return fileInfoRepository.save(
+                FileInfo.builder()
+                        .name(name)
+                        .directory(directory)
+                        .type("txt")
+                        .size(0L)
+                        .owner(ADMIN)
+                        .availableFrom(availableFrom)
+                        .build()
+        );
+    }
+
+    private static List<FileInfo> fileInfos(List<FileListEntry> entries) {
+        return entries.stream()
+                .map(FileListEntry::getFileInfo)
+                .collect(Collectors.toList());
+    }
+}
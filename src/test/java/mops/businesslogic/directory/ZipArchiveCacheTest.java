@@ -0,0 +1,116 @@
+package mops.businesslogic.directory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipArchiveCacheTest {
+
+    static final byte[] ARCHIVE = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path cacheDirectory;
+
+    ZipArchiveCache cache;
+
+    @BeforeEach
+    void setup() {
+        cache = new ZipArchiveCache(true, cacheDirectory, 25L, 15L, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void completedArchivesAreCached() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        assertThat(cache.open("a")).isNull();
+
+        write("a", ARCHIVE, target, true);
+
+        assertThat(target.toByteArray()).isEqualTo(ARCHIVE);
+        assertThat(read("a")).isEqualTo(ARCHIVE);
+        assertThat(cache.getCurrentSize()).isEqualTo(ARCHIVE.length);
+    }
+
+    @Test
+    void incompleteArchivesAreDiscarded() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        write("a", ARCHIVE, target, false);
+
+        assertThat(target.toByteArray()).isEqualTo(ARCHIVE);
+        assertThat(cache.open("a")).isNull();
+        try (var files = Files.list(cacheDirectory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void tooLargeArchivesAreOnlyWrittenToTheTarget() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        byte[] large = "x".repeat(20).getBytes(StandardCharsets.UTF_8);
+
+        write("a", large, target, true);
+
+        assertThat(target.toByteArray()).isEqualTo(large);
+        assertThat(cache.open("a")).isNull();
+    }
+
+    @Test
+    void leastRecentlyUsedArchivesAreEvicted() throws IOException {
+        write("a", ARCHIVE, new ByteArrayOutputStream(), true);
+        write("b", ARCHIVE, new ByteArrayOutputStream(), true);
+        // marks a as recently used
+        assertThat(read("a")).isEqualTo(ARCHIVE);
+
+        write("c", ARCHIVE, new ByteArrayOutputStream(), true);
+
+        assertThat(cache.open("b")).isNull();
+        assertThat(read("a")).isEqualTo(ARCHIVE);
+        assertThat(read("c")).isEqualTo(ARCHIVE);
+        assertThat(cache.getCurrentSize()).isEqualTo(2L * ARCHIVE.length);
+    }
+
+    @Test
+    void concurrentWritesOfTheSameArchiveAreOnlyCachedOnce() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (ZipArchiveCache.CachingOutputStream first = cache.cacheThrough("a", new ByteArrayOutputStream());
+             ZipArchiveCache.CachingOutputStream second = cache.cacheThrough("a", target)) {
+            first.write(ARCHIVE);
+            second.write(ARCHIVE);
+            first.complete();
+            second.complete();
+        }
+
+        assertThat(target.toByteArray()).isEqualTo(ARCHIVE);
+        assertThat(cache.getCurrentSize()).isEqualTo(ARCHIVE.length);
+    }
+
+    private void write(String key, byte[] content, ByteArrayOutputStream target, boolean complete)
+            throws IOException {
+        try (ZipArchiveCache.CachingOutputStream stream = cache.cacheThrough(key, target)) {
+            stream.write(content);
+            if (complete) {
+                stream.complete();
+            }
+        }
+    }
+
+    private byte[] read(String key) throws IOException {
+        FileChannel channel = cache.open(key);
+        assertThat(channel).isNotNull();
+        try (InputStream stream = Channels.newInputStream(channel)) {
+            return stream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package mops.businesslogic.directory;
+
+import mops.persistence.file.FileInfo;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipCompressionTest {
+
+    @Test
+    void compressedFormatsAreRecognized() {
+        assertThat(ZipCompression.isCompressedFormat("image/jpeg", "photo")).isTrue();
+        assertThat(ZipCompression.isCompressedFormat("video/mp4", "lecture")).isTrue();
+        assertThat(ZipCompression.isCompressedFormat("application/octet-stream", "slides.PDF")).isTrue();
+        assertThat(ZipCompression.isCompressedFormat(
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document", "notes")).isTrue();
+        assertThat(ZipCompression.isCompressedFormat("text/plain", "notes.txt")).isFalse();
+        assertThat(ZipCompression.isCompressedFormat("application/octet-stream", "data")).isFalse();
+    }
+
+    @Test
+    void textIsCompressed() {
+        assertThat(ZipCompression.shouldCompress(info("notes.txt", "text/plain"), null)).isTrue();
+    }
+
+    @Test
+    void mediaIsNotCompressed() {
+        assertThat(ZipCompression.shouldCompress(info("photo.jpg", "image/jpeg"), null)).isFalse();
+    }
+
+    @Test
+    void unknownFormatsAreSampled() {
+        byte[] random = new byte[10_000];
+        new Random(42).nextBytes(random);
+        byte[] repetitive = "abc".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+        FileInfo unknown = info("data", "application/octet-stream");
+
+        assertThat(ZipCompression.shouldCompress(unknown, random)).isFalse();
+        assertThat(ZipCompression.shouldCompress(unknown, repetitive)).isTrue();
+        // streamed content cannot be sampled
+        assertThat(ZipCompression.shouldCompress(unknown, null)).isTrue();
+    }
+
+    @Test
+    void storedEntryKnowsItsChecksum() {
+        byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        ZipEntry entry = ZipCompression.storedEntry("dir/file.txt", content);
+
+        assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+        assertThat(entry.getSize()).isEqualTo(content.length);
+        assertThat(entry.getCompressedSize()).isEqualTo(content.length);
+        assertThat(entry.getCrc()).isEqualTo(crc.getValue());
+    }
+
+    private static FileInfo info(String name, String type) {
+        return FileInfo.builder()
+                .name(name)
+                .directory(1L)
+                .type(type)
+                .size(0L)
+                .owner("user")
+                .build();
+    }
+}
@@ -0,0 +1,173 @@
+package mops.businesslogic.directory;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import mops.businesslogic.exception.FileNotFoundException;
+import mops.businesslogic.exception.MopsZipsException;
+import mops.businesslogic.exception.ReadAccessPermissionException;
+import mops.businesslogic.security.Account;
+import mops.businesslogic.security.SecurityService;
+import mops.businesslogic.time.TimeService;
+import mops.exception.MopsException;
+import mops.persistence.FileRepository;
+import mops.persistence.ZipExportRepository;
+import mops.persistence.directory.Directory;
+import mops.persistence.export.ZipExport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ZipExportServiceTest {
+
+    static final long DIR_ID = 1L;
+    static final long EXPORT_ID = 5L;
+    static final Duration TTL = Duration.ofHours(6);
+
+    @Mock
+    DirectoryService directoryService;
+    @Mock
+    SecurityService securityService;
+    @Mock
+    ZipService zipService;
+    @Mock
+    ZipExportRepository zipExportRepository;
+    @Mock
+    FileRepository fileRepository;
+    @Mock
+    TimeService timeService;
+    @Mock
+    Directory directory;
+    @Mock
+    ZipExport export;
+
+    Account account;
+
+    @BeforeEach
+    void prepareTest() {
+        account = Account.of("user1234", "mail", Set.of());
+        lenient().doReturn(Instant.EPOCH).when(timeService).getInstantNow();
+        lenient().doReturn(EXPORT_ID).when(export).getId();
+        lenient().doReturn(DIR_ID).when(export).getDirectoryId();
+        lenient().doReturn(account.getName()).when(export).getOwner();
+    }
+
+    @Test
+    void writesExportInTheBackground() throws MopsException {
+        ZipExportService zipExportService = createService(MoreExecutors.newDirectExecutorService());
+        givenDirectory();
+        doReturn(Optional.empty()).when(zipExportRepository).findPending(eq(DIR_ID), eq(account.getName()), any());
+        doReturn(export).when(zipExportRepository).save(any());
+        doReturn(Optional.of(export)).when(zipExportRepository).findById(EXPORT_ID);
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            ZipProgressListener listener = invocation.getArgument(3);
+            listener.progress(0, 2);
+            out.write(new byte[10]);
+            listener.progress(1, 2);
+            listener.progress(2, 2);
+            return null;
+        }).when(zipService).zipDirectory(eq(account), eq(DIR_ID), any(), any());
+
+        zipExportService.submitExport(account, DIR_ID);
+
+        verify(export).start();
+        verify(zipExportRepository, times(3)).updateProgress(eq(EXPORT_ID), anyInt(), eq(2), any());
+        verify(fileRepository).saveExport(eq(EXPORT_ID), any(InputStream.class), eq(10L));
+        verify(export).complete(10L, Instant.EPOCH.plus(TTL));
+        verify(export, never()).fail(any());
+    }
+
+    @Test
+    void reusesPendingExport() throws MopsException {
+        ZipExportService zipExportService = createService(MoreExecutors.newDirectExecutorService());
+        givenDirectory();
+        doReturn(Optional.of(export)).when(zipExportRepository)
+                .findPending(eq(DIR_ID), eq(account.getName()), any());
+
+        zipExportService.submitExport(account, DIR_ID);
+
+        verify(zipExportRepository, never()).save(any());
+        verifyNoInteractions(zipService);
+    }
+
+    @Test
+    void rejectsExportIfAllWorkersAreBusy() throws MopsException {
+        ExecutorService executor = mock(ExecutorService.class);
+        ZipExportService zipExportService = createService(executor);
+        givenDirectory();
+        doReturn(Optional.empty()).when(zipExportRepository).findPending(eq(DIR_ID), eq(account.getName()), any());
+        doReturn(export).when(zipExportRepository).save(any());
+        doThrow(new RejectedExecutionException()).when(executor).execute(any());
+
+        assertThatThrownBy(() -> zipExportService.submitExport(account, DIR_ID))
+                .isInstanceOf(MopsZipsException.class);
+
+        verify(export).fail(Instant.EPOCH.plus(TTL));
+    }
+
+    @Test
+    void failedZipFailsExport() throws MopsException {
+        ZipExportService zipExportService = createService(MoreExecutors.newDirectExecutorService());
+        givenDirectory();
+        doReturn(Optional.empty()).when(zipExportRepository).findPending(eq(DIR_ID), eq(account.getName()), any());
+        doReturn(export).when(zipExportRepository).save(any());
+        doReturn(Optional.of(export)).when(zipExportRepository).findById(EXPORT_ID);
+        doThrow(new MopsZipsException("Fehler", null))
+                .when(zipService).zipDirectory(eq(account), eq(DIR_ID), any(), any());
+
+        zipExportService.submitExport(account, DIR_ID);
+
+        verify(export).fail(Instant.EPOCH.plus(TTL));
+        verify(fileRepository, never()).saveExport(anyLong(), any(), anyLong());
+    }
+
+    @Test
+    void otherUsersCannotSeeExport() {
+        ZipExportService zipExportService = createService(MoreExecutors.newDirectExecutorService());
+        doReturn(Optional.of(export)).when(zipExportRepository).findById(EXPORT_ID);
+        doReturn("someone else").when(export).getOwner();
+
+        assertThatThrownBy(() -> zipExportService.getExport(account, EXPORT_ID))
+                .isInstanceOf(ReadAccessPermissionException.class);
+    }
+
+    @Test
+    void pendingExportCannotBeDownloaded() {
+        ZipExportService zipExportService = createService(MoreExecutors.newDirectExecutorService());
+        doReturn(Optional.of(export)).when(zipExportRepository).findById(EXPORT_ID);
+        doReturn(false).when(export).isDownloadable(Instant.EPOCH);
+
+        assertThatThrownBy(() -> zipExportService.getExportContent(account, EXPORT_ID))
+                .isInstanceOf(FileNotFoundException.class);
+
+        verifyNoInteractions(fileRepository);
+    }
+
+    private void givenDirectory() throws MopsException {
+        doReturn("folder").when(directory).getName();
+        doReturn(directory).when(directoryService).getDirectory(DIR_ID);
+    }
+
+    private ZipExportService createService(ExecutorService executor) {
+        return new ZipExportServiceImpl(directoryService, securityService, zipService, zipExportRepository,
+                fileRepository, timeService, executor, TTL);
+    }
+}
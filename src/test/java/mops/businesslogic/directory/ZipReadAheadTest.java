@@ -0,0 +1,201 @@
+package mops.businesslogic.directory;
+
+import mops.businesslogic.file.FileContainer;
+import mops.persistence.file.FileInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZipReadAheadTest {
+
+    ExecutorService executor;
+    List<String> opened;
+
+    @BeforeEach
+    void setup() {
+        executor = Executors.newFixedThreadPool(4);
+        opened = new ArrayList<>();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void writesFilesInOrder() throws IOException {
+        List<FileContainer> files = List.of(file("a", 10), file("b", 10), file("c", 10), file("d", 10));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ZipReadAhead readAhead = new ZipReadAhead(executor, files, 2, 1024)) {
+            for (int i = 0; i < files.size(); i++) {
+                write(readAhead, i, out);
+            }
+        }
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("a".repeat(10) + "b".repeat(10)
+                + "c".repeat(10) + "d".repeat(10));
+    }
+
+    @Test
+    void readsNextFilesConcurrently() throws Exception {
+        CountDownLatch started = new CountDownLatch(3);
+        List<FileContainer> files = new ArrayList<>();
+        for (String name : List.of("a", "b", "c")) {
+            files.add(new FileContainer(info(name, 1), new AbstractResource() {
+                @Override
+                public String getDescription() {
+                    return name;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    started.countDown();
+                    try {
+                        // only returns if all files are read at the same time
+                        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return new ByteArrayInputStream(name.getBytes(StandardCharsets.UTF_8));
+                }
+            }));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ZipReadAhead readAhead = new ZipReadAhead(executor, files, 3, 1024)) {
+            for (int i = 0; i < files.size(); i++) {
+                write(readAhead, i, out);
+            }
+        }
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("abc");
+    }
+
+    @Test
+    void largeFilesAreNotReadAhead() throws IOException {
+        AtomicInteger reads = new AtomicInteger();
+        List<FileContainer> files = List.of(file("a", 10), counted(file("b", 600), reads));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ZipReadAhead readAhead = new ZipReadAhead(executor, files, 2, 1000)) {
+            write(readAhead, 0, out);
+            // the second file exceeds its share of the buffer
+            assertThat(reads).hasValue(0);
+            assertThat(readAhead.fetch(1)).isNull();
+            readAhead.stream(1, out);
+        }
+
+        assertThat(reads).hasValue(1);
+        assertThat(out.size()).isEqualTo(610);
+    }
+
+    @Test
+    void disabledReadAheadStreamsEveryFile() throws IOException {
+        List<FileContainer> files = List.of(file("a", 10), file("b", 10));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ZipReadAhead readAhead = new ZipReadAhead(executor, files, 0, 1024)) {
+            assertThat(readAhead.fetch(0)).isNull();
+            readAhead.stream(0, out);
+            assertThat(opened).containsExactly("a");
+            write(readAhead, 1, out);
+        }
+
+        assertThat(opened).containsExactly("a", "b");
+    }
+
+    @Test
+    void failedReadsArePassedOn() {
+        Resource broken = new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return "broken";
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+        List<FileContainer> files = List.of(new FileContainer(info("a", 10), broken));
+
+        try (ZipReadAhead readAhead = new ZipReadAhead(executor, files, 2, 1024)) {
+            assertThatThrownBy(() -> readAhead.fetch(0))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("connection reset");
+        }
+    }
+
+    // writes a file like the zip service does, from the content read ahead or streamed
+    private static void write(ZipReadAhead readAhead, int index, OutputStream out) throws IOException {
+        byte[] content = readAhead.fetch(index);
+        if (content == null) {
+            readAhead.stream(index, out);
+        } else {
+            out.write(content);
+        }
+    }
+
+    private FileContainer file(String name, int size) {
+        byte[] content = name.repeat(size).getBytes(StandardCharsets.UTF_8);
+        return new FileContainer(info(name, size), new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return name;
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                synchronized (opened) {
+                    opened.add(name);
+                }
+                return new ByteArrayInputStream(content);
+            }
+        });
+    }
+
+    private static FileContainer counted(FileContainer file, AtomicInteger reads) {
+        return new FileContainer(file.getInfo(), new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return file.getName();
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                reads.incrementAndGet();
+                return file.getContent().getInputStream();
+            }
+        });
+    }
+
+    private static FileInfo info(String name, long size) {
+        return FileInfo.builder()
+                .name(name)
+                .directory(1L)
+                .type("text/plain")
+                .size(size)
+                .owner("user")
+                .build();
+    }
+}
@@ -1,5 +1,6 @@
 package mops.businesslogic.directory;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import mops.businesslogic.file.FileContainer;
 import mops.businesslogic.file.FileListEntry;
 import mops.businesslogic.file.FileService;
@@ -8,25 +9,38 @@ import mops.businesslogic.security.UserPermission;
 import mops.exception.MopsException;
 import mops.persistence.directory.Directory;
 import mops.persistence.file.FileInfo;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -37,12 +51,12 @@ import static org.mockito.BDDMockito.given;
 class ZipServiceTest {
 
     @Mock
-    DirectoryService directoryService;
+    DirectoryTreeService directoryTreeService;
 
     @Mock
     FileService fileService;
 
-    ZipService zipService;
+    ZipServiceImpl zipService;
     Account account;
     long groupOwner;
     long permissionsId;
@@ -50,7 +64,9 @@ class ZipServiceTest {
 
     @BeforeEach
     void setup() {
-        zipService = new ZipServiceImpl(directoryService, fileService);
+        ZipArchiveCache archiveCache = new ZipArchiveCache(false, Path.of("unused"), 0L, 0L, new SimpleMeterRegistry());
+        zipService = new ZipServiceImpl(directoryTreeService, fileService, archiveCache,
+                2, DataSize.ofMegabytes(1), 2, 6);
         account = Account.of("Fridolin", "fridolin@pinguin.de", "admin");
         groupOwner = 2L;
         permissionsId = 4L;
@@ -59,6 +75,11 @@ class ZipServiceTest {
         content = new ClassPathResource(path);
     }
 
+    @AfterEach
+    void tearDown() {
+        zipService.shutdown();
+    }
+
     @Test
     void zipDirectoryWithOneFileTest() throws MopsException, IOException {
         long dirId = 3L;
@@ -89,10 +110,9 @@ class ZipServiceTest {
         try (ZipInputStream expectedInputStream =
                      new ZipInputStream(new BufferedInputStream(Files.newInputStream(
                              Path.of("src/test/resources/static/root.zip"))))) {
-            given(directoryService.getDirectory(dirId)).willReturn(directory);
-            given(fileService.getFilesOfDirectory(any(Account.class), eq(dirId)))
-                    .willReturn(List.of(fileListEntry));
-            given(fileService.getFile(account, fileInfo.getId())).willReturn(fileContainer);
+            given(directoryTreeService.getReadableTree(account, dirId))
+                    .willReturn(new DirectoryTree(directory, List.of(), List.of(fileListEntry)));
+            given(fileService.getFile(fileListEntry)).willReturn(fileContainer);
 
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
             zipService.zipDirectory(account, dirId, bos);
@@ -152,15 +172,11 @@ class ZipServiceTest {
         );
         FileContainer fileContainer = new FileContainer(fileInfo, content);
 
-        given(directoryService.getDirectory(deepDirId)).willReturn(deepDir);
-
-        given(fileService.getFilesOfDirectory(account, deepDirId)).willReturn(List.of(fileListEntry));
-        given(fileService.getFilesOfDirectory(account, bottomDirId)).willReturn(List.of(fileListEntryCopy));
-
-        given(fileService.getFile(eq(account), anyLong())).willReturn(fileContainer);
-
-        given(directoryService.getSubFolders(account, deepDirId)).willReturn(List.of(bottom));
+        DirectoryTree bottomTree = new DirectoryTree(bottom, List.of(), List.of(fileListEntryCopy));
+        given(directoryTreeService.getReadableTree(account, deepDirId))
+                .willReturn(new DirectoryTree(deepDir, List.of(bottomTree), List.of(fileListEntry)));
 
+        given(fileService.getFile(any(FileListEntry.class))).willReturn(fileContainer);
 
         try (ZipInputStream expectedInputStream =
                      new ZipInputStream(new BufferedInputStream(Files.newInputStream(
@@ -179,4 +195,169 @@ class ZipServiceTest {
             }
         }
     }
+
+    @Test
+    void zipDirectoryLeavesTheStreamOpen() throws MopsException, IOException {
+        long dirId = 3L;
+        Directory directory = Directory.builder()
+                .name("root")
+                .groupOwner(groupOwner)
+                .permissions(permissionsId)
+                .build();
+        given(directoryTreeService.getReadableTree(account, dirId))
+                .willReturn(new DirectoryTree(directory, List.of(), List.of()));
+        AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        zipService.zipDirectory(account, dirId, bos);
+
+        assertThat(closed).isFalse();
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            assertThat(zipInputStream.getNextEntry().getName()).isEqualTo("root/");
+        }
+    }
+
+    @Test
+    void mediaIsStoredAndTextIsDeflated() throws MopsException, IOException {
+        long dirId = 3L;
+        Directory directory = Directory.builder()
+                .name("root")
+                .groupOwner(groupOwner)
+                .permissions(permissionsId)
+                .build();
+        byte[] text = "Lorem ipsum dolor sit amet. ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        FileInfo image = fileInfo(1L, "test_image.jpg", MediaType.IMAGE_JPEG_VALUE, 192_511, dirId);
+        FileInfo notes = fileInfo(2L, "notes.txt", MediaType.TEXT_PLAIN_VALUE, text.length, dirId);
+
+        given(directoryTreeService.getReadableTree(account, dirId))
+                .willReturn(new DirectoryTree(directory, List.of(), List.of(entry(image), entry(notes))));
+        given(fileService.getFile(entry(image))).willReturn(new FileContainer(image, content));
+        given(fileService.getFile(entry(notes))).willReturn(new FileContainer(notes, new ByteArrayResource(text)));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        zipService.zipDirectory(account, dirId, bos);
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            assertThat(zipInputStream.getNextEntry().getName()).isEqualTo("root/");
+            ZipEntry imageEntry = zipInputStream.getNextEntry();
+            assertThat(imageEntry.getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(zipInputStream.readAllBytes()).isEqualTo(content.getInputStream().readAllBytes());
+            ZipEntry notesEntry = zipInputStream.getNextEntry();
+            assertThat(notesEntry.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            assertThat(zipInputStream.readAllBytes()).isEqualTo(text);
+        }
+    }
+
+    @Test
+    void zipDirectoryWithMoreThan65535Entries(@TempDir Path tempDir) throws MopsException, IOException {
+        long dirId = 3L;
+        int fileCount = 70_000;
+        Directory directory = Directory.builder()
+                .name("root")
+                .groupOwner(groupOwner)
+                .permissions(permissionsId)
+                .build();
+        List<FileListEntry> entries = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            entries.add(entry(fileInfo(i, "file-" + i + ".txt", MediaType.TEXT_PLAIN_VALUE, 1, dirId)));
+        }
+        given(directoryTreeService.getReadableTree(account, dirId))
+                .willReturn(new DirectoryTree(directory, List.of(), entries));
+        given(fileService.getFile(any(FileListEntry.class))).willAnswer(invocation -> new FileContainer(
+                invocation.<FileListEntry>getArgument(0).getFileInfo(),
+                new ByteArrayResource(new byte[] { 'x' })));
+
+        Path zip = tempDir.resolve("root.zip");
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(zip))) {
+            zipService.zipDirectory(account, dirId, outputStream);
+        }
+
+        // the central directory needs Zip64 records for that many entries
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertThat(zipFile.size()).isEqualTo(fileCount + 1);
+            assertThat(zipFile.getEntry("root/file-69999.txt")).isNotNull();
+        }
+    }
+
+    @Test
+    void cachedArchiveIsServedUntilTheDirectoryChanges(@TempDir Path cacheDir) throws MopsException, IOException {
+        ZipArchiveCache archiveCache = new ZipArchiveCache(true, cacheDir, 1_000_000L, 1_000_000L,
+                new SimpleMeterRegistry());
+        zipService.shutdown();
+        zipService = new ZipServiceImpl(directoryTreeService, fileService, archiveCache,
+                2, DataSize.ofMegabytes(1), 2, 6);
+        long dirId = 3L;
+        Directory directory = Directory.builder()
+                .name("root")
+                .groupOwner(groupOwner)
+                .permissions(permissionsId)
+                .build();
+        byte[] text = "Hello World".getBytes(StandardCharsets.UTF_8);
+        FileInfo notes = fileInfo(1L, "notes.txt", MediaType.TEXT_PLAIN_VALUE, text.length, dirId);
+        FileInfo renamed = fileInfo(1L, "renamed.txt", MediaType.TEXT_PLAIN_VALUE, text.length, dirId);
+        AtomicInteger reads = new AtomicInteger();
+        Resource countedContent = new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return "notes";
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                reads.incrementAndGet();
+                return new ByteArrayInputStream(text);
+            }
+        };
+
+        given(directoryTreeService.getReadableTree(account, dirId))
+                .willReturn(new DirectoryTree(directory, List.of(), List.of(entry(notes))));
+        given(fileService.getFile(entry(notes))).willReturn(new FileContainer(notes, countedContent));
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        zipService.zipDirectory(account, dirId, first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        zipService.zipDirectory(account, dirId, second);
+
+        assertThat(second.toByteArray()).isEqualTo(first.toByteArray());
+        assertThat(reads).hasValue(1);
+
+        given(directoryTreeService.getReadableTree(account, dirId))
+                .willReturn(new DirectoryTree(directory, List.of(), List.of(entry(renamed))));
+        given(fileService.getFile(entry(renamed))).willReturn(new FileContainer(renamed, countedContent));
+
+        ByteArrayOutputStream third = new ByteArrayOutputStream();
+        zipService.zipDirectory(account, dirId, third);
+
+        assertThat(reads).hasValue(2);
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(third.toByteArray()))) {
+            assertThat(zipInputStream.getNextEntry().getName()).isEqualTo("root/");
+            assertThat(zipInputStream.getNextEntry().getName()).isEqualTo("root/renamed.txt");
+        }
+    }
+
+    private static FileInfo fileInfo(long id, String name, String type, long size, long dirId) {
+        return FileInfo.builder()
+                .id(id)
+                .name(name)
+                .directory(dirId)
+                .type(type)
+                .size(size)
+                .owner("Fridolin")
+                .build();
+    }
+
+    private static FileListEntry entry(FileInfo fileInfo) {
+        return new FileListEntry(
+                fileInfo,
+                new UserPermission(true, false, false),
+                false,
+                false,
+                LocalDateTime.of(2020, 1, 1, 0, 0).toInstant(ZoneOffset.UTC)
+        );
+    }
 }
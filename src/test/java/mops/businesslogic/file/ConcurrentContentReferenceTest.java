@@ -0,0 +1,101 @@
+package mops.businesslogic.file;
+
+import mops.exception.MopsException;
+import mops.persistence.FileBlobRepository;
+import mops.persistence.FileInfoRepository;
+import mops.persistence.blob.FileBlob;
+import mops.util.TestContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.Mockito.*;
+
+@TestContext
+@DataJdbcTest
+// every upload commits its own transaction
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ConcurrentContentReferenceTest {
+
+    static final String HASH = "c".repeat(64);
+
+    @Autowired
+    FileInfoRepository fileInfoRepository;
+    @Autowired
+    FileBlobRepository fileBlobRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void cleanUp() {
+        fileBlobRepository.deleteAllByContentIds(List.of(17L, 18L));
+    }
+
+    @Test
+    void concurrentUploadsOfTheSameContentShareIt() throws Exception {
+        CountDownLatch bothLookedUp = new CountDownLatch(2);
+        CountDownLatch firstCommitted = new CountDownLatch(1);
+        ThreadLocal<Boolean> waitsForFirst = ThreadLocal.withInitial(() -> false);
+        FileBlobRepository blobRepository = mock(FileBlobRepository.class, delegatesTo(fileBlobRepository));
+        // both uploads miss the content, the second one records it after the first one was committed
+        doAnswer(invocation -> {
+            Optional<FileBlob> stored = fileBlobRepository.findByHash(HASH);
+            if (bothLookedUp.getCount() > 0) {
+                bothLookedUp.countDown();
+                bothLookedUp.await(5, TimeUnit.SECONDS);
+                if (waitsForFirst.get()) {
+                    firstCommitted.await(5, TimeUnit.SECONDS);
+                }
+            }
+            return stored;
+        }).when(blobRepository).findByHash(HASH);
+        FileInfoService fileInfoService = new FileInfoServiceImpl(fileInfoRepository, blobRepository);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<FileBlob> first = executor.submit(() -> {
+                FileBlob content = commit(fileInfoService, 17L);
+                firstCommitted.countDown();
+                return content;
+            });
+            Future<FileBlob> second = executor.submit(() -> {
+                waitsForFirst.set(true);
+                return commit(fileInfoService, 18L);
+            });
+
+            assertThat(first.get(10, TimeUnit.SECONDS).getContentId()).isEqualTo(17L);
+            assertThat(second.get(10, TimeUnit.SECONDS).getContentId()).isEqualTo(17L);
+        } finally {
+            executor.shutdownNow();
+        }
+        FileBlob stored = fileBlobRepository.findByHash(HASH).orElseThrow();
+        assertThat(stored.getContentId()).isEqualTo(17L);
+        assertThat(stored.getRefCount()).isEqualTo(2L);
+        assertThat(fileBlobRepository.findById(18L)).isEmpty();
+    }
+
+    private FileBlob commit(FileInfoService fileInfoService, long contentId) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            try {
+                return fileInfoService.referenceContent(HASH, contentId, 10L, null);
+            } catch (MopsException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
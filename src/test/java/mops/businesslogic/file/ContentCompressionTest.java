@@ -0,0 +1,75 @@
+package mops.businesslogic.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentCompressionTest {
+
+    static final byte[] TEXT = "Lorem ipsum dolor sit amet. ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void onlyTextualTypesAreChecked() {
+        assertThat(ContentCompression.isCompressibleType("text/plain")).isTrue();
+        assertThat(ContentCompression.isCompressibleType("application/JSON")).isTrue();
+        assertThat(ContentCompression.isCompressibleType("application/xhtml+xml")).isTrue();
+        assertThat(ContentCompression.isCompressibleType("application/pdf")).isFalse();
+        assertThat(ContentCompression.isCompressibleType("image/png")).isFalse();
+        assertThat(ContentCompression.isCompressibleType("application/zip")).isFalse();
+    }
+
+    @Test
+    void repetitiveContentIsCompressible() throws IOException {
+        BufferedInputStream stream = stream(TEXT);
+
+        assertThat(ContentCompression.isCompressible(stream)).isTrue();
+        // the sample is read again
+        assertThat(stream.readAllBytes()).isEqualTo(TEXT);
+    }
+
+    @Test
+    void randomContentIsNotCompressible() throws IOException {
+        byte[] content = new byte[10_000];
+        new Random(42).nextBytes(content);
+
+        assertThat(ContentCompression.isCompressible(stream(content))).isFalse();
+    }
+
+    @Test
+    void smallContentIsNotCompressible() throws IOException {
+        assertThat(ContentCompression.isCompressible(stream("aaaaaaaaaa".getBytes(StandardCharsets.UTF_8))))
+                .isFalse();
+    }
+
+    @Test
+    void compressedContentIsRestored() throws IOException {
+        byte[] compressed;
+        try (InputStream stream = ContentCompression.compress(new ByteArrayInputStream(TEXT))) {
+            compressed = stream.readAllBytes();
+        }
+
+        InputStream restored = ContentCompression.decompress(new ByteArrayInputStream(compressed),
+                ContentCompression.DEFLATE);
+
+        assertThat(compressed.length).isLessThan(TEXT.length / 10);
+        assertThat(restored.readAllBytes()).isEqualTo(TEXT);
+    }
+
+    @Test
+    void uncompressedContentIsPassedThrough() {
+        InputStream stream = new ByteArrayInputStream(TEXT);
+
+        assertThat(ContentCompression.decompress(stream, null)).isSameAs(stream);
+    }
+
+    private static BufferedInputStream stream(byte[] content) {
+        return new BufferedInputStream(new ByteArrayInputStream(content), ContentCompression.SAMPLE_SIZE);
+    }
+}
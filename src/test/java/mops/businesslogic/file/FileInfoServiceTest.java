@@ -2,7 +2,9 @@ package mops.businesslogic.file;
 
 import mops.businesslogic.exception.DatabaseDuplicationException;
 import mops.exception.MopsException;
+import mops.persistence.FileBlobRepository;
 import mops.persistence.FileInfoRepository;
+import mops.persistence.blob.FileBlob;
 import mops.persistence.file.FileInfo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,6 +25,8 @@ class FileInfoServiceTest {
 
     @Mock
     FileInfoRepository fileInfoRepository;
+    @Mock
+    FileBlobRepository fileBlobRepository;
 
     FileInfoService fileInfoService;
 
@@ -30,7 +34,7 @@ class FileInfoServiceTest {
 
     @BeforeEach
     void setup() {
-        fileInfoService = new FileInfoServiceImpl(fileInfoRepository);
+        fileInfoService = new FileInfoServiceImpl(fileInfoRepository, fileBlobRepository);
 
         file1 = FileInfo.builder()
                 .name("file")
@@ -116,4 +120,70 @@ class FileInfoServiceTest {
         willThrow(exception).given(fileInfoRepository).save(file1);
         assertThatExceptionOfType(DatabaseDuplicationException.class).isThrownBy(() -> fileInfoService.saveFileInfo(file1));
     }
+
+    @Test
+    void referenceNewContent() throws MopsException {
+        given(fileBlobRepository.findByHash("hash")).willReturn(Optional.empty());
+
+        FileBlob content = fileInfoService.referenceContent("hash", 17L, 10L, "deflate");
+
+        assertThat(content.getContentId()).isEqualTo(17L);
+        assertThat(content.getEncoding()).isEqualTo("deflate");
+        then(fileBlobRepository).should().insert(17L, "hash", 10L, "deflate");
+    }
+
+    @Test
+    void referenceConcurrentlyRecordedContent() throws MopsException {
+        given(fileBlobRepository.findByHash("hash"))
+                .willReturn(Optional.empty())
+                .willReturn(Optional.of(new FileBlob(3L, "hash", 10L, 1L, null)));
+        willThrow(DuplicateKeyException.class).given(fileBlobRepository).insert(17L, "hash", 10L, "deflate");
+        given(fileBlobRepository.addReference(3L)).willReturn(1);
+
+        FileBlob content = fileInfoService.referenceContent("hash", 17L, 10L, "deflate");
+
+        assertThat(content.getContentId()).isEqualTo(3L);
+        then(fileBlobRepository).should().addReference(3L);
+    }
+
+    @Test
+    void referenceStoredContent() throws MopsException {
+        given(fileBlobRepository.findByHash("hash")).willReturn(Optional.of(new FileBlob(3L, "hash", 10L, 1L, null)));
+        given(fileBlobRepository.addReference(3L)).willReturn(1);
+
+        FileBlob content = fileInfoService.referenceContent("hash", 17L, 10L, "deflate");
+
+        assertThat(content.getContentId()).isEqualTo(3L);
+        // the stored copy keeps its own encoding
+        assertThat(content.getEncoding()).isNull();
+        then(fileBlobRepository).should(never()).insert(anyLong(), anyString(), anyLong(), any());
+    }
+
+    @Test
+    void releaseSharedContent() throws MopsException {
+        FileInfo file = FileInfo.builder()
+                .from(file1)
+                .id(17L)
+                .content("hash", 3L)
+                .build();
+        given(fileBlobRepository.deleteUnreferenced(3L)).willReturn(0);
+
+        boolean unused = fileInfoService.releaseContent(file);
+
+        assertThat(unused).isFalse();
+        then(fileBlobRepository).should().removeReference(3L);
+    }
+
+    @Test
+    void releaseContentStoredBeforeDeduplication() throws MopsException {
+        FileInfo file = FileInfo.builder()
+                .from(file1)
+                .id(17L)
+                .build();
+
+        boolean unused = fileInfoService.releaseContent(file);
+
+        assertThat(unused).isTrue();
+        then(fileBlobRepository).shouldHaveNoInteractions();
+    }
 }
@@ -1,8 +1,10 @@
 package mops.businesslogic.file;
 
+import com.google.common.hash.Hashing;
 import mops.businesslogic.directory.DirectoryService;
 import mops.businesslogic.exception.DeleteAccessPermissionException;
 import mops.businesslogic.exception.EmptyNameException;
+import mops.businesslogic.exception.FileNotFoundException;
 import mops.businesslogic.exception.ReadAccessPermissionException;
 import mops.businesslogic.exception.WriteAccessPermissionException;
 import mops.businesslogic.security.Account;
@@ -11,7 +13,10 @@ import mops.businesslogic.security.UserPermission;
 import mops.businesslogic.time.TimeService;
 import mops.exception.MopsException;
 import mops.persistence.FileRepository;
+import mops.persistence.UploadSessionRepository;
+import mops.persistence.blob.FileBlob;
 import mops.persistence.directory.Directory;
+import mops.persistence.exception.StorageException;
 import mops.persistence.file.FileInfo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -21,9 +26,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 
@@ -43,6 +53,10 @@ class FileServiceTest {
     TimeService timeService;
     @Mock
     FileRepository fileRepository;
+    @Mock
+    StorageDeletionService storageDeletionService;
+    @Mock
+    UploadSessionRepository uploadSessionRepository;
 
     FileService fileService;
 
@@ -59,8 +73,10 @@ class FileServiceTest {
                 getRandomBytes()
         );
         account = Account.of("user1234", "mail", Set.of());
+        StagedFileCommitter stagedFileCommitter = new StagedFileCommitter(
+                new StagedFileRecorder(fileInfoService, uploadSessionRepository), fileRepository);
         fileService = new FileServiceImpl(directoryService, fileInfoService, securityService, timeService,
-                fileRepository);
+                fileRepository, storageDeletionService, stagedFileCommitter);
     }
 
     @Test
@@ -84,10 +100,177 @@ class FileServiceTest {
         doReturn(fileInfoStub)
                 .when(fileInfoService)
                 .saveFileInfo(any());
+        doAnswer(invocation -> blob(fileId, invocation.getArgument(0), file.getSize(), invocation.getArgument(3)))
+                .when(fileInfoService)
+                .referenceContent(anyString(), eq(fileId), eq(file.getSize()), any());
 
         fileService.saveFile(account, dirId, file, tags);
 
-        verify(fileRepository, times(1)).saveFile(file, fileId);
+        verify(fileRepository, times(1)).saveStagedFile(anyString(), any(InputStream.class), eq(file.getSize()),
+                eq("text/plain"));
+        verify(fileRepository, times(1)).promoteStagedFile(anyString(), eq(fileId));
+        verify(fileRepository, never()).deleteStagedFile(anyString());
+        assertThat(fileInfoStub.getContentHash()).hasSize(64);
+        assertThat(fileInfoStub.getContentId()).isEqualTo(fileId);
+    }
+
+    @Test
+    void fileIsRemovedIfItsContentCannotBePromoted() throws MopsException {
+        long dirId = 1;
+        long fileId = 17;
+
+        doReturn(new UserPermission(true, true, false))
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+        FileInfo fileInfoStub = FileInfo.builder()
+                .from(file)
+                .id(fileId)
+                .directory(dirId)
+                .owner(account.getName())
+                .build();
+        doReturn(fileInfoStub)
+                .when(fileInfoService)
+                .saveFileInfo(any());
+        doAnswer(invocation -> blob(fileId, invocation.getArgument(0), file.getSize(), invocation.getArgument(3)))
+                .when(fileInfoService)
+                .referenceContent(anyString(), eq(fileId), eq(file.getSize()), any());
+        doThrow(new StorageException("promotion failed"))
+                .when(fileRepository)
+                .promoteStagedFile(anyString(), eq(fileId));
+
+        assertThatThrownBy(() -> fileService.saveFile(account, dirId, file, Set.of()))
+                .isInstanceOf(MopsException.class);
+
+        verify(fileInfoService, times(1)).deleteFileInfo(fileId);
+        verify(fileInfoService, times(1)).releaseContent(fileInfoStub);
+        verify(fileRepository, times(1)).deleteStagedFile(anyString());
+    }
+
+    @Test
+    void duplicateContentIsStoredOnce() throws MopsException, IOException {
+        long dirId = 1;
+        long fileId = 17;
+        long existingContentId = 3;
+        byte[] content = "same content".getBytes(StandardCharsets.UTF_8);
+        String hash = Hashing.sha256().hashBytes(content).toString();
+
+        UserPermission userPermission = new UserPermission(true, true, false);
+        doReturn(userPermission)
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+
+        FileInfo fileInfoStub = FileInfo.builder()
+                .from(file)
+                .id(fileId)
+                .directory(dirId)
+                .owner(account.getName())
+                .build();
+
+        // the saved file has the counted size of the meta data
+        doAnswer(invocation -> {
+            fileInfoStub.setSize(((FileInfo) invocation.getArgument(0)).getSize());
+            return fileInfoStub;
+        }).when(fileInfoService).saveFileInfo(any());
+        doAnswer(invocation -> ((InputStream) invocation.getArgument(1)).readAllBytes())
+                .when(fileRepository)
+                .saveStagedFile(anyString(), any(InputStream.class), eq((long) content.length), eq("text/plain"));
+        doReturn(blob(existingContentId, hash, content.length, null))
+                .when(fileInfoService)
+                .referenceContent(anyString(), eq(fileId), eq((long) content.length), any());
+
+        try (InputStream stream = new ByteArrayInputStream(content)) {
+            fileService.saveFile(account, dirId, "file.bin", "text/plain", content.length, stream, Set.of());
+        }
+
+        verify(fileInfoService, times(1)).referenceContent(hash, fileId, content.length, null);
+        // the new copy is not needed
+        verify(fileRepository, never()).promoteStagedFile(anyString(), anyLong());
+        verify(fileRepository, times(1)).deleteStagedFile(anyString());
+        assertThat(fileInfoStub.getContentId()).isEqualTo(existingContentId);
+        assertThat(fileInfoStub.getContentHash()).isEqualTo(hash);
+    }
+
+    @Test
+    void canSaveAStreamOfUnknownSize() throws MopsException, IOException {
+        long dirId = 1;
+        long fileId = 17;
+        byte[] content = getRandomBytes();
+
+        UserPermission userPermission = new UserPermission(true, true, false);
+        doReturn(userPermission)
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+
+        FileInfo fileInfoStub = FileInfo.builder()
+                .from(file)
+                .id(fileId)
+                .size(0L)
+                .directory(dirId)
+                .owner(account.getName())
+                .build();
+
+        // the saved file has the counted size of the meta data
+        doAnswer(invocation -> {
+            fileInfoStub.setSize(((FileInfo) invocation.getArgument(0)).getSize());
+            return fileInfoStub;
+        }).when(fileInfoService).saveFileInfo(any());
+        doAnswer(invocation -> ((InputStream) invocation.getArgument(1)).readAllBytes())
+                .when(fileRepository)
+                .saveStagedFile(anyString(), any(InputStream.class), eq(-1L), eq("text/plain"));
+        doAnswer(invocation -> blob(fileId, invocation.getArgument(0), content.length, null))
+                .when(fileInfoService)
+                .referenceContent(anyString(), eq(fileId), eq((long) content.length), any());
+
+        try (InputStream stream = new ByteArrayInputStream(content)) {
+            fileService.saveFile(account, dirId, "file.bin", "text/plain", -1L, stream, Set.of());
+        }
+
+        verify(fileRepository, times(1)).saveStagedFile(anyString(), any(InputStream.class), eq(-1L),
+                eq("text/plain"));
+        verify(fileInfoService, times(2)).saveFileInfo(any());
+        assertThat(fileInfoStub.getSize()).isEqualTo(content.length);
+    }
+
+    @Test
+    void compressibleContentIsStoredCompressed() throws MopsException, IOException {
+        long dirId = 1;
+        long fileId = 17;
+        byte[] content = "Lorem ipsum dolor sit amet. ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+
+        UserPermission userPermission = new UserPermission(true, true, false);
+        doReturn(userPermission)
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+
+        FileInfo fileInfoStub = FileInfo.builder()
+                .from(file)
+                .id(fileId)
+                .directory(dirId)
+                .owner(account.getName())
+                .build();
+
+        // the saved file has the counted size of the meta data
+        doAnswer(invocation -> {
+            fileInfoStub.setSize(((FileInfo) invocation.getArgument(0)).getSize());
+            return fileInfoStub;
+        }).when(fileInfoService).saveFileInfo(any());
+        doAnswer(invocation -> ((InputStream) invocation.getArgument(1)).transferTo(stored))
+                .when(fileRepository)
+                .saveStagedFile(anyString(), any(InputStream.class), eq(-1L), eq("text/plain"));
+        doAnswer(invocation -> blob(fileId, invocation.getArgument(0), content.length, invocation.getArgument(3)))
+                .when(fileInfoService)
+                .referenceContent(anyString(), eq(fileId), eq((long) content.length), any());
+
+        try (InputStream stream = new ByteArrayInputStream(content)) {
+            fileService.saveFile(account, dirId, "file.txt", "text/plain", content.length, stream, Set.of());
+        }
+
+        assertThat(stored.size()).isLessThan(content.length);
+        assertThat(fileInfoStub.getSize()).isEqualTo(content.length);
+        assertThat(fileInfoStub.getContentEncoding()).isEqualTo(ContentCompression.DEFLATE);
+        // the hash identifies the uncompressed content
+        assertThat(fileInfoStub.getContentHash()).isEqualTo(Hashing.sha256().hashBytes(content).toString());
     }
 
     @Test
@@ -129,11 +312,15 @@ class FileServiceTest {
         doReturn(file)
                 .when(fileInfoService)
                 .fetchFileInfo(fileId);
+        doReturn(true)
+                .when(fileInfoService)
+                .releaseContent(file);
 
         fileService.deleteFile(account, fileId);
 
         verify(fileInfoService, times(1)).deleteFileInfo(fileId);
-        verify(fileRepository, times(1)).deleteFile(fileId);
+        verify(storageDeletionService, times(1)).scheduleDeletion(Set.of(fileId));
+        verify(fileRepository, never()).deleteFile(fileId);
     }
 
     @Test
@@ -164,6 +351,7 @@ class FileServiceTest {
 
         verify(fileInfoService, never()).deleteFileInfo(fileId);
         verify(fileRepository, never()).deleteFile(fileId);
+        verifyNoInteractions(storageDeletionService);
     }
 
     @Test
@@ -186,11 +374,145 @@ class FileServiceTest {
         doReturn(fileInfoStub)
                 .when(fileInfoService)
                 .fetchFileInfo(fileId);
+        doReturn(true)
+                .when(fileInfoService)
+                .releaseContent(fileInfoStub);
+
+        fileService.deleteFile(account, fileId);
+
+        verify(fileInfoService, times(1)).deleteFileInfo(fileId);
+        verify(storageDeletionService, times(1)).scheduleDeletion(Set.of(fileId));
+        verify(fileRepository, never()).deleteFile(fileId);
+    }
+
+    @Test
+    void sharedContentIsKeptOnDelete() throws MopsException {
+        long dirId = 1;
+        long fileId = 17;
+        long contentId = 3;
+
+        UserPermission userPermission = new UserPermission(true, false, true);
+        doReturn(userPermission)
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+
+        FileInfo fileInfoStub = FileInfo.builder()
+                .from(file)
+                .id(fileId)
+                .directory(dirId)
+                .owner(account.getName())
+                .content("a".repeat(64), contentId)
+                .build();
+
+        doReturn(fileInfoStub)
+                .when(fileInfoService)
+                .fetchFileInfo(fileId);
+        doReturn(false)
+                .when(fileInfoService)
+                .releaseContent(fileInfoStub);
 
         fileService.deleteFile(account, fileId);
 
         verify(fileInfoService, times(1)).deleteFileInfo(fileId);
-        verify(fileRepository, times(1)).deleteFile(fileId);
+        verify(fileRepository, never()).deleteFile(anyLong());
+        verifyNoInteractions(storageDeletionService);
+    }
+
+    @Test
+    void canSaveAFileWithStoredContent() throws MopsException {
+        long dirId = 1;
+        long fileId = 17;
+        long contentId = 3;
+        String hash = "A".repeat(64);
+
+        UserPermission userPermission = new UserPermission(true, true, false);
+        doReturn(userPermission)
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+        doReturn(Optional.of(blob(contentId, "a".repeat(64), 10L, ContentCompression.DEFLATE)))
+                .when(fileInfoService)
+                .fetchContent("a".repeat(64));
+        doReturn(Set.of(dirId))
+                .when(fileInfoService)
+                .fetchDirectoriesWithContent(contentId);
+
+        FileInfo fileInfoStub = FileInfo.builder()
+                .from(file)
+                .id(fileId)
+                .directory(dirId)
+                .owner(account.getName())
+                .build();
+
+        doReturn(fileInfoStub)
+                .when(fileInfoService)
+                .saveFileInfo(any());
+        doReturn(blob(contentId, "a".repeat(64), 10L, ContentCompression.DEFLATE))
+                .when(fileInfoService)
+                .referenceContent("a".repeat(64), fileId, 10L, ContentCompression.DEFLATE);
+
+        fileService.saveFileByHash(account, dirId, "file.bin", null, hash, 10L, Set.of());
+
+        verify(fileRepository, never()).saveFile(any(InputStream.class), anyLong(), any(), anyLong());
+        assertThat(fileInfoStub.getContentId()).isEqualTo(contentId);
+        assertThat(fileInfoStub.getContentEncoding()).isEqualTo(ContentCompression.DEFLATE);
+    }
+
+    @Test
+    void saveFileWithUnknownContentFails() throws MopsException {
+        long dirId = 1;
+
+        UserPermission userPermission = new UserPermission(true, true, false);
+        doReturn(userPermission)
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+        doReturn(Optional.empty())
+                .when(fileInfoService)
+                .fetchContent("a".repeat(64));
+
+        assertThatThrownBy(() -> fileService.saveFileByHash(account, dirId, "file.bin", null, "a".repeat(64), 10L,
+                Set.of())).isInstanceOf(FileNotFoundException.class);
+
+        verify(fileInfoService, never()).saveFileInfo(any());
+    }
+
+    @Test
+    void saveFileWithContentOfOtherGroupFails() throws MopsException {
+        long dirId = 1;
+        long otherDirId = 5;
+        long contentId = 3;
+        Directory directory = Directory.builder()
+                .id(dirId)
+                .name("Test Dir")
+                .groupOwner(2L)
+                .permissions(54L)
+                .build();
+        Directory otherDirectory = Directory.builder()
+                .id(otherDirId)
+                .name("Other Dir")
+                .groupOwner(7L)
+                .permissions(55L)
+                .build();
+
+        doReturn(directory).when(directoryService).getDirectory(dirId);
+        doReturn(otherDirectory).when(directoryService).getDirectory(otherDirId);
+        doReturn(new UserPermission(true, true, false))
+                .when(securityService)
+                .getPermissionsOfUser(account, directory);
+        doReturn(new UserPermission(false, false, false))
+                .when(securityService)
+                .getPermissionsOfUser(account, otherDirectory);
+        doReturn(Optional.of(blob(contentId, "a".repeat(64), 10L, null)))
+                .when(fileInfoService)
+                .fetchContent("a".repeat(64));
+        doReturn(Set.of(otherDirId))
+                .when(fileInfoService)
+                .fetchDirectoriesWithContent(contentId);
+
+        assertThatThrownBy(() -> fileService.saveFileByHash(account, dirId, "file.bin", null, "a".repeat(64), 10L,
+                Set.of())).isInstanceOf(FileNotFoundException.class);
+
+        verify(fileInfoService, never()).saveFileInfo(any());
+        verify(fileInfoService, never()).referenceContent(anyString(), anyLong(), anyLong(), any());
     }
 
     @Test
@@ -239,6 +561,23 @@ class FileServiceTest {
         verify(fileRepository, never()).getFileContent(fileId);
     }
 
+    @Test
+    void listedFileWithoutPermissionIsNotRetrieved() {
+        FileInfo fileInfo = FileInfo.builder()
+                .from(file)
+                .id(17L)
+                .directory(1L)
+                .owner("notUser1234")
+                .build();
+        FileListEntry fileListEntry = new FileListEntry(fileInfo, new UserPermission(false, false, false),
+                false, false, LocalDateTime.of(2019, 12, 31, 0, 0).toInstant(ZoneOffset.UTC));
+
+        assertThatThrownBy(() -> fileService.getFile(fileListEntry))
+                .isInstanceOf(ReadAccessPermissionException.class);
+
+        verifyNoInteractions(fileInfoService, fileRepository);
+    }
+
     @Test
     void outOfAvailabilityRetrieveFile() throws MopsException {
         long groupId = 2;
@@ -331,14 +670,59 @@ class FileServiceTest {
         FileContainer fileContainer = fileService.getFile(account, fileId);
 
         verify(fileInfoService, atLeastOnce()).fetchFileInfo(fileId);
-        verify(fileRepository, times(1)).getFileContent(fileId);
+        verify(fileRepository, never()).getFileContent(fileId);
 
         byte[] originalContent = file.getBytes();
         byte[] retrievedData = fileContainer.getContent().getInputStream().readAllBytes();
 
+        verify(fileRepository, times(1)).getFileContent(fileId);
+
         assertThat(originalContent).isEqualTo(retrievedData);
     }
 
+    @Test
+    void canRetrieveCompressedFile() throws MopsException, IOException {
+        long dirId = 1;
+        long fileId = 17;
+        byte[] content = "Lorem ipsum dolor sit amet. ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (InputStream stream = ContentCompression.compress(new ByteArrayInputStream(content))) {
+            stream.transferTo(compressed);
+        }
+
+        doReturn(new UserPermission(true, false, false))
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+        doReturn(Directory.builder().id(dirId).name("Test Dir").groupOwner(2L).permissions(54L).build())
+                .when(directoryService)
+                .getDirectory(dirId);
+
+        FileInfo fileInfoStub = FileInfo.builder()
+                .name("file.txt")
+                .type("text/plain")
+                .size(content.length)
+                .id(fileId)
+                .directory(dirId)
+                .owner("notUser1234")
+                .content("a".repeat(64), fileId, ContentCompression.DEFLATE)
+                .build();
+
+        doReturn(fileInfoStub)
+                .when(fileInfoService)
+                .fetchFileInfo(fileId);
+        doAnswer(invocation -> new ByteArrayInputStream(compressed.toByteArray()))
+                .when(fileRepository)
+                .getFileContent(fileId);
+
+        FileContainer fileContainer = fileService.getFile(account, fileId);
+        ByteArrayOutputStream part = new ByteArrayOutputStream();
+        fileContainer.writeContent(part, 28, 11);
+
+        assertThat(fileContainer.getContent().getInputStream().readAllBytes()).isEqualTo(content);
+        assertThat(part.toString(StandardCharsets.UTF_8)).isEqualTo("Lorem ipsum");
+        verify(fileRepository, never()).transferFileContent(anyLong(), anyLong(), anyLong(), any());
+    }
+
     @Test
     void renameAFile() throws MopsException {
         long dirId = 1;
@@ -419,6 +803,10 @@ class FileServiceTest {
         }).isInstanceOf(EmptyNameException.class);
     }
 
+    private static FileBlob blob(long contentId, String hash, long size, String encoding) {
+        return new FileBlob(contentId, hash, size, 1L, encoding);
+    }
+
     private byte[] getRandomBytes() {
         int fileLength = random.nextInt(10000) + 1;
         byte[] bytes = new byte[fileLength];
@@ -0,0 +1,103 @@
+package mops.businesslogic.file;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mops.businesslogic.time.TimeService;
+import mops.exception.MopsException;
+import mops.persistence.FileRepository;
+import mops.persistence.PendingDeletionRepository;
+import mops.persistence.deletion.PendingDeletion;
+import mops.persistence.exception.StorageException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StorageDeletionServiceTest {
+
+    static final int BATCH_SIZE = 2;
+    static final int MAX_ATTEMPTS = 3;
+    static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+
+    @Mock
+    PendingDeletionRepository pendingDeletionRepository;
+    @Mock
+    FileRepository fileRepository;
+    @Mock
+    TimeService timeService;
+    @Mock
+    PendingDeletion first;
+    @Mock
+    PendingDeletion second;
+
+    StorageDeletionService storageDeletionService;
+
+    @BeforeEach
+    void prepareTest() {
+        storageDeletionService = new StorageDeletionServiceImpl(pendingDeletionRepository, fileRepository,
+                timeService, BATCH_SIZE, MAX_ATTEMPTS, RETRY_DELAY, new SimpleMeterRegistry());
+        lenient().doReturn(Instant.EPOCH).when(timeService).getInstantNow();
+        lenient().doReturn(1L).when(first).getId();
+        lenient().doReturn(11L).when(first).getContentId();
+        lenient().doReturn(2L).when(second).getId();
+        lenient().doReturn(12L).when(second).getContentId();
+    }
+
+    @Test
+    void recordsContentInTheOutbox() throws MopsException {
+        storageDeletionService.scheduleDeletion(Set.of(11L));
+
+        verify(pendingDeletionRepository).saveAll(List.of(PendingDeletion.of(11L, Instant.EPOCH)));
+        verifyNoInteractions(fileRepository);
+    }
+
+    @Test
+    void removesDueContentInBatches() throws MopsException {
+        doReturn(List.of(first, second), List.of())
+                .when(pendingDeletionRepository).findDue(any(), eq(BATCH_SIZE));
+
+        int count = storageDeletionService.processDeletions();
+
+        assertThat(count).isEqualTo(2);
+        verify(fileRepository).deleteFiles(Set.of(11L, 12L));
+        verify(pendingDeletionRepository).deleteAllByIds(List.of(1L, 2L));
+    }
+
+    @Test
+    void postponesContentIfTheStorageFails() throws MopsException {
+        doReturn(List.of(first)).when(pendingDeletionRepository).findDue(any(), anyInt());
+        doReturn(1).when(first).getAttempts();
+        doThrow(new StorageException("Fehler")).when(fileRepository).deleteFiles(any());
+
+        int count = storageDeletionService.processDeletions();
+
+        assertThat(count).isZero();
+        verify(pendingDeletionRepository).postpone(List.of(1L),
+                Timestamp.from(Instant.EPOCH.plus(RETRY_DELAY.multipliedBy(2))));
+        verify(pendingDeletionRepository, never()).deleteAllByIds(any());
+    }
+
+    @Test
+    void givesUpAfterTooManyAttempts() throws MopsException {
+        doReturn(List.of(first)).when(pendingDeletionRepository).findDue(any(), anyInt());
+        doReturn(MAX_ATTEMPTS - 1).when(first).getAttempts();
+        doThrow(new StorageException("Fehler")).when(fileRepository).deleteFiles(any());
+
+        storageDeletionService.processDeletions();
+
+        verify(pendingDeletionRepository).deleteAllByIds(List.of(1L));
+        verify(pendingDeletionRepository, never()).postpone(any(), any());
+    }
+}
@@ -0,0 +1,244 @@
+package mops.businesslogic.file;
+
+import mops.businesslogic.directory.DirectoryService;
+import mops.businesslogic.exception.WriteAccessPermissionException;
+import mops.businesslogic.security.Account;
+import mops.businesslogic.security.SecurityService;
+import mops.businesslogic.security.UserPermission;
+import mops.businesslogic.time.TimeService;
+import mops.exception.MopsException;
+import mops.persistence.FileRepository;
+import mops.persistence.UploadSessionRepository;
+import mops.persistence.blob.FileBlob;
+import mops.persistence.exception.StorageException;
+import mops.persistence.file.FileInfo;
+import mops.persistence.upload.UploadSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionServiceTest {
+
+    static final long SESSION_ID = 3L;
+    static final long DIR_ID = 1L;
+    static final long FIVE_MIB = 5L * 1024 * 1024;
+
+    @Mock
+    DirectoryService directoryService;
+    @Mock
+    FileInfoService fileInfoService;
+    @Mock
+    SecurityService securityService;
+    @Mock
+    TimeService timeService;
+    @Mock
+    FileRepository fileRepository;
+    @Mock
+    UploadSessionRepository uploadSessionRepository;
+    @Mock
+    UploadSession session;
+
+    UploadSessionService uploadSessionService;
+    Account account;
+
+    @BeforeEach
+    void prepareTest() {
+        account = Account.of("user1234", "mail", Set.of());
+        StagedFileCommitter stagedFileCommitter = new StagedFileCommitter(
+                new StagedFileRecorder(fileInfoService, uploadSessionRepository), fileRepository);
+        uploadSessionService = new UploadSessionServiceImpl(directoryService, securityService, timeService,
+                fileRepository, uploadSessionRepository, new UploadSessionRecorder(uploadSessionRepository),
+                stagedFileCommitter);
+    }
+
+    @Test
+    void noPermissionToCreateSession() throws MopsException {
+        doReturn(new UserPermission(true, false, false))
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+
+        assertThatThrownBy(() -> uploadSessionService.createSession(account, DIR_ID, "file.bin", null))
+                .isInstanceOf(WriteAccessPermissionException.class);
+
+        verify(uploadSessionRepository, never()).save(any());
+    }
+
+    @Test
+    void savesChunk() throws MopsException {
+        givenSession();
+        doReturn(Instant.EPOCH).when(timeService).getInstantNow();
+        InputStream content = new ByteArrayInputStream(new byte[10]);
+
+        uploadSessionService.saveChunk(account, SESSION_ID, 2, 10L, content);
+
+        verify(fileRepository).saveChunk(SESSION_ID, 2, content, 10L);
+        verify(uploadSessionRepository).deleteChunk(SESSION_ID, 2);
+        verify(uploadSessionRepository).insertChunk(SESSION_ID, 2, 10L);
+    }
+
+    @Test
+    void rejectsChunksBeyondTheMaximumSize() {
+        givenSession();
+        doReturn(DataSize.ofGigabytes(1).toBytes() + 1).when(session).getSizeWithChunk(2, 10L);
+
+        assertThatThrownBy(() -> uploadSessionService.saveChunk(account, SESSION_ID, 2, 10L,
+                new ByteArrayInputStream(new byte[10])))
+                .isInstanceOf(StorageException.class);
+
+        verifyNoInteractions(fileRepository);
+        verify(uploadSessionRepository, never()).insertChunk(anyLong(), anyInt(), anyLong());
+    }
+
+    @Test
+    void otherUsersCannotUploadChunks() {
+        givenSession();
+        doReturn("someone else").when(session).getOwner();
+
+        assertThatThrownBy(() -> uploadSessionService.saveChunk(account, SESSION_ID, 0, 10L,
+                new ByteArrayInputStream(new byte[10])))
+                .isInstanceOf(WriteAccessPermissionException.class);
+
+        verifyNoInteractions(fileRepository);
+    }
+
+    @Test
+    void completesSession() throws MopsException {
+        givenSession();
+        doReturn(List.of(0, 1)).when(session).getChunkNumbers();
+        doReturn(List.of(FIVE_MIB, 10L)).when(session).getChunkSizes();
+        doReturn(FIVE_MIB + 10L).when(session).getSize();
+        doReturn(DIR_ID).when(session).getDirectoryId();
+        doReturn("file.bin").when(session).getName();
+        doReturn("text/plain").when(session).getType();
+        doReturn(new UserPermission(true, true, false))
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+        FileInfo fileInfo = FileInfo.builder()
+                .id(17L)
+                .name("file.bin")
+                .type("text/plain")
+                .size(FIVE_MIB + 10L)
+                .directory(DIR_ID)
+                .owner(account.getName())
+                .build();
+        doReturn(fileInfo).when(fileInfoService).saveFileInfo(any());
+        doReturn(new ByteArrayInputStream(new byte[10])).when(fileRepository).getStagedFileContent(anyString());
+        doReturn(new FileBlob(17L, "a".repeat(64), FIVE_MIB + 10L, 1L, null))
+                .when(fileInfoService)
+                .referenceContent(anyString(), eq(17L), eq(FIVE_MIB + 10L), isNull());
+
+        FileInfo result = uploadSessionService.completeSession(account, SESSION_ID);
+
+        assertThat(result).isSameAs(fileInfo);
+        verify(fileRepository).composeChunks(eq(SESSION_ID), eq(2), eq("text/plain"), anyString());
+        verify(fileRepository).promoteStagedFile(anyString(), eq(17L));
+        verify(fileRepository, never()).deleteStagedFile(anyString());
+        verify(fileRepository).deleteChunks(SESSION_ID);
+        verify(uploadSessionRepository).deleteById(SESSION_ID);
+    }
+
+    @Test
+    void completedSessionWithKnownContentRefersToIt() throws MopsException {
+        givenSession();
+        doReturn(List.of(0)).when(session).getChunkNumbers();
+        doReturn(List.of(10L)).when(session).getChunkSizes();
+        doReturn(10L).when(session).getSize();
+        doReturn(DIR_ID).when(session).getDirectoryId();
+        doReturn("file.bin").when(session).getName();
+        doReturn("text/plain").when(session).getType();
+        doReturn(new UserPermission(true, true, false))
+                .when(securityService)
+                .getPermissionsOfUser(eq(account), any());
+        FileInfo fileInfo = FileInfo.builder()
+                .id(17L)
+                .name("file.bin")
+                .type("text/plain")
+                .size(10L)
+                .directory(DIR_ID)
+                .owner(account.getName())
+                .build();
+        doReturn(fileInfo).when(fileInfoService).saveFileInfo(any());
+        doReturn(new ByteArrayInputStream(new byte[10])).when(fileRepository).getStagedFileContent(anyString());
+        doReturn(new FileBlob(5L, "a".repeat(64), 10L, 2L, null))
+                .when(fileInfoService)
+                .referenceContent(anyString(), eq(17L), eq(10L), isNull());
+
+        FileInfo result = uploadSessionService.completeSession(account, SESSION_ID);
+
+        assertThat(result.getContentId()).isEqualTo(5L);
+        verify(fileRepository, never()).promoteStagedFile(anyString(), anyLong());
+        verify(fileRepository).deleteStagedFile(anyString());
+        verify(fileRepository).deleteChunks(SESSION_ID);
+        verify(uploadSessionRepository).deleteById(SESSION_ID);
+    }
+
+    @Test
+    void cannotCompleteSessionWithMissingChunks() {
+        givenSession();
+        doReturn(List.of(0, 2)).when(session).getChunkNumbers();
+
+        assertThatThrownBy(() -> uploadSessionService.completeSession(account, SESSION_ID))
+                .isInstanceOf(StorageException.class);
+
+        verifyNoInteractions(fileRepository);
+    }
+
+    @Test
+    void cannotCompleteSessionWithSmallChunks() {
+        givenSession();
+        doReturn(List.of(0, 1)).when(session).getChunkNumbers();
+        doReturn(List.of(10L, 10L)).when(session).getChunkSizes();
+
+        assertThatThrownBy(() -> uploadSessionService.completeSession(account, SESSION_ID))
+                .isInstanceOf(StorageException.class);
+
+        verifyNoInteractions(fileRepository);
+    }
+
+    @Test
+    void removesExpiredSessions() throws MopsException {
+        doReturn(Instant.now()).when(timeService).getInstantNow();
+        doReturn(SESSION_ID).when(session).getId();
+        doReturn(List.of(session)).when(uploadSessionRepository).findAllModifiedBefore(any());
+
+        int removed = uploadSessionService.removeExpiredSessions();
+
+        assertThat(removed).isEqualTo(1);
+        verify(fileRepository).deleteChunks(SESSION_ID);
+        verify(uploadSessionRepository).deleteById(SESSION_ID);
+    }
+
+    @Test
+    void removesChunksWithoutSession() throws MopsException {
+        doReturn(Instant.now()).when(timeService).getInstantNow();
+        doReturn(Set.of(SESSION_ID, 4L)).when(fileRepository).getChunkSessionIds();
+        doReturn(true).when(uploadSessionRepository).existsById(SESSION_ID);
+        doReturn(false).when(uploadSessionRepository).existsById(4L);
+
+        int removed = uploadSessionService.removeExpiredSessions();
+
+        assertThat(removed).isEqualTo(1);
+        verify(fileRepository).deleteChunks(4L);
+        verify(fileRepository, never()).deleteChunks(SESSION_ID);
+    }
+
+    private void givenSession() {
+        doReturn(Optional.of(session)).when(uploadSessionRepository).findById(SESSION_ID);
+        lenient().doReturn(account.getName()).when(session).getOwner();
+    }
+}
@@ -26,6 +26,8 @@ import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 
 @DbContext
@@ -74,6 +76,8 @@ class SearchServiceTest {
                 .build();
 
         given(groupService.getGroup(GROUP_ID)).willReturn(group);
+        given(groupService.getMemberRole(eq(GROUP_ID), anyString()))
+                .willAnswer(invocation -> group.getMemberRole(invocation.getArgument(1)));
         given(groupService.getDefaultPermissions(GROUP_ID)).willReturn(
                 DirectoryPermissions.builder()
                         .entry(ADMIN, true, true, true)
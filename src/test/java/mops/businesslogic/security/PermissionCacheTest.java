@@ -0,0 +1,107 @@
+package mops.businesslogic.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mops.businesslogic.group.GroupChangedEvent;
+import mops.businesslogic.permission.PermissionsChangedEvent;
+import mops.exception.MopsException;
+import mops.persistence.permission.DirectoryPermissions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PermissionCacheTest {
+
+    static final long GROUP_ID = 1L;
+    static final long OTHER_GROUP_ID = 2L;
+    static final long PERMISSIONS_ID = 3L;
+
+    MeterRegistry meterRegistry;
+    PermissionCache cache;
+    AtomicInteger loads;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new PermissionCache(100L, Duration.ofMinutes(5), meterRegistry);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void loadsRoleOnce() throws MopsException {
+        assertThat(cache.getRole(GROUP_ID, "user", () -> load("admin"))).isEqualTo("admin");
+        assertThat(cache.getRole(GROUP_ID, "user", () -> load("viewer"))).isEqualTo("admin");
+
+        assertThat(loads).hasValue(1);
+        assertThat(count("hits", "roles")).isEqualTo(1.0);
+        assertThat(count("misses", "roles")).isEqualTo(1.0);
+    }
+
+    @Test
+    void changedGroupInvalidatesOnlyItsRoles() throws MopsException {
+        cache.getRole(GROUP_ID, "user", () -> load("admin"));
+        cache.getRole(OTHER_GROUP_ID, "user", () -> load("admin"));
+
+        cache.onGroupChanged(new GroupChangedEvent(GROUP_ID));
+
+        assertThat(cache.getRole(GROUP_ID, "user", () -> load("viewer"))).isEqualTo("viewer");
+        assertThat(cache.getRole(OTHER_GROUP_ID, "user", () -> load("viewer"))).isEqualTo("admin");
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void changedPermissionsAreLoadedAgain() throws MopsException {
+        DirectoryPermissions permissions = permissions();
+        cache.getPermissions(PERMISSIONS_ID, () -> load(permissions));
+
+        cache.afterPermissionsChangeCommitted(new PermissionsChangedEvent(PERMISSIONS_ID));
+        cache.getPermissions(PERMISSIONS_ID, () -> load(permissions));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void valueLoadedDuringChangeIsNotCached() throws MopsException {
+        cache.getRole(GROUP_ID, "user", () -> {
+            // the group is changed while its old state is loaded
+            cache.onGroupChanged(new GroupChangedEvent(GROUP_ID));
+            return load("admin");
+        });
+
+        assertThat(cache.getRole(GROUP_ID, "user", () -> load("viewer"))).isEqualTo("viewer");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() throws MopsException {
+        cache = new PermissionCache(0L, Duration.ofMinutes(5), new SimpleMeterRegistry());
+
+        cache.getRole(GROUP_ID, "user", () -> load("admin"));
+        cache.getRole(GROUP_ID, "user", () -> load("admin"));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    private <V> V load(V value) {
+        loads.incrementAndGet();
+        return value;
+    }
+
+    private double count(String name, String cacheName) {
+        return meterRegistry.get("mops.material1.permissions.cache." + name)
+                .tag("cache", cacheName)
+                .functionCounter()
+                .count();
+    }
+
+    private static DirectoryPermissions permissions() {
+        return DirectoryPermissions.builder()
+                .id(PERMISSIONS_ID)
+                .entry("admin", true, true, true)
+                .build();
+    }
+}
@@ -2,6 +2,7 @@ package mops.businesslogic.security;
 
 import mops.businesslogic.permission.PermissionService;
 import mops.businesslogic.permission.PermissionServiceImpl;
+import mops.businesslogic.permission.PermissionsChangedEvent;
 import mops.exception.MopsException;
 import mops.persistence.DirectoryPermissionsRepository;
 import mops.persistence.directory.Directory;
@@ -11,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.relational.core.conversion.DbActionExecutionException;
 
 import java.util.Optional;
@@ -18,6 +20,8 @@ import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 class PermissionServiceTest {
@@ -26,6 +30,8 @@ class PermissionServiceTest {
 
     @Mock
     DirectoryPermissionsRepository permissionsRepository;
+    @Mock
+    ApplicationEventPublisher eventPublisher;
 
     PermissionService permissionService;
 
@@ -35,7 +41,7 @@ class PermissionServiceTest {
 
     @BeforeEach
     void setup() {
-        permissionService = new PermissionServiceImpl(permissionsRepository);
+        permissionService = new PermissionServiceImpl(permissionsRepository, eventPublisher);
 
         directory = Directory.builder()
                 .id(1L)
@@ -51,6 +57,7 @@ class PermissionServiceTest {
                 .build();
 
         permissions = DirectoryPermissions.builder()
+                .id(2L)
                 .entry("admin", true, true, true)
                 .build();
     }
@@ -82,6 +89,8 @@ class PermissionServiceTest {
         DirectoryPermissions result = permissionService.savePermissions(permissions);
 
         assertThat(result).isEqualTo(permissions);
+        // cached permissions are invalidated
+        verify(eventPublisher).publishEvent(new PermissionsChangedEvent(2L));
     }
 
     @Test
@@ -91,5 +100,6 @@ class PermissionServiceTest {
 
         assertThatThrownBy(() -> permissionService.savePermissions(permissions))
                 .isInstanceOf(MopsException.class);
+        verifyNoInteractions(eventPublisher);
     }
 }
@@ -1,5 +1,6 @@
 package mops.businesslogic.security;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import mops.businesslogic.exception.DeleteAccessPermissionException;
 import mops.businesslogic.exception.ReadAccessPermissionException;
 import mops.businesslogic.exception.WriteAccessPermissionException;
@@ -17,12 +18,18 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import java.time.Duration;
 import java.util.Set;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = Strictness.LENIENT)
@@ -53,7 +60,8 @@ class SecurityServiceTest {
 
     @BeforeEach
     void setup() throws MopsException {
-        securityService = new SecurityServiceImpl(groupService, permissionService);
+        securityService = new SecurityServiceImpl(groupService, permissionService,
+                new PermissionCache(100L, Duration.ofMinutes(5), new SimpleMeterRegistry()));
 
         admin = Account.of(ADMIN, ADMIN + "@hhu.de", STUDENTIN);
         editor = Account.of(EDITOR, EDITOR + "@hhu.de", STUDENTIN);
@@ -86,6 +94,8 @@ class SecurityServiceTest {
 
         given(groupService.getRoles(GROUP_ID)).willReturn(Set.of(ADMIN, EDITOR, VIEWER));
         given(groupService.getGroup(GROUP_ID)).willReturn(group);
+        given(groupService.getMemberRole(eq(GROUP_ID), anyString()))
+                .willAnswer(invocation -> group.getMemberRole(invocation.getArgument(1)));
     }
 
     @Test
@@ -124,6 +134,26 @@ class SecurityServiceTest {
                 .isInstanceOf(DeleteAccessPermissionException.class);
     }
 
+    @Test
+    void getPermissionsOfUser() throws MopsException {
+        assertThat(securityService.getPermissionsOfUser(admin, root))
+                .isEqualTo(new UserPermission(true, true, true));
+        assertThat(securityService.getPermissionsOfUser(user, root))
+                .isEqualTo(new UserPermission(true, false, false));
+        assertThat(securityService.getPermissionsOfUser(intruder, root))
+                .isEqualTo(new UserPermission(false, false, false));
+    }
+
+    @Test
+    void permissionsOfUserAreLoadedOnce() throws MopsException {
+        UserPermission permission = securityService.getPermissionsOfUser(editor, root);
+        securityService.getPermissionsOfUser(editor, root);
+
+        assertThat(permission).isEqualTo(new UserPermission(true, true, false));
+        verify(groupService, times(1)).getMemberRole(GROUP_ID, EDITOR);
+        verify(permissionService, times(1)).getPermissions(root);
+    }
+
     @Test
     void checkIfRole() {
         assertThatCode(() -> securityService.checkIfRole(user, GROUP_ID, VIEWER))
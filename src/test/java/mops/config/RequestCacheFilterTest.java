@@ -0,0 +1,73 @@
+package mops.config;
+
+import mops.exception.MopsException;
+import mops.util.RequestCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestCacheFilterTest {
+
+    RequestCacheFilter filter;
+    AtomicInteger loads;
+
+    @BeforeEach
+    void setup() {
+        filter = new RequestCacheFilter();
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void requestLoadsEachAggregateOnce() throws Exception {
+        filter.doFilter(new MockHttpServletRequest("GET", "/material1/dir/1"), new MockHttpServletResponse(),
+                (request, response) -> {
+                    lookUp();
+                    lookUp();
+                });
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void cacheIsClosedAfterTheRequest() throws Exception {
+        filter.doFilter(new MockHttpServletRequest("GET", "/material1/dir/1"), new MockHttpServletResponse(),
+                (request, response) -> lookUp());
+
+        lookUp();
+        lookUp();
+
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void cacheIsClosedAfterAFailedRequest() throws Exception {
+        assertThatThrownBy(() -> filter.doFilter(new MockHttpServletRequest("GET", "/material1/dir/1"),
+                new MockHttpServletResponse(),
+                (request, response) -> {
+                    lookUp();
+                    throw new ServletException("failed");
+                })).isInstanceOf(ServletException.class);
+
+        lookUp();
+
+        assertThat(loads).hasValue(2);
+    }
+
+    private void lookUp() {
+        try {
+            RequestCache.get(String.class, 1L, () -> {
+                loads.incrementAndGet();
+                return "directory";
+            });
+        } catch (MopsException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package mops.persistence;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mops.persistence.exception.StorageException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class CachingFileRepositoryTest {
+
+    static final byte[] CONTENT = "Hello World".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path storageDirectory;
+
+    @TempDir
+    Path cacheDirectory;
+
+    FileRepository storage;
+    FileContentCache cache;
+    CachingFileRepository fileRepository;
+
+    @BeforeEach
+    void setup() throws StorageException {
+        storage = spy(new LocalFileRepository(storageDirectory));
+        cache = new FileContentCache(true, cacheDirectory, 1000L, 1000L, new SimpleMeterRegistry());
+        fileRepository = new CachingFileRepository(storage, cache);
+        fileRepository.saveFile(new ByteArrayInputStream(CONTENT), CONTENT.length, null, 1L);
+    }
+
+    @Test
+    void servesTransferredContentFromCache() throws StorageException, IOException {
+        assertThat(transfer(0, CONTENT.length)).isEqualTo(CONTENT);
+        assertThat(transfer(6, 5)).isEqualTo("World".getBytes(StandardCharsets.UTF_8));
+        try (InputStream stream = fileRepository.getFileContent(1L)) {
+            assertThat(stream.readAllBytes()).isEqualTo(CONTENT);
+        }
+
+        verify(storage, times(1)).getFileContent(anyLong());
+        assertThat(cache.getCurrentSize()).isEqualTo(CONTENT.length);
+    }
+
+    @Test
+    void savingInvalidatesCachedContent() throws StorageException {
+        byte[] newContent = "Bye".getBytes(StandardCharsets.UTF_8);
+        transfer(0, CONTENT.length);
+
+        fileRepository.saveFile(new ByteArrayInputStream(newContent), newContent.length, null, 1L);
+
+        assertThat(cache.open(1L)).isNull();
+        assertThat(transfer(0, newContent.length)).isEqualTo(newContent);
+    }
+
+    @Test
+    void deletingInvalidatesCachedContent() throws StorageException {
+        transfer(0, CONTENT.length);
+
+        fileRepository.deleteFile(1L);
+
+        assertThat(cache.open(1L)).isNull();
+        assertThat(fileRepository.fileExist(1L)).isFalse();
+    }
+
+    @Test
+    void closingClosesTheStorage() {
+        fileRepository.close();
+
+        verify(storage).close();
+    }
+
+    private byte[] transfer(long offset, long length) throws StorageException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fileRepository.transferFileContent(1L, offset, length, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+}
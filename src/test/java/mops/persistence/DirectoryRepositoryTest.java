@@ -76,4 +76,81 @@ class DirectoryRepositoryTest {
 
         assertThat(groupFolderCount).isEqualTo(3L);
     }
+
+    @Test
+    void getAllFoldersInGroup() {
+        DirectoryPermissions empty = directoryPermissionsRepository.save(DirectoryPermissions.builder().build());
+        Directory root = directoryRepository.save(Directory.builder()
+                .name("root")
+                .groupOwner(GROUP_ID)
+                .permissions(empty)
+                .build());
+        Directory a = directoryRepository.save(Directory.builder()
+                .fromParent(root)
+                .name("a")
+                .build());
+        directoryRepository.save(Directory.builder()
+                .name("other")
+                .groupOwner(GROUP_ID + 1)
+                .permissions(empty)
+                .build());
+
+        List<Directory> folders = directoryRepository.getAllFoldersInGroup(GROUP_ID);
+
+        assertThat(folders).containsExactlyInAnyOrder(root, a);
+    }
+
+    @Test
+    void getAncestorsStartsAtTheRoot() {
+        DirectoryPermissions empty = directoryPermissionsRepository.save(DirectoryPermissions.builder().build());
+        Directory root = directoryRepository.save(Directory.builder()
+                .name("root")
+                .groupOwner(GROUP_ID)
+                .permissions(empty)
+                .build());
+        Directory a = directoryRepository.save(Directory.builder()
+                .fromParent(root)
+                .name("a")
+                .build());
+        Directory b = directoryRepository.save(Directory.builder()
+                .fromParent(a)
+                .name("b")
+                .build());
+        directoryRepository.save(Directory.builder()
+                .fromParent(a)
+                .name("sibling")
+                .build());
+
+        assertThat(directoryRepository.getAncestors(b.getId())).containsExactly(root, a, b);
+        assertThat(directoryRepository.getAncestors(root.getId())).containsExactly(root);
+    }
+
+    @Test
+    void getSubTreeListsParentsFirst() {
+        DirectoryPermissions empty = directoryPermissionsRepository.save(DirectoryPermissions.builder().build());
+        Directory root = directoryRepository.save(Directory.builder()
+                .name("root")
+                .groupOwner(GROUP_ID)
+                .permissions(empty)
+                .build());
+        Directory a = directoryRepository.save(Directory.builder()
+                .fromParent(root)
+                .name("a")
+                .build());
+        Directory b = directoryRepository.save(Directory.builder()
+                .fromParent(a)
+                .name("b")
+                .build());
+        Directory c = directoryRepository.save(Directory.builder()
+                .fromParent(b)
+                .name("c")
+                .build());
+        Directory sibling = directoryRepository.save(Directory.builder()
+                .fromParent(root)
+                .name("sibling")
+                .build());
+
+        assertThat(directoryRepository.getSubTree(a.getId())).containsExactly(a, b, c);
+        assertThat(directoryRepository.getSubTree(root.getId())).containsExactly(root, a, sibling, b, c);
+    }
 }
@@ -0,0 +1,73 @@
+package mops.persistence;
+
+import mops.persistence.blob.FileBlob;
+import mops.util.AuditingDbContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@AuditingDbContext
+@DataJdbcTest
+class FileBlobRepositoryTest {
+
+    static final String HASH = "a".repeat(64);
+
+    @Autowired
+    FileBlobRepository fileBlobRepository;
+
+    @Test
+    void findsContentByHash() {
+        fileBlobRepository.insert(17L, HASH, 10L, null);
+
+        FileBlob blob = fileBlobRepository.findByHash(HASH).orElseThrow();
+
+        assertThat(blob.getContentId()).isEqualTo(17L);
+        assertThat(blob.getSize()).isEqualTo(10L);
+        assertThat(blob.getRefCount()).isEqualTo(1L);
+        assertThat(fileBlobRepository.findByHash("b".repeat(64))).isEmpty();
+    }
+
+    @Test
+    void storesTheEncoding() {
+        fileBlobRepository.insert(17L, HASH, 10L, "deflate");
+
+        assertThat(fileBlobRepository.findById(17L).orElseThrow().getEncoding()).isEqualTo("deflate");
+    }
+
+    @Test
+    void keepsReferencedContent() {
+        fileBlobRepository.insert(17L, HASH, 10L, null);
+        assertThat(fileBlobRepository.addReference(17L)).isEqualTo(1);
+
+        fileBlobRepository.removeReference(17L);
+
+        assertThat(fileBlobRepository.deleteUnreferenced(17L)).isZero();
+        assertThat(fileBlobRepository.findById(17L)).isPresent();
+    }
+
+    @Test
+    void deletesUnreferencedContent() {
+        fileBlobRepository.insert(17L, HASH, 10L, null);
+
+        fileBlobRepository.removeReference(17L);
+
+        assertThat(fileBlobRepository.deleteUnreferenced(17L)).isEqualTo(1);
+        assertThat(fileBlobRepository.findById(17L)).isEmpty();
+        assertThat(fileBlobRepository.addReference(17L)).isZero();
+    }
+
+    @Test
+    void deletesContentByIds() {
+        fileBlobRepository.insert(17L, HASH, 10L, null);
+        fileBlobRepository.insert(18L, "b".repeat(64), 10L, null);
+
+        fileBlobRepository.deleteAllByContentIds(List.of(17L));
+
+        assertThat(fileBlobRepository.findById(17L)).isEmpty();
+        assertThat(fileBlobRepository.findById(18L)).isPresent();
+    }
+}
@@ -0,0 +1,132 @@
+package mops.persistence;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mops.persistence.exception.StorageException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileContentCacheTest {
+
+    static final long MAX_SIZE = 100L;
+    static final long MAX_FILE_SIZE = 60L;
+
+    @TempDir
+    Path directory;
+
+    MeterRegistry meterRegistry;
+    FileContentCache cache;
+
+    @BeforeEach
+    void setup() throws StorageException {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new FileContentCache(true, directory, MAX_SIZE, MAX_FILE_SIZE, meterRegistry);
+    }
+
+    @Test
+    void cachesCompletelyReadContent() throws IOException {
+        byte[] content = bytes(40);
+
+        readFully(cache.cacheThrough(1L, new ByteArrayInputStream(content)));
+
+        assertThat(readCached(1L)).isEqualTo(content);
+        assertThat(cache.getCurrentSize()).isEqualTo(40L);
+        assertThat(meterRegistry.counter("mops.material1.storage.cache.hits").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void doesNotCachePartiallyReadContent() throws IOException {
+        try (InputStream stream = cache.cacheThrough(1L, new ByteArrayInputStream(bytes(40)))) {
+            assertThat(stream.read(new byte[10])).isEqualTo(10);
+        }
+
+        assertThat(cache.open(1L)).isNull();
+        assertThat(meterRegistry.counter("mops.material1.storage.cache.misses").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void doesNotCacheTooLargeFiles() throws IOException {
+        readFully(cache.cacheThrough(1L, new ByteArrayInputStream(bytes((int) MAX_FILE_SIZE + 1))));
+
+        assertThat(cache.open(1L)).isNull();
+        assertThat(cache.getCurrentSize()).isZero();
+    }
+
+    @Test
+    void invalidateRemovesContent() throws IOException {
+        readFully(cache.cacheThrough(1L, new ByteArrayInputStream(bytes(40))));
+
+        cache.invalidate(1L);
+
+        assertThat(cache.open(1L)).isNull();
+        assertThat(cache.getCurrentSize()).isZero();
+    }
+
+    @Test
+    void invalidateDiscardsPendingWrite() throws IOException {
+        InputStream stream = cache.cacheThrough(1L, new ByteArrayInputStream(bytes(40)));
+        cache.invalidate(1L);
+        readFully(stream);
+
+        assertThat(cache.open(1L)).isNull();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedContent() throws IOException {
+        readFully(cache.cacheThrough(1L, new ByteArrayInputStream(bytes(40))));
+        readFully(cache.cacheThrough(2L, new ByteArrayInputStream(bytes(40))));
+        // use file 1 so that file 2 is the least recently used one
+        readCached(1L);
+        readFully(cache.cacheThrough(3L, new ByteArrayInputStream(bytes(40))));
+
+        assertThat(cache.open(2L)).isNull();
+        assertThat(readCached(1L)).hasSize(40);
+        assertThat(readCached(3L)).hasSize(40);
+        assertThat(cache.getCurrentSize()).isEqualTo(80L);
+        assertThat(meterRegistry.counter("mops.material1.storage.cache.evictions").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void disabledCacheDoesNothing() throws IOException {
+        FileContentCache disabled = new FileContentCache(false, directory, MAX_SIZE, MAX_FILE_SIZE, meterRegistry);
+        InputStream source = new ByteArrayInputStream(bytes(40));
+
+        InputStream stream = disabled.cacheThrough(1L, source);
+        readFully(stream);
+
+        assertThat(stream).isSameAs(source);
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.open(1L)).isNull();
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static void readFully(InputStream stream) throws IOException {
+        try (stream) {
+            stream.readAllBytes();
+        }
+    }
+
+    private byte[] readCached(long fileId) throws IOException {
+        try (FileChannel channel = cache.open(fileId)) {
+            assertThat(channel).isNotNull();
+            return Channels.newInputStream(channel).readAllBytes();
+        }
+    }
+}
@@ -104,4 +104,32 @@ class GroupRepositoryTest {
 
         assertThat(group).isEqualTo(expectedGroup);
     }
+
+    @Test
+    void findMemberRoleTest() {
+        Group group = Group.builder()
+                .groupId(new UUID(0, 777))
+                .member("Segelzwerg", "admin")
+                .member("iTitus", "viewer")
+                .name("Propra2")
+                .build();
+        long id = groupRepository.save(group).getId();
+
+        assertThat(groupRepository.findMemberRole(id, "iTitus")).contains("viewer");
+        assertThat(groupRepository.findMemberRole(id, "Segelzwerg")).contains("admin");
+        assertThat(groupRepository.findMemberRole(id, "Jens")).isEmpty();
+    }
+
+    @Test
+    void memberRoleOfLoadedGroupTest() {
+        Group group = Group.builder()
+                .groupId(new UUID(0, 778))
+                .member("Segelzwerg", "admin")
+                .name("Propra2")
+                .build();
+        Group loaded = groupRepository.findById(groupRepository.save(group).getId()).orElseThrow();
+
+        assertThat(loaded.getMemberRole("Segelzwerg")).isEqualTo("admin");
+        assertThat(loaded.getMemberRole("Jens")).isEqualTo(Group.NO_MEMBER_ROLE);
+    }
 }
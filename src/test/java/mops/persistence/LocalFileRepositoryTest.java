@@ -0,0 +1,242 @@
+package mops.persistence;
+
+import mops.exception.MopsException;
+import mops.persistence.exception.StorageException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalFileRepositoryTest {
+
+    final Random random = new Random();
+
+    @TempDir
+    Path root;
+
+    LocalFileRepository fileRepository;
+
+    @BeforeEach
+    void setup() throws StorageException {
+        fileRepository = new LocalFileRepository(root);
+    }
+
+    @Test
+    void shouldSaveAFile() throws StorageException {
+        long fileId = 1337;
+
+        assertThat(fileRepository.fileExist(fileId)).isFalse();
+
+        fileRepository.saveFile(getRandomMultipartFile(), fileId);
+
+        assertThat(fileRepository.fileExist(fileId)).isTrue();
+        assertThat(root.resolve("39").resolve("05").resolve("1337")).isRegularFile();
+    }
+
+    @Test
+    void fileGetsDeleted() throws StorageException {
+        long fileId = 1;
+        fileRepository.saveFile(getRandomMultipartFile(), fileId);
+
+        fileRepository.deleteFile(fileId);
+
+        assertThat(fileRepository.fileExist(fileId)).isFalse();
+    }
+
+    @Test
+    void shouldReturnOriginalContent() throws StorageException, IOException {
+        long fileId = 1;
+        byte[] originalContent = getRandomBytes();
+        fileRepository.saveFile(new MockMultipartFile("file.bin", originalContent), fileId);
+
+        byte[] retrievedData;
+        try (InputStream stream = fileRepository.getFileContent(fileId)) {
+            retrievedData = stream.readAllBytes();
+        }
+
+        assertThat(retrievedData).isEqualTo(originalContent);
+    }
+
+    @Test
+    void shouldReturnContentRange() throws StorageException, IOException {
+        long fileId = 1;
+        byte[] originalContent = new byte[100];
+        random.nextBytes(originalContent);
+        fileRepository.saveFile(new MockMultipartFile("file.bin", originalContent), fileId);
+
+        byte[] retrievedData;
+        try (InputStream stream = fileRepository.getFileContent(fileId, 10, 20)) {
+            retrievedData = stream.readAllBytes();
+        }
+
+        assertThat(retrievedData).isEqualTo(Arrays.copyOfRange(originalContent, 10, 30));
+    }
+
+    @Test
+    void shouldTransferContentRange() throws StorageException {
+        long fileId = 1;
+        byte[] originalContent = new byte[100];
+        random.nextBytes(originalContent);
+        fileRepository.saveFile(new MockMultipartFile("file.bin", originalContent), fileId);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fileRepository.transferFileContent(fileId, 10, 20, Channels.newChannel(out));
+
+        assertThat(out.toByteArray()).isEqualTo(Arrays.copyOfRange(originalContent, 10, 30));
+    }
+
+    @Test
+    void shouldReplaceContent() throws StorageException, IOException {
+        long fileId = 1;
+        byte[] newContent = getRandomBytes();
+        fileRepository.saveFile(getRandomMultipartFile(), fileId);
+
+        fileRepository.saveFile(new MockMultipartFile("file.bin", newContent), fileId);
+
+        try (InputStream stream = fileRepository.getFileContent(fileId)) {
+            assertThat(stream.readAllBytes()).isEqualTo(newContent);
+        }
+    }
+
+    @Test
+    void shouldNotKeepIncompleteContent() throws IOException {
+        long fileId = 1;
+        InputStream stream = new ByteArrayInputStream(new byte[10]);
+
+        assertThatThrownBy(() -> fileRepository.saveFile(stream, 20, null, fileId))
+                .isInstanceOf(StorageException.class);
+
+        assertThat(fileRepository.fileExist(fileId)).isFalse();
+        try (var files = Files.list(root.resolve("tmp"))) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void shouldListAllFiles() throws MopsException {
+        fileRepository.saveFile(getRandomMultipartFile(), 1);
+        fileRepository.saveFile(getRandomMultipartFile(), 2);
+        fileRepository.saveFile(getRandomMultipartFile(), 300);
+
+        fileRepository.deleteFile(2);
+        Set<Long> fetchedIds = fileRepository.getAllIds();
+
+        assertThat(fetchedIds).containsExactlyInAnyOrder(1L, 300L);
+    }
+
+    @Test
+    void shouldComposeChunks() throws StorageException, IOException {
+        long sessionId = 5;
+        byte[] first = getRandomBytes();
+        byte[] second = getRandomBytes();
+
+        // chunks may arrive in any order
+        fileRepository.saveChunk(sessionId, 1, new ByteArrayInputStream(second), second.length);
+        fileRepository.saveChunk(sessionId, 0, new ByteArrayInputStream(first), first.length);
+        fileRepository.composeChunks(sessionId, 2, "application/octet-stream", "upload");
+        assertThat(fileRepository.getAllIds()).isEmpty();
+        fileRepository.deleteChunks(sessionId);
+
+        byte[] expected = new byte[first.length + second.length];
+        System.arraycopy(first, 0, expected, 0, first.length);
+        System.arraycopy(second, 0, expected, first.length, second.length);
+        try (InputStream stream = fileRepository.getStagedFileContent("upload")) {
+            assertThat(stream.readAllBytes()).isEqualTo(expected);
+        }
+        assertThat(root.resolve("uploads").resolve("5")).doesNotExist();
+    }
+
+    @Test
+    void shouldKeepExportsApartFromFiles() throws StorageException, IOException {
+        long exportId = 7;
+        byte[] archive = getRandomBytes();
+
+        fileRepository.saveExport(exportId, new ByteArrayInputStream(archive), archive.length);
+
+        // exports are no file content, so the garbage collector must not see them
+        assertThat(fileRepository.getAllIds()).isEmpty();
+        try (InputStream stream = fileRepository.getExportContent(exportId)) {
+            assertThat(stream.readAllBytes()).isEqualTo(archive);
+        }
+        fileRepository.deleteExport(exportId);
+        assertThat(root.resolve("exports").resolve("7.zip")).doesNotExist();
+    }
+
+    @Test
+    void shouldPromoteStagedFile() throws StorageException, IOException {
+        long fileId = 3;
+        byte[] content = getRandomBytes();
+
+        fileRepository.saveStagedFile("upload", new ByteArrayInputStream(content), content.length, null);
+
+        // staged content belongs to no file yet, so the garbage collector must not see it
+        assertThat(fileRepository.getAllIds()).isEmpty();
+
+        fileRepository.promoteStagedFile("upload", fileId);
+
+        assertThat(fileRepository.getAllIds()).containsExactly(fileId);
+        try (InputStream stream = fileRepository.getFileContent(fileId)) {
+            assertThat(stream.readAllBytes()).isEqualTo(content);
+        }
+        assertThat(root.resolve("staging").resolve("upload")).doesNotExist();
+    }
+
+    @Test
+    void shouldDeleteStaleStagedFiles() throws StorageException, IOException {
+        byte[] content = getRandomBytes();
+        Instant now = Instant.now();
+        fileRepository.saveStagedFile("old", new ByteArrayInputStream(content), content.length, null);
+        fileRepository.saveStagedFile("new", new ByteArrayInputStream(content), content.length, null);
+        Files.setLastModifiedTime(root.resolve("staging").resolve("old"),
+                FileTime.from(now.minus(Duration.ofDays(2))));
+
+        int count = fileRepository.deleteStagedFilesBefore(now.minus(Duration.ofDays(1)));
+
+        assertThat(count).isEqualTo(1);
+        assertThat(root.resolve("staging").resolve("old")).doesNotExist();
+        assertThat(root.resolve("staging").resolve("new")).isRegularFile();
+    }
+
+    @Test
+    void shouldDeleteStaleTemporaryFiles() throws StorageException, IOException {
+        Instant now = Instant.now();
+        Path old = Files.createFile(root.resolve("tmp").resolve("1-interrupted.tmp"));
+        Path current = Files.createFile(root.resolve("tmp").resolve("2-writing.tmp"));
+        Files.setLastModifiedTime(old, FileTime.from(now.minus(Duration.ofDays(2))));
+
+        int count = fileRepository.deleteStagedFilesBefore(now.minus(Duration.ofDays(1)));
+
+        assertThat(count).isEqualTo(1);
+        assertThat(old).doesNotExist();
+        assertThat(current).isRegularFile();
+    }
+
+    private byte[] getRandomBytes() {
+        int fileLength = random.nextInt(10000) + 1;
+        byte[] bytes = new byte[fileLength];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private MultipartFile getRandomMultipartFile() {
+        return new MockMultipartFile("file.bin", getRandomBytes());
+    }
+}
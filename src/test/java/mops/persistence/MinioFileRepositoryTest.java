@@ -1,19 +1,24 @@
 package mops.persistence;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import mops.exception.MopsException;
 import mops.persistence.config.FileRepositoryConfig;
 import mops.persistence.exception.StorageException;
 import org.junit.jupiter.api.*;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.wait.strategy.Wait;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.Set;
 
@@ -21,10 +26,10 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 @Testcontainers(disabledWithoutDocker = true)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
-class FileRepositoryTest {
+class MinioFileRepositoryTest {
 
     final Random random = new Random();
-    FileRepository fileRepository;
+    MinioFileRepository fileRepository;
     GenericContainer<?> minioServer;
 
     @BeforeAll
@@ -34,6 +39,7 @@ class FileRepositoryTest {
         fileRepoConfig.setSecretKey("secret_key");
         fileRepoConfig.setHost("http://localhost");
         fileRepoConfig.setBucketName("test-bucket");
+        fileRepoConfig.setParallelUploadThreshold(DataSize.ofMegabytes(1));
 
         minioServer = new GenericContainer<>("minio/minio:latest")
                 .withEnv("MINIO_ACCESS_KEY", fileRepoConfig.getAccessKey())
@@ -48,7 +54,7 @@ class FileRepositoryTest {
         int mappedPort = minioServer.getFirstMappedPort();
         fileRepoConfig.setPort(mappedPort);
 
-        fileRepository = new FileRepository(fileRepoConfig);
+        fileRepository = new MinioFileRepository(fileRepoConfig, new SimpleMeterRegistry());
     }
 
     @AfterEach
@@ -111,6 +117,35 @@ class FileRepositoryTest {
         assertThat(file2StillExists).isTrue();
     }
 
+    @Test
+    void deletesSeveralFilesAtOnce() throws StorageException {
+        for (long fileId = 1; fileId <= 3; fileId++) {
+            fileRepository.saveFile(getRandomMultipartFile(), fileId);
+        }
+
+        fileRepository.deleteFiles(Set.of(1L, 2L));
+
+        assertThat(fileRepository.getAllIds()).containsExactly(3L);
+    }
+
+    @Test
+    void promotesStagedFile() throws StorageException, IOException {
+        long fileId = 4;
+        byte[] content = getRandomBytes();
+
+        fileRepository.saveStagedFile("upload", new ByteArrayInputStream(content), content.length, null);
+        assertThat(fileRepository.getAllIds()).isEmpty();
+
+        fileRepository.promoteStagedFile("upload", fileId);
+
+        assertThat(fileRepository.getAllIds()).containsExactly(fileId);
+        try (InputStream stream = fileRepository.getFileContent(fileId)) {
+            assertThat(stream.readAllBytes()).isEqualTo(content);
+        }
+        // the staged object is gone, so nothing is left for the garbage collector
+        assertThat(fileRepository.deleteStagedFilesBefore(Instant.now().plusSeconds(60))).isZero();
+    }
+
     @Test
     @SuppressFBWarnings(value = "RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE",
             justification = "There is no null-check here")
@@ -128,6 +163,38 @@ class FileRepositoryTest {
         assertThat(retrievedData).isEqualTo(originalContent);
     }
 
+    @Test
+    void shouldUploadLargeContentInParts() throws MopsException, IOException {
+        long fileId = 1;
+        byte[] originalContent = new byte[(int) (2 * MinioParallelUploader.MIN_PART_SIZE + 100)];
+        random.nextBytes(originalContent);
+
+        fileRepository.saveFile(new ByteArrayInputStream(originalContent), originalContent.length, "", fileId);
+        byte[] retrievedData;
+        try (InputStream stream = fileRepository.getFileContent(fileId)) {
+            retrievedData = stream.readAllBytes();
+        }
+
+        assertThat(retrievedData).isEqualTo(originalContent);
+        assertThat(fileRepository.getAllIds()).containsExactly(fileId);
+    }
+
+    @Test
+    void shouldReturnContentRange() throws StorageException, IOException {
+        long fileId = 1;
+        byte[] originalContent = new byte[100];
+        random.nextBytes(originalContent);
+        MultipartFile file = new MockMultipartFile("file.bin", originalContent);
+
+        fileRepository.saveFile(file, fileId);
+        byte[] retrievedData;
+        try (InputStream stream = fileRepository.getFileContent(fileId, 10, 20)) {
+            retrievedData = stream.readAllBytes();
+        }
+
+        assertThat(retrievedData).isEqualTo(Arrays.copyOfRange(originalContent, 10, 30));
+    }
+
     @Test
     void shouldListAllFiles() throws MopsException {
         long fileId1 = 1;
@@ -0,0 +1,241 @@
+package mops.persistence;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.ComposeObjectArgs;
+import io.minio.ComposeSource;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import mops.persistence.config.FileRepositoryConfig;
+import mops.persistence.exception.StorageException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MinioParallelUploaderTest {
+
+    static final long MIB = 1024L * 1024;
+
+    MinioClient minioClient;
+    MeterRegistry meterRegistry;
+    MinioParallelUploader uploader;
+
+    @BeforeEach
+    void setup() {
+        minioClient = mock(MinioClient.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        FileRepositoryConfig configuration = new FileRepositoryConfig();
+        configuration.setBucketName("test-bucket");
+        configuration.setParallelUploadThreshold(DataSize.ofMegabytes(1));
+        configuration.setUploadConcurrency(2);
+        configuration.setUploadAttempts(2);
+
+        uploader = new MinioParallelUploader(minioClient, configuration, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploader.close();
+    }
+
+    @Test
+    void partSizeGrowsWithTheContent() {
+        assertThat(MinioParallelUploader.partSize(100 * MIB)).isEqualTo(MinioParallelUploader.MIN_PART_SIZE);
+        assertThat(MinioParallelUploader.partSize(1024 * MIB)).isEqualTo(32 * MIB);
+        assertThat(MinioParallelUploader.partSize(10 * 1024 * MIB)).isEqualTo(MinioParallelUploader.MAX_PART_SIZE);
+        assertThat(MinioParallelUploader.partSize(-1)).isEqualTo(MinioParallelUploader.UNKNOWN_SIZE_PART_SIZE);
+    }
+
+    @Test
+    void partSizeKeepsThePartCountWithinTheLimit() {
+        long size = 1024 * 1024 * MIB;
+
+        assertThat(size / MinioParallelUploader.partSize(size)).isLessThanOrEqualTo(10_000);
+    }
+
+    @Test
+    void smallContentIsUploadedInOneRequest() throws Exception {
+        uploader.upload(new ByteArrayInputStream(new byte[100]), 100, "text/plain", "1");
+
+        ArgumentCaptor<PutObjectArgs> captor = ArgumentCaptor.forClass(PutObjectArgs.class);
+        verify(minioClient).putObject(captor.capture());
+        assertThat(captor.getValue().object()).isEqualTo("1");
+        verify(minioClient, never()).composeObject(any());
+        assertThat(meterRegistry.get("mops.material1.storage.upload.throughput")
+                .tag("mode", "single")
+                .summary()
+                .count()).isEqualTo(1L);
+    }
+
+    @Test
+    void contentOfUnknownSizeWithinOnePartIsUploadedInOneRequest() throws Exception {
+        uploader.upload(new ByteArrayInputStream(new byte[2048]), -1, "text/plain", "1");
+
+        ArgumentCaptor<PutObjectArgs> captor = ArgumentCaptor.forClass(PutObjectArgs.class);
+        verify(minioClient).putObject(captor.capture());
+        assertThat(captor.getValue().object()).isEqualTo("1");
+        assertThat(captor.getValue().objectSize()).isEqualTo(2048L);
+        verify(minioClient, never()).composeObject(any());
+        verify(minioClient, never()).removeObject(any(RemoveObjectArgs.class));
+    }
+
+    @Test
+    void largeContentIsComposedInOrder() throws Exception {
+        int size = (int) (2 * MinioParallelUploader.MIN_PART_SIZE + 100);
+
+        uploader.upload(new ByteArrayInputStream(new byte[size]), size, "text/plain", "1");
+
+        verify(minioClient, times(3)).putObject(any());
+        ArgumentCaptor<ComposeObjectArgs> captor = ArgumentCaptor.forClass(ComposeObjectArgs.class);
+        verify(minioClient).composeObject(captor.capture());
+        assertThat(captor.getValue().object()).isEqualTo("1");
+        assertThat(captor.getValue().sources().stream()
+                .map(ComposeSource::object)
+                .map(name -> name.substring(name.lastIndexOf('/') + 1))
+                .collect(Collectors.toList())).containsExactly("0", "1", "2");
+        verify(minioClient, times(3)).removeObject(any(RemoveObjectArgs.class));
+        assertThat(meterRegistry.get("mops.material1.storage.upload.throughput")
+                .tag("mode", "parallel")
+                .summary()
+                .count()).isEqualTo(1L);
+    }
+
+    @Test
+    void failedPartsAreRetried() throws Exception {
+        int size = (int) MinioParallelUploader.MIN_PART_SIZE;
+        when(minioClient.putObject(any()))
+                .thenThrow(new IOException("connection reset"))
+                .thenReturn(null);
+
+        uploader.upload(new ByteArrayInputStream(new byte[size]), size, "", "1");
+
+        verify(minioClient, times(2)).putObject(any());
+        verify(minioClient).composeObject(any());
+        assertThat(meterRegistry.counter("mops.material1.storage.upload.retries").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void partsAreRemovedIfAPartFails() throws Exception {
+        int size = (int) (2 * MinioParallelUploader.MIN_PART_SIZE);
+        when(minioClient.putObject(any())).thenThrow(new IOException("connection reset"));
+
+        assertThatThrownBy(() -> uploader.upload(new ByteArrayInputStream(new byte[size]), size, "", "1"))
+                .isInstanceOf(StorageException.class);
+
+        verify(minioClient, never()).composeObject(any());
+        verify(minioClient, atLeastOnce()).removeObject(any(RemoveObjectArgs.class));
+    }
+
+    @Test
+    void partsAreRemovedAfterTheyAreDoneIfReadingFails() throws Exception {
+        int partSize = (int) MinioParallelUploader.MIN_PART_SIZE;
+        CountDownLatch readFailed = new CountDownLatch(1);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        // the first part is still being sent when reading the second part fails
+        when(minioClient.putObject(any())).thenAnswer(invocation -> {
+            readFailed.await(5, TimeUnit.SECONDS);
+            TimeUnit.MILLISECONDS.sleep(100);
+            events.add("stored " + ((PutObjectArgs) invocation.getArgument(0)).object());
+            return null;
+        });
+        doAnswer(invocation -> events.add("removed " + ((RemoveObjectArgs) invocation.getArgument(0)).object()))
+                .when(minioClient)
+                .removeObject(any(RemoveObjectArgs.class));
+        InputStream stream = new InputStream() {
+            private int remaining = partSize;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (remaining == 0) {
+                    readFailed.countDown();
+                    throw new IOException("connection reset");
+                }
+                int read = Math.min(length, remaining);
+                remaining -= read;
+                return read;
+            }
+        };
+
+        assertThatThrownBy(() -> uploader.upload(stream, 2L * partSize, "", "1"))
+                .isInstanceOf(StorageException.class);
+
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0)).startsWith("stored uploads/parts-").endsWith("/0");
+        assertThat(events.get(1)).startsWith("removed uploads/parts-").endsWith("/0");
+        verify(minioClient, never()).composeObject(any());
+    }
+
+    @Test
+    void slowClientsDoNotHoldBackOtherUploads() throws Exception {
+        long size = 2 * MinioParallelUploader.MIN_PART_SIZE;
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(3);
+        try {
+            // more stalled clients than buffers
+            for (int i = 0; i < 3; i++) {
+                String objectName = "stalled-" + i;
+                clients.submit(() -> {
+                    uploader.upload(new InputStream() {
+                        @Override
+                        public int read() throws IOException {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                throw new InterruptedIOException();
+                            }
+                            return -1;
+                        }
+                    }, size, "", objectName);
+                    return null;
+                });
+            }
+
+            assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> uploader.upload(new ByteArrayInputStream(new byte[(int) size]), size, "", "1"));
+            verify(minioClient).composeObject(any());
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void incompleteContentIsRejected() throws Exception {
+        int size = (int) MinioParallelUploader.MIN_PART_SIZE;
+
+        assertThatThrownBy(() -> uploader.upload(new ByteArrayInputStream(new byte[size - 1]), size, "", "1"))
+                .isInstanceOf(StorageException.class);
+
+        verify(minioClient, never()).composeObject(any());
+    }
+}
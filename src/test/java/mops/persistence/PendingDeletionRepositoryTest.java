@@ -0,0 +1,57 @@
+package mops.persistence;
+
+import mops.persistence.deletion.PendingDeletion;
+import mops.util.AuditingDbContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@AuditingDbContext
+@DataJdbcTest
+class PendingDeletionRepositoryTest {
+
+    @Autowired
+    PendingDeletionRepository pendingDeletionRepository;
+
+    @Test
+    void findsOldestDueDeletions() {
+        Instant now = Instant.now();
+        PendingDeletion first = pendingDeletionRepository.save(PendingDeletion.of(1L, now));
+        PendingDeletion second = pendingDeletionRepository.save(PendingDeletion.of(2L, now));
+        pendingDeletionRepository.save(PendingDeletion.of(3L, now));
+        pendingDeletionRepository.save(PendingDeletion.of(4L, now.plus(1, ChronoUnit.HOURS)));
+
+        List<PendingDeletion> due = pendingDeletionRepository.findDue(Timestamp.from(now), 2);
+
+        assertThat(due).containsExactly(first, second);
+    }
+
+    @Test
+    void postponesFailedDeletions() {
+        Instant now = Instant.now();
+        PendingDeletion deletion = pendingDeletionRepository.save(PendingDeletion.of(1L, now));
+
+        pendingDeletionRepository.postpone(List.of(deletion.getId()), Timestamp.from(now.plus(1, ChronoUnit.HOURS)));
+
+        assertThat(pendingDeletionRepository.findDue(Timestamp.from(now), 10)).isEmpty();
+        assertThat(pendingDeletionRepository.findById(deletion.getId()).orElseThrow().getAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    void removesFinishedDeletions() {
+        Instant now = Instant.now();
+        PendingDeletion finished = pendingDeletionRepository.save(PendingDeletion.of(1L, now));
+        PendingDeletion pending = pendingDeletionRepository.save(PendingDeletion.of(2L, now));
+
+        pendingDeletionRepository.deleteAllByIds(List.of(finished.getId()));
+
+        assertThat(pendingDeletionRepository.findAll()).containsExactly(pending);
+    }
+}
@@ -0,0 +1,64 @@
+package mops.persistence;
+
+import mops.persistence.upload.UploadSession;
+import mops.util.AuditingDbContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@AuditingDbContext
+@DataJdbcTest
+class UploadSessionRepositoryTest {
+
+    @Autowired
+    UploadSessionRepository uploadSessionRepository;
+
+    @Test
+    void recordsChunks() {
+        UploadSession session = uploadSessionRepository.save(UploadSession.of(1L, "file.bin", "text/plain", "user"));
+
+        uploadSessionRepository.insertChunk(session.getId(), 1, 20L);
+        uploadSessionRepository.insertChunk(session.getId(), 0, 10L);
+        uploadSessionRepository.deleteChunk(session.getId(), 1);
+        uploadSessionRepository.insertChunk(session.getId(), 1, 30L);
+
+        UploadSession loaded = uploadSessionRepository.findById(session.getId()).orElseThrow();
+        assertThat(loaded.getChunkNumbers()).containsExactly(0, 1);
+        assertThat(loaded.getChunkSizes()).containsExactly(10L, 30L);
+        assertThat(loaded.getSize()).isEqualTo(40L);
+        assertThat(loaded.getSizeWithChunk(1, 5L)).isEqualTo(15L);
+        assertThat(loaded.getSizeWithChunk(2, 5L)).isEqualTo(45L);
+    }
+
+    @Test
+    void findsExpiredSessions() {
+        Instant now = Instant.now();
+        UploadSession active = uploadSessionRepository.save(UploadSession.of(1L, "a.bin", "text/plain", "user"));
+        UploadSession expired = uploadSessionRepository.save(UploadSession.of(1L, "b.bin", "text/plain", "user"));
+        uploadSessionRepository.touch(expired.getId(), Timestamp.from(now.minus(2, ChronoUnit.DAYS)));
+
+        List<UploadSession> sessions = uploadSessionRepository.findAllModifiedBefore(
+                Timestamp.from(now.minus(1, ChronoUnit.DAYS)));
+
+        assertThat(sessions).extracting(UploadSession::getId)
+                .contains(expired.getId())
+                .doesNotContain(active.getId());
+    }
+
+    @Test
+    void deletesSessionWithChunks() {
+        UploadSession session = uploadSessionRepository.save(UploadSession.of(1L, "file.bin", "text/plain", "user"));
+        uploadSessionRepository.insertChunk(session.getId(), 0, 10L);
+
+        uploadSessionRepository.deleteById(session.getId());
+
+        assertThat(uploadSessionRepository.findById(session.getId())).isEmpty();
+    }
+}
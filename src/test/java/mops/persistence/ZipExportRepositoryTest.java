@@ -0,0 +1,64 @@
+package mops.persistence;
+
+import mops.persistence.export.ZipExport;
+import mops.util.AuditingDbContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.jdbc.DataJdbcTest;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@AuditingDbContext
+@DataJdbcTest
+class ZipExportRepositoryTest {
+
+    @Autowired
+    ZipExportRepository zipExportRepository;
+
+    @Test
+    void findsPendingExportOfUser() {
+        Instant now = Instant.now();
+        ZipExport export = zipExportRepository.save(ZipExport.of(1L, "folder", "user"));
+        ZipExport finished = ZipExport.of(1L, "folder", "user");
+        finished.complete(10L, now.plus(1, ChronoUnit.HOURS));
+        zipExportRepository.save(finished);
+        Timestamp since = Timestamp.from(now.minus(1, ChronoUnit.HOURS));
+
+        assertThat(zipExportRepository.findPending(1L, "user", since)).contains(export);
+        assertThat(zipExportRepository.findPending(1L, "someone else", since)).isEmpty();
+        assertThat(zipExportRepository.findPending(2L, "user", since)).isEmpty();
+    }
+
+    @Test
+    void recordsProgress() {
+        Instant now = Instant.now();
+        ZipExport export = zipExportRepository.save(ZipExport.of(1L, "folder", "user"));
+
+        zipExportRepository.updateProgress(export.getId(), 3, 10, Timestamp.from(now));
+
+        ZipExport loaded = zipExportRepository.findById(export.getId()).orElseThrow();
+        assertThat(loaded.getWrittenFiles()).isEqualTo(3);
+        assertThat(loaded.getTotalFiles()).isEqualTo(10);
+    }
+
+    @Test
+    void failsStaleExports() {
+        Instant now = Instant.now();
+        ZipExport active = zipExportRepository.save(ZipExport.of(1L, "a", "user"));
+        ZipExport stale = zipExportRepository.save(ZipExport.of(2L, "b", "user"));
+        zipExportRepository.updateProgress(stale.getId(), 0, 5, Timestamp.from(now.minus(2, ChronoUnit.DAYS)));
+
+        int failed = zipExportRepository.failStale(Timestamp.from(now.minus(1, ChronoUnit.DAYS)),
+                Timestamp.from(now.minus(1, ChronoUnit.HOURS)));
+
+        assertThat(failed).isEqualTo(1);
+        assertThat(zipExportRepository.findById(active.getId()).orElseThrow().isPending()).isTrue();
+        assertThat(zipExportRepository.findAllExpiredBefore(Timestamp.from(now)))
+                .extracting(ZipExport::getId)
+                .containsExactly(stale.getId());
+    }
+}
@@ -166,6 +166,29 @@ class FileInfoTest {
         );
     }
 
+    @Test
+    void fetchContentIds() {
+        FileInfo original = repo.save(file);
+        FileInfo copy = FileInfo.builder()
+                .name("b")
+                .directory(group1dir)
+                .type("txt")
+                .size(0L)
+                .owner("user")
+                .content("a".repeat(64), original.getId())
+                .build();
+        copy = repo.save(copy);
+
+        Set<Long> contentIds = repo.findAllContentIds();
+        Set<Long> fileIds = repo.findAllIdsByContentIds(List.of(original.getId()));
+
+        assertThat(contentIds).containsExactly(original.getId());
+        assertThat(fileIds).containsExactlyInAnyOrder(original.getId(), copy.getId());
+        assertThat(repo.findById(copy.getId())).get()
+                .extracting(FileInfo::getContentId)
+                .isEqualTo(original.getId());
+    }
+
     @Test
     void shouldCountFileSizeAndFileAmountOfGroup() {
         DirectoryPermissions permissions = DirectoryPermissions.builder()
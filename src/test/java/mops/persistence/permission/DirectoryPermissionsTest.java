@@ -69,6 +69,26 @@ class DirectoryPermissionsTest {
         assertThat(loaded2).get().isEqualTo(loaded);
     }
 
+    @Test
+    void permissionMasks() {
+        assertThat(perms.getPermissionMask("admin"))
+                .isEqualTo(DirectoryPermissions.READ | DirectoryPermissions.WRITE | DirectoryPermissions.DELETE);
+        assertThat(perms.getPermissionMask("user")).isEqualTo(DirectoryPermissions.READ);
+        assertThat(perms.getPermissionMask("intruder")).isZero();
+        assertThat(perms.isAllowedToRead("user")).isTrue();
+        assertThat(perms.isAllowedToWrite("user")).isFalse();
+    }
+
+    @Test
+    void changedEntriesAreCompiledAgain() {
+        assertThat(perms.isAllowedToDelete("user")).isFalse();
+
+        perms.setPermissions(Set.of(new DirectoryPermissionEntry("user", true, true, true)));
+
+        assertThat(perms.isAllowedToDelete("user")).isTrue();
+        assertThat(perms.isAllowedToRead("admin")).isFalse();
+    }
+
     @Test
     void copyTest() {
         DirectoryPermissions admin = DirectoryPermissions.builder()
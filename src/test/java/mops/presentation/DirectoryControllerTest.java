@@ -6,6 +6,8 @@ import com.c4_soft.springaddons.test.security.web.servlet.request.keycloak.Servl
 import mops.businesslogic.directory.DeleteService;
 import mops.businesslogic.directory.DirectoryService;
 import mops.businesslogic.directory.ZipService;
+import mops.businesslogic.exception.FileNotFoundException;
+import mops.businesslogic.exception.ReadAccessPermissionException;
 import mops.businesslogic.file.FileService;
 import mops.businesslogic.permission.PermissionService;
 import mops.businesslogic.search.SearchService;
@@ -26,22 +28,28 @@ import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MvcResult;
 
-import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
 import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.*;
 import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
 import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @KeycloakContext
@@ -124,18 +132,88 @@ class DirectoryControllerTest extends ServletKeycloakAuthUnitTestingSupport {
                         )));
     }
 
+    /**
+     * Tests that a file sent as request body is passed on to the file service.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void uploadFileStream() throws Exception {
+        byte[] content = "teststring".getBytes(StandardCharsets.UTF_8);
+        mockMvc().perform(post("/material1/dir/{dirId}/upload/stream", 1)
+                .param("name", "test.txt")
+                .contentType(MediaType.TEXT_PLAIN)
+                .content(content)
+                .with(csrf().asHeader()))
+                .andExpect(status().isCreated())
+                .andDo(document("index/DirectoryController/{method-name}",
+                        pathParameters(
+                                parameterWithName("dirId").description("The directory id.")
+                        )));
+
+        verify(fileService).saveFile(any(), eq(1L), eq("test.txt"), eq(MediaType.TEXT_PLAIN_VALUE),
+                eq((long) content.length), any(InputStream.class), eq(Set.of()));
+    }
+
+    /**
+     * Tests that a file with already stored content is saved without a transfer.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void uploadFileByHash() throws Exception {
+        String hash = "a".repeat(64);
+        mockMvc().perform(post("/material1/dir/{dirId}/upload/hash", 1)
+                .param("name", "test.txt")
+                .param("hash", hash)
+                .param("size", "10")
+                .with(csrf()))
+                .andExpect(status().isCreated())
+                .andDo(document("index/DirectoryController/{method-name}",
+                        pathParameters(
+                                parameterWithName("dirId").description("The directory id.")
+                        )));
+
+        verify(fileService).saveFileByHash(any(), eq(1L), eq("test.txt"), eq(null), eq(hash), eq(10L),
+                eq(Set.of()));
+    }
+
+    /**
+     * Tests that the client is told to upload content which is not stored yet.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void uploadFileByUnknownHash() throws Exception {
+        String hash = "b".repeat(64);
+        doThrow(new FileNotFoundException("Der Inhalt ist nicht vorhanden."))
+                .when(fileService)
+                .saveFileByHash(any(), eq(1L), eq("test.txt"), eq(null), eq(hash), eq(10L), eq(Set.of()));
+
+        mockMvc().perform(post("/material1/dir/{dirId}/upload/hash", 1)
+                .param("name", "test.txt")
+                .param("hash", hash)
+                .param("size", "10")
+                .with(csrf()))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
     public void zipDirectory() throws Exception {
         byte[] expected = { 0x46, 0x55, 0x43, 0x4b, 0x20, 0x59, 0x4f, 0x55 };
         doAnswer(invocation -> {
-            ByteArrayOutputStream bos = invocation.getArgument(2);
-            bos.writeBytes(expected);
-            return bos;
+            OutputStream outputStream = invocation.getArgument(2);
+            outputStream.write(expected);
+            return null;
         }).when(zipService).zipDirectory(any(), eq(1L), any(OutputStream.class));
-        MvcResult result = mockMvc().perform(get("/material1/dir/{dirId}/zip", 1)
+        MvcResult asyncResult = mockMvc().perform(get("/material1/dir/{dirId}/zip", 1)
                 .with(csrf())
                 .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // nothing is zipped before the response is written
+        verify(zipService, never()).zipDirectory(any(), anyLong(), any());
+
+        MvcResult result = mockMvc().perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andDo(document("index/DirectoryController/{method-name}",
                         pathParameters(
@@ -144,10 +222,24 @@ class DirectoryControllerTest extends ServletKeycloakAuthUnitTestingSupport {
                 .andReturn();
 
         assertThat(result.getResponse().getContentType()).isEqualTo(MediaType.APPLICATION_OCTET_STREAM_VALUE);
-        assertThat(result.getResponse().getContentLength()).isEqualTo(expected.length);
         assertThat(result.getResponse().getContentAsByteArray()).isEqualTo(expected);
     }
 
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void zipDirectoryWithoutPermission() throws Exception {
+        doThrow(new ReadAccessPermissionException("Keine Leseberechtigung"))
+                .when(securityService)
+                .checkReadPermission(any(), any());
+
+        mockMvc().perform(get("/material1/dir/{dirId}/zip", 1)
+                .with(csrf()))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isInternalServerError());
+
+        verify(zipService, never()).zipDirectory(any(), anyLong(), any());
+    }
+
     /**
      * Tests the route after creating a sub folder. It should be the new folder.
      */
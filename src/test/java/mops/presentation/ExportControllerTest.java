@@ -0,0 +1,104 @@
+package mops.presentation;
+
+import com.c4_soft.springaddons.test.security.context.support.WithIDToken;
+import com.c4_soft.springaddons.test.security.context.support.WithMockKeycloackAuth;
+import com.c4_soft.springaddons.test.security.web.servlet.request.keycloak.ServletKeycloakAuthUnitTestingSupport;
+import mops.businesslogic.directory.ZipExportService;
+import mops.exception.MopsException;
+import mops.persistence.export.ZipExport;
+import mops.util.KeycloakContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.post;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@KeycloakContext
+@WebMvcTest(ExportController.class)
+class ExportControllerTest extends ServletKeycloakAuthUnitTestingSupport {
+
+    @MockBean
+    ZipExportService zipExportService;
+
+    /**
+     * Setup service mocks.
+     */
+    @BeforeEach
+    void setup() throws MopsException {
+        ZipExport export = mock(ZipExport.class);
+        given(export.getId()).willReturn(5L);
+        given(export.getName()).willReturn("folder");
+        given(export.getStatus()).willReturn(ZipExport.RUNNING);
+        given(export.getWrittenFiles()).willReturn(3);
+        given(export.getTotalFiles()).willReturn(10);
+        given(export.getSize()).willReturn(4L);
+
+        given(zipExportService.submitExport(any(), eq(1L))).willReturn(export);
+        given(zipExportService.getExport(any(), eq(5L))).willReturn(export);
+        given(zipExportService.getExportContent(any(), eq(5L)))
+                .willReturn(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }));
+    }
+
+    /**
+     * Tests starting an export.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void submitExport() throws Exception {
+        mockMvc().perform(post("/material1/export")
+                .param("dirId", "1")
+                .with(csrf().asHeader()))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/material1/export/5"))
+                .andExpect(jsonPath("$.id").value(5))
+                .andDo(document("index/ExportController/{method-name}"));
+    }
+
+    /**
+     * Tests that the progress of an export is shown.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void getExport() throws Exception {
+        mockMvc().perform(get("/material1/export/{exportId}", 5))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(ZipExport.RUNNING))
+                .andExpect(jsonPath("$.writtenFiles").value(3))
+                .andExpect(jsonPath("$.totalFiles").value(10))
+                .andDo(document("index/ExportController/{method-name}",
+                        pathParameters(
+                                parameterWithName("exportId").description("The export id.")
+                        )));
+    }
+
+    /**
+     * Tests downloading the archive of an export.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void downloadExport() throws Exception {
+        MvcResult result = mockMvc().perform(get("/material1/export/{exportId}/download", 5))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc().perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"folder.zip\""))
+                .andExpect(content().bytes(new byte[] { 1, 2, 3, 4 }));
+    }
+}
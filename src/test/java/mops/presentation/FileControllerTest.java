@@ -3,6 +3,9 @@ package mops.presentation;
 import com.c4_soft.springaddons.test.security.context.support.WithIDToken;
 import com.c4_soft.springaddons.test.security.context.support.WithMockKeycloackAuth;
 import com.c4_soft.springaddons.test.security.web.servlet.request.keycloak.ServletKeycloakAuthUnitTestingSupport;
+import mops.businesslogic.directory.DirectoryTree;
+import mops.businesslogic.directory.DirectoryTreeService;
+import mops.businesslogic.directory.ZipService;
 import mops.businesslogic.file.FileContainer;
 import mops.businesslogic.file.FileService;
 import mops.exception.MopsException;
@@ -15,21 +18,25 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MvcResult;
 
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
 import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.get;
 import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.post;
 import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
 import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @KeycloakContext
@@ -38,6 +45,10 @@ class FileControllerTest extends ServletKeycloakAuthUnitTestingSupport {
 
     @MockBean
     FileService fileService;
+    @MockBean
+    DirectoryTreeService directoryTreeService;
+    @MockBean
+    ZipService zipService;
 
     /**
      * File Info for testing.
@@ -47,6 +58,10 @@ class FileControllerTest extends ServletKeycloakAuthUnitTestingSupport {
      * File Contents for testing.
      */
     byte[] fileContent;
+    /**
+     * File for testing.
+     */
+    FileContainer fileContainer;
 
     /**
      * Setup service/repo mocks.
@@ -70,12 +85,14 @@ class FileControllerTest extends ServletKeycloakAuthUnitTestingSupport {
                 .build();
 
         Resource resource = new ByteArrayResource(fileContent);
-        FileContainer fileContainer = new FileContainer(fileInfo, resource);
+        fileContainer = new FileContainer(fileInfo, resource);
 
         given(fileService.getFileInfo(any(), eq(1L))).willReturn(fileInfo);
         given(fileService.getFile(any(), eq(1L))).willReturn(fileContainer);
         given(fileService.deleteFile(any(), eq(1L))).willReturn(directory);
         given(fileService.renameFile(any(), eq(1L), any())).willReturn(directory);
+        given(directoryTreeService.getReadableSelection(any(), eq(List.of(1L, 3L))))
+                .willReturn(new DirectoryTree(directory, List.of(), List.of()));
     }
 
     /**
@@ -84,8 +101,12 @@ class FileControllerTest extends ServletKeycloakAuthUnitTestingSupport {
     @Test
     @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
     void showFile() throws Exception {
-        mockMvc().perform(get("/material1/file/{fileId}", 1)
+        MvcResult result = mockMvc().perform(get("/material1/file/{fileId}", 1)
                 .with(csrf()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc().perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM_VALUE))
                 .andDo(document("index/FileController/{method-name}",
@@ -94,15 +115,40 @@ class FileControllerTest extends ServletKeycloakAuthUnitTestingSupport {
                         )));
     }
 
+    /**
+     * Tests the route for downloading several files as one zip.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void zipFiles() throws Exception {
+        MvcResult asyncResult = mockMvc().perform(post("/material1/file/zip")
+                .param("fileIds", "1", "3")
+                .with(csrf()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc().perform(asyncDispatch(asyncResult))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"Test Directory.zip\""))
+                .andDo(document("index/FileController/{method-name}"));
+
+        verify(zipService).zipTree(any(DirectoryTree.class), any());
+    }
+
     /**
      * Tests the route for downloading a file preview.
      */
     @Test
     @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
     void downloadFile() throws Exception {
-        MvcResult result = mockMvc().perform(get("/material1/file/{fileId}/download", 1)
+        MvcResult asyncResult = mockMvc().perform(get("/material1/file/{fileId}/download", 1)
                 .with(csrf())
                 .contentType(MediaType.ALL))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        MvcResult result = mockMvc().perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andDo(document("index/FileController/{method-name}",
                         pathParameters(
@@ -115,6 +161,54 @@ class FileControllerTest extends ServletKeycloakAuthUnitTestingSupport {
         assertThat(result.getResponse().getContentAsByteArray()).isEqualTo(fileContent);
     }
 
+    /**
+     * Tests the route for downloading a part of a file.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void downloadFileRange() throws Exception {
+        MvcResult asyncResult = mockMvc().perform(get("/material1/file/{fileId}/download", 1)
+                .header(HttpHeaders.RANGE, "bytes=1-2")
+                .with(csrf()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        MvcResult result = mockMvc().perform(asyncDispatch(asyncResult))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 1-2/4"))
+                .andReturn();
+
+        assertThat(result.getResponse().getContentLength()).isEqualTo(2);
+        assertThat(result.getResponse().getContentAsByteArray()).isEqualTo("es".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that ranges outside of the file are rejected.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void downloadFileInvalidRange() throws Exception {
+        mockMvc().perform(get("/material1/file/{fileId}/download", 1)
+                .header(HttpHeaders.RANGE, "bytes=10-")
+                .with(csrf()))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */4"));
+    }
+
+    /**
+     * Tests that unchanged files are not sent again and their headers are not repeated.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void showFileNotModified() throws Exception {
+        mockMvc().perform(get("/material1/file/{fileId}", 1)
+                .header(HttpHeaders.IF_NONE_MATCH, fileContainer.getETag())
+                .with(csrf()))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isNotModified())
+                .andExpect(header().stringValues(HttpHeaders.ETAG, fileContainer.getETag()));
+    }
+
     /**
      * Tests if a user can delete a file.
      */
@@ -0,0 +1,141 @@
+package mops.presentation;
+
+import com.c4_soft.springaddons.test.security.context.support.WithIDToken;
+import com.c4_soft.springaddons.test.security.context.support.WithMockKeycloackAuth;
+import com.c4_soft.springaddons.test.security.web.servlet.request.keycloak.ServletKeycloakAuthUnitTestingSupport;
+import mops.businesslogic.file.UploadSessionService;
+import mops.exception.MopsException;
+import mops.persistence.file.FileInfo;
+import mops.persistence.upload.UploadSession;
+import mops.util.KeycloakContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+
+import java.io.InputStream;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders.*;
+import static org.springframework.restdocs.request.RequestDocumentation.parameterWithName;
+import static org.springframework.restdocs.request.RequestDocumentation.pathParameters;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@KeycloakContext
+@WebMvcTest(UploadController.class)
+class UploadControllerTest extends ServletKeycloakAuthUnitTestingSupport {
+
+    @MockBean
+    UploadSessionService uploadSessionService;
+
+    /**
+     * Setup service mocks.
+     */
+    @BeforeEach
+    void setup() throws MopsException {
+        UploadSession session = mock(UploadSession.class);
+        given(session.getId()).willReturn(3L);
+        given(session.getName()).willReturn("file.bin");
+        given(session.getSize()).willReturn(10L);
+        given(session.getChunkNumbers()).willReturn(List.of(0));
+        FileInfo fileInfo = mock(FileInfo.class);
+        given(fileInfo.getId()).willReturn(17L);
+
+        given(uploadSessionService.createSession(any(), eq(1L), eq("file.bin"), any())).willReturn(session);
+        given(uploadSessionService.getSession(any(), eq(3L))).willReturn(session);
+        given(uploadSessionService.completeSession(any(), eq(3L))).willReturn(fileInfo);
+    }
+
+    /**
+     * Tests starting a chunked upload.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void createSession() throws Exception {
+        mockMvc().perform(post("/material1/upload")
+                .param("dirId", "1")
+                .param("name", "file.bin")
+                .with(csrf().asHeader()))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Location", "/material1/upload/3"))
+                .andExpect(jsonPath("$.id").value(3))
+                .andDo(document("index/UploadController/{method-name}"));
+    }
+
+    /**
+     * Tests that the received chunks are listed.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void getSession() throws Exception {
+        mockMvc().perform(get("/material1/upload/{sessionId}", 3))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.chunks[0]").value(0))
+                .andExpect(jsonPath("$.size").value(10))
+                .andDo(document("index/UploadController/{method-name}",
+                        pathParameters(
+                                parameterWithName("sessionId").description("The upload session id.")
+                        )));
+    }
+
+    /**
+     * Tests uploading a chunk as request body.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void saveChunk() throws Exception {
+        mockMvc().perform(put("/material1/upload/{sessionId}/{chunkNumber}", 3, 0)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content(new byte[10])
+                .with(csrf().asHeader()))
+                .andExpect(status().isNoContent())
+                .andDo(document("index/UploadController/{method-name}",
+                        pathParameters(
+                                parameterWithName("sessionId").description("The upload session id."),
+                                parameterWithName("chunkNumber").description("The chunk number, starting with 0.")
+                        )));
+
+        verify(uploadSessionService).saveChunk(any(), eq(3L), eq(0), eq(10L), any(InputStream.class));
+    }
+
+    /**
+     * Tests completing an upload.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void completeSession() throws Exception {
+        mockMvc().perform(post("/material1/upload/{sessionId}/complete", 3)
+                .with(csrf().asHeader()))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Location", "/material1/file/17"))
+                .andDo(document("index/UploadController/{method-name}",
+                        pathParameters(
+                                parameterWithName("sessionId").description("The upload session id.")
+                        )));
+    }
+
+    /**
+     * Tests cancelling an upload.
+     */
+    @Test
+    @WithMockKeycloackAuth(roles = "studentin", idToken = @WithIDToken(email = "user@mail.de"))
+    void abortSession() throws Exception {
+        mockMvc().perform(delete("/material1/upload/{sessionId}", 3)
+                .with(csrf().asHeader()))
+                .andExpect(status().isNoContent())
+                .andDo(document("index/UploadController/{method-name}",
+                        pathParameters(
+                                parameterWithName("sessionId").description("The upload session id.")
+                        )));
+
+        verify(uploadSessionService).abortSession(any(), eq(3L));
+    }
+}
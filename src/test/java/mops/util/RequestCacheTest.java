@@ -0,0 +1,71 @@
+package mops.util;
+
+import mops.exception.MopsException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCacheTest {
+
+    AtomicInteger loads;
+
+    @BeforeEach
+    void setup() {
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void loadsOncePerRequest() throws MopsException {
+        try (RequestCache cache = RequestCache.start()) {
+            String first = RequestCache.get(String.class, 1L, () -> load("first"));
+            String second = RequestCache.get(String.class, 1L, () -> load("second"));
+
+            assertThat(first).isEqualTo("first");
+            assertThat(second).isSameAs(first);
+            assertThat(cache.getLoads()).isEqualTo(1);
+            assertThat(cache.getHits()).isEqualTo(1);
+        }
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void typesAreCachedSeparately() throws MopsException {
+        try (RequestCache cache = RequestCache.start()) {
+            RequestCache.get(String.class, 1L, () -> load("directory"));
+            RequestCache.get(Integer.class, 1L, () -> load(2));
+
+            assertThat(cache.getLoads()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void evictedAggregateIsLoadedAgain() throws MopsException {
+        try (RequestCache cache = RequestCache.start()) {
+            RequestCache.get(String.class, 1L, () -> load("old"));
+
+            RequestCache.evict(String.class, 1L);
+
+            assertThat(RequestCache.get(String.class, 1L, () -> load("new"))).isEqualTo("new");
+        }
+    }
+
+    @Test
+    void loadsEveryTimeOutsideOfRequests() throws MopsException {
+        try (RequestCache cache = RequestCache.start()) {
+            RequestCache.get(String.class, 1L, () -> load("in request"));
+        }
+
+        RequestCache.get(String.class, 1L, () -> load("first"));
+        RequestCache.get(String.class, 1L, () -> load("second"));
+
+        assertThat(loads).hasValue(3);
+    }
+
+    private <T> T load(T value) {
+        loads.incrementAndGet();
+        return value;
+    }
+}
@@ -42,6 +42,9 @@ CREATE TABLE IF NOT EXISTS file_info
     type               VARCHAR(255) NOT NULL CHECK (type NOT LIKE ''),
     size               BIGINT       NOT NULL,
     owner              VARCHAR(255) NOT NULL CHECK (owner NOT LIKE ''),
+    content_hash       CHAR(64),
+    content_id         BIGINT,
+    content_encoding   VARCHAR(16),
     available_from     TIMESTAMP,
     available_to       TIMESTAMP,
     creation_time      TIMESTAMP    NOT NULL,
@@ -52,6 +55,18 @@ CREATE TABLE IF NOT EXISTS file_info
 
 CREATE INDEX IF NOT EXISTS i_file_dir ON file_info (directory_id);
 
+CREATE INDEX IF NOT EXISTS i_file_content ON file_info (content_id);
+
+CREATE TABLE IF NOT EXISTS file_blob
+(
+    content_id BIGINT PRIMARY KEY,
+    hash       CHAR(64) NOT NULL,
+    size       BIGINT   NOT NULL,
+    ref_count  BIGINT   NOT NULL,
+    encoding   VARCHAR(16),
+    CONSTRAINT u_blob_hash UNIQUE (hash)
+);
+
 CREATE TABLE IF NOT EXISTS file_tag
 (
     name    VARCHAR(255) NOT NULL CHECK (name NOT LIKE ''),
@@ -90,3 +105,56 @@ CREATE TABLE IF NOT EXISTS latest_event_id
     id       INT PRIMARY KEY,
     event_id BIGINT NOT NULL
 );
+
+CREATE TABLE IF NOT EXISTS upload_session
+(
+    id                 BIGINT PRIMARY KEY AUTO_INCREMENT,
+    directory_id       BIGINT       NOT NULL,
+    name               VARCHAR(255) NOT NULL CHECK (name NOT LIKE ''),
+    type               VARCHAR(255) NOT NULL CHECK (type NOT LIKE ''),
+    owner              VARCHAR(255) NOT NULL CHECK (owner NOT LIKE ''),
+    creation_time      TIMESTAMP    NOT NULL,
+    last_modified_time TIMESTAMP    NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS i_upload_modified ON upload_session (last_modified_time);
+
+CREATE TABLE IF NOT EXISTS upload_chunk
+(
+    session_id   BIGINT NOT NULL,
+    chunk_number INT    NOT NULL,
+    size         BIGINT NOT NULL,
+    CONSTRAINT fk_chunk_session FOREIGN KEY (session_id) REFERENCES upload_session (id),
+    CONSTRAINT u_chunk UNIQUE (session_id, chunk_number)
+);
+
+CREATE INDEX IF NOT EXISTS i_chunk_session ON upload_chunk (session_id);
+
+CREATE TABLE IF NOT EXISTS zip_export
+(
+    id                 BIGINT PRIMARY KEY AUTO_INCREMENT,
+    directory_id       BIGINT       NOT NULL,
+    name               VARCHAR(255) NOT NULL CHECK (name NOT LIKE ''),
+    owner              VARCHAR(255) NOT NULL CHECK (owner NOT LIKE ''),
+    status             VARCHAR(16)  NOT NULL,
+    written_files      INT          NOT NULL,
+    total_files        INT          NOT NULL,
+    size               BIGINT       NOT NULL,
+    expiry_time        TIMESTAMP,
+    creation_time      TIMESTAMP    NOT NULL,
+    last_modified_time TIMESTAMP    NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS i_export_owner ON zip_export (owner, directory_id);
+CREATE INDEX IF NOT EXISTS i_export_expiry ON zip_export (expiry_time);
+
+CREATE TABLE IF NOT EXISTS pending_deletion
+(
+    id                BIGINT PRIMARY KEY AUTO_INCREMENT,
+    content_id        BIGINT    NOT NULL,
+    attempts          INT       NOT NULL,
+    next_attempt_time TIMESTAMP NOT NULL,
+    creation_time     TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS i_deletion_next_attempt ON pending_deletion (next_attempt_time);